@@ -92,18 +92,16 @@ public class MainApp extends JFrame {
         JButton btnLimpiar  = new JButton("Limpiar"); ui.UIStyles.styleButton(btnLimpiar);
         JButton btnCrearUbigeo = new JButton("Crear Ubigeo"); ui.UIStyles.styleButton(btnCrearUbigeo);
 
-        // Ubigeo combo declared early so we can refresh it from the Crear Ubigeo button
-        final JComboBox<String> cbUbigeo = new JComboBox<>();
+        // Ubigeo selector (departamento -> provincia -> distrito) declared early so we can refresh it from the Crear Ubigeo button
+        final ui.SelectorUbigeo selUbigeo = new ui.SelectorUbigeo();
 
         toolbar.add(btnNuevo); toolbar.add(btnGuardar); toolbar.add(btnActualizar); toolbar.add(btnEliminar); toolbar.add(btnRecuperar); toolbar.add(btnLimpiar); toolbar.add(btnCrearUbigeo);
         // Acción para crear ubigeo
         btnCrearUbigeo.addActionListener(e -> {
             ui.FrmUbigeo dlg = new ui.FrmUbigeo(this);
             dlg.setVisible(true);
-            // refresh ubigeo combo after dialog closes (modal)
-            cbUbigeo.removeAllItems();
-            cbUbigeo.addItem("");
-            for (model.Ubigeo u : new dao.UbigeoDAO().listarTodos()) cbUbigeo.addItem(u.getCodigo());
+            // refresh ubigeo selector after dialog closes (modal)
+            cargarJerarquiaUbigeos(selUbigeo);
         });
 
         // Right side: form inside a white rounded card
@@ -111,13 +109,15 @@ public class MainApp extends JFrame {
         derecha.setLayout(new BorderLayout(8,8));
         derecha.setBorder(BorderFactory.createEmptyBorder(8,8,8,8));
 
-        JPanel form = new JPanel(new GridLayout(6, 2, 6, 6));
+        JPanel form = new JPanel(new GridLayout(8, 2, 6, 6));
         form.setOpaque(false);
         JLabel lblRuc     = new JLabel("RUC:"); lblRuc.setFont(ui.UIStyles.UI_FONT);
         JLabel lblNombre  = new JLabel("Nombre:"); lblNombre.setFont(ui.UIStyles.UI_FONT);
         JLabel lblTel     = new JLabel("Teléfono:"); lblTel.setFont(ui.UIStyles.UI_FONT);
         JLabel lblDir     = new JLabel("Dirección:"); lblDir.setFont(ui.UIStyles.UI_FONT);
-        JLabel lblUbigeo  = new JLabel("Código Ubigeo:"); lblUbigeo.setFont(ui.UIStyles.UI_FONT);
+        JLabel lblDep     = new JLabel("Departamento:"); lblDep.setFont(ui.UIStyles.UI_FONT);
+        JLabel lblProv    = new JLabel("Provincia:"); lblProv.setFont(ui.UIStyles.UI_FONT);
+        JLabel lblUbigeo  = new JLabel("Distrito (ubigeo):"); lblUbigeo.setFont(ui.UIStyles.UI_FONT);
         JLabel lblGmail   = new JLabel("Gmail:"); lblGmail.setFont(ui.UIStyles.UI_FONT);
 
         JTextField txtRuc    = new JTextField();
@@ -130,7 +130,9 @@ public class MainApp extends JFrame {
         form.add(lblNombre); form.add(txtNombre);
         form.add(lblTel);    form.add(txtTel);
         form.add(lblDir);    form.add(txtDir);
-        form.add(lblUbigeo); form.add(cbUbigeo);
+        form.add(lblDep);    form.add(selUbigeo.comboDepartamento());
+        form.add(lblProv);   form.add(selUbigeo.comboProvincia());
+        form.add(lblUbigeo); form.add(selUbigeo.comboDistrito());
         form.add(lblGmail);  form.add(txtGmail);
 
         JPanel acciones = new JPanel(new FlowLayout(FlowLayout.RIGHT)); acciones.setOpaque(false);
@@ -138,18 +140,17 @@ public class MainApp extends JFrame {
         derecha.add(form, BorderLayout.CENTER);
         derecha.add(acciones, BorderLayout.SOUTH);
 
-        // populate ubigeo combo from DB
-        cbUbigeo.addItem("");
-        for (model.Ubigeo u : new dao.UbigeoDAO().listarTodos()) {
-            cbUbigeo.addItem(u.getCodigo());
-        }
+        // load the ubigeo hierarchy (reference cache) into the selector
+        cargarJerarquiaUbigeos(selUbigeo);
 
         panel.add(toolbar, BorderLayout.NORTH);
         panel.add(scroll, BorderLayout.CENTER);
         panel.add(derecha, BorderLayout.EAST);
 
-        // Cargar datos
+        // Cargar datos; después los cambios (propios y de otros equipos) se aplican fila a fila
         cargarDestinatariosEnTabla(model);
+        ui.FilasEnVivo.instalar(this, "destinatario", destinatarioDAO::buscarPorRuc,
+                ui.FilasEnVivo.enModelo(model, 0, MainApp::filaDestinatario, () -> cargarDestinatariosEnTabla(model)));
 
         // Eventos: tabla → poblar formulario
         tabla.addMouseListener(new MouseAdapter() {
@@ -161,7 +162,7 @@ public class MainApp extends JFrame {
                     txtNombre.setText(model.getValueAt(fila,1).toString());
                     txtTel.setText(model.getValueAt(fila,2) != null ? model.getValueAt(fila,2).toString() : "");
                     txtDir.setText(model.getValueAt(fila,3).toString());
-                    cbUbigeo.setSelectedItem(model.getValueAt(fila,4).toString());
+                    selUbigeo.setCodigo(model.getValueAt(fila,4).toString());
                     txtGmail.setText(model.getValueAt(fila,5) != null ? model.getValueAt(fila,5).toString() : "");
                     txtRuc.setEnabled(false);
                 }
@@ -170,7 +171,7 @@ public class MainApp extends JFrame {
 
         // Botones: acciones (reusar lógica original)
         btnNuevo.addActionListener(e -> {
-            limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, cbUbigeo, txtGmail);
+            limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, selUbigeo, txtGmail);
             txtRuc.setEnabled(true);
         });
 
@@ -179,7 +180,7 @@ public class MainApp extends JFrame {
             String nombre = txtNombre.getText().trim();
             String tel    = txtTel.getText().trim();
             String dir    = txtDir.getText().trim();
-            String ubigeo = cbUbigeo.getSelectedItem() == null ? "" : ((String)cbUbigeo.getSelectedItem()).trim();
+            String ubigeo = selUbigeo.getCodigo();
             String gmail  = txtGmail.getText().trim();
 
             if (ruc.isEmpty() || nombre.isEmpty() || dir.isEmpty() || ubigeo.isEmpty()) {
@@ -195,8 +196,7 @@ public class MainApp extends JFrame {
             Destinatario d = new Destinatario(ruc, nombre, tel, dir, ubigeo, gmail);
             if (destinatarioDAO.insertar(d)) {
                 JOptionPane.showMessageDialog(panel, "Destinatario insertado correctamente");
-                cargarDestinatariosEnTabla(model);
-                limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, cbUbigeo, txtGmail);
+                limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, selUbigeo, txtGmail);
             } else {
                 JOptionPane.showMessageDialog(panel, "Error al insertar destinatario");
             }
@@ -212,7 +212,7 @@ public class MainApp extends JFrame {
             String nombre = txtNombre.getText().trim();
             String tel    = txtTel.getText().trim();
             String dir    = txtDir.getText().trim();
-            String ubigeo = cbUbigeo.getSelectedItem() == null ? "" : ((String)cbUbigeo.getSelectedItem()).trim();
+            String ubigeo = selUbigeo.getCodigo();
             String gmail  = txtGmail.getText().trim();
 
             if (!ubigeo.isEmpty() && !destinatarioDAO.ubigeoExiste(ubigeo)) {
@@ -223,7 +223,6 @@ public class MainApp extends JFrame {
             Destinatario d = new Destinatario(ruc, nombre, tel, dir, ubigeo, gmail);
             if (destinatarioDAO.actualizar(d)) {
                 JOptionPane.showMessageDialog(panel, "Destinatario actualizado correctamente");
-                cargarDestinatariosEnTabla(model);
             } else {
                 JOptionPane.showMessageDialog(panel, "Error al actualizar destinatario");
             }
@@ -241,8 +240,7 @@ public class MainApp extends JFrame {
             if (resp == JOptionPane.YES_OPTION) {
                 if (destinatarioDAO.eliminar(ruc)) {
                     JOptionPane.showMessageDialog(panel, "Destinatario eliminado");
-                    cargarDestinatariosEnTabla(model);
-                    limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, cbUbigeo, txtGmail);
+                    limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, selUbigeo, txtGmail);
                 } else {
                     JOptionPane.showMessageDialog(panel, "Error al eliminar destinatario");
                 }
@@ -256,7 +254,6 @@ public class MainApp extends JFrame {
             if (resp == JOptionPane.YES_OPTION) {
                 if (destinatarioDAO.recuperar(ruc)) {
                     JOptionPane.showMessageDialog(panel, "Recuperado");
-                    cargarDestinatariosEnTabla(model);
                 } else {
                     JOptionPane.showMessageDialog(panel, "Error al recuperar");
                 }
@@ -264,36 +261,45 @@ public class MainApp extends JFrame {
         });
 
         btnLimpiar.addActionListener(e -> {
-            limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, cbUbigeo, txtGmail);
+            limpiarDestinatarioForm(txtRuc, txtNombre, txtTel, txtDir, selUbigeo, txtGmail);
             txtRuc.setEnabled(true);
         });
 
         return panel;
     }
 
+    // Las cargas corren fuera del EDT (ui.TareasUI); los modelos se rellenan al volver al EDT
     private void cargarDestinatariosEnTabla(DefaultTableModel model) {
-        model.setRowCount(0);
-        List<Destinatario> lista = destinatarioDAO.listarTodos();
-        for (Destinatario d : lista) {
-            model.addRow(new Object[]{
-                    d.getRuc(),
-                    d.getNombre(),
-                    d.getNumeroTelefono(),
-                    d.getCalleDireccion(),
-                    d.getCodigoUbigeo(),
-                    d.getGmail()
-            });
-        }
+        ui.TareasUI.ejecutar(this, "destinatarios", "Cargando destinatarios...", p -> destinatarioDAO.listarTodos(), lista -> {
+            model.setRowCount(0);
+            for (Destinatario d : lista) model.addRow(filaDestinatario(d));
+        });
+    }
+
+    private static Object[] filaDestinatario(Destinatario d) {
+        return new Object[]{
+                d.getRuc(),
+                d.getNombre(),
+                d.getNumeroTelefono(),
+                d.getCalleDireccion(),
+                d.getCodigoUbigeo(),
+                d.getGmail()
+        };
+    }
+
+    private void cargarJerarquiaUbigeos(ui.SelectorUbigeo selUbigeo) {
+        ui.TareasUI.ejecutar(this, "ubigeos-combo", "Cargando ubigeos...", p -> dao.CacheReferencias.jerarquiaUbigeos(),
+                selUbigeo::setJerarquia);
     }
 
     private void limpiarDestinatarioForm(JTextField txtRuc, JTextField txtNombre,
                                          JTextField txtTel, JTextField txtDir,
-                                         JComboBox<String> cbUbigeo, JTextField txtGmail) {
+                                         ui.SelectorUbigeo selUbigeo, JTextField txtGmail) {
         txtRuc.setText("");
         txtNombre.setText("");
         txtTel.setText("");
         txtDir.setText("");
-        if (cbUbigeo != null) cbUbigeo.setSelectedIndex(0);
+        if (selUbigeo != null) selUbigeo.limpiar();
         txtGmail.setText("");
     }
 
@@ -326,10 +332,12 @@ public class MainApp extends JFrame {
         top.add(btnActualizar);
 
         // Tabla de guías
-        String[] cols = {"Código", "Serie", "Número", "Orden", "Remitente", "Fecha", "Hora", "Estado"};
-        DefaultTableModel model = new DefaultTableModel(cols, 0);
+        // Tabla de guías paginada (keyset): el combo se llena con las guías de cada página cargada
+        ui.GuiasPaginadasTableModel model = new ui.GuiasPaginadasTableModel(guiaDAO);
+        model.setAlCargarPagina(pagina -> pagina.forEach(cbGuias::addItem));
         JTable tabla = new JTable(model);
         JScrollPane scroll = new JScrollPane(tabla);
+        model.instalarEn(scroll, tabla);
 
         panel.add(top, BorderLayout.NORTH);
         panel.add(scroll, BorderLayout.CENTER);
@@ -397,23 +405,10 @@ public class MainApp extends JFrame {
         return panel;
     }
 
-    private void cargarGuias(JComboBox<CabeceraGuia> combo, DefaultTableModel model) {
+    private void cargarGuias(JComboBox<CabeceraGuia> combo, ui.GuiasPaginadasTableModel model) {
+        // Sólo la primera página; el combo recibe las guías de cada página vía setAlCargarPagina
         combo.removeAllItems();
-        model.setRowCount(0);
-        List<CabeceraGuia> lista = guiaDAO.listarTodas();
-        for (CabeceraGuia g : lista) {
-            combo.addItem(g);
-            model.addRow(new Object[]{
-                    g.getCodigoGuia(),
-                    g.getSerie(),
-                    g.getNumero(),
-                    g.getCodOrden(),
-                    g.getRucRemitente(),
-                    g.getFechaEmision(),
-                    g.getHoraEmision(),
-                    g.getEstadoGuia()
-            });
-        }
+        model.recargar();
     }
 
     // =========================
@@ -504,20 +499,21 @@ public class MainApp extends JFrame {
     }
 
     private void cargarTraslados(DefaultTableModel model) {
-        model.setRowCount(0);
-        List<Traslado> lista = trasladoDAO.listarTodos();
-        for (Traslado t : lista) {
-            model.addRow(new Object[]{
-                    t.getCodigoTraslado(),
-                    t.getCodigoGuia(),
-                    t.getPlaca(),
-                    t.getLicencia(),
-                    t.getFechaInicio(),
-                    t.getFechaFin(),
-                    t.getEstadoTraslado(),
-                    t.getObservaciones()
-            });
-        }
+        ui.TareasUI.ejecutar(this, "traslados", "Cargando traslados...", p -> trasladoDAO.listarTodos(), lista -> {
+            model.setRowCount(0);
+            for (Traslado t : lista) {
+                model.addRow(new Object[]{
+                        t.getCodigoTraslado(),
+                        t.getCodigoGuia(),
+                        t.getPlaca(),
+                        t.getLicencia(),
+                        t.getFechaInicio(),
+                        t.getFechaFin(),
+                        t.getEstadoTraslado(),
+                        t.getObservaciones()
+                });
+            }
+        });
     }
 
     // =========================
@@ -706,6 +702,20 @@ public class MainApp extends JFrame {
                     }
                 }
 
+                // Precalentar el pool y leer el catálogo de SPs/columnas en segundo plano mientras el usuario inicia sesión;
+                // después, escuchar las notificaciones de cambios de otros equipos para mantener las cachés al día
+                // y programar el refresco de los agregados diarios de los reportes y la creación de particiones
+                Thread warm = new Thread(() -> {
+                    if (db.Conexion.precalentar()) {
+                        db.CatalogoBD.refrescar();
+                        dao.EscuchaCambios.iniciar();
+                        dao.RefrescoKpi.iniciar();
+                        dao.MantenimientoParticiones.iniciar();
+                    }
+                }, "precalentar-pool-db");
+                warm.setDaemon(true);
+                warm.start();
+
                 // Show login first; FrmLogin will open the menu on success
                 ui.FrmLogin login = new ui.FrmLogin(null);
                 login.setVisible(true);
@@ -713,7 +723,7 @@ public class MainApp extends JFrame {
     }
 
     // Formulario modal para emitir guía
-    private void mostrarEmitirGuiaDialog(JComboBox<CabeceraGuia> cbGuias, DefaultTableModel model) {
+    private void mostrarEmitirGuiaDialog(JComboBox<CabeceraGuia> cbGuias, ui.GuiasPaginadasTableModel model) {
         JDialog dlg = new JDialog(this, "Emitir guía", true);
         JPanel p = new JPanel(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
@@ -728,41 +738,36 @@ public class MainApp extends JFrame {
         // Código orden: dropdown populated from OrdenDAO
         JComboBox<String> cbOrdenes = new JComboBox<>();
         JTextField txtRucRemitente = new JTextField();
-        JComboBox<String> cbDest = new JComboBox<>();
-        // cargar destinatarios (RUC - nombre)
-        List<Destinatario> dests = destinatarioDAO.listarTodos();
-        for (Destinatario d : dests) {
-            cbDest.addItem(d.getRuc() + " - " + d.getNombre());
-        }
+        // Destinatario: sugerencias por RUC o nombre mientras se escribe (búsqueda en la BD fuera del EDT)
+        ui.CampoBusqueda<Destinatario> cbDest = new ui.CampoBusqueda<>(
+                t -> destinatarioDAO.buscar(t, dao.BusquedaTexto.LIMITE), d -> d.getRuc() + " - " + d.getNombre(), d -> d.getRuc());
         JTextField txtDirPartida = new JTextField();
         JTextField txtDirLlegada = new JTextField();
-        // Ubigeo origin/dest: dropdowns populated from UbigeoDAO
-        JComboBox<String> cbUbigeoOri = new JComboBox<>();
-        JComboBox<String> cbUbigeoDest = new JComboBox<>();
+        // Ubigeo origin/dest: type-ahead over the in-memory ubigeo index (code or departamento/provincia/distrito)
+        java.util.function.Function<model.Ubigeo, String> etiquetaUbigeo =
+                u -> u.getCodigo() + " - " + u.getDepartamento() + "/" + u.getProvincia() + "/" + u.getDistrito();
+        ui.CampoBusqueda<model.Ubigeo> cbUbigeoOri =
+                ui.CampoBusqueda.local(dao.CacheReferencias::indiceUbigeos, etiquetaUbigeo, u -> u.getCodigo());
+        ui.CampoBusqueda<model.Ubigeo> cbUbigeoDest =
+                ui.CampoBusqueda.local(dao.CacheReferencias::indiceUbigeos, etiquetaUbigeo, u -> u.getCodigo());
         JTextField txtMotivo = new JTextField();
         JTextField txtModalidad = new JTextField();
         JTextField txtPeso = new JTextField("0.0");
         JTextField txtBultos = new JTextField("0");
 
-        // populate orders into cbOrdenes
+        // populate orders into cbOrdenes: se leen fuera del EDT; el combo queda deshabilitado hasta que llegan
         cbOrdenes.addItem("");
         dao.OrdenDAO ordenDAO = new dao.OrdenDAO();
         java.time.format.DateTimeFormatter fmt = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        for (model.OrdenDePago o : ordenDAO.listarTodos()) {
-            String dateStr = "";
-            if (o.getFecha() != null) {
-                try { dateStr = o.getFecha().toLocalDate().format(fmt); } catch (Exception ex) { dateStr = o.getFecha().toString(); }
+        ui.TareasUI.ejecutar(dlg, "emitir-guia-ordenes", "Cargando órdenes...", pr -> ordenDAO.listarTodos(), ordenes -> {
+            for (model.OrdenDePago o : ordenes) {
+                String dateStr = "";
+                if (o.getFecha() != null) {
+                    try { dateStr = o.getFecha().toLocalDate().format(fmt); } catch (Exception ex) { dateStr = o.getFecha().toString(); }
+                }
+                cbOrdenes.addItem(o.getCodigoOrden() + (dateStr.isEmpty() ? "" : " - " + dateStr) + (o.getRucCliente()!=null && !o.getRucCliente().isEmpty() ? " - " + o.getRucCliente() : ""));
             }
-            cbOrdenes.addItem(o.getCodigoOrden() + (dateStr.isEmpty() ? "" : " - " + dateStr) + (o.getRucCliente()!=null && !o.getRucCliente().isEmpty() ? " - " + o.getRucCliente() : ""));
-        }
-
-        // populate ubigeo combos
-        cbUbigeoOri.addItem(""); cbUbigeoDest.addItem("");
-        for (model.Ubigeo u : new dao.UbigeoDAO().listarTodos()) {
-            String label = u.getCodigo() + " - " + u.getDepartamento() + "/" + u.getProvincia() + "/" + u.getDistrito();
-            cbUbigeoOri.addItem(label);
-            cbUbigeoDest.addItem(label);
-        }
+        }).bloqueando(cbOrdenes);
 
         // helper to add label+component
         BiConsumer<String, JComponent> addRow = (label, comp) -> {
@@ -817,12 +822,11 @@ public class MainApp extends JFrame {
                     codOrden = parts.length > 0 ? parts[0].trim() : codOrdenSel;
                 }
                 String rucRem = txtRucRemitente.getText().trim();
-                String destSel = (String) cbDest.getSelectedItem();
-                String rucDest = destSel != null ? destSel.split(" - ")[0].trim() : "";
+                String rucDest = cbDest.getClave().trim();
                 String dirPartida = txtDirPartida.getText().trim();
                 String dirLlegada = txtDirLlegada.getText().trim();
-                String ubOriSel = cbUbigeoOri.getSelectedItem() == null ? "" : ((String)cbUbigeoOri.getSelectedItem()).trim();
-                String ubDestSel = cbUbigeoDest.getSelectedItem() == null ? "" : ((String)cbUbigeoDest.getSelectedItem()).trim();
+                String ubOriSel = cbUbigeoOri.getClave();
+                String ubDestSel = cbUbigeoDest.getClave();
                 String ubOri = ubOriSel.contains(" - ") ? ubOriSel.split(" - ")[0].trim() : ubOriSel;
                 String ubDest = ubDestSel.contains(" - ") ? ubDestSel.split(" - ")[0].trim() : ubDestSel;
                 String motivo = txtMotivo.getText().trim();
@@ -835,6 +839,16 @@ public class MainApp extends JFrame {
                     JOptionPane.showMessageDialog(dlg, "Complete los campos obligatorios.");
                     return;
                 }
+                // Remitente y destinatario deben existir (búsquedas por RUC servidas por la caché de los DAOs;
+                // sin el filtro de RUCs, que podría no tener aún un alta reciente de otro equipo)
+                if (new dao.RemitenteDAO().buscarPorRucConfirmado(rucRem) == null) {
+                    JOptionPane.showMessageDialog(dlg, "Remitente no registrado: " + rucRem);
+                    return;
+                }
+                if (destinatarioDAO.buscarPorRucConfirmado(rucDest) == null) {
+                    JOptionPane.showMessageDialog(dlg, "Destinatario no registrado: " + rucDest);
+                    return;
+                }
                 // opcional: validar ubigeos existan
                 DestinatarioDAO daoD = destinatarioDAO;
                 if (!ubOri.isEmpty() && !daoD.ubigeoExiste(ubOri)) {
@@ -0,0 +1,50 @@
+/*
+ * BusquedaTexto.java
+ * Reglas comunes de las búsquedas por texto de los DAOs (buscar de
+ * DestinatarioDAO, RemitenteDAO y ProductoDAO) y de los campos con
+ * sugerencias de la UI:
+ * - el texto se recorta y se colapsan los espacios;
+ * - con menos de MIN_CARACTERES no se busca (devolvería media tabla);
+ * - el límite se acota a [1, LIMITE_MAXIMO].
+ * Los patrones LIKE/ILIKE del fallback sin pg_trgm escapan los comodines
+ * del usuario (`%`, `_` y la barra invertida, el escape por defecto).
+ */
+package dao;
+
+public final class BusquedaTexto {
+
+    public static final int MIN_CARACTERES = 2;
+    /** Sugerencias que piden por defecto los campos de la UI. */
+    public static final int LIMITE = 20;
+    public static final int LIMITE_MAXIMO = 200;
+
+    private BusquedaTexto() {}
+
+    /** Texto recortado y con los espacios colapsados; "" si es null. */
+    public static String limpiar(String texto) {
+        return texto == null ? "" : texto.trim().replaceAll("\\s+", " ");
+    }
+
+    /** ¿Hay suficiente texto para lanzar la búsqueda? */
+    public static boolean buscable(String texto) {
+        return limpiar(texto).length() >= MIN_CARACTERES;
+    }
+
+    static int acotar(int limite) {
+        return Math.max(1, Math.min(LIMITE_MAXIMO, limite));
+    }
+
+    /** Patrón LIKE "empieza por". */
+    static String prefijo(String texto) {
+        return escaparLike(limpiar(texto)) + "%";
+    }
+
+    /** Patrón LIKE "contiene". */
+    static String contiene(String texto) {
+        return "%" + escaparLike(limpiar(texto)) + "%";
+    }
+
+    private static String escaparLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
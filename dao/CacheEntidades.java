@@ -0,0 +1,291 @@
+/*
+ * CacheEntidades.java
+ * Caché acotada de entidades por clave (RUC) para tablas demasiado grandes
+ * para cargarse enteras, como `destinatario` y `remitente`. Los DAOs la usan
+ * como caché de lectura: si la clave no está (o expiró) se lee de la BD y se
+ * guarda; sus insertar/actualizar/eliminar/recuperar la invalidan.
+ * Política de desalojo estilo W-TinyLFU:
+ * - Una ventana LRU pequeña (1% de la capacidad) recibe las entradas nuevas.
+ * - El área principal es un LRU segmentado: "probatoria" y "protegida" (80%);
+ *   un acierto en probatoria promueve la entrada a protegida.
+ * - Al salir de la ventana, el candidato sólo entra al área principal si su
+ *   frecuencia estimada (Count-Min sketch de 4 filas con envejecimiento) supera
+ *   a la de la víctima de probatoria; así un recorrido de claves de una sola vez
+ *   no expulsa al conjunto de trabajo.
+ * Cada entrada caduca tras el TTL. Las estructuras se protegen con un único
+ * monitor que sólo se retiene durante operaciones en memoria; la lectura de la
+ * BD ocurre fuera del bloqueo. Las entidades devueltas son compartidas: los
+ * llamadores no deben modificarlas.
+ */
+package dao;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+public final class CacheEntidades<V> {
+
+    private static final List<CacheEntidades<?>> REGISTRADAS = new CopyOnWriteArrayList<>();
+
+    static {
+        // Al cerrar la aplicación se deja en el log el rendimiento de cada caché
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (CacheEntidades<?> c : REGISTRADAS) System.out.println(c.estadisticas());
+        }, "estadisticas-cache"));
+    }
+
+    private enum Segmento { VENTANA, PROBATORIA, PROTEGIDA }
+
+    private static final class Entrada<V> {
+        final V valor;
+        final long expiraNanos;
+        Segmento segmento = Segmento.VENTANA;
+
+        Entrada(V valor, long expiraNanos) {
+            this.valor = valor;
+            this.expiraNanos = expiraNanos;
+        }
+    }
+
+    private final String nombre;
+    private final int capacidad;
+    private final int maxVentana;
+    private final int maxProtegida;
+    private final long ttlNanos;
+
+    // Índice por clave + orden LRU de cada segmento (acceso más antiguo primero)
+    private final Map<String, Entrada<V>> datos = new HashMap<>();
+    private final LinkedHashMap<String, Entrada<V>> ventana = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entrada<V>> probatoria = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entrada<V>> protegida = new LinkedHashMap<>(16, 0.75f, true);
+    private final Frecuencias frecuencias;
+    // Se incrementa en cada invalidación: una lectura de BD iniciada antes no se guarda
+    private long generacion = 0;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder desalojos = new LongAdder();
+    private final LongAdder expiradas = new LongAdder();
+
+    /**
+     * Crea la caché. La capacidad y el TTL se pueden sobrescribir con las
+     * propiedades del sistema `cache.<nombre>.max` y `cache.<nombre>.ttl.segundos`.
+     */
+    public CacheEntidades(String nombre, int capacidad, long ttlSegundos) {
+        this.nombre = nombre;
+        this.capacidad = Math.max(2, Integer.getInteger("cache." + nombre + ".max", capacidad));
+        long ttl = Long.getLong("cache." + nombre + ".ttl.segundos", ttlSegundos);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(1, ttl));
+        this.maxVentana = Math.max(1, this.capacidad / 100);
+        this.maxProtegida = (int) ((this.capacidad - maxVentana) * 0.8);
+        this.frecuencias = new Frecuencias(this.capacidad);
+        REGISTRADAS.add(this);
+    }
+
+    /**
+     * Devuelve el valor de la clave; si no está o caducó lo lee con `cargador`
+     * (fuera del bloqueo) y lo guarda. Los null no se guardan.
+     */
+    public V obtener(String clave, Function<String, V> cargador) {
+        if (clave == null || clave.trim().isEmpty()) return null;
+        String k = clave.trim();
+        long gen;
+        synchronized (this) {
+            Entrada<V> e = buscar(k);
+            if (e != null) {
+                aciertos.increment();
+                return e.valor;
+            }
+            fallos.increment();
+            gen = generacion;
+        }
+        V valor = cargador.apply(k);
+        if (valor != null) guardar(k, valor, gen);
+        return valor;
+    }
+
+    /** Valor en caché (sin ir a la BD), o null. No cuenta en las estadísticas. */
+    public synchronized V presente(String clave) {
+        if (clave == null) return null;
+        Entrada<V> e = buscar(clave.trim());
+        return e == null ? null : e.valor;
+    }
+
+    /** Guarda un valor leído por otra vía (p.ej. una búsqueda por lotes). */
+    public void poner(String clave, V valor) {
+        if (clave == null || valor == null) return;
+        long gen;
+        synchronized (this) { gen = generacion; }
+        guardar(clave.trim(), valor, gen);
+    }
+
+    /** Descarta la clave (llamar tras cualquier escritura sobre la fila). */
+    public synchronized void invalidar(String clave) {
+        generacion++;
+        if (clave != null) quitar(clave.trim());
+    }
+
+    public synchronized void invalidarTodo() {
+        generacion++;
+        datos.clear();
+        ventana.clear();
+        probatoria.clear();
+        protegida.clear();
+    }
+
+    public long getAciertos() { return aciertos.sum(); }
+
+    public long getFallos() { return fallos.sum(); }
+
+    public long getDesalojos() { return desalojos.sum(); }
+
+    public long getExpiradas() { return expiradas.sum(); }
+
+    public synchronized int tamano() { return datos.size(); }
+
+    /** Resumen legible de tamaño, aciertos, fallos, desalojos y tasa de acierto. */
+    public String estadisticas() {
+        long a = getAciertos(), f = getFallos();
+        double tasa = a + f == 0 ? 0.0 : 100.0 * a / (a + f);
+        return String.format("CacheEntidades[%s]: %d/%d entradas, aciertos=%d fallos=%d (%.1f%%) desalojos=%d expiradas=%d",
+                nombre, tamano(), capacidad, a, f, tasa, getDesalojos(), getExpiradas());
+    }
+
+    // --- internos (siempre con el monitor tomado) ---
+
+    private Entrada<V> buscar(String k) {
+        frecuencias.incrementar(k);
+        Entrada<V> e = datos.get(k);
+        if (e == null) return null;
+        if (System.nanoTime() - e.expiraNanos >= 0) {
+            quitar(k);
+            expiradas.increment();
+            return null;
+        }
+        switch (e.segmento) {
+            case VENTANA:
+                ventana.get(k);
+                break;
+            case PROBATORIA:
+                // Segundo acceso en el área principal: promover a protegida
+                probatoria.remove(k);
+                e.segmento = Segmento.PROTEGIDA;
+                protegida.put(k, e);
+                if (protegida.size() > maxProtegida) degradarProtegida();
+                break;
+            default:
+                protegida.get(k);
+        }
+        return e;
+    }
+
+    private synchronized void guardar(String k, V valor, long gen) {
+        if (gen != generacion) return;
+        quitar(k);
+        Entrada<V> e = new Entrada<>(valor, System.nanoTime() + ttlNanos);
+        datos.put(k, e);
+        ventana.put(k, e);
+        if (ventana.size() > maxVentana) salirDeVentana();
+    }
+
+    // El más antiguo de la ventana compite por entrar al área principal
+    private void salirDeVentana() {
+        Map.Entry<String, Entrada<V>> cand = primero(ventana);
+        ventana.remove(cand.getKey());
+        if (probatoria.size() + protegida.size() < capacidad - maxVentana) {
+            aProbatoria(cand.getKey(), cand.getValue());
+            return;
+        }
+        Map.Entry<String, Entrada<V>> victima = !probatoria.isEmpty() ? primero(probatoria) : primero(protegida);
+        if (frecuencias.estimar(cand.getKey()) > frecuencias.estimar(victima.getKey())) {
+            quitar(victima.getKey());
+            aProbatoria(cand.getKey(), cand.getValue());
+        } else {
+            datos.remove(cand.getKey());
+        }
+        desalojos.increment();
+    }
+
+    private void aProbatoria(String k, Entrada<V> e) {
+        e.segmento = Segmento.PROBATORIA;
+        probatoria.put(k, e);
+    }
+
+    private void degradarProtegida() {
+        Map.Entry<String, Entrada<V>> mas = primero(protegida);
+        protegida.remove(mas.getKey());
+        aProbatoria(mas.getKey(), mas.getValue());
+    }
+
+    private void quitar(String k) {
+        Entrada<V> e = datos.remove(k);
+        if (e == null) return;
+        switch (e.segmento) {
+            case VENTANA: ventana.remove(k); break;
+            case PROBATORIA: probatoria.remove(k); break;
+            default: protegida.remove(k);
+        }
+    }
+
+    private static <K, E> Map.Entry<K, E> primero(LinkedHashMap<K, E> m) {
+        Iterator<Map.Entry<K, E>> it = m.entrySet().iterator();
+        return it.next();
+    }
+
+    /**
+     * Count-Min sketch de 4 filas con contadores saturados en 15. Cuando el
+     * número de incrementos alcanza 10 veces la capacidad, todos los contadores
+     * se dividen por 2 para que la popularidad antigua vaya perdiendo peso.
+     */
+    private static final class Frecuencias {
+        private static final int[] SEMILLAS = {0x97cb3127, 0xb1a2c3d5, 0x7f4a7c15, 0x2545f491};
+        private final byte[][] filas;
+        private final int mascara;
+        private final int muestra;
+        private int incrementos = 0;
+
+        Frecuencias(int capacidad) {
+            int ancho = Integer.highestOneBit(Math.max(16, capacidad * 2) - 1) << 1;
+            this.filas = new byte[SEMILLAS.length][ancho];
+            this.mascara = ancho - 1;
+            this.muestra = Math.max(10, capacidad * 10);
+        }
+
+        void incrementar(String k) {
+            int h = k.hashCode();
+            boolean cambio = false;
+            for (int i = 0; i < filas.length; i++) {
+                int idx = indice(h, i);
+                if (filas[i][idx] < 15) {
+                    filas[i][idx]++;
+                    cambio = true;
+                }
+            }
+            if (cambio && ++incrementos >= muestra) envejecer();
+        }
+
+        int estimar(String k) {
+            int h = k.hashCode();
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < filas.length; i++) min = Math.min(min, filas[i][indice(h, i)]);
+            return min;
+        }
+
+        private int indice(int h, int fila) {
+            int x = h * SEMILLAS[fila];
+            x ^= x >>> 16;
+            return x & mascara;
+        }
+
+        private void envejecer() {
+            for (byte[] fila : filas) for (int j = 0; j < fila.length; j++) fila[j] >>= 1;
+            incrementos /= 2;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * CacheReferencias.java
+ * Caché en memoria de los datos de referencia que casi no cambian (ubigeos,
+ * productos, vehículos y conductores) y que los formularios pedían a la BD
+ * cada vez que se abrían para llenar sus combos.
+ * - Se precarga en segundo plano tras el login (precargarEnSegundoPlano).
+ * - Entrega instantáneas inmutables: listas de sólo lectura y un mapa por
+ *   código para búsquedas O(1). Es seguro leerla desde cualquier hilo.
+ * - Ubigeos y productos tienen además un índice de prefijos (IndicePrefijos)
+ *   por código y nombre para las sugerencias locales de CampoBusqueda; se
+ *   construye una vez por instantánea, en la misma precarga. Los ubigeos
+ *   tienen también su jerarquía departamento/provincia/distrito
+ *   (JerarquiaUbigeos) para el selector en cascada.
+ * - Los insertar/actualizar/eliminar de los DAOs (y los cambios de otros
+ *   equipos, vía EscuchaCambios) la invalidan: la instantánea pasa a vencida
+ *   (número de versión) y se vuelve a leer en segundo plano, pero mientras
+ *   tanto se sigue entregando la anterior. Quien lee (muchas veces el EDT, en
+ *   las sugerencias de CampoBusqueda) nunca espera una recarga; la nueva
+ *   instantánea se publica ya con su índice y su jerarquía armados.
+ * - Sólo la primera lectura de una tabla, si llega antes que la precarga, se
+ *   hace en el hilo que la pide.
+ * - Una tabla vacía es un resultado válido y se guarda. Un fallo de lectura
+ *   (excepción del DAO) no se guarda: se sigue entregando lo que había (o una
+ *   instantánea vacía) y no se vuelve a la BD hasta pasada una espera que se
+ *   duplica con cada fallo seguido (ESPERA_FALLO_MS .. ESPERA_FALLO_MAX_MS).
+ * Las ventanas de mantenimiento siguen leyendo directamente de los DAOs.
+ */
+package dao;
+
+import model.Conductor;
+import model.Producto;
+import model.Ubigeo;
+import model.Vehiculo;
+import util.IndicePrefijos;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public final class CacheReferencias {
+
+    public enum Tipo { UBIGEO, PRODUCTO, VEHICULO, CONDUCTOR }
+
+    private static final long ESPERA_FALLO_MS = 1_000;
+    private static final long ESPERA_FALLO_MAX_MS = 60_000;
+
+    private static final Tabla<Ubigeo> UBIGEOS =
+            new Tabla<>("ubigeos", () -> new UbigeoDAO().leerTodos(), Ubigeo::getCodigo,
+                    u -> u.getDepartamento() + " " + u.getProvincia() + " " + u.getDistrito())
+                    .conDerivado("jerarquia", JerarquiaUbigeos::new);
+    private static final Tabla<Producto> PRODUCTOS =
+            new Tabla<>("productos", () -> new ProductoDAO().leerTodos(), Producto::getCodigoProducto,
+                    Producto::getNombreProducto);
+    private static final Tabla<Vehiculo> VEHICULOS =
+            new Tabla<>("vehículos", () -> new VehiculoDAO().leerTodos(), Vehiculo::getPlaca, null);
+    private static final Tabla<Conductor> CONDUCTORES =
+            new Tabla<>("conductores", () -> new ConductorDAO().leerTodos(), Conductor::getLicencia, null);
+
+    // Un único hilo de fondo: las recargas se encolan y nunca compiten entre sí por el pool
+    private static final ExecutorService FONDO = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cache-referencias");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private CacheReferencias() {}
+
+    /** Lanza la carga de todas las tablas en segundo plano (llamar tras iniciar sesión). */
+    public static void precargarEnSegundoPlano() {
+        for (Tipo t : Tipo.values()) FONDO.submit(() -> tabla(t).cargar());
+    }
+
+    /**
+     * Marca vencida la instantánea del tipo y, si ya había una, la vuelve a leer en segundo plano;
+     * hasta entonces se sigue entregando la anterior. Las invalidaciones seguidas (p.ej. una
+     * ráfaga de notificaciones) comparten una sola recarga.
+     */
+    public static void invalidar(Tipo tipo) {
+        tabla(tipo).invalidar();
+    }
+
+    public static List<Ubigeo> ubigeos() { return UBIGEOS.obtener().lista; }
+
+    public static Ubigeo ubigeo(String codigo) { return UBIGEOS.obtener().buscar(codigo); }
+
+    /** Índice por código y por departamento/provincia/distrito para las sugerencias. */
+    public static IndicePrefijos<Ubigeo> indiceUbigeos() { return UBIGEOS.indice(); }
+
+    /** Departamentos, provincias y distritos con búsqueda O(1) de los hijos de cada nivel. */
+    public static JerarquiaUbigeos jerarquiaUbigeos() {
+        return UBIGEOS.obtener().derivado("jerarquia", JerarquiaUbigeos::new);
+    }
+
+    public static List<Producto> productos() { return PRODUCTOS.obtener().lista; }
+
+    public static Producto producto(String codigo) { return PRODUCTOS.obtener().buscar(codigo); }
+
+    /** Índice por código y nombre de producto para las sugerencias. */
+    public static IndicePrefijos<Producto> indiceProductos() { return PRODUCTOS.indice(); }
+
+    public static List<Vehiculo> vehiculos() { return VEHICULOS.obtener().lista; }
+
+    public static Vehiculo vehiculo(String placa) { return VEHICULOS.obtener().buscar(placa); }
+
+    /** Placas en el orden de VehiculoDAO.listarTodos(). */
+    public static List<String> placas() { return VEHICULOS.obtener().claves; }
+
+    public static List<Conductor> conductores() { return CONDUCTORES.obtener().lista; }
+
+    public static Conductor conductor(String licencia) { return CONDUCTORES.obtener().buscar(licencia); }
+
+    /** Licencias ordenadas por nombre del conductor (mismo orden que ConductorDAO.listarLicencias()). */
+    public static List<String> licencias() { return CONDUCTORES.obtener().claves; }
+
+    private static Tabla<?> tabla(Tipo tipo) {
+        switch (tipo) {
+            case UBIGEO: return UBIGEOS;
+            case PRODUCTO: return PRODUCTOS;
+            case VEHICULO: return VEHICULOS;
+            default: return CONDUCTORES;
+        }
+    }
+
+    /** Lectura completa de una tabla; una excepción es un fallo (no una tabla vacía). */
+    @FunctionalInterface
+    private interface Cargador<T> {
+        List<T> cargar() throws SQLException;
+    }
+
+    /** Instantánea inmutable de una tabla: filas en orden, claves en el mismo orden y mapa por clave. */
+    private static final class Instantanea<T> {
+        final List<T> lista;
+        final List<String> claves;
+        final Map<String, T> porClave;
+        // Estructuras calculadas a partir de la lista (índice, jerarquía), una vez por instantánea
+        private final Map<String, Object> derivados = new ConcurrentHashMap<>();
+
+        Instantanea(List<T> filas, Function<T, String> clave) {
+            List<String> ks = new ArrayList<>(filas.size());
+            Map<String, T> mapa = new LinkedHashMap<>();
+            for (T f : filas) {
+                String k = clave.apply(f);
+                if (k == null) continue;
+                k = k.trim();
+                ks.add(k);
+                mapa.put(k, f);
+            }
+            this.lista = Collections.unmodifiableList(new ArrayList<>(filas));
+            this.claves = Collections.unmodifiableList(ks);
+            this.porClave = Collections.unmodifiableMap(mapa);
+        }
+
+        T buscar(String k) {
+            return k == null ? null : porClave.get(k.trim());
+        }
+
+        @SuppressWarnings("unchecked")
+        <D> D derivado(String nombre, Function<List<T>, D> construir) {
+            return (D) derivados.computeIfAbsent(nombre, k -> construir.apply(lista));
+        }
+    }
+
+    private static final class Tabla<T> {
+        private final String nombre;
+        private final Cargador<T> cargador;
+        private final Function<T, String> clave;
+        // Derivados que se arman antes de publicar cada instantánea (índice de sugerencias, jerarquía)
+        private final Map<String, Function<List<T>, ?>> derivadosPrevios = new LinkedHashMap<>();
+        // Última instantánea publicada; se sigue entregando aunque esté vencida
+        private volatile Instantanea<T> actual;
+        // Se incrementa en cada invalidación; `versionActual` es la que había al leer `actual`
+        private final AtomicLong version = new AtomicLong();
+        private volatile long versionActual = -1;
+        private final AtomicBoolean recargaPendiente = new AtomicBoolean(false);
+        // Fallos de lectura seguidos y hora del último, para la espera antes de reintentar
+        private volatile int fallos = 0;
+        private volatile long ultimoFallo = 0;
+
+        Tabla(String nombre, Cargador<T> cargador, Function<T, String> clave, Function<T, String> nombreIndice) {
+            this.nombre = nombre;
+            this.cargador = cargador;
+            this.clave = clave;
+            // Texto indexado para las sugerencias además de la clave; null = sin índice
+            if (nombreIndice != null) derivadosPrevios.put("indice", l -> new IndicePrefijos<>(l, clave, nombreIndice));
+        }
+
+        Tabla<T> conDerivado(String nombreDerivado, Function<List<T>, ?> construir) {
+            derivadosPrevios.put(nombreDerivado, construir);
+            return this;
+        }
+
+        IndicePrefijos<T> indice() {
+            return obtener().derivado("indice", derivadoPrevio("indice"));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <D> Function<List<T>, D> derivadoPrevio(String nombreDerivado) {
+            return (Function<List<T>, D>) derivadosPrevios.get(nombreDerivado);
+        }
+
+        /**
+         * Instantánea actual, aunque esté vencida (en ese caso se programa su recarga en segundo
+         * plano). Sólo si nunca se cargó se lee aquí, en el hilo que la pide.
+         */
+        Instantanea<T> obtener() {
+            Instantanea<T> s = actual;
+            if (s != null) {
+                if (versionActual != version.get()) programarRecarga();
+                return s;
+            }
+            synchronized (this) {
+                s = actual;
+                if (s != null) return s;
+                s = leer();
+                return s != null ? s : new Instantanea<>(Collections.emptyList(), clave);
+            }
+        }
+
+        /** Carga de fondo (precarga y recargas): lee y publica si falta o está vencida. */
+        void cargar() {
+            synchronized (this) {
+                if (actual == null || versionActual != version.get()) leer();
+            }
+        }
+
+        void invalidar() {
+            version.incrementAndGet();
+            if (actual != null) programarRecarga();
+        }
+
+        private void programarRecarga() {
+            if (enEspera() || !recargaPendiente.compareAndSet(false, true)) return;
+            FONDO.submit(() -> {
+                recargaPendiente.set(false);
+                cargar();
+            });
+        }
+
+        // Tras un fallo no se vuelve a la BD hasta pasada la espera
+        private boolean enEspera() {
+            if (fallos == 0) return false;
+            long espera = Math.min(ESPERA_FALLO_MAX_MS, ESPERA_FALLO_MS << Math.min(fallos - 1, 16));
+            return System.currentTimeMillis() - ultimoFallo < espera;
+        }
+
+        // Con el bloqueo tomado: lee, arma los derivados y publica; null si falló o está en espera
+        private Instantanea<T> leer() {
+            if (enEspera()) return null;
+            long v = version.get();
+            long t0 = System.nanoTime();
+            List<T> filas;
+            try {
+                filas = cargador.cargar();
+            } catch (SQLException e) {
+                fallos++;
+                ultimoFallo = System.currentTimeMillis();
+                System.err.println("CacheReferencias: no se pudieron leer los " + nombre + " (fallo " + fallos + "): " + e.getMessage());
+                return null;
+            }
+            fallos = 0;
+            Instantanea<T> s = new Instantanea<>(filas, clave);
+            for (Map.Entry<String, Function<List<T>, ?>> d : derivadosPrevios.entrySet()) s.derivado(d.getKey(), d.getValue());
+            // Se publica aunque haya llegado otra invalidación mientras se leía: es más nueva que la
+            // anterior, y con `v` atrasada la siguiente lectura programa otra recarga
+            actual = s;
+            versionActual = v;
+            System.out.println(String.format("CacheReferencias: %d %s cargados en %.1f ms",
+                    s.lista.size(), nombre, (System.nanoTime() - t0) / 1_000_000.0));
+            return s;
+        }
+    }
+}
@@ -5,6 +5,7 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.Conductor;
 
@@ -23,6 +24,7 @@ public class ConductorDAO {
             cs.setString(4, c.getTelefono());
             if (c.getFechaVencimiento() == null) cs.setNull(5, Types.DATE); else cs.setObject(5, c.getFechaVencimiento(), Types.DATE);
             cs.execute();
+            CacheReferencias.invalidar(CacheReferencias.Tipo.CONDUCTOR);
             return true;
         } catch (SQLException e) {
             System.err.println("Error insertar conductor: " + e.getMessage());
@@ -39,6 +41,7 @@ public class ConductorDAO {
             cs.setString(4, c.getTelefono());
             if (c.getFechaVencimiento() == null) cs.setNull(5, Types.DATE); else cs.setObject(5, c.getFechaVencimiento(), Types.DATE);
             cs.execute();
+            CacheReferencias.invalidar(CacheReferencias.Tipo.CONDUCTOR);
             return true;
         } catch (SQLException e) {
             System.err.println("Error actualizar conductor: " + e.getMessage());
@@ -51,6 +54,7 @@ public class ConductorDAO {
         try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
             cs.setString(1, licencia);
             cs.execute();
+            CacheReferencias.invalidar(CacheReferencias.Tipo.CONDUCTOR);
             return true;
         } catch (SQLException e) {
             System.err.println("Error eliminar conductor: " + e.getMessage());
@@ -59,14 +63,22 @@ public class ConductorDAO {
     }
 
     public List<Conductor> listarTodos() {
+        try {
+            return leerTodos();
+        } catch (SQLException e) {
+            System.err.println("Error listar conductores: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // Como listarTodos pero propaga el error: CacheReferencias distingue "sin filas" de "no se pudo leer"
+    List<Conductor> leerTodos() throws SQLException {
         List<Conductor> out = new ArrayList<>();
         String fnSql = "SELECT * FROM sp_listar_conductores()";
         String sqlFallback = "SELECT licencia, dni, nombre, telefono, fecha_vencimiento_licencia FROM conductor ORDER BY nombre";
         try (Connection cn = Conexion.getConnection()) {
-            try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
-                boolean hasLic = true;
-                try { rs.findColumn("licencia"); } catch (SQLException ex) { hasLic = false; }
-                if (hasLic) {
+            if (CatalogoBD.funcionDevuelve("sp_listar_conductores", "licencia")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
                         Conductor c = new Conductor(
                                 rs.getString("licencia"),
@@ -78,9 +90,10 @@ public class ConductorDAO {
                         out.add(c);
                     }
                     return out;
+                } catch (SQLException exFn) {
+                    // fallback
+                    out.clear();
                 }
-            } catch (SQLException exFn) {
-                // fallback
             }
 
             try (PreparedStatement ps2 = cn.prepareStatement(sqlFallback); ResultSet rs2 = ps2.executeQuery()) {
@@ -94,11 +107,7 @@ public class ConductorDAO {
                     );
                     out.add(c);
                 }
-            } catch (SQLException e) {
-                System.err.println("Error listar conductores (fallback): " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error obtener conexión listar conductores: " + e.getMessage());
         }
         return out;
     }
@@ -108,11 +117,13 @@ public class ConductorDAO {
         String fnSql = "SELECT * FROM sp_listar_conductores()";
         String sqlFallback = "SELECT licencia FROM conductor ORDER BY nombre";
         try (Connection cn = Conexion.getConnection()) {
-            try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) out.add(rs.getString("licencia"));
-                return out;
-            } catch (SQLException exFn) {
-                // fallback
+            if (CatalogoBD.funcionDevuelve("sp_listar_conductores", "licencia")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.add(rs.getString("licencia"));
+                    return out;
+                } catch (SQLException exFn) {
+                    // fallback
+                }
             }
 
             try (PreparedStatement ps2 = cn.prepareStatement(sqlFallback); ResultSet rs2 = ps2.executeQuery()) {
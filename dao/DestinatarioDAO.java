@@ -7,6 +7,7 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.Destinatario;
 
@@ -16,36 +17,46 @@ import java.util.List;
 
 public class DestinatarioDAO {
 
+    // Conjunto de trabajo de búsquedas por RUC (la tabla es demasiado grande para cachearla entera).
+    // TTL largo: los cambios de otros equipos llegan por EscuchaCambios
+    static final CacheEntidades<Destinatario> CACHE = new CacheEntidades<>("destinatarios", 2000, 3600);
+    // Índice de existencia: un RUC que el filtro descarta no se busca en la BD
+    static final FiltroRucs RUCS = new FiltroRucs("destinatario");
+
     // listar usando función/procedimiento que devuelve filas en Postgres:
     public List<Destinatario> listarTodos() {
         List<Destinatario> lista = new ArrayList<>();
         String fnSql = "SELECT * FROM sp_listar_destinatarios()"; // Postgres: función que devuelve SETOF
 
-        // Primero intentar la función almacenada (si existe)
-        try (Connection cn = Conexion.getConnection();
-             PreparedStatement ps = cn.prepareStatement(fnSql);
-             ResultSet rs = ps.executeQuery()) {
+        // Primero intentar la función almacenada (si existe según el catálogo)
+        if (CatalogoBD.funcionDevuelve("sp_listar_destinatarios", "ruc", "codigo_ubigeo", "gmail")) {
+            try (Connection cn = Conexion.getConnection();
+                 PreparedStatement ps = cn.prepareStatement(fnSql);
+                 ResultSet rs = ps.executeQuery()) {
 
-            while (rs.next()) {
-                Destinatario d = new Destinatario();
-                d.setRuc(rs.getString("ruc"));
-                d.setNombre(rs.getString("nombre"));
-                d.setNumeroTelefono(rs.getString("numero_telefono"));
-                d.setCalleDireccion(rs.getString("calle_direccion"));
-                d.setCodigoUbigeo(rs.getString("codigo_ubigeo"));
-                d.setGmail(rs.getString("gmail"));
-                lista.add(d);
-            }
+                while (rs.next()) {
+                    Destinatario d = new Destinatario();
+                    d.setRuc(rs.getString("ruc"));
+                    d.setNombre(rs.getString("nombre"));
+                    d.setNumeroTelefono(rs.getString("numero_telefono"));
+                    d.setCalleDireccion(rs.getString("calle_direccion"));
+                    d.setCodigoUbigeo(rs.getString("codigo_ubigeo"));
+                    d.setGmail(rs.getString("gmail"));
+                    lista.add(d);
+                }
 
-            return lista;
+                return lista;
 
-        } catch (SQLException e) {
-            // Si la función no existe o falla, caer en un SELECT directo como fallback
-            System.out.println("sp_listar_destinatarios() failed, intentando fallback SELECT: " + e.getMessage());
+            } catch (SQLException e) {
+                // Si la función no existe o falla, caer en un SELECT directo como fallback
+                System.out.println("sp_listar_destinatarios() failed, intentando fallback SELECT: " + e.getMessage());
+            }
         }
 
         // Fallback: leer directamente de la tabla destinatario (filtrar eliminados)
-        String sql = "SELECT ruc, nombre, numero_telefono, calle_direccion, codigo_ubigeo, gmail FROM destinatario WHERE eliminado = false ORDER BY nombre";
+        String sql = "SELECT ruc, nombre, numero_telefono, calle_direccion, codigo_ubigeo, gmail FROM destinatario "
+                + (CatalogoBD.hayColumna("destinatario", "eliminado") ? "WHERE eliminado = false " : "")
+                + "ORDER BY nombre";
         try (Connection cn2 = Conexion.getConnection();
              PreparedStatement ps2 = cn2.prepareStatement(sql);
              ResultSet rs2 = ps2.executeQuery()) {
@@ -82,6 +93,9 @@ public class DestinatarioDAO {
             cs.setString(6, d.getGmail());
 
             cs.execute();
+            CACHE.invalidar(d.getRuc());
+            RUCS.agregar(d.getRuc());
+            EscuchaCambios.publicarLocal("destinatario", 'I', d.getRuc());
             return true;
 
         } catch (SQLException e) {
@@ -99,7 +113,7 @@ public class DestinatarioDAO {
             // Validar ubigeo
             String codigoUbigeo = d.getCodigoUbigeo();
             if (codigoUbigeo != null && !codigoUbigeo.trim().isEmpty()) {
-                if (!ubigeoExiste(cn, codigoUbigeo)) {
+                if (CacheReferencias.ubigeo(codigoUbigeo) == null && !ubigeoExiste(cn, codigoUbigeo)) {
                     System.out.println("Error al actualizar destinatario: el codigo_ubigeo '" + codigoUbigeo + "' no existe en la tabla ubigeo.");
                     return false;
                 }
@@ -113,6 +127,8 @@ public class DestinatarioDAO {
             cs.setString(6, d.getGmail());
 
             cs.execute();
+            CACHE.invalidar(d.getRuc());
+            EscuchaCambios.publicarLocal("destinatario", 'U', d.getRuc());
             return true;
 
         } catch (SQLException e) {
@@ -121,8 +137,98 @@ public class DestinatarioDAO {
         }
     }
 
+    // Búsqueda por RUC (clave primaria): una fila en lugar de listar todos los destinatarios.
+    // Pasa por la caché; la entidad devuelta es compartida y no debe modificarse.
+    public Destinatario buscarPorRuc(String ruc) {
+        if (!RUCS.puedeExistir(ruc)) return null;
+        return CACHE.obtener(ruc, this::leerPorRuc);
+    }
+
+    /**
+     * Como buscarPorRuc pero sin descartar por el filtro de RUCs: para validaciones que
+     * rechazan una operación, donde un alta reciente de otro equipo no puede darse por inexistente.
+     */
+    public Destinatario buscarPorRucConfirmado(String ruc) {
+        if (ruc == null || ruc.trim().isEmpty()) return null;
+        return CACHE.obtener(ruc, this::leerPorRuc);
+    }
+
+    private Destinatario leerPorRuc(String ruc) {
+        String sql = "SELECT ruc, nombre, numero_telefono, calle_direccion, codigo_ubigeo, gmail FROM destinatario WHERE ruc = ?"
+                + (CatalogoBD.hayColumna("destinatario", "eliminado") ? " AND eliminado = false" : "");
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setString(1, ruc.trim());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    Destinatario d = new Destinatario();
+                    d.setRuc(rs.getString("ruc"));
+                    d.setNombre(rs.getString("nombre"));
+                    d.setNumeroTelefono(rs.getString("numero_telefono"));
+                    d.setCalleDireccion(rs.getString("calle_direccion"));
+                    d.setCodigoUbigeo(rs.getString("codigo_ubigeo"));
+                    d.setGmail(rs.getString("gmail"));
+                    return d;
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al buscar destinatario: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Búsqueda para sugerencias: destinatarios no eliminados cuyo RUC empieza por `texto` o cuyo
+     * nombre se le parece sin tener en cuenta acentos ni mayúsculas, los `limite` más parecidos
+     * primero (sp_buscar_destinatarios, sección 13 de schema.sql). Sin esa función busca con
+     * ILIKE, que distingue acentos. Los encontrados quedan en la caché por RUC.
+     */
+    public List<Destinatario> buscar(String texto, int limite) {
+        List<Destinatario> lista = new ArrayList<>();
+        if (!BusquedaTexto.buscable(texto)) return lista;
+        String limpio = BusquedaTexto.limpiar(texto);
+        String sql;
+        if (CatalogoBD.funcionDevuelve("sp_buscar_destinatarios", "ruc", "nombre", "similitud")) {
+            sql = "SELECT * FROM sp_buscar_destinatarios(?, ?)";
+        } else {
+            sql = "SELECT ruc, nombre, numero_telefono, calle_direccion, codigo_ubigeo, gmail FROM destinatario "
+                    + "WHERE (ruc LIKE ? OR nombre ILIKE ?)"
+                    + (CatalogoBD.hayColumna("destinatario", "eliminado") ? " AND NOT eliminado" : "")
+                    + " ORDER BY nombre LIMIT ?";
+        }
+        boolean esFuncion = sql.startsWith("SELECT * FROM sp_");
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            if (esFuncion) {
+                ps.setString(i++, limpio);
+            } else {
+                ps.setString(i++, BusquedaTexto.prefijo(limpio));
+                ps.setString(i++, BusquedaTexto.contiene(limpio));
+            }
+            ps.setInt(i, BusquedaTexto.acotar(limite));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Destinatario d = new Destinatario();
+                    d.setRuc(rs.getString("ruc"));
+                    d.setNombre(rs.getString("nombre"));
+                    d.setNumeroTelefono(rs.getString("numero_telefono"));
+                    d.setCalleDireccion(rs.getString("calle_direccion"));
+                    d.setCodigoUbigeo(rs.getString("codigo_ubigeo"));
+                    d.setGmail(rs.getString("gmail"));
+                    lista.add(d);
+                    CACHE.poner(d.getRuc(), d);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al buscar destinatarios: " + e.getMessage());
+        }
+        return lista;
+    }
+
+    // Se responde con el conjunto exacto de ubigeos en memoria (CacheReferencias); la BD sólo se
+    // consulta si el código no está, por si se dio de alta después de cargar la caché
     public boolean ubigeoExiste(String codigoUbigeo) {
         if (codigoUbigeo == null || codigoUbigeo.trim().isEmpty()) return false;
+        if (CacheReferencias.ubigeo(codigoUbigeo) != null) return true;
         try (Connection cn = Conexion.getConnection()) {
             return ubigeoExiste(cn, codigoUbigeo);
         } catch (SQLException e) {
@@ -142,24 +248,33 @@ public class DestinatarioDAO {
     }
 
     public boolean eliminar(String ruc) {
-        // Intentar procedimiento almacenado primero; si no existe o falla, realizar soft-delete
+        // Procedimiento almacenado si existe; si no (o si falla), soft-delete directo
         String call = "CALL sp_eliminar_destinatario(?)";
         String sql = "UPDATE destinatario SET eliminado = true WHERE ruc = ?";
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, ruc);
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("sp_eliminar_destinatario failed: " + e.getMessage());
-            // fallback a soft-delete
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(sql)) {
-                ps.setString(1, ruc);
-                return ps.executeUpdate() > 0;
-            } catch (SQLException ex2) {
-                System.err.println("Fallback soft-delete destinatario failed: " + ex2.getMessage());
-                return false;
+        if (CatalogoBD.hayProcedimiento("sp_eliminar_destinatario")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, ruc);
+                cs.execute();
+                CACHE.invalidar(ruc);
+                EscuchaCambios.publicarLocal("destinatario", 'D', ruc);
+                return true;
+            } catch (SQLException e) {
+                System.err.println("sp_eliminar_destinatario failed: " + e.getMessage());
             }
         }
+        // fallback a soft-delete
+        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(sql)) {
+            ps.setString(1, ruc);
+            boolean cambiado = ps.executeUpdate() > 0;
+            if (cambiado) {
+                CACHE.invalidar(ruc);
+                EscuchaCambios.publicarLocal("destinatario", 'D', ruc);
+            }
+            return cambiado;
+        } catch (SQLException ex2) {
+            System.err.println("Fallback soft-delete destinatario failed: " + ex2.getMessage());
+            return false;
+        }
     }
 
     // Recuperar destinatario eliminado
@@ -168,7 +283,12 @@ public class DestinatarioDAO {
         try (Connection cn = Conexion.getConnection();
              PreparedStatement ps = cn.prepareStatement(sql)) {
             ps.setString(1, ruc);
-            return ps.executeUpdate() > 0;
+            boolean cambiado = ps.executeUpdate() > 0;
+            if (cambiado) {
+                CACHE.invalidar(ruc);
+                EscuchaCambios.publicarLocal("destinatario", 'U', ruc);
+            }
+            return cambiado;
         } catch (SQLException e) {
             System.out.println("Error al recuperar destinatario: " + e.getMessage());
             return false;
@@ -1,5 +1,6 @@
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.DetalleOrden;
 
@@ -32,16 +33,21 @@ public class DetalleOrdenDAO {
 
     public List<DetalleOrden> listarPorOrden(String codigoOrden) {
         List<DetalleOrden> lista = new ArrayList<>();
-        // Intentar usar la función/ reporte sp_reporte_detalle_orden(p_codigo_orden)
-        String fnSql = "SELECT * FROM sp_reporte_detalle_orden(?)";
-        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(fnSql)) {
+        // La función/reporte sp_reporte_detalle_orden(p_codigo_orden) si existe y devuelve lo esperado;
+        // si no, directo a la tabla (el camino se elige con el catálogo, sin provocar el error)
+        boolean usarFuncion = CatalogoBD.funcionDevuelve("sp_reporte_detalle_orden", "codigo_producto", "cantidad", "precio_unitario", "subtotal");
+        String sql = usarFuncion
+                ? "SELECT * FROM sp_reporte_detalle_orden(?)"
+                : "SELECT numero_item, codigo_orden, codigo_producto, cantidad, precio_unitario, subtotal FROM detalle_orden WHERE codigo_orden = ? ORDER BY numero_item";
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
             ps.setString(1, codigoOrden);
             try (ResultSet rs = ps.executeQuery()) {
                 int item = 1;
                 while (rs.next()) {
                     DetalleOrden d = new DetalleOrden();
                     // La función devuelve: codigo_orden, codigo_producto, nombre_producto, cantidad, precio_unitario, subtotal
-                    d.setNumeroItem(item++);
+                    // (sin numero_item: se numeran en el orden devuelto)
+                    d.setNumeroItem(usarFuncion ? item++ : rs.getInt("numero_item"));
                     d.setCodigoOrden(rs.getString("codigo_orden"));
                     d.setCodigoProducto(rs.getString("codigo_producto"));
                     d.setCantidad(rs.getBigDecimal("cantidad"));
@@ -50,27 +56,8 @@ public class DetalleOrdenDAO {
                     lista.add(d);
                 }
             }
-            return lista;
         } catch (SQLException e) {
-            // fallback: consulta directa sobre detalle_orden (mantener compatibilidad)
-            String sql = "SELECT numero_item, codigo_orden, codigo_producto, cantidad, precio_unitario, subtotal FROM detalle_orden WHERE codigo_orden = ? ORDER BY numero_item";
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps2 = cn2.prepareStatement(sql)) {
-                ps2.setString(1, codigoOrden);
-                try (ResultSet rs2 = ps2.executeQuery()) {
-                    while (rs2.next()) {
-                        DetalleOrden d = new DetalleOrden();
-                        d.setNumeroItem(rs2.getInt("numero_item"));
-                        d.setCodigoOrden(rs2.getString("codigo_orden"));
-                        d.setCodigoProducto(rs2.getString("codigo_producto"));
-                        d.setCantidad(rs2.getBigDecimal("cantidad"));
-                        d.setPrecioUnitario(rs2.getBigDecimal("precio_unitario"));
-                        d.setSubtotal(rs2.getBigDecimal("subtotal"));
-                        lista.add(d);
-                    }
-                }
-            } catch (SQLException ex2) {
-                System.err.println("Error listar detalle orden (fallback): " + ex2.getMessage());
-            }
+            System.err.println("Error listar detalle orden: " + e.getMessage());
         }
         return lista;
     }
@@ -85,51 +72,132 @@ public class DetalleOrdenDAO {
         model.addColumn("Subtotal");
 
         java.util.List<DetalleOrden> list = listarPorOrden(codigoOrden);
-        dao.ProductoDAO prodDao = new dao.ProductoDAO();
+        // Nombres de todos los productos de la orden en una sola consulta (evita una por línea)
+        java.util.List<String> codigos = new ArrayList<>();
+        for (DetalleOrden d : list) codigos.add(d.getCodigoProducto());
+        java.util.Map<String, model.Producto> productos = new dao.ProductoDAO().buscarPorCodigos(codigos);
         for (DetalleOrden d : list) {
             String codigoProd = d.getCodigoProducto();
             String nombre = codigoProd;
-            try {
-                model.Producto prod = prodDao.buscarPorCodigo(codigoProd);
-                if (prod != null && prod.getNombreProducto() != null) nombre = prod.getNombreProducto();
-            } catch (Exception ex) {
-                // ignore, usar codigo como nombre
-            }
+            model.Producto prod = codigoProd == null ? null : productos.get(codigoProd.trim());
+            if (prod != null && prod.getNombreProducto() != null) nombre = prod.getNombreProducto();
             model.addRow(new Object[]{codigoProd, nombre, d.getCantidad(), d.getPrecioUnitario(), d.getSubtotal()});
         }
         return model;
     }
 
-    public boolean eliminarPorOrden(String codigoOrden) {
-        String call = "CALL sp_eliminar_detalle_orden(?)";
-        String fnSelect = "SELECT sp_eliminar_detalle_orden(?)";
-        String sql = "DELETE FROM detalle_orden WHERE codigo_orden = ?";
-        // 1) intentar CALL
-        try (java.sql.Connection cn = Conexion.getConnection(); java.sql.CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, codigoOrden);
-            cs.execute();
-            return true;
-        } catch (java.sql.SQLException e) {
-            System.err.println("sp_eliminar_detalle_orden CALL failed: " + e.getMessage());
-            // 2) intentar como función SELECT sp_eliminar_detalle_orden(?)
-            try (java.sql.Connection cn2 = Conexion.getConnection(); java.sql.PreparedStatement psFn = cn2.prepareStatement(fnSelect)) {
-                psFn.setString(1, codigoOrden);
-                psFn.execute();
-                // Si la función existe y se ejecuta, consideramos éxito
+    /**
+     * Guarda todas las líneas de una orden de forma atómica. Compara contra las líneas
+     * almacenadas (emparejando por producto) y envía sólo los INSERT/UPDATE/DELETE
+     * necesarios, en batch y dentro de una única transacción. El subtotal lo calculan
+     * los triggers de detalle_orden. Devuelve false (sin cambios en la BD) si algo falla.
+     */
+    public boolean guardarDetalles(String codigoOrden, List<DetalleOrden> lineas) {
+        String sel = "SELECT numero_item, codigo_producto, cantidad, precio_unitario FROM detalle_orden " +
+                     "WHERE codigo_orden = ? ORDER BY numero_item FOR UPDATE";
+        String ins = "INSERT INTO detalle_orden (codigo_orden, codigo_producto, cantidad, precio_unitario) VALUES (?, ?, ?, ?)";
+        String upd = "UPDATE detalle_orden SET cantidad = ?, precio_unitario = ? WHERE numero_item = ?";
+        String del = "DELETE FROM detalle_orden WHERE numero_item = ?";
+
+        try (Connection cn = Conexion.getConnection()) {
+            cn.setAutoCommit(false);
+            try {
+                // 1) Líneas actuales agrupadas por producto (bloqueadas hasta el commit)
+                java.util.Map<String, java.util.ArrayDeque<DetalleOrden>> actuales = new java.util.HashMap<>();
+                try (PreparedStatement ps = cn.prepareStatement(sel)) {
+                    ps.setString(1, codigoOrden);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            DetalleOrden d = new DetalleOrden(codigoOrden, rs.getString("codigo_producto"),
+                                    rs.getBigDecimal("cantidad"), rs.getBigDecimal("precio_unitario"));
+                            d.setNumeroItem(rs.getInt("numero_item"));
+                            actuales.computeIfAbsent(d.getCodigoProducto(), k -> new java.util.ArrayDeque<>()).add(d);
+                        }
+                    }
+                }
+
+                // 2) Diferencia: mismas líneas se ignoran, cambios -> UPDATE, nuevas -> INSERT, sobrantes -> DELETE
+                int nIns = 0, nUpd = 0, nDel = 0;
+                try (PreparedStatement psIns = cn.prepareStatement(ins);
+                     PreparedStatement psUpd = cn.prepareStatement(upd);
+                     PreparedStatement psDel = cn.prepareStatement(del)) {
+                    for (DetalleOrden d : lineas) {
+                        java.util.ArrayDeque<DetalleOrden> cola = actuales.get(d.getCodigoProducto());
+                        DetalleOrden previa = cola == null ? null : cola.poll();
+                        if (previa == null) {
+                            psIns.setString(1, codigoOrden);
+                            psIns.setString(2, d.getCodigoProducto());
+                            psIns.setBigDecimal(3, d.getCantidad());
+                            psIns.setBigDecimal(4, d.getPrecioUnitario());
+                            psIns.addBatch();
+                            nIns++;
+                        } else if (distinto(previa.getCantidad(), d.getCantidad())
+                                || distinto(previa.getPrecioUnitario(), d.getPrecioUnitario())) {
+                            psUpd.setBigDecimal(1, d.getCantidad());
+                            psUpd.setBigDecimal(2, d.getPrecioUnitario());
+                            psUpd.setInt(3, previa.getNumeroItem());
+                            psUpd.addBatch();
+                            nUpd++;
+                        }
+                    }
+                    for (java.util.ArrayDeque<DetalleOrden> cola : actuales.values()) {
+                        for (DetalleOrden sobrante : cola) {
+                            psDel.setInt(1, sobrante.getNumeroItem());
+                            psDel.addBatch();
+                            nDel++;
+                        }
+                    }
+                    if (nDel > 0) psDel.executeBatch();
+                    if (nUpd > 0) psUpd.executeBatch();
+                    if (nIns > 0) psIns.executeBatch();
+                }
+                cn.commit();
+                System.out.println(String.format("Detalle orden %s guardado: %d nuevas, %d modificadas, %d eliminadas",
+                        codigoOrden, nIns, nUpd, nDel));
                 return true;
-            } catch (java.sql.SQLException exFn) {
-                System.err.println("sp_eliminar_detalle_orden SELECT failed: " + exFn.getMessage());
+            } catch (SQLException e) {
+                cn.rollback();
+                System.err.println("Error guardar detalles de orden (rollback): " + e.getMessage());
+                return false;
+            } finally {
+                cn.setAutoCommit(true);
             }
+        } catch (SQLException e) {
+            System.err.println("Error obtener conexión guardar detalles: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Compara valores NUMERIC ignorando la escala (10 vs 10.00)
+    private static boolean distinto(java.math.BigDecimal a, java.math.BigDecimal b) {
+        if (a == null || b == null) return a != b;
+        return a.compareTo(b) != 0;
+    }
 
-            // 3) fallback directo: DELETE
-            try (java.sql.Connection cn3 = Conexion.getConnection(); java.sql.PreparedStatement ps = cn3.prepareStatement(sql)) {
+    public boolean eliminarPorOrden(String codigoOrden) {
+        String sql = "DELETE FROM detalle_orden WHERE codigo_orden = ?";
+        // 1) procedimiento o función, el que exista en el esquema (sp_eliminar_detalle_por_orden en schema.sql)
+        for (String sp : new String[]{"sp_eliminar_detalle_por_orden", "sp_eliminar_detalle_orden"}) {
+            String stmt = CatalogoBD.hayProcedimiento(sp) ? "CALL " + sp + "(?)"
+                        : CatalogoBD.hayFuncion(sp) ? "SELECT " + sp + "(?)" : null;
+            if (stmt == null) continue;
+            try (java.sql.Connection cn = Conexion.getConnection(); java.sql.PreparedStatement ps = cn.prepareStatement(stmt)) {
                 ps.setString(1, codigoOrden);
-                ps.executeUpdate();
+                ps.execute();
                 return true;
-            } catch (java.sql.SQLException ex2) {
-                System.err.println("Fallback DELETE detalle_orden failed: " + ex2.getMessage());
-                return false;
+            } catch (java.sql.SQLException e) {
+                System.err.println(sp + " failed: " + e.getMessage());
             }
         }
+
+        // 2) fallback directo: DELETE
+        try (java.sql.Connection cn3 = Conexion.getConnection(); java.sql.PreparedStatement ps = cn3.prepareStatement(sql)) {
+            ps.setString(1, codigoOrden);
+            ps.executeUpdate();
+            return true;
+        } catch (java.sql.SQLException ex2) {
+            System.err.println("Fallback DELETE detalle_orden failed: " + ex2.getMessage());
+            return false;
+        }
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * EscuchaCambios.java
+ * Coherencia de las cachés entre varias instancias de la aplicación.
+ * Los triggers de la sección 11 de schema.sql publican en el canal
+ * `cambios_datos` un evento "<tabla>|<I|U|D>|<clave>" por cada fila modificada.
+ * Un hilo dedicado mantiene una conexión propia (fuera del pool) con LISTEN y,
+ * por cada evento:
+ * - destinatario/remitente: invalida la entrada del RUC en la caché de
+ *   entidades y, en altas, lo agrega al filtro de existencia;
+ * - producto/ubigeo/vehiculo/conductor: invalida la tabla en CacheReferencias
+ *   (que la recarga en segundo plano);
+ * - cualquier tabla: avisa a los suscriptores (p.ej. pantallas con listados).
+ * Los DAOs publican además sus propias escrituras con publicarLocal(), para que
+ * las pantallas de esta instancia se actualicen aunque no haya conexión LISTEN.
+ * Si la conexión se pierde se reintenta con espera creciente; al recuperarla
+ * se invalida todo, porque los eventos de ese intervalo no se recibieron.
+ */
+package dao;
+
+import db.Conexion;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public final class EscuchaCambios {
+
+    public static final String CANAL = "cambios_datos";
+    /** Tabla comodín: el suscriptor recibe los eventos de todas las tablas. */
+    public static final String TODAS = "*";
+
+    // Sin eventos durante este tiempo se comprueba que la conexión siga viva
+    private static final int ESPERA_MS = 30_000;
+    private static final long REINTENTO_MAX_MS = 60_000;
+
+    /** Evento de cambio de una fila. `operacion` = 'I', 'U', 'D' o 'R' (resincronizar: se perdieron eventos). */
+    public static final class Cambio {
+        public final String tabla;
+        public final char operacion;
+        public final String clave;
+
+        Cambio(String tabla, char operacion, String clave) {
+            this.tabla = tabla;
+            this.operacion = operacion;
+            this.clave = clave;
+        }
+
+        @Override
+        public String toString() { return tabla + "|" + operacion + "|" + clave; }
+    }
+
+    private static final Map<String, List<Consumer<Cambio>>> SUSCRIPTORES = new ConcurrentHashMap<>();
+    private static Thread hilo;
+    private static volatile boolean conectado = false;
+    // Momento en que se abrió la conexión LISTEN actual (0 = sin conexión)
+    private static volatile long escuchandoDesde = 0;
+
+    private EscuchaCambios() {}
+
+    /** Arranca el hilo de escucha (una sola vez por proceso). */
+    public static synchronized void iniciar() {
+        if (hilo != null) return;
+        hilo = new Thread(EscuchaCambios::bucle, "escucha-cambios-bd");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /** ¿Hay una conexión LISTEN activa? Si no, las cachés sólo dependen de su TTL. */
+    public static boolean conectado() { return conectado; }
+
+    /**
+     * Hora (currentTimeMillis) desde la que la conexión LISTEN actual recibe notificaciones;
+     * 0 si no hay conexión. Lo leído de la BD antes de esa hora pudo perder cambios.
+     */
+    public static long escuchandoDesde() { return escuchandoDesde; }
+
+    /**
+     * Registra un oyente para los cambios de `tabla` (o TODAS). Se invoca en el hilo
+     * de escucha: las pantallas deben pasar al EDT con SwingUtilities.invokeLater.
+     */
+    public static void suscribir(String tabla, Consumer<Cambio> oyente) {
+        SUSCRIPTORES.computeIfAbsent(tabla, k -> new CopyOnWriteArrayList<>()).add(oyente);
+    }
+
+    public static void desuscribir(String tabla, Consumer<Cambio> oyente) {
+        List<Consumer<Cambio>> l = SUSCRIPTORES.get(tabla);
+        if (l != null) l.remove(oyente);
+    }
+
+    /**
+     * Publica un cambio hecho por esta instancia (llamar tras una escritura confirmada).
+     * Se procesa en el hilo que llama, igual que si hubiera llegado por notificación;
+     * si además llega la notificación de la BD, los suscriptores la reciben dos veces.
+     * Con operacion 'R' (cambios masivos) la clave se ignora y los listados se recargan.
+     */
+    public static void publicarLocal(String tabla, char operacion, String clave) {
+        if (tabla == null) return;
+        if (operacion == 'R') {
+            procesar(new Cambio(tabla, 'R', null));
+            return;
+        }
+        if (clave == null || clave.trim().isEmpty()) return;
+        procesar(new Cambio(tabla, operacion, clave.trim()));
+    }
+
+    private static void bucle() {
+        long espera = 1000;
+        boolean primera = true;
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection cn = Conexion.abrirDedicada(); Statement st = cn.createStatement()) {
+                if (!cn.isWrapperFor(PGConnection.class)) {
+                    System.err.println("EscuchaCambios: la conexión no es PostgreSQL; no hay notificaciones");
+                    return;
+                }
+                PGConnection pg = cn.unwrap(PGConnection.class);
+                st.execute("LISTEN " + CANAL);
+                escuchandoDesde = System.currentTimeMillis();
+                conectado = true;
+                espera = 1000;
+                System.out.println("EscuchaCambios: escuchando el canal " + CANAL);
+                if (!primera) resincronizar();
+                primera = false;
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] ns = pg.getNotifications(ESPERA_MS);
+                    if (ns == null || ns.length == 0) {
+                        st.execute("SELECT 1");
+                        continue;
+                    }
+                    for (PGNotification n : ns) despachar(n.getParameter());
+                }
+            } catch (SQLException e) {
+                System.err.println("EscuchaCambios: conexión perdida (" + e.getMessage() + "), reintento en " + espera + " ms");
+            } finally {
+                conectado = false;
+                escuchandoDesde = 0;
+            }
+            try {
+                Thread.sleep(espera);
+            } catch (InterruptedException ie) {
+                return;
+            }
+            espera = Math.min(espera * 2, REINTENTO_MAX_MS);
+        }
+    }
+
+    // Formato: tabla|op|clave (la clave puede contener '|', por eso el límite 3)
+    private static void despachar(String payload) {
+        if (payload == null) return;
+        String[] p = payload.split("\\|", 3);
+        if (p.length < 3 || p[1].isEmpty()) return;
+        procesar(new Cambio(p[0], p[1].charAt(0), p[2].trim()));
+    }
+
+    private static void procesar(Cambio c) {
+        aplicar(c);
+        avisar(c.tabla, c);
+        avisar(TODAS, c);
+    }
+
+    private static void aplicar(Cambio c) {
+        switch (c.tabla) {
+            case "destinatario":
+                DestinatarioDAO.CACHE.invalidar(c.clave);
+                if (c.operacion == 'I') DestinatarioDAO.RUCS.agregar(c.clave);
+                break;
+            case "remitente":
+                RemitenteDAO.CACHE.invalidar(c.clave);
+                if (c.operacion == 'I') RemitenteDAO.RUCS.agregar(c.clave);
+                break;
+            case "producto":
+                CacheReferencias.invalidar(CacheReferencias.Tipo.PRODUCTO);
+                break;
+            case "ubigeo":
+                CacheReferencias.invalidar(CacheReferencias.Tipo.UBIGEO);
+                break;
+            case "vehiculo":
+                CacheReferencias.invalidar(CacheReferencias.Tipo.VEHICULO);
+                break;
+            case "conductor":
+                CacheReferencias.invalidar(CacheReferencias.Tipo.CONDUCTOR);
+                break;
+            default:
+                // cabecera_guia / traslado: sin caché propia, sólo se avisa a los suscriptores
+        }
+    }
+
+    // Tras una desconexión no se sabe qué cambió: se descarta todo y se avisa a todos
+    private static void resincronizar() {
+        DestinatarioDAO.CACHE.invalidarTodo();
+        RemitenteDAO.CACHE.invalidarTodo();
+        DestinatarioDAO.RUCS.reconstruirEnSegundoPlano();
+        RemitenteDAO.RUCS.reconstruirEnSegundoPlano();
+        for (CacheReferencias.Tipo t : CacheReferencias.Tipo.values()) CacheReferencias.invalidar(t);
+        for (String tabla : SUSCRIPTORES.keySet()) {
+            Cambio c = new Cambio(tabla, 'R', null);
+            avisar(tabla, c);
+        }
+    }
+
+    private static void avisar(String tabla, Cambio c) {
+        List<Consumer<Cambio>> l = SUSCRIPTORES.get(tabla);
+        if (l == null) return;
+        for (Consumer<Cambio> o : l) {
+            try {
+                o.accept(c);
+            } catch (RuntimeException ex) {
+                System.err.println("EscuchaCambios: error en suscriptor de " + tabla + ": " + ex.getMessage());
+            }
+        }
+    }
+}
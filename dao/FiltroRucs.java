@@ -0,0 +1,201 @@
+/*
+ * FiltroRucs.java
+ * Índice de existencia en memoria para los RUC de una tabla (remitente,
+ * destinatario): un filtro de Bloom con ~1% de falsos positivos.
+ * - "Puede estar" obliga a confirmar en la BD (o en la caché de entidades).
+ * - "No está" sólo se da cuando el filtro está al día: se leyó después de
+ *   abrirse la conexión LISTEN actual de EscuchaCambios, así que cada alta de
+ *   otro equipo posterior a la lectura llegó (o está llegando) por notificación.
+ *   Sin LISTEN, o con un filtro leído antes de la última reconexión, un RUC
+ *   dado de alta desde otro equipo faltaría hasta la siguiente reconstrucción:
+ *   en esos casos se responde "puede estar" y se confirma en la BD.
+ * - Aun al día, la notificación de un alta de hace milisegundos puede no haber
+ *   llegado: las validaciones que rechazan una operación (p.ej. la emisión de
+ *   guías) no deben fiarse de la negativa y confirman en la BD
+ *   (buscarPorRucConfirmado de los DAOs).
+ * - Mientras el filtro no está construido (o la carga falló) responde siempre
+ *   "puede estar", para que los DAOs conserven su comportamiento anterior.
+ * Los insertar de los DAOs añaden el RUC; los borrados no se pueden quitar de
+ * un Bloom y sólo generan falsos positivos que la BD descarta. El filtro se
+ * reconstruye en segundo plano cuando envejece (EDAD_MAXIMA_MS, más largo si
+ * EscuchaCambios está conectado), tras cada reconexión o cuando recibió más
+ * altas de las previstas.
+ */
+package dao;
+
+import db.Conexion;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class FiltroRucs {
+
+    private static final double FALSOS_POSITIVOS = 0.01;
+    private static final long EDAD_MAXIMA_MS = 5 * 60_000L;
+    // Con EscuchaCambios conectado las altas de otros equipos llegan por notificación
+    private static final long EDAD_MAXIMA_ESCUCHANDO_MS = 60 * 60_000L;
+
+    // Un solo hilo para todas las reconstrucciones: no compiten entre sí por el pool
+    private static final ExecutorService FONDO = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "filtro-rucs");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String nombre;
+    private final String sqlRucs;
+    private final AtomicBoolean reconstruyendo = new AtomicBoolean(false);
+    // Altas registradas mientras se reconstruye: la lectura pudo empezar antes de su commit
+    private final java.util.Queue<String> altasDuranteCarga = new java.util.concurrent.ConcurrentLinkedQueue<>();
+    private volatile Bloom actual;
+
+    /** `tabla` debe tener la columna `ruc`. */
+    public FiltroRucs(String tabla) {
+        this.nombre = tabla;
+        this.sqlRucs = "SELECT ruc FROM " + tabla;
+    }
+
+    /**
+     * false = el RUC no existe (filtro al día con las notificaciones); true = puede
+     * existir (confirmar en la BD). Si el filtro no está listo, está viejo o es
+     * anterior a la conexión LISTEN actual, programa su reconstrucción.
+     */
+    public boolean puedeExistir(String ruc) {
+        if (ruc == null || ruc.trim().isEmpty()) return false;
+        Bloom b = actual;
+        if (b == null || b.vencido()) reconstruirEnSegundoPlano();
+        if (b == null || b.contiene(ruc.trim())) return true;
+        if (b.alDia()) return false;
+        // Una negativa de un filtro que pudo perder altas de otros equipos no vale: a la BD
+        if (b.leidoEn < EscuchaCambios.escuchandoDesde()) reconstruirEnSegundoPlano();
+        return true;
+    }
+
+    /** Registra un RUC recién insertado. */
+    public void agregar(String ruc) {
+        if (ruc == null || ruc.trim().isEmpty()) return;
+        if (reconstruyendo.get()) altasDuranteCarga.add(ruc.trim());
+        Bloom b = actual;
+        if (b == null) return;
+        b.agregar(ruc.trim());
+        if (b.saturado()) reconstruirEnSegundoPlano();
+    }
+
+    /** Lanza (si no hay otra en curso) la lectura de todos los RUC y sustituye el filtro. */
+    public void reconstruirEnSegundoPlano() {
+        if (!reconstruyendo.compareAndSet(false, true)) return;
+        FONDO.submit(() -> {
+            try {
+                altasDuranteCarga.clear();
+                Bloom nuevo = cargar();
+                if (nuevo != null) {
+                    actual = nuevo;
+                    for (String r : altasDuranteCarga) nuevo.agregar(r);
+                }
+            } finally {
+                reconstruyendo.set(false);
+            }
+        });
+    }
+
+    private Bloom cargar() {
+        long t0 = System.nanoTime();
+        // Se toma antes de leer: un alta confirmada después no está en la lectura y depende de las notificaciones
+        long leidoEn = System.currentTimeMillis();
+        java.util.List<String> rucs = new java.util.ArrayList<>();
+        try (Connection cn = Conexion.getConnection()) {
+            boolean auto = cn.getAutoCommit();
+            // Sin autocommit pgjdbc lee por bloques (fetch size) en lugar de traer toda la tabla de golpe
+            cn.setAutoCommit(false);
+            try (PreparedStatement ps = cn.prepareStatement(sqlRucs)) {
+                ps.setFetchSize(5000);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String r = rs.getString(1);
+                        if (r != null) rucs.add(r.trim());
+                    }
+                }
+                cn.commit();
+            } finally {
+                cn.setAutoCommit(auto);
+            }
+        } catch (SQLException e) {
+            System.err.println("FiltroRucs(" + nombre + "): no se pudo construir: " + e.getMessage());
+            return null;
+        }
+        // Margen para las altas posteriores antes de considerarlo saturado
+        Bloom b = new Bloom(Math.max(1000, rucs.size() * 2), leidoEn);
+        for (String r : rucs) b.agregar(r);
+        System.out.println(String.format("FiltroRucs(%s): %d RUC indexados en %.1f ms (%d KB)",
+                nombre, rucs.size(), (System.nanoTime() - t0) / 1_000_000.0, b.bytes() / 1024));
+        return b;
+    }
+
+    /** Filtro de Bloom sobre un long[]; k posiciones por doble hash (FNV-1a de 64 bits partido en dos). */
+    private static final class Bloom {
+        private final long[] bits;
+        private final int numBits;
+        private final int numHashes;
+        private final int capacidad;
+        private final long leidoEn;
+        private int elementos = 0;
+
+        Bloom(int capacidad, long leidoEn) {
+            this.capacidad = capacidad;
+            this.leidoEn = leidoEn;
+            double m = -capacidad * Math.log(FALSOS_POSITIVOS) / (Math.log(2) * Math.log(2));
+            this.numBits = (int) Math.max(64, Math.ceil(m));
+            this.numHashes = Math.max(1, (int) Math.round(m / capacidad * Math.log(2)));
+            this.bits = new long[(numBits + 63) / 64];
+        }
+
+        synchronized void agregar(String s) {
+            long h = fnv(s);
+            int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                int pos = Math.floorMod(h1 + i * h2, numBits);
+                bits[pos >>> 6] |= 1L << pos;
+            }
+            elementos++;
+        }
+
+        synchronized boolean contiene(String s) {
+            long h = fnv(s);
+            int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                int pos = Math.floorMod(h1 + i * h2, numBits);
+                if ((bits[pos >>> 6] & (1L << pos)) == 0) return false;
+            }
+            return true;
+        }
+
+        synchronized boolean saturado() { return elementos > capacidad; }
+
+        boolean vencido() {
+            long max = EscuchaCambios.conectado() ? EDAD_MAXIMA_ESCUCHANDO_MS : EDAD_MAXIMA_MS;
+            return System.currentTimeMillis() - leidoEn > max;
+        }
+
+        // Leído con la conexión LISTEN actual ya abierta: no se perdió ninguna notificación de alta
+        boolean alDia() {
+            long desde = EscuchaCambios.escuchandoDesde();
+            return desde > 0 && leidoEn >= desde;
+        }
+
+        int bytes() { return bits.length * 8; }
+
+        private static long fnv(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return h;
+        }
+    }
+}
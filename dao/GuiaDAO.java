@@ -7,18 +7,31 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.CabeceraGuia;
+import model.DetalleBien;
 import model.DetalleGuia;
+import model.Traslado;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
 import java.time.LocalDate;
 import java.time.LocalTime;
 
 public class GuiaDAO {
 
+    // Emisión completa en una sola sentencia (ver sección 8 de schema.sql)
+    private static final String SQL_EMITIR_TX = "SELECT * FROM sp_emitir_guia_tx(" +
+            "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +   // cabecera + cuerpo
+            "?, ?, ?, " +                                    // detalle_bienes (arreglos)
+            "?, ?, ?, ?, ?, ?, ?)";                          // traslado opcional
+
     public List<CabeceraGuia> listarTodas() {
         List<CabeceraGuia> lista = new ArrayList<>();
         String fnSql = "SELECT * FROM sp_listar_guias()";
@@ -26,97 +39,32 @@ public class GuiaDAO {
         String sqlWithEliminado = "SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
                 "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
                 "fecha_emision, hora_emision, estado_guia " +
-                "FROM cabecera_guia WHERE coalesce(eliminado,false) = false";
+                "FROM cabecera_guia WHERE NOT eliminado ORDER BY fecha_emision DESC, codigo_guia DESC";
         String sqlFallback = "SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
                 "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
                 "fecha_emision, hora_emision, estado_guia " +
                 "FROM cabecera_guia";
 
         try (Connection cn = Conexion.getConnection()) {
-            // Intentar función primero
-            try (PreparedStatement ps = cn.prepareStatement(fnSql);
-                 ResultSet rs = ps.executeQuery()) {
-                // Comprobar si la función devuelve las columnas que necesitamos (ruc_remitente, hora_emision)
-                boolean hasRucRem = true;
-                boolean hasHora = true;
-                try { rs.findColumn("ruc_remitente"); } catch (SQLException ex) { hasRucRem = false; }
-                try { rs.findColumn("hora_emision"); } catch (SQLException ex) { hasHora = false; }
-
-                if (hasRucRem && hasHora) {
-                    while (rs.next()) {
-                        CabeceraGuia g = new CabeceraGuia();
-                        g.setCodigoGuia(rs.getString("codigo_guia"));
-                        g.setSerie(rs.getString("serie"));
-                        g.setNumero(rs.getString("numero"));
-                        g.setCodOrden(rs.getString("cod_orden"));
-                        g.setRucRemitente(rs.getString("ruc_remitente"));
-                        g.setRucDestinatario(rs.getString("ruc_destinatario"));
-                        g.setDirPartida(rs.getString("dir_partida"));
-                        g.setDirLlegada(rs.getString("dir_llegada"));
-                        g.setUbigeoOrigen(rs.getString("ubigeo_origen"));
-                        g.setUbigeoDestino(rs.getString("ubigeo_destino"));
-                        g.setPesoTotal(rs.getObject("peso_total") == null ? 0.0 : rs.getDouble("peso_total"));
-                        g.setNumeroBultos(rs.getObject("numero_bultos") == null ? 0 : rs.getInt("numero_bultos"));
-                        g.setFechaEmision(rs.getDate("fecha_emision"));
-                        g.setHoraEmision(rs.getTime("hora_emision"));
-                        g.setEstadoGuia(rs.getString("estado_guia"));
-                        lista.add(g);
-                    }
+            // Usar la función sólo si el catálogo indica que devuelve las columnas que necesitamos
+            if (CatalogoBD.funcionDevuelve("sp_listar_guias", "ruc_remitente", "hora_emision")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql);
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) lista.add(mapearCabecera(rs));
                     return lista;
+                } catch (SQLException exFn) {
+                    // ignorar y usar fallback
+                    lista.clear();
                 }
-                // Si la función no tiene las columnas necesarias, caerá al fallback abajo
-            } catch (SQLException exFn) {
-                // ignorar y usar fallback
             }
 
-            // Fallback: intentar SELECT con columna eliminado
-            try (PreparedStatement ps2 = cn.prepareStatement(sqlWithEliminado);
+            // Fallback: SELECT directo, filtrando eliminados si la columna existe
+            String sql = CatalogoBD.hayColumna("cabecera_guia", "eliminado") ? sqlWithEliminado : sqlFallback;
+            try (PreparedStatement ps2 = cn.prepareStatement(sql);
                  ResultSet rs2 = ps2.executeQuery()) {
-                while (rs2.next()) {
-                    CabeceraGuia g = new CabeceraGuia();
-                    g.setCodigoGuia(rs2.getString("codigo_guia"));
-                    g.setSerie(rs2.getString("serie"));
-                    g.setNumero(rs2.getString("numero"));
-                    g.setCodOrden(rs2.getString("cod_orden"));
-                    g.setRucRemitente(rs2.getString("ruc_remitente"));
-                    g.setRucDestinatario(rs2.getString("ruc_destinatario"));
-                    g.setDirPartida(rs2.getString("dir_partida"));
-                    g.setDirLlegada(rs2.getString("dir_llegada"));
-                    g.setUbigeoOrigen(rs2.getString("ubigeo_origen"));
-                    g.setUbigeoDestino(rs2.getString("ubigeo_destino"));
-                    g.setPesoTotal(rs2.getObject("peso_total") == null ? 0.0 : rs2.getDouble("peso_total"));
-                    g.setNumeroBultos(rs2.getObject("numero_bultos") == null ? 0 : rs2.getInt("numero_bultos"));
-                    g.setFechaEmision(rs2.getDate("fecha_emision"));
-                    g.setHoraEmision(rs2.getTime("hora_emision"));
-                    g.setEstadoGuia(rs2.getString("estado_guia"));
-                    lista.add(g);
-                }
+                while (rs2.next()) lista.add(mapearCabecera(rs2));
             } catch (SQLException ex2) {
-                // último recurso: intentar fallback sin filtro eliminado
-                try (PreparedStatement ps3 = cn.prepareStatement(sqlFallback);
-                     ResultSet rs3 = ps3.executeQuery()) {
-                    while (rs3.next()) {
-                        CabeceraGuia g = new CabeceraGuia();
-                        g.setCodigoGuia(rs3.getString("codigo_guia"));
-                        g.setSerie(rs3.getString("serie"));
-                        g.setNumero(rs3.getString("numero"));
-                        g.setCodOrden(rs3.getString("cod_orden"));
-                        g.setRucRemitente(rs3.getString("ruc_remitente"));
-                        g.setRucDestinatario(rs3.getString("ruc_destinatario"));
-                        g.setDirPartida(rs3.getString("dir_partida"));
-                        g.setDirLlegada(rs3.getString("dir_llegada"));
-                        g.setUbigeoOrigen(rs3.getString("ubigeo_origen"));
-                        g.setUbigeoDestino(rs3.getString("ubigeo_destino"));
-                        g.setPesoTotal(rs3.getObject("peso_total") == null ? 0.0 : rs3.getDouble("peso_total"));
-                        g.setNumeroBultos(rs3.getObject("numero_bultos") == null ? 0 : rs3.getInt("numero_bultos"));
-                        g.setFechaEmision(rs3.getDate("fecha_emision"));
-                        g.setHoraEmision(rs3.getTime("hora_emision"));
-                        g.setEstadoGuia(rs3.getString("estado_guia"));
-                        lista.add(g);
-                    }
-                } catch (SQLException ex3) {
-                    System.out.println("Error al listar guias (fallback final): " + ex3.getMessage());
-                }
+                System.out.println("Error al listar guias (fallback final): " + ex2.getMessage());
             }
         } catch (SQLException e) {
             System.out.println("Error al obtener conexión para listar guias: " + e.getMessage());
@@ -124,32 +72,175 @@ public class GuiaDAO {
         return lista;
     }
 
+    /**
+     * Paginación keyset (seek) del listado de guías, ordenado por fecha_emision DESC, codigo_guia DESC.
+     * Devuelve hasta `limite` guías posteriores a la clave (despuesDeFecha, despuesDeCodigo), que debe
+     * ser la de la última fila de la página anterior; ambas null = primera página.
+     * Usa el índice parcial idx_cabecera_vigentes_fecha_codigo, así que el coste no crece con el
+     * número de página (el filtro de eliminadas debe ser NOT eliminado, el predicado del índice).
+     */
+    public List<CabeceraGuia> listarPagina(java.sql.Date despuesDeFecha, String despuesDeCodigo, int limite) {
+        List<CabeceraGuia> lista = new ArrayList<>();
+        boolean primera = despuesDeFecha == null || despuesDeCodigo == null;
+        String sql;
+        if (CatalogoBD.funcionDevuelve("sp_listar_guias_pagina", "ruc_remitente", "hora_emision")) {
+            sql = "SELECT * FROM sp_listar_guias_pagina(?, ?, ?)";
+        } else {
+            sql = "SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
+                  "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
+                  "fecha_emision, hora_emision, estado_guia FROM cabecera_guia WHERE " +
+                  (primera ? "true" : "(fecha_emision, codigo_guia) < (?, ?)") +
+                  (CatalogoBD.hayColumna("cabecera_guia", "eliminado") ? " AND NOT eliminado" : "") +
+                  " ORDER BY fecha_emision DESC, codigo_guia DESC LIMIT ?";
+        }
+        boolean esFuncion = sql.startsWith("SELECT * FROM sp_");
+
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            if (esFuncion) {
+                ps.setDate(i++, primera ? null : despuesDeFecha);
+                ps.setString(i++, primera ? null : despuesDeCodigo);
+            } else if (!primera) {
+                ps.setDate(i++, despuesDeFecha);
+                ps.setString(i++, despuesDeCodigo);
+            }
+            ps.setInt(i, Math.max(1, limite));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) lista.add(mapearCabecera(rs));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al listar página de guías: " + e.getMessage());
+        }
+        return lista;
+    }
+
+    /**
+     * Búsqueda de guías por criterios combinados; los parámetros null o vacíos no filtran.
+     * Fechas inclusivas sobre fecha_emision. Cada criterio tiene índice (ver sección 10 de schema.sql)
+     * y el resultado se limita a `limite` filas, en el mismo orden que listarPagina y con su misma
+     * paginación keyset: (despuesDeFecha, despuesDeCodigo) es la clave de la última fila de la
+     * página anterior; ambas null = primera página. Lo usa el filtro de GuiaWindow.
+     */
+    public List<CabeceraGuia> buscar(String estado, java.sql.Date desde, java.sql.Date hasta,
+                                     String rucDestinatario, String rucRemitente,
+                                     java.sql.Date despuesDeFecha, String despuesDeCodigo, int limite) {
+        List<CabeceraGuia> lista = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(
+                "SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
+                "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
+                "fecha_emision, hora_emision, estado_guia FROM cabecera_guia WHERE true");
+        List<Object> params = new ArrayList<>();
+        if (!vacio(estado)) { sql.append(" AND estado_guia = ?"); params.add(estado.trim()); }
+        if (desde != null) { sql.append(" AND fecha_emision >= ?"); params.add(desde); }
+        if (hasta != null) { sql.append(" AND fecha_emision <= ?"); params.add(hasta); }
+        if (!vacio(rucDestinatario)) { sql.append(" AND ruc_destinatario = ?"); params.add(rucDestinatario.trim()); }
+        if (!vacio(rucRemitente)) { sql.append(" AND ruc_remitente = ?"); params.add(rucRemitente.trim()); }
+        if (despuesDeFecha != null && despuesDeCodigo != null) {
+            sql.append(" AND (fecha_emision, codigo_guia) < (?, ?)");
+            params.add(despuesDeFecha);
+            params.add(despuesDeCodigo);
+        }
+        if (CatalogoBD.hayColumna("cabecera_guia", "eliminado")) sql.append(" AND NOT eliminado");
+        sql.append(" ORDER BY fecha_emision DESC, codigo_guia DESC LIMIT ?");
+        params.add(Math.max(1, limite));
+
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) lista.add(mapearCabecera(rs));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al buscar guías: " + e.getMessage());
+        }
+        return lista;
+    }
+
     public boolean actualizarEstadoGuia(String codigoGuia, String nuevoEstado) {
         String call = "CALL sp_actualizar_estado_guia(?, ?)";
         String sql = "UPDATE cabecera_guia SET estado_guia = ? WHERE codigo_guia = ?";
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, codigoGuia);
-            cs.setString(2, nuevoEstado);
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("sp_actualizar_estado_guia failed: " + e.getMessage());
-            // fallback to direct UPDATE
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(sql)) {
-                ps.setString(1, nuevoEstado);
-                ps.setString(2, codigoGuia);
-                return ps.executeUpdate() > 0;
-            } catch (SQLException ex2) {
-                System.err.println("Fallback UPDATE estado_guia failed: " + ex2.getMessage());
-                return false;
+        if (CatalogoBD.hayProcedimiento("sp_actualizar_estado_guia")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, codigoGuia);
+                cs.setString(2, nuevoEstado);
+                cs.execute();
+                EscuchaCambios.publicarLocal("cabecera_guia", 'U', codigoGuia);
+                return true;
+            } catch (SQLException e) {
+                System.err.println("sp_actualizar_estado_guia failed: " + e.getMessage());
             }
         }
+        // fallback to direct UPDATE
+        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(sql)) {
+            ps.setString(1, nuevoEstado);
+            ps.setString(2, codigoGuia);
+            boolean cambiado = ps.executeUpdate() > 0;
+            if (cambiado) EscuchaCambios.publicarLocal("cabecera_guia", 'U', codigoGuia);
+            return cambiado;
+        } catch (SQLException ex2) {
+            System.err.println("Fallback UPDATE estado_guia failed: " + ex2.getMessage());
+            return false;
+        }
     }
 
     /**
-     * Emite la guía: intenta llamar a la función sp_emitir_guia (SELECT),
-     * si no existe intenta CALL (procedimiento) y si sigue fallando hace un INSERT mínimo
-     * directo en cabecera_guia como fallback.
+     * Emite la guía completa (cabecera, cuerpo, detalle de bienes y traslado opcional)
+     * en un único round trip y una única transacción mediante sp_emitir_guia_tx.
+     * Devuelve la cabecera tal como quedó persistida, o null si la emisión falló.
+     * `bienes` null conserva el detalle existente; `traslado` null no registra traslado.
+     * Si la función no existe en la BD, emite por pasos (sin detalle) y relee la cabecera.
+     */
+    public CabeceraGuia emitirGuiaCompleta(CabeceraGuia g, String motivo, String modalidad,
+                                           List<DetalleBien> bienes, Traslado traslado) {
+        if (CatalogoBD.hayFuncion("sp_emitir_guia_tx")) {
+            try (Connection cn = Conexion.getConnection();
+                 PreparedStatement ps = cn.prepareStatement(SQL_EMITIR_TX)) {
+                setParametrosEmision(ps, g.getCodigoGuia(), g.getSerie(), g.getNumero(), g.getCodOrden(),
+                        g.getRucRemitente(), g.getRucDestinatario(), g.getDirPartida(), g.getDirLlegada(),
+                        g.getUbigeoOrigen(), g.getUbigeoDestino(), motivo, modalidad,
+                        g.getPesoTotal() == null ? 0.0 : g.getPesoTotal(),
+                        g.getNumeroBultos() == null ? 0 : g.getNumeroBultos());
+                setParametrosBienes(cn, ps, 15, bienes);
+                setParametrosTraslado(ps, 18, traslado);
+                try (ResultSet rs = ps.executeQuery()) {
+                    CabeceraGuia emitida = rs.next() ? mapearCabecera(rs) : null;
+                    if (emitida != null) {
+                        EscuchaCambios.publicarLocal("cabecera_guia", 'I', emitida.getCodigoGuia());
+                        if (traslado != null) EscuchaCambios.publicarLocal("traslado", 'I', traslado.getCodigoTraslado());
+                    }
+                    return emitida;
+                }
+            } catch (SQLException e) {
+                // 42883 = undefined_function: catálogo desactualizado, emitir por pasos
+                if (!"42883".equals(e.getSQLState())) {
+                    System.out.println("Error al emitir guía (sp_emitir_guia_tx): " + e.getMessage());
+                    return null;
+                }
+                System.out.println("sp_emitir_guia_tx no disponible, emitiendo por pasos: " + e.getMessage());
+            }
+        }
+
+        boolean ok = emitirGuiaPorPasos(g.getCodigoGuia(), g.getSerie(), g.getNumero(), g.getCodOrden(),
+                g.getRucRemitente(), g.getRucDestinatario(), g.getDirPartida(), g.getDirLlegada(),
+                g.getUbigeoOrigen(), g.getUbigeoDestino(), motivo, modalidad,
+                g.getPesoTotal() == null ? 0.0 : g.getPesoTotal(),
+                g.getNumeroBultos() == null ? 0 : g.getNumeroBultos());
+        if (!ok) return null;
+        if (bienes != null && !bienes.isEmpty()) {
+            System.out.println("Aviso: esquema sin sp_emitir_guia_tx, el detalle de bienes no se registró");
+        }
+        if (traslado != null) {
+            traslado.setCodigoGuia(g.getCodigoGuia());
+            if (!new TrasladoDAO().registrarTraslado(traslado)) {
+                System.out.println("Aviso: la guía se emitió pero el traslado no pudo registrarse");
+            }
+        }
+        EscuchaCambios.publicarLocal("cabecera_guia", 'I', g.getCodigoGuia());
+        return obtenerPorCodigo(g.getCodigoGuia());
+    }
+
+    /**
+     * Emite la guía (sólo cabecera y cuerpo). Delegado de emitirGuiaCompleta; se conserva
+     * la firma original para los formularios existentes.
      */
     public boolean emitirGuia(String codigoGuia,
                               String serie,
@@ -165,132 +256,593 @@ public class GuiaDAO {
                               String modalidad,
                               double pesoTotal,
                               int numeroBultos) {
+        CabeceraGuia g = new CabeceraGuia(codigoGuia, serie, numero, codOrden, rucRemitente, rucDestinatario,
+                dirPartida, dirLlegada, ubigeoOrigen, ubigeoDestino, pesoTotal, numeroBultos, null, null, null);
+        return emitirGuiaCompleta(g, motivo, modalidad, null, null) != null;
+    }
 
-        // 1) Intento función (SELECT)
-        String fnSql = "SELECT sp_emitir_guia(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection cn = Conexion.getConnection();
-             PreparedStatement ps = cn.prepareStatement(fnSql)) {
+    /**
+     * Emisión por pasos (esquemas sin sp_emitir_guia_tx): usa la función sp_emitir_guia (SELECT) o el procedimiento (CALL)
+     * según lo que exista en la BD (ver CatalogoBD); si no hay ninguno, o el CALL falla,
+     * hace un INSERT mínimo directo en cabecera_guia como fallback.
+     */
+    private boolean emitirGuiaPorPasos(String codigoGuia,
+                                       String serie,
+                                       String numero,
+                                       String codOrden,
+                                       String rucRemitente,
+                                       String rucDestinatario,
+                                       String dirPartida,
+                                       String dirLlegada,
+                                       String ubigeoOrigen,
+                                       String ubigeoDestino,
+                                       String motivo,
+                                       String modalidad,
+                                       double pesoTotal,
+                                       int numeroBultos) {
 
-            ps.setString(1, codigoGuia);
-            ps.setString(2, serie);
-            ps.setString(3, numero);
-            if (codOrden == null) ps.setNull(4, Types.VARCHAR); else ps.setString(4, codOrden);
-            ps.setString(5, rucRemitente);
-            ps.setString(6, rucDestinatario);
-            ps.setString(7, dirPartida);
-            ps.setString(8, dirLlegada);
-            ps.setString(9, ubigeoOrigen);
-            ps.setString(10, ubigeoDestino);
-            ps.setString(11, motivo);
-            ps.setString(12, modalidad);
-            ps.setObject(13, pesoTotal);
-            ps.setObject(14, numeroBultos);
-
-            ps.execute();
-            return true;
-        } catch (SQLException ex1) {
-            String msg = ex1.getMessage() == null ? "" : ex1.getMessage().toLowerCase();
-            // Si función no existe, intento CALL (procedimiento)
-            if (msg.contains("no existe la función") || msg.contains("no existe el procedimiento") || msg.contains("does not exist") || msg.contains("no existe")) {
-                // 2) Intento CALL (procedure)
-                String callSql = "{ call sp_emitir_guia(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) }";
-                try (Connection cn2 = Conexion.getConnection();
-                     CallableStatement cs = cn2.prepareCall(callSql)) {
-
-                    cs.setString(1, codigoGuia);
-                    cs.setString(2, serie);
-                    cs.setString(3, numero);
-                    if (codOrden == null) cs.setNull(4, Types.VARCHAR); else cs.setString(4, codOrden);
-                    cs.setString(5, rucRemitente);
-                    cs.setString(6, rucDestinatario);
-                    cs.setString(7, dirPartida);
-                    cs.setString(8, dirLlegada);
-                    cs.setString(9, ubigeoOrigen);
-                    cs.setString(10, ubigeoDestino);
-                    cs.setString(11, motivo);
-                    cs.setString(12, modalidad);
-                    cs.setObject(13, pesoTotal);
-                    cs.setObject(14, numeroBultos);
-
-                    cs.execute();
-                    return true;
-                } catch (SQLException ex2) {
-                    // 3) Fallback: insertar mínimo en cabecera_guia (campos básicos y campos de traslado)
-                    try (Connection cn3 = Conexion.getConnection()) {
-                        // Asegurar que tenemos un ruc_remitente válido que exista en la tabla remitente.
-                        String remitenteUse = (rucRemitente == null ? "" : rucRemitente.trim());
-                        if (remitenteUse.isEmpty()) {
-                            // intentar obtener cualquier remitente existente
-                            String sel = "SELECT ruc FROM remitente LIMIT 1";
-                            try (PreparedStatement psSel = cn3.prepareStatement(sel);
-                                 ResultSet rsSel = psSel.executeQuery()) {
-                                if (rsSel.next()) remitenteUse = rsSel.getString("ruc");
-                            } catch (SQLException selEx) {
-                                // ignorar
-                            }
-                        }
+        // 1) Función (SELECT)
+        if (CatalogoBD.hayFuncion("sp_emitir_guia")) {
+            String fnSql = "SELECT sp_emitir_guia(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            try (Connection cn = Conexion.getConnection();
+                 PreparedStatement ps = cn.prepareStatement(fnSql)) {
+                setParametrosEmision(ps, codigoGuia, serie, numero, codOrden, rucRemitente, rucDestinatario,
+                        dirPartida, dirLlegada, ubigeoOrigen, ubigeoDestino, motivo, modalidad, pesoTotal, numeroBultos);
+                ps.execute();
+                return true;
+            } catch (SQLException ex1) {
+                String msg = ex1.getMessage() == null ? "" : ex1.getMessage().toLowerCase();
+                // Sólo seguimos con el CALL si la firma no coincide (función inexistente con esos tipos)
+                if (!(msg.contains("no existe") || msg.contains("does not exist"))) {
+                    System.out.println("Error al emitir guía (SELECT): " + ex1.getMessage());
+                    return false;
+                }
+            }
+        }
 
-                        if (remitenteUse == null || remitenteUse.isEmpty()) {
-                            // Insertar un remitente por defecto (si ya existe, ON CONFLICT no fallará)
-                            remitenteUse = "00000000000";
-                            String insRem = "INSERT INTO remitente (ruc, nombre) VALUES (?, ?) ON CONFLICT (ruc) DO NOTHING";
-                            try (PreparedStatement psInsRem = cn3.prepareStatement(insRem)) {
-                                psInsRem.setString(1, remitenteUse);
-                                psInsRem.setString(2, "Remitente por defecto");
-                                psInsRem.executeUpdate();
-                            } catch (SQLException insRemEx) {
-                                // reintentar obtener uno existente
-                                try (PreparedStatement psSel2 = cn3.prepareStatement("SELECT ruc FROM remitente LIMIT 1");
-                                     ResultSet rs2 = psSel2.executeQuery()) {
-                                    if (rs2.next()) remitenteUse = rs2.getString("ruc");
-                                } catch (SQLException ignore) { /* continuará y puede fallar más abajo */ }
-                            }
-                        }
+        // 2) Procedimiento (CALL)
+        if (CatalogoBD.hayProcedimiento("sp_emitir_guia")) {
+            String callSql = "{ call sp_emitir_guia(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) }";
+            try (Connection cn2 = Conexion.getConnection();
+                 CallableStatement cs = cn2.prepareCall(callSql)) {
+                setParametrosEmision(cs, codigoGuia, serie, numero, codOrden, rucRemitente, rucDestinatario,
+                        dirPartida, dirLlegada, ubigeoOrigen, ubigeoDestino, motivo, modalidad, pesoTotal, numeroBultos);
+                cs.execute();
+                return true;
+            } catch (SQLException ex2) {
+                System.out.println("sp_emitir_guia (CALL) falló, usando INSERT directo: " + ex2.getMessage());
+            }
+        }
+
+        // 3) Fallback: insertar mínimo en cabecera_guia (campos básicos y campos de traslado)
+        return emitirGuiaDirecto(codigoGuia, serie, numero, codOrden, rucRemitente, rucDestinatario,
+                dirPartida, dirLlegada, ubigeoOrigen, ubigeoDestino, pesoTotal, numeroBultos);
+    }
+
+    private void setParametrosEmision(PreparedStatement ps, String codigoGuia, String serie, String numero, String codOrden,
+                                      String rucRemitente, String rucDestinatario, String dirPartida, String dirLlegada,
+                                      String ubigeoOrigen, String ubigeoDestino, String motivo, String modalidad,
+                                      double pesoTotal, int numeroBultos) throws SQLException {
+        ps.setString(1, codigoGuia);
+        ps.setString(2, serie);
+        ps.setString(3, numero);
+        if (codOrden == null) ps.setNull(4, Types.VARCHAR); else ps.setString(4, codOrden);
+        ps.setString(5, rucRemitente);
+        ps.setString(6, rucDestinatario);
+        ps.setString(7, dirPartida);
+        ps.setString(8, dirLlegada);
+        ps.setString(9, ubigeoOrigen);
+        ps.setString(10, ubigeoDestino);
+        ps.setString(11, motivo);
+        ps.setString(12, modalidad);
+        // NUMERIC explícito: un float8 no resuelve la firma NUMERIC de la función/procedimiento
+        ps.setBigDecimal(13, java.math.BigDecimal.valueOf(pesoTotal));
+        ps.setObject(14, numeroBultos);
+    }
+
+    // Parámetros de detalle_bienes como tres arreglos paralelos (NULL = no tocar el detalle)
+    private void setParametrosBienes(Connection cn, PreparedStatement ps, int desde, List<DetalleBien> bienes) throws SQLException {
+        if (bienes == null) {
+            ps.setNull(desde, Types.ARRAY);
+            ps.setNull(desde + 1, Types.ARRAY);
+            ps.setNull(desde + 2, Types.ARRAY);
+            return;
+        }
+        String[] codigos = new String[bienes.size()];
+        java.math.BigDecimal[] cantidades = new java.math.BigDecimal[bienes.size()];
+        java.math.BigDecimal[] pesos = new java.math.BigDecimal[bienes.size()];
+        for (int i = 0; i < bienes.size(); i++) {
+            DetalleBien b = bienes.get(i);
+            codigos[i] = b.getCodigoBien();
+            cantidades[i] = b.getCantidad();
+            pesos[i] = b.getPesoTotal();
+        }
+        ps.setArray(desde, cn.createArrayOf("varchar", codigos));
+        ps.setArray(desde + 1, cn.createArrayOf("numeric", cantidades));
+        ps.setArray(desde + 2, cn.createArrayOf("numeric", pesos));
+    }
+
+    private void setParametrosTraslado(PreparedStatement ps, int desde, Traslado t) throws SQLException {
+        ps.setString(desde, t == null ? null : t.getCodigoTraslado());
+        ps.setString(desde + 1, t == null ? null : t.getPlaca());
+        ps.setString(desde + 2, t == null ? null : t.getLicencia());
+        ps.setTimestamp(desde + 3, t == null ? null : t.getFechaInicio());
+        ps.setTimestamp(desde + 4, t == null ? null : t.getFechaFin());
+        ps.setString(desde + 5, t == null ? null : t.getEstadoTraslado());
+        ps.setString(desde + 6, t == null ? null : t.getObservaciones());
+    }
+
+    // INSERT/UPSERT directo en cabecera_guia asegurando un remitente válido (FK)
+    private boolean emitirGuiaDirecto(String codigoGuia, String serie, String numero, String codOrden,
+                                      String rucRemitente, String rucDestinatario, String dirPartida, String dirLlegada,
+                                      String ubigeoOrigen, String ubigeoDestino, double pesoTotal, int numeroBultos) {
+        try (Connection cn3 = Conexion.getConnection()) {
+            // Asegurar que tenemos un ruc_remitente válido que exista en la tabla remitente.
+            String remitenteUse = (rucRemitente == null ? "" : rucRemitente.trim());
+            if (remitenteUse.isEmpty()) {
+                // intentar obtener cualquier remitente existente
+                String sel = "SELECT ruc FROM remitente LIMIT 1";
+                try (PreparedStatement psSel = cn3.prepareStatement(sel);
+                     ResultSet rsSel = psSel.executeQuery()) {
+                    if (rsSel.next()) remitenteUse = rsSel.getString("ruc");
+                } catch (SQLException selEx) {
+                    // ignorar
+                }
+            }
+
+            if (remitenteUse == null || remitenteUse.isEmpty()) {
+                // Insertar un remitente por defecto (si ya existe, ON CONFLICT no fallará)
+                remitenteUse = "00000000000";
+                String insRem = "INSERT INTO remitente (ruc, nombre) VALUES (?, ?) ON CONFLICT (ruc) DO NOTHING";
+                try (PreparedStatement psInsRem = cn3.prepareStatement(insRem)) {
+                    psInsRem.setString(1, remitenteUse);
+                    psInsRem.setString(2, "Remitente por defecto");
+                    psInsRem.executeUpdate();
+                    RemitenteDAO.RUCS.agregar(remitenteUse);
+                } catch (SQLException insRemEx) {
+                    // reintentar obtener uno existente
+                    try (PreparedStatement psSel2 = cn3.prepareStatement("SELECT ruc FROM remitente LIMIT 1");
+                         ResultSet rs2 = psSel2.executeQuery()) {
+                        if (rs2.next()) remitenteUse = rs2.getString("ruc");
+                    } catch (SQLException ignore) { /* continuará y puede fallar más abajo */ }
+                }
+            }
+
+            // Ahora insertamos la cabecera usando remitenteUse (garantizar FK)
+            // Incluimos ruc_destinatario, direcciones, ubigeos, peso_total y numero_bultos.
+            // cabecera_guia está particionada (su PK incluye fecha_emision) y no admite
+            // ON CONFLICT (codigo_guia): se actualiza la guía si existe y si no se inserta
+            String cols = "codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
+                          "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
+                          "fecha_emision, hora_emision, estado_guia";
+            // Tipos explícitos: en un VALUES los parámetros sin tipo (fecha/hora del driver) quedarían como text
+            String ins = "WITH v (" + cols + ") AS (VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
+                         "?::double precision, ?::integer, ?::date, ?::time, ?)), " +
+                         "upd AS (UPDATE cabecera_guia g SET " +
+                         "serie = v.serie, numero = v.numero, cod_orden = v.cod_orden, " +
+                         "ruc_remitente = v.ruc_remitente, ruc_destinatario = v.ruc_destinatario, " +
+                         "dir_partida = v.dir_partida, dir_llegada = v.dir_llegada, " +
+                         "ubigeo_origen = v.ubigeo_origen, ubigeo_destino = v.ubigeo_destino, " +
+                         "peso_total = v.peso_total, numero_bultos = v.numero_bultos, " +
+                         "fecha_emision = v.fecha_emision, hora_emision = v.hora_emision, " +
+                         "estado_guia = v.estado_guia " +
+                         "FROM v WHERE g.codigo_guia = v.codigo_guia RETURNING 1) " +
+                         "INSERT INTO cabecera_guia (" + cols + ") " +
+                         "SELECT * FROM v WHERE NOT EXISTS (SELECT 1 FROM upd)";
+            try (PreparedStatement psIns = cn3.prepareStatement(ins)) {
+                psIns.setString(1, codigoGuia);
+                psIns.setString(2, serie);
+                psIns.setString(3, numero);
+                if (codOrden == null) psIns.setNull(4, Types.VARCHAR); else psIns.setString(4, codOrden);
+                psIns.setString(5, remitenteUse);
+                psIns.setString(6, (rucDestinatario == null ? "" : rucDestinatario));
+                psIns.setString(7, dirPartida == null ? "" : dirPartida);
+                psIns.setString(8, dirLlegada == null ? "" : dirLlegada);
+                psIns.setString(9, ubigeoOrigen == null ? "" : ubigeoOrigen);
+                psIns.setString(10, ubigeoDestino == null ? "" : ubigeoDestino);
+                psIns.setObject(11, pesoTotal);
+                psIns.setObject(12, numeroBultos);
+                psIns.setDate(13, java.sql.Date.valueOf(LocalDate.now()));
+                psIns.setTime(14, java.sql.Time.valueOf(LocalTime.now()));
+                psIns.setString(15, "emitida");
+                psIns.executeUpdate();
+                return true;
+            }
+        } catch (SQLException ex3) {
+            System.out.println("Error fallback emitirGuia (insert): " + ex3.getMessage());
+            return false;
+        }
+    }
+
+    // ---- Emisión masiva (cierre de mes: cientos de guías a partir de órdenes pendientes) ----
+
+    /** Tamaño de lote por defecto para emitirGuiasLote (guías por commit). */
+    public static final int TAMANO_LOTE_DEFECTO = 100;
+
+    /**
+     * Con más guías emitidas que esto, emitirGuiasLote avisa a los listados una sola recarga
+     * completa en lugar de una notificación por guía.
+     */
+    public static final int UMBRAL_RECARGA_LISTADOS = 100;
+
+    /**
+     * Una guía a emitir en lote: cabecera/cuerpo más datos del cuerpo y detalle opcional.
+     * Si la cabecera no trae número (sólo serie), emitirGuiasLote le asigna el siguiente de su
+     * serie al emitirla, con código "SERIE-00000001".
+     */
+    public static final class SolicitudGuia {
+        public final CabeceraGuia cabecera;
+        public final String motivo;
+        public final String modalidad;
+        public final List<DetalleBien> bienes;
+
+        public SolicitudGuia(CabeceraGuia cabecera, String motivo, String modalidad, List<DetalleBien> bienes) {
+            this.cabecera = cabecera;
+            this.motivo = motivo;
+            this.modalidad = modalidad;
+            this.bienes = bienes;
+        }
+    }
+
+    /** Resultado de una guía dentro del lote. */
+    public static final class ResultadoGuia {
+        public final String codigoGuia;
+        public final boolean ok;
+        public final String error;
 
-                        // Ahora insertamos la cabecera usando remitenteUse (garantizar FK)
-                        // Incluimos ruc_destinatario, direcciones, ubigeos, peso_total y numero_bultos
-                        String ins = "INSERT INTO cabecera_guia (" +
-                                     "codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
-                                     "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
-                                     "fecha_emision, hora_emision, estado_guia" +
-                                     ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                                     "ON CONFLICT (codigo_guia) DO UPDATE SET " +
-                                     "serie = EXCLUDED.serie, numero = EXCLUDED.numero, cod_orden = EXCLUDED.cod_orden, " +
-                                     "ruc_remitente = EXCLUDED.ruc_remitente, ruc_destinatario = EXCLUDED.ruc_destinatario, " +
-                                     "dir_partida = EXCLUDED.dir_partida, dir_llegada = EXCLUDED.dir_llegada, " +
-                                     "ubigeo_origen = EXCLUDED.ubigeo_origen, ubigeo_destino = EXCLUDED.ubigeo_destino, " +
-                                     "peso_total = EXCLUDED.peso_total, numero_bultos = EXCLUDED.numero_bultos, " +
-                                     "fecha_emision = EXCLUDED.fecha_emision, hora_emision = EXCLUDED.hora_emision, " +
-                                     "estado_guia = EXCLUDED.estado_guia";
-                        try (PreparedStatement psIns = cn3.prepareStatement(ins)) {
-                            psIns.setString(1, codigoGuia);
-                            psIns.setString(2, serie);
-                            psIns.setString(3, numero);
-                            if (codOrden == null) psIns.setNull(4, Types.VARCHAR); else psIns.setString(4, codOrden);
-                            psIns.setString(5, remitenteUse);
-                            psIns.setString(6, (rucDestinatario == null ? "" : rucDestinatario));
-                            psIns.setString(7, dirPartida == null ? "" : dirPartida);
-                            psIns.setString(8, dirLlegada == null ? "" : dirLlegada);
-                            psIns.setString(9, ubigeoOrigen == null ? "" : ubigeoOrigen);
-                            psIns.setString(10, ubigeoDestino == null ? "" : ubigeoDestino);
-                            psIns.setObject(11, pesoTotal);
-                            psIns.setObject(12, numeroBultos);
-                            psIns.setDate(13, java.sql.Date.valueOf(LocalDate.now()));
-                            psIns.setTime(14, java.sql.Time.valueOf(LocalTime.now()));
-                            psIns.setString(15, "emitida");
-                            psIns.executeUpdate();
-                            return true;
+        ResultadoGuia(String codigoGuia, boolean ok, String error) {
+            this.codigoGuia = codigoGuia;
+            this.ok = ok;
+            this.error = error;
+        }
+    }
+
+    /** Resumen de una emisión masiva: resultado por guía y rendimiento (guías/segundo). */
+    public static final class ResultadoLote {
+        public final List<ResultadoGuia> resultados;
+        public final int exitosas;
+        public final int fallidas;
+        public final int lotes;
+        public final long duracionMs;
+
+        ResultadoLote(List<ResultadoGuia> resultados, int lotes, long duracionMs) {
+            this.resultados = java.util.Collections.unmodifiableList(resultados);
+            int ok = 0;
+            for (ResultadoGuia r : resultados) if (r.ok) ok++;
+            this.exitosas = ok;
+            this.fallidas = resultados.size() - ok;
+            this.lotes = lotes;
+            this.duracionMs = duracionMs;
+        }
+
+        /** Guías emitidas correctamente por segundo (sobre el tiempo total del proceso). */
+        public double getGuiasPorSegundo() {
+            return duracionMs <= 0 ? exitosas : exitosas * 1000.0 / duracionMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Lote[total=%d ok=%d fallidas=%d lotes=%d duracion=%dms %.1f guias/s]",
+                    resultados.size(), exitosas, fallidas, lotes, duracionMs, getGuiasPorSegundo());
+        }
+    }
+
+    /**
+     * Solicitudes para emitir en lote las guías de las órdenes que aún no tienen una
+     * (su código no figura en cabecera_guia_clave), de la más antigua a la más reciente.
+     * Las guías llevan `serie` sin número: el número se asigna al emitirlas (emitirGuiasLote).
+     * La partida es la dirección y el ubigeo del remitente y la llegada los del cliente de la orden.
+     * Sin `rucRemitente` se usa el primer remitente registrado, igual que en la emisión.
+     * Si otra emisión toma antes una de estas órdenes, esa guía falla por cod_orden repetido.
+     */
+    public List<SolicitudGuia> solicitudesDeOrdenesPendientes(String serie, String rucRemitente,
+                                                               String motivo, String modalidad) {
+        List<SolicitudGuia> solicitudes = new ArrayList<>();
+        if (vacio(serie)) return solicitudes;
+        String ser = serie.trim();
+        // cabecera_guia_clave guarda cod_orden de todas las particiones; sin ella, la tabla particionada
+        String claves = CatalogoBD.hayTabla("cabecera_guia_clave") ? "cabecera_guia_clave" : "cabecera_guia";
+        String sqlOrdenes = "SELECT o.codigo_orden, o.ruc_cliente, d.calle_direccion, d.codigo_ubigeo " +
+                "FROM orden_de_pago o JOIN destinatario d ON d.ruc = o.ruc_cliente " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + claves + " g WHERE g.cod_orden = o.codigo_orden) " +
+                "ORDER BY o.fecha, o.codigo_orden";
+        try (Connection cn = Conexion.getConnection()) {
+            String remitente = vacio(rucRemitente) ? primerRemitente(cn) : rucRemitente.trim();
+            String dirPartida = null, ubigeoOrigen = null;
+            try (PreparedStatement ps = cn.prepareStatement("SELECT calle_direccion, codigo_ubigeo FROM remitente WHERE ruc = ?")) {
+                ps.setString(1, remitente);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        dirPartida = rs.getString(1);
+                        ubigeoOrigen = rs.getString(2);
+                    }
+                }
+            }
+            try (PreparedStatement ps = cn.prepareStatement(sqlOrdenes); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // Sin dirección o ubigeo la guía fallará sola en el lote (cuerpo_guia los exige) y se informa
+                    CabeceraGuia g = new CabeceraGuia(null, ser, null, rs.getString("codigo_orden"),
+                            remitente, rs.getString("ruc_cliente"),
+                            dirPartida, rs.getString("calle_direccion"),
+                            ubigeoOrigen, rs.getString("codigo_ubigeo"),
+                            0.0, 0, null, null, null);
+                    solicitudes.add(new SolicitudGuia(g, motivo, modalidad, null));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al preparar guías de órdenes pendientes: " + e.getMessage());
+        }
+        return solicitudes;
+    }
+
+    /** emitirGuiasLote con el tamaño de lote por defecto. */
+    public ResultadoLote emitirGuiasLote(List<SolicitudGuia> solicitudes) {
+        return emitirGuiasLote(solicitudes, TAMANO_LOTE_DEFECTO, null);
+    }
+
+    /** emitirGuiasLote sin aviso de avance. */
+    public ResultadoLote emitirGuiasLote(List<SolicitudGuia> solicitudes, int tamanoLote) {
+        return emitirGuiasLote(solicitudes, tamanoLote, null);
+    }
+
+    /**
+     * Emite muchas guías usando JDBC batching (addBatch/executeBatch; con reWriteBatchedInserts
+     * pgjdbc los convierte en INSERT multi-fila) sobre cabecera_guia, cuerpo_guia y detalle_bienes.
+     * Cada bloque de `tamanoLote` guías se confirma en su propia transacción. Si un bloque falla,
+     * se revierte y se reintenta guía por guía con savepoints, de modo que una fila inválida sólo
+     * marca esa guía como fallida y no aborta el resto del proceso.
+     * `alAvanzar` (puede ser null) recibe las guías procesadas tras cada bloque. Si el hilo se
+     * interrumpe (tarea cancelada) se detiene entre bloques: lo confirmado queda y el resto se
+     * informa como fallido.
+     * Numeración de las guías sin número: cada transacción toma un bloqueo consultivo por serie
+     * (pg_advisory_xact_lock, liberado en el commit o rollback) antes de leer el último número,
+     * así dos emisiones simultáneas en la misma serie se turnan por bloque y nunca reparten el
+     * mismo número. Un número sólo se consume si la guía se confirma: las fallidas no dejan huecos
+     * y se informan por su orden.
+     */
+    public ResultadoLote emitirGuiasLote(List<SolicitudGuia> solicitudes, int tamanoLote, IntConsumer alAvanzar) {
+        long t0 = System.nanoTime();
+        List<ResultadoGuia> resultados = new ArrayList<>();
+        int lotes = 0;
+        if (solicitudes == null || solicitudes.isEmpty()) return new ResultadoLote(resultados, 0, 0);
+        int tam = Math.max(1, tamanoLote);
+
+        boolean cabeceraExtendida = CatalogoBD.hayColumna("cabecera_guia", "dir_partida");
+        String insCab = cabeceraExtendida
+                ? "INSERT INTO cabecera_guia (codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
+                  "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
+                  "fecha_emision, hora_emision, estado_guia) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                : "INSERT INTO cabecera_guia (codigo_guia, serie, numero, cod_orden, ruc_remitente, " +
+                  "fecha_emision, hora_emision, estado_guia) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        String insCuerpo = "INSERT INTO cuerpo_guia (codigo_guia, ruc_destinatario, direccion_partida, direccion_llegada, " +
+                "ubigeo_origen, ubigeo_destino, motivo_traslado, modalidad_transporte, peso_total, numero_bultos) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String insBien = "INSERT INTO detalle_bienes (codigo_guia, codigo_bien, cantidad, peso_total) VALUES (?, ?, ?, ?)";
+
+        try (Connection cn = Conexion.getConnection()) {
+            String remitentePorDefecto = null;
+            cn.setAutoCommit(false);
+            try (PreparedStatement psCab = cn.prepareStatement(insCab);
+                 PreparedStatement psCuerpo = cn.prepareStatement(insCuerpo);
+                 PreparedStatement psBien = cn.prepareStatement(insBien)) {
+
+                for (int desde = 0; desde < solicitudes.size(); desde += tam) {
+                    if (Thread.currentThread().isInterrupted()) break;
+                    List<SolicitudGuia> bloque = solicitudes.subList(desde, Math.min(desde + tam, solicitudes.size()));
+                    lotes++;
+                    // El remitente por defecto sólo se consulta si alguna guía llega sin remitente
+                    if (remitentePorDefecto == null && bloque.stream().anyMatch(s -> vacio(s.cabecera.getRucRemitente()))) {
+                        remitentePorDefecto = primerRemitente(cn);
+                    }
+                    List<SolicitudGuia> numeradas = new ArrayList<>();
+                    try {
+                        Map<String, Long> ultimos = bloquearSeries(cn, bloque);
+                        for (SolicitudGuia s : bloque) {
+                            if (asignarNumero(s, ultimos)) numeradas.add(s);
+                            agregarAlBatch(s, remitentePorDefecto, cabeceraExtendida, psCab, psCuerpo, psBien);
                         }
-                    } catch (SQLException ex3) {
-                        System.out.println("Error fallback emitirGuia (insert): " + ex3.getMessage());
-                        return false;
+                        psCab.executeBatch();
+                        psCuerpo.executeBatch();
+                        psBien.executeBatch();
+                        cn.commit();
+                        for (SolicitudGuia s : bloque) resultados.add(new ResultadoGuia(s.cabecera.getCodigoGuia(), true, null));
+                    } catch (SQLException exLote) {
+                        cn.rollback();
+                        psCab.clearBatch();
+                        psCuerpo.clearBatch();
+                        psBien.clearBatch();
+                        // Los números del bloque revertido se vuelven a asignar en el reintento
+                        for (SolicitudGuia s : numeradas) quitarNumero(s);
+                        System.out.println("Lote " + lotes + " falló, reintentando guía por guía: " + mensajeBatch(exLote));
+                        emitirBloqueUnoAUno(cn, bloque, remitentePorDefecto, cabeceraExtendida, psCab, psCuerpo, psBien, resultados);
                     }
+                    if (alAvanzar != null) alAvanzar.accept(resultados.size());
                 }
-            } else {
-                System.out.println("Error al emitir guía (SELECT): " + ex1.getMessage());
-                return false;
+            } finally {
+                cn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error en emisión masiva de guías: " + e.getMessage());
+            // Las guías que no llegaron a procesarse se reportan como fallidas
+            for (int i = resultados.size(); i < solicitudes.size(); i++) {
+                resultados.add(new ResultadoGuia(etiqueta(solicitudes.get(i)), false, e.getMessage()));
+            }
+        }
+        // Cancelada entre bloques
+        for (int i = resultados.size(); i < solicitudes.size(); i++) {
+            resultados.add(new ResultadoGuia(etiqueta(solicitudes.get(i)), false, "emisión cancelada"));
+        }
+        ResultadoLote r = new ResultadoLote(resultados, lotes, (System.nanoTime() - t0) / 1_000_000);
+        System.out.println("Emisión masiva de guías: " + r);
+        // Muchas altas: que los listados se recarguen una vez en lugar de aplicar fila a fila
+        if (r.exitosas > UMBRAL_RECARGA_LISTADOS) {
+            EscuchaCambios.publicarLocal("cabecera_guia", 'R', null);
+        } else {
+            for (ResultadoGuia rg : resultados) if (rg.ok) EscuchaCambios.publicarLocal("cabecera_guia", 'I', rg.codigoGuia);
+        }
+        return r;
+    }
+
+    // Reintento de un bloque fallido: cada guía en su savepoint, un único commit al final
+    private void emitirBloqueUnoAUno(Connection cn, List<SolicitudGuia> bloque, String remitentePorDefecto,
+                                     boolean cabeceraExtendida, PreparedStatement psCab, PreparedStatement psCuerpo,
+                                     PreparedStatement psBien, List<ResultadoGuia> resultados) throws SQLException {
+        // Nueva transacción: el bloqueo de las series se volvió a soltar con el rollback
+        Map<String, Long> ultimos = bloquearSeries(cn, bloque);
+        for (SolicitudGuia s : bloque) {
+            boolean numerada = asignarNumero(s, ultimos);
+            Savepoint sp = cn.setSavepoint();
+            try {
+                agregarAlBatch(s, remitentePorDefecto, cabeceraExtendida, psCab, psCuerpo, psBien);
+                psCab.executeBatch();
+                psCuerpo.executeBatch();
+                psBien.executeBatch();
+                cn.releaseSavepoint(sp);
+                resultados.add(new ResultadoGuia(s.cabecera.getCodigoGuia(), true, null));
+            } catch (SQLException ex) {
+                cn.rollback(sp);
+                psCab.clearBatch();
+                psCuerpo.clearBatch();
+                psBien.clearBatch();
+                // El número no se usó: lo toma la siguiente guía de la serie
+                if (numerada) {
+                    ultimos.merge(s.cabecera.getSerie().trim(), -1L, Long::sum);
+                    quitarNumero(s);
+                }
+                resultados.add(new ResultadoGuia(etiqueta(s), false, mensajeBatch(ex)));
             }
         }
+        cn.commit();
+    }
+
+    /**
+     * Toma el bloqueo consultivo de cada serie que se numera en el bloque (en orden, para que dos
+     * emisiones no se bloqueen mutuamente) y devuelve el último número de 8 dígitos de cada una.
+     * El bloqueo dura hasta el fin de la transacción; la lectura usa idx_cabecera_serie_numero.
+     */
+    private static Map<String, Long> bloquearSeries(Connection cn, List<SolicitudGuia> bloque) throws SQLException {
+        TreeSet<String> series = new TreeSet<>();
+        for (SolicitudGuia s : bloque) if (sinNumero(s)) series.add(s.cabecera.getSerie().trim());
+        Map<String, Long> ultimos = new HashMap<>();
+        if (series.isEmpty()) return ultimos;
+        String sqlUltimo = "SELECT numero FROM cabecera_guia WHERE serie = ? AND numero ~ '^[0-9]{8}$' " +
+                "ORDER BY numero DESC LIMIT 1";
+        try (PreparedStatement psBloqueo = cn.prepareStatement("SELECT pg_advisory_xact_lock(hashtext(?))");
+             PreparedStatement psUltimo = cn.prepareStatement(sqlUltimo)) {
+            for (String serie : series) {
+                psBloqueo.setString(1, "cabecera_guia.serie:" + serie);
+                psBloqueo.execute();
+                psUltimo.setString(1, serie);
+                try (ResultSet rs = psUltimo.executeQuery()) {
+                    ultimos.put(serie, rs.next() ? Long.parseLong(rs.getString(1)) : 0L);
+                }
+            }
+        }
+        return ultimos;
+    }
+
+    // Asigna el siguiente número de su serie a una guía sin número; false si ya traía uno
+    private static boolean asignarNumero(SolicitudGuia s, Map<String, Long> ultimos) {
+        if (!sinNumero(s)) return false;
+        String serie = s.cabecera.getSerie().trim();
+        String num = String.format("%08d", ultimos.merge(serie, 1L, Long::sum));
+        s.cabecera.setNumero(num);
+        s.cabecera.setCodigoGuia(serie + "-" + num);
+        return true;
+    }
+
+    private static void quitarNumero(SolicitudGuia s) {
+        s.cabecera.setNumero(null);
+        s.cabecera.setCodigoGuia(null);
+    }
+
+    private static boolean sinNumero(SolicitudGuia s) {
+        return vacio(s.cabecera.getNumero()) && !vacio(s.cabecera.getSerie());
+    }
+
+    // Código de la guía para el resultado; si quedó sin número, su orden
+    private static String etiqueta(SolicitudGuia s) {
+        String codigo = s.cabecera.getCodigoGuia();
+        return !vacio(codigo) ? codigo : "orden " + s.cabecera.getCodOrden();
+    }
+
+    private void agregarAlBatch(SolicitudGuia s, String remitentePorDefecto, boolean cabeceraExtendida,
+                                PreparedStatement psCab, PreparedStatement psCuerpo, PreparedStatement psBien) throws SQLException {
+        CabeceraGuia g = s.cabecera;
+        String remitente = vacio(g.getRucRemitente()) ? remitentePorDefecto : g.getRucRemitente().trim();
+        String dest = vacio(g.getRucDestinatario()) ? null : g.getRucDestinatario().trim();
+        String ubOri = vacio(g.getUbigeoOrigen()) ? null : g.getUbigeoOrigen().trim();
+        String ubDest = vacio(g.getUbigeoDestino()) ? null : g.getUbigeoDestino().trim();
+        java.math.BigDecimal peso = java.math.BigDecimal.valueOf(g.getPesoTotal() == null ? 0.0 : g.getPesoTotal());
+        int bultos = g.getNumeroBultos() == null ? 0 : g.getNumeroBultos();
+        java.sql.Date hoy = java.sql.Date.valueOf(LocalDate.now());
+        java.sql.Time ahora = java.sql.Time.valueOf(LocalTime.now());
+
+        int i = 1;
+        psCab.setString(i++, g.getCodigoGuia());
+        psCab.setString(i++, g.getSerie());
+        psCab.setString(i++, g.getNumero());
+        psCab.setString(i++, vacio(g.getCodOrden()) ? null : g.getCodOrden().trim());
+        psCab.setString(i++, remitente);
+        if (cabeceraExtendida) {
+            psCab.setString(i++, dest);
+            psCab.setString(i++, g.getDirPartida());
+            psCab.setString(i++, g.getDirLlegada());
+            psCab.setString(i++, ubOri);
+            psCab.setString(i++, ubDest);
+            psCab.setBigDecimal(i++, peso);
+            psCab.setInt(i++, bultos);
+        }
+        psCab.setDate(i++, hoy);
+        psCab.setTime(i++, ahora);
+        psCab.setString(i, "emitida");
+        psCab.addBatch();
+
+        // cuerpo_guia exige destinatario y ubigeos (FKs NOT NULL), igual que sp_emitir_guia_tx
+        if (dest != null && ubOri != null && ubDest != null) {
+            psCuerpo.setString(1, g.getCodigoGuia());
+            psCuerpo.setString(2, dest);
+            psCuerpo.setString(3, g.getDirPartida() == null ? "" : g.getDirPartida());
+            psCuerpo.setString(4, g.getDirLlegada() == null ? "" : g.getDirLlegada());
+            psCuerpo.setString(5, ubOri);
+            psCuerpo.setString(6, ubDest);
+            psCuerpo.setString(7, s.motivo == null ? "" : s.motivo);
+            psCuerpo.setString(8, s.modalidad == null ? "" : s.modalidad);
+            psCuerpo.setBigDecimal(9, peso);
+            psCuerpo.setInt(10, bultos);
+            psCuerpo.addBatch();
+        }
+
+        if (s.bienes != null) {
+            for (DetalleBien b : s.bienes) {
+                if (b == null || vacio(b.getCodigoBien())) continue;
+                psBien.setString(1, g.getCodigoGuia());
+                psBien.setString(2, b.getCodigoBien());
+                psBien.setBigDecimal(3, b.getCantidad());
+                psBien.setBigDecimal(4, b.getPesoTotal());
+                psBien.addBatch();
+            }
+        }
+    }
+
+    private String primerRemitente(Connection cn) {
+        try (PreparedStatement ps = cn.prepareStatement("SELECT ruc FROM remitente ORDER BY ruc LIMIT 1");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException e) {
+            System.out.println("No se pudo obtener un remitente por defecto: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // En BatchUpdateException el motivo real suele venir en getNextException()
+    private static String mensajeBatch(SQLException e) {
+        SQLException next = e.getNextException();
+        return next != null ? next.getMessage() : e.getMessage();
+    }
+
+    private static boolean vacio(String s) {
+        return s == null || s.trim().isEmpty();
     }
 
     /**
@@ -299,21 +851,26 @@ public class GuiaDAO {
     public boolean eliminar(String codigoGuia) {
         String call = "CALL sp_eliminar_guia(?)";
         String sql = "UPDATE cabecera_guia SET eliminado = true WHERE codigo_guia = ?";
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, codigoGuia);
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("sp_eliminar_guia failed: " + e.getMessage());
-            // fallback to soft-delete
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(sql)) {
-                ps.setString(1, codigoGuia);
-                return ps.executeUpdate() > 0;
-            } catch (SQLException ex2) {
-                System.err.println("Fallback soft-delete guia failed: " + ex2.getMessage());
-                return false;
+        if (CatalogoBD.hayProcedimiento("sp_eliminar_guia")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, codigoGuia);
+                cs.execute();
+                EscuchaCambios.publicarLocal("cabecera_guia", 'D', codigoGuia);
+                return true;
+            } catch (SQLException e) {
+                System.err.println("sp_eliminar_guia failed: " + e.getMessage());
             }
         }
+        // fallback to soft-delete
+        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(sql)) {
+            ps.setString(1, codigoGuia);
+            boolean cambiado = ps.executeUpdate() > 0;
+            if (cambiado) EscuchaCambios.publicarLocal("cabecera_guia", 'D', codigoGuia);
+            return cambiado;
+        } catch (SQLException ex2) {
+            System.err.println("Fallback soft-delete guia failed: " + ex2.getMessage());
+            return false;
+        }
     }
 
     // Recuperar registro eliminado (soft-undelete)
@@ -322,7 +879,9 @@ public class GuiaDAO {
         try (Connection cn = Conexion.getConnection();
              PreparedStatement ps = cn.prepareStatement(sql)) {
             ps.setString(1, codigoGuia);
-            return ps.executeUpdate() > 0;
+            boolean cambiado = ps.executeUpdate() > 0;
+            if (cambiado) EscuchaCambios.publicarLocal("cabecera_guia", 'U', codigoGuia);
+            return cambiado;
         } catch (SQLException e) {
             System.out.println("Error al recuperar guía: " + e.getMessage());
             return false;
@@ -331,6 +890,12 @@ public class GuiaDAO {
 
     public List<DetalleGuia> listarDetallePorGuia(String codigoGuia) {
         List<DetalleGuia> lista = new ArrayList<>();
+        // Si la tabla detalle_guia no existe, reconstruir desde detalle_orden (usada por órdenes)
+        if (!CatalogoBD.hayTabla("detalle_guia")) {
+            reconstruirDetalleDesdeOrden(codigoGuia, lista);
+            return lista;
+        }
+
         String sql = "SELECT nro_item AS nro_item, bien_normalizado, codigo_bien, codigo_producto_sunat, partida_arancelaria, " +
                      "codigo_gtin, descripcion, unidad_medida, cantidad " +
                      "FROM detalle_guia WHERE codigo_guia = ? ORDER BY nro_item";
@@ -354,64 +919,10 @@ public class GuiaDAO {
             }
 
         } catch (SQLException e) {
-            // Si la tabla detalle_guia no existe, intentar reconstruir desde detalle_orden (usada por órdenes)
+            // Catálogo desactualizado o no disponible: si la tabla no existe, reconstruir desde detalle_orden
             String msg = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
-            if (msg.contains("detalle_guia") || msg.contains("no existe la relación") || "42p01".equals(e.getSQLState())) {
-                try {
-                    // Obtener la orden asociada a esta guía
-                    CabeceraGuia cab = obtenerPorCodigo(codigoGuia);
-                    if (cab != null && cab.getCodOrden() != null && !cab.getCodOrden().trim().isEmpty()) {
-                        String codigoOrden = cab.getCodOrden();
-                        String sql2 = "SELECT numero_item, codigo_producto, cantidad FROM detalle_orden WHERE codigo_orden = ? ORDER BY numero_item";
-                        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps2 = cn2.prepareStatement(sql2)) {
-                            ps2.setString(1, codigoOrden);
-                            try (ResultSet rs2 = ps2.executeQuery()) {
-                                dao.ProductoDAO prodDao = new dao.ProductoDAO();
-                                while (rs2.next()) {
-                                    int nro = rs2.getInt("numero_item");
-                                    String codigoProd = rs2.getString("codigo_producto");
-                                    String cantidad = null;
-                                    try {
-                                        java.math.BigDecimal bd = rs2.getBigDecimal("cantidad");
-                                        if (bd != null) cantidad = bd.stripTrailingZeros().toPlainString();
-                                    } catch (SQLException ex) {
-                                        cantidad = rs2.getString("cantidad");
-                                    }
-
-                                    String nombre = codigoProd;
-                                    String unidad = "";
-                                    try {
-                                        model.Producto p = prodDao.buscarPorCodigo(codigoProd);
-                                        if (p != null) {
-                                            if (p.getNombreProducto() != null) nombre = p.getNombreProducto();
-                                            if (p.getUnidadMedida() != null) unidad = p.getUnidadMedida();
-                                        }
-                                    } catch (Exception ignore) { }
-
-                                    // Mapear campos disponibles de detalle_orden/producto a DetalleGuia
-                                    DetalleGuia d = new DetalleGuia(
-                                            nro,
-                                            nombre,            // bien_normalizado: usar nombre del producto cuando esté disponible
-                                            "",                // codigo_bien: no disponible
-                                            codigoProd,         // codigo_producto_sunat
-                                            "",                // partida_arancelaria: no disponible
-                                            "",                // codigo_gtin: no disponible
-                                            nombre,             // descripcion
-                                            unidad,             // unidad_medida
-                                            (cantidad == null ? "" : cantidad) // cantidad
-                                    );
-                                    lista.add(d);
-                                }
-                            }
-                        } catch (SQLException ex2) {
-                            System.out.println("Error al reconstruir detalle de guía desde detalle_orden: " + ex2.getMessage());
-                        }
-                    } else {
-                        System.out.println("No se puede reconstruir detalle de guía: guía sin orden asociada");
-                    }
-                } catch (Exception ex) {
-                    System.out.println("Error al intentar fallback detalle_guia -> detalle_orden: " + ex.getMessage());
-                }
+            if (msg.contains("detalle_guia") || msg.contains("no existe la relación") || "42p01".equalsIgnoreCase(e.getSQLState())) {
+                reconstruirDetalleDesdeOrden(codigoGuia, lista);
             } else {
                 System.out.println("Error al listar detalle de guía: " + e.getMessage());
             }
@@ -420,6 +931,78 @@ public class GuiaDAO {
         return lista;
     }
 
+    // Construye las líneas de la guía a partir de detalle_orden + producto de la orden asociada
+    private void reconstruirDetalleDesdeOrden(String codigoGuia, List<DetalleGuia> lista) {
+        try {
+            // Obtener la orden asociada a esta guía
+            CabeceraGuia cab = obtenerPorCodigo(codigoGuia);
+            if (cab == null || cab.getCodOrden() == null || cab.getCodOrden().trim().isEmpty()) {
+                System.out.println("No se puede reconstruir detalle de guía: guía sin orden asociada");
+                return;
+            }
+            String codigoOrden = cab.getCodOrden();
+
+            // 1) Líneas de la orden (se devuelve la conexión antes de consultar los productos)
+            List<Object[]> filas = new ArrayList<>();
+            List<String> codigos = new ArrayList<>();
+            String sql2 = "SELECT numero_item, codigo_producto, cantidad FROM detalle_orden WHERE codigo_orden = ? ORDER BY numero_item";
+            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps2 = cn2.prepareStatement(sql2)) {
+                ps2.setString(1, codigoOrden);
+                try (ResultSet rs2 = ps2.executeQuery()) {
+                    while (rs2.next()) {
+                        int nro = rs2.getInt("numero_item");
+                        String codigoProd = rs2.getString("codigo_producto");
+                        String cantidad = null;
+                        try {
+                            java.math.BigDecimal bd = rs2.getBigDecimal("cantidad");
+                            if (bd != null) cantidad = bd.stripTrailingZeros().toPlainString();
+                        } catch (SQLException ex) {
+                            cantidad = rs2.getString("cantidad");
+                        }
+                        filas.add(new Object[]{nro, codigoProd, cantidad});
+                        codigos.add(codigoProd);
+                    }
+                }
+            } catch (SQLException ex2) {
+                System.out.println("Error al reconstruir detalle de guía desde detalle_orden: " + ex2.getMessage());
+                return;
+            }
+
+            // 2) Todos los productos de la orden en una sola consulta (antes era una por línea)
+            java.util.Map<String, model.Producto> productos = new dao.ProductoDAO().buscarPorCodigos(codigos);
+
+            for (Object[] f : filas) {
+                int nro = (Integer) f[0];
+                String codigoProd = (String) f[1];
+                String cantidad = (String) f[2];
+
+                String nombre = codigoProd;
+                String unidad = "";
+                model.Producto p = codigoProd == null ? null : productos.get(codigoProd.trim());
+                if (p != null) {
+                    if (p.getNombreProducto() != null) nombre = p.getNombreProducto();
+                    if (p.getUnidadMedida() != null) unidad = p.getUnidadMedida();
+                }
+
+                // Mapear campos disponibles de detalle_orden/producto a DetalleGuia
+                DetalleGuia d = new DetalleGuia(
+                        nro,
+                        nombre,            // bien_normalizado: usar nombre del producto cuando esté disponible
+                        "",                // codigo_bien: no disponible
+                        codigoProd,         // codigo_producto_sunat
+                        "",                // partida_arancelaria: no disponible
+                        "",                // codigo_gtin: no disponible
+                        nombre,             // descripcion
+                        unidad,             // unidad_medida
+                        (cantidad == null ? "" : cantidad) // cantidad
+                );
+                lista.add(d);
+            }
+        } catch (Exception ex) {
+            System.out.println("Error al intentar fallback detalle_guia -> detalle_orden: " + ex.getMessage());
+        }
+    }
+
     /**
      * Obtiene la cabecera completa por código (trae todos los campos usados en el formulario).
      */
@@ -434,29 +1017,54 @@ public class GuiaDAO {
 
             ps.setString(1, codigoGuia);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    CabeceraGuia g = new CabeceraGuia();
-                    g.setCodigoGuia(rs.getString("codigo_guia"));
-                    g.setSerie(rs.getString("serie"));
-                    g.setNumero(rs.getString("numero"));
-                    g.setCodOrden(rs.getString("cod_orden"));
-                    g.setRucRemitente(rs.getString("ruc_remitente"));
-                    g.setRucDestinatario(rs.getString("ruc_destinatario"));
-                    g.setDirPartida(rs.getString("dir_partida"));
-                    g.setDirLlegada(rs.getString("dir_llegada"));
-                    g.setUbigeoOrigen(rs.getString("ubigeo_origen"));
-                    g.setUbigeoDestino(rs.getString("ubigeo_destino"));
-                    g.setPesoTotal(rs.getObject("peso_total") == null ? 0.0 : rs.getDouble("peso_total"));
-                    g.setNumeroBultos(rs.getObject("numero_bultos") == null ? 0 : rs.getInt("numero_bultos"));
-                    g.setFechaEmision(rs.getDate("fecha_emision"));
-                    g.setHoraEmision(rs.getTime("hora_emision"));
-                    g.setEstadoGuia(rs.getString("estado_guia"));
-                    return g;
-                }
+                if (rs.next()) return mapearCabecera(rs);
             }
         } catch (SQLException e) {
             System.out.println("Error obtenerPorCodigo: " + e.getMessage());
         }
         return null;
     }
+
+    /**
+     * Como obtenerPorCodigo, pero devuelve null si la guía está dada de baja (eliminado = true):
+     * responde si la guía debe seguir apareciendo en los listados.
+     */
+    public CabeceraGuia obtenerVigente(String codigoGuia) {
+        if (!CatalogoBD.hayColumna("cabecera_guia", "eliminado")) return obtenerPorCodigo(codigoGuia);
+        String sql = "SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario, " +
+                "dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos, " +
+                "fecha_emision, hora_emision, estado_guia " +
+                "FROM cabecera_guia WHERE codigo_guia = ? AND NOT eliminado";
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setString(1, codigoGuia);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return mapearCabecera(rs);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error obtenerVigente: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Mapea una fila con las columnas de cabecera_guia a CabeceraGuia
+    // También lo usa GuiaDocumentoDAO (mismo paquete) para la cabecera del documento
+    static CabeceraGuia mapearCabecera(ResultSet rs) throws SQLException {
+        CabeceraGuia g = new CabeceraGuia();
+        g.setCodigoGuia(rs.getString("codigo_guia"));
+        g.setSerie(rs.getString("serie"));
+        g.setNumero(rs.getString("numero"));
+        g.setCodOrden(rs.getString("cod_orden"));
+        g.setRucRemitente(rs.getString("ruc_remitente"));
+        g.setRucDestinatario(rs.getString("ruc_destinatario"));
+        g.setDirPartida(rs.getString("dir_partida"));
+        g.setDirLlegada(rs.getString("dir_llegada"));
+        g.setUbigeoOrigen(rs.getString("ubigeo_origen"));
+        g.setUbigeoDestino(rs.getString("ubigeo_destino"));
+        g.setPesoTotal(rs.getObject("peso_total") == null ? 0.0 : rs.getDouble("peso_total"));
+        g.setNumeroBultos(rs.getObject("numero_bultos") == null ? 0 : rs.getInt("numero_bultos"));
+        g.setFechaEmision(rs.getDate("fecha_emision"));
+        g.setHoraEmision(rs.getTime("hora_emision"));
+        g.setEstadoGuia(rs.getString("estado_guia"));
+        return g;
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * GuiaDocumentoDAO.java
+ * Carga todo lo que necesita la impresión de una guía (`GuiaDocumento`) con
+ * una sola consulta: cabecera + cuerpo, remitente, destinatario, traslado,
+ * vehículo, conductor y las líneas del detalle agregadas en arrays.
+ * Antes la exportación a PDF hacía una consulta por entidad, cada una con
+ * su propia conexión.
+ */
+package dao;
+
+import db.Conexion;
+import model.DetalleGuia;
+import model.GuiaDocumento;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GuiaDocumentoDAO {
+
+    // Los datos de cuerpo_guia tienen prioridad sobre las copias desnormalizadas de cabecera_guia.
+    // Las líneas salen de la orden asociada (detalle_orden + producto) y, si la guía no tiene
+    // orden, de detalle_bienes + bien_transportable; cada lista llega como arrays paralelos.
+    private static final String SQL_DOCUMENTO =
+            "SELECT c.codigo_guia, c.serie, c.numero, c.cod_orden, c.ruc_remitente, " +
+            "       coalesce(cu.ruc_destinatario, c.ruc_destinatario) AS ruc_destinatario, " +
+            "       coalesce(cu.direccion_partida, c.dir_partida) AS dir_partida, " +
+            "       coalesce(cu.direccion_llegada, c.dir_llegada) AS dir_llegada, " +
+            "       coalesce(cu.ubigeo_origen, c.ubigeo_origen) AS ubigeo_origen, " +
+            "       coalesce(cu.ubigeo_destino, c.ubigeo_destino) AS ubigeo_destino, " +
+            "       coalesce(cu.peso_total, c.peso_total) AS peso_total, " +
+            "       coalesce(cu.numero_bultos, c.numero_bultos) AS numero_bultos, " +
+            "       c.fecha_emision, c.hora_emision, c.estado_guia, " +
+            "       cu.motivo_traslado, cu.modalidad_transporte, " +
+            "       r.nombre_empresa AS remitente_nombre, d.nombre AS destinatario_nombre, " +
+            "       t.placa, t.licencia, t.fecha_inicio, v.numero_mtc, co.nombre AS conductor_nombre, " +
+            "       lo.codigos AS orden_codigos, lo.nombres AS orden_nombres, " +
+            "       lo.unidades AS orden_unidades, lo.cantidades AS orden_cantidades, " +
+            "       lb.codigos AS bien_codigos, lb.nombres AS bien_nombres, " +
+            "       lb.unidades AS bien_unidades, lb.cantidades AS bien_cantidades " +
+            "FROM cabecera_guia c " +
+            "LEFT JOIN cuerpo_guia cu ON cu.codigo_guia = c.codigo_guia " +
+            "LEFT JOIN remitente r ON r.ruc = c.ruc_remitente " +
+            "LEFT JOIN destinatario d ON d.ruc = coalesce(cu.ruc_destinatario, c.ruc_destinatario) " +
+            "LEFT JOIN traslado t ON t.codigo_guia = c.codigo_guia " +
+            "LEFT JOIN vehiculo v ON v.placa = t.placa " +
+            "LEFT JOIN conductor co ON co.licencia = t.licencia " +
+            "LEFT JOIN LATERAL ( " +
+            "   SELECT array_agg(x.codigo_producto ORDER BY x.numero_item) AS codigos, " +
+            "          array_agg(coalesce(p.nombre_producto, x.codigo_producto) ORDER BY x.numero_item) AS nombres, " +
+            "          array_agg(coalesce(p.unidad_medida, '') ORDER BY x.numero_item) AS unidades, " +
+            "          array_agg(x.cantidad ORDER BY x.numero_item) AS cantidades " +
+            "     FROM detalle_orden x LEFT JOIN producto p ON p.codigo_producto = x.codigo_producto " +
+            "    WHERE x.codigo_orden = c.cod_orden) lo ON true " +
+            "LEFT JOIN LATERAL ( " +
+            "   SELECT array_agg(b.codigo_bien ORDER BY b.numero_item) AS codigos, " +
+            "          array_agg(coalesce(bt.descripcion, b.codigo_bien) ORDER BY b.numero_item) AS nombres, " +
+            "          array_agg(coalesce(bt.unidad_medida, '') ORDER BY b.numero_item) AS unidades, " +
+            "          array_agg(b.cantidad ORDER BY b.numero_item) AS cantidades " +
+            "     FROM detalle_bienes b LEFT JOIN bien_transportable bt ON bt.codigo_bien = b.codigo_bien " +
+            "    WHERE b.codigo_guia = c.codigo_guia) lb ON true " +
+            "WHERE c.codigo_guia = ?";
+
+    /**
+     * Devuelve el documento completo de la guía, o null si no existe o la consulta falla.
+     */
+    public GuiaDocumento obtener(String codigoGuia) {
+        if (codigoGuia == null || codigoGuia.trim().isEmpty()) return null;
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(SQL_DOCUMENTO)) {
+            ps.setString(1, codigoGuia.trim());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                GuiaDocumento doc = new GuiaDocumento();
+                doc.setCabecera(GuiaDAO.mapearCabecera(rs));
+                doc.setRemitenteNombre(rs.getString("remitente_nombre"));
+                doc.setDestinatarioNombre(rs.getString("destinatario_nombre"));
+                doc.setMotivoTraslado(rs.getString("motivo_traslado"));
+                doc.setModalidadTransporte(rs.getString("modalidad_transporte"));
+                doc.setPlaca(rs.getString("placa"));
+                doc.setAutorizacionVehiculo(rs.getString("numero_mtc"));
+                doc.setLicencia(rs.getString("licencia"));
+                doc.setConductorNombre(rs.getString("conductor_nombre"));
+                doc.setFechaInicioTraslado(rs.getTimestamp("fecha_inicio"));
+
+                List<DetalleGuia> items = lineas(rs, "orden", false);
+                if (items.isEmpty()) items = lineas(rs, "bien", true);
+                doc.setItems(items);
+                return doc;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error cargar documento de guía: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Reconstruye las líneas a partir de los arrays paralelos <prefijo>_codigos/_nombres/_unidades/_cantidades.
+    // Las líneas de producto llevan el código en "código SUNAT"; las de bienes en "código de bien".
+    private static List<DetalleGuia> lineas(ResultSet rs, String prefijo, boolean esBien) throws SQLException {
+        List<DetalleGuia> out = new ArrayList<>();
+        Object[] codigos = arreglo(rs, prefijo + "_codigos");
+        if (codigos == null) return out;
+        Object[] nombres = arreglo(rs, prefijo + "_nombres");
+        Object[] unidades = arreglo(rs, prefijo + "_unidades");
+        Object[] cantidades = arreglo(rs, prefijo + "_cantidades");
+        for (int i = 0; i < codigos.length; i++) {
+            String codigo = texto(codigos, i);
+            String nombre = texto(nombres, i);
+            String cantidad = "";
+            if (cantidades != null && i < cantidades.length && cantidades[i] instanceof BigDecimal) {
+                cantidad = ((BigDecimal) cantidades[i]).stripTrailingZeros().toPlainString();
+            }
+            out.add(new DetalleGuia(
+                    i + 1,
+                    nombre,
+                    esBien ? codigo : "",
+                    esBien ? "" : codigo,
+                    "",
+                    "",
+                    nombre,
+                    texto(unidades, i),
+                    cantidad
+            ));
+        }
+        return out;
+    }
+
+    private static Object[] arreglo(ResultSet rs, String columna) throws SQLException {
+        Array a = rs.getArray(columna);
+        if (a == null) return null;
+        try {
+            return (Object[]) a.getArray();
+        } finally {
+            a.free();
+        }
+    }
+
+    private static String texto(Object[] valores, int i) {
+        if (valores == null || i >= valores.length || valores[i] == null) return "";
+        return valores[i].toString().trim();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * JerarquiaUbigeos.java
+ * Índice jerárquico en memoria de los ubigeos para el selector en cascada
+ * departamento -> provincia -> distrito (ui.SelectorUbigeo).
+ * - El código de ubigeo es jerárquico (2+2+2 dígitos): los dos primeros son el
+ *   departamento y los cuatro primeros la provincia. Se arma una sola vez a
+ *   partir de la lista de UbigeoDAO.listarTodos() con un mapa por nivel, así
+ *   que pedir los hijos de un nivel es una búsqueda O(1) y el selector sólo
+ *   muestra esos hijos.
+ * - El nombre de cada departamento/provincia se toma del primer ubigeo del
+ *   grupo; los hijos se ordenan por nombre (sin distinguir tildes).
+ * - Un código de menos de 6 dígitos queda como su propio departamento y
+ *   provincia en vez de descartarse.
+ * Es inmutable y se puede leer desde cualquier hilo. CacheReferencias
+ * entrega la de la instantánea actual (jerarquiaUbigeos()); las ventanas de
+ * mantenimiento la arman con su propia lectura del DAO.
+ */
+package dao;
+
+import model.Ubigeo;
+import util.IndicePrefijos;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class JerarquiaUbigeos {
+
+    public static final int DIGITOS_DEPARTAMENTO = 2;
+    public static final int DIGITOS_PROVINCIA = 4;
+    public static final int DIGITOS_DISTRITO = 6;
+
+    /** Un elemento de un nivel: código (2, 4 o 6 dígitos) y nombre. toString() es el nombre, para los combos. */
+    public static final class Nodo {
+        public final String codigo;
+        public final String nombre;
+
+        Nodo(String codigo, String nombre) {
+            this.codigo = codigo;
+            this.nombre = nombre == null ? "" : nombre.trim();
+        }
+
+        @Override
+        public String toString() {
+            return nombre;
+        }
+    }
+
+    private static final Comparator<Nodo> POR_NOMBRE = Comparator
+            .comparing((Nodo n) -> IndicePrefijos.normalizar(n.nombre))
+            .thenComparing(n -> n.codigo);
+
+    private final List<Nodo> departamentos;
+    private final Map<String, List<Nodo>> provinciasPorDepartamento;
+    private final Map<String, List<Nodo>> distritosPorProvincia;
+    private final Map<String, Ubigeo> porCodigo;
+
+    public JerarquiaUbigeos(List<Ubigeo> ubigeos) {
+        Map<String, Nodo> deps = new LinkedHashMap<>();
+        Map<String, Map<String, Nodo>> provs = new HashMap<>();
+        Map<String, List<Nodo>> dists = new HashMap<>();
+        Map<String, Ubigeo> codigos = new HashMap<>();
+        for (Ubigeo u : ubigeos) {
+            if (u.getCodigo() == null || u.getCodigo().trim().isEmpty()) continue;
+            String cod = u.getCodigo().trim();
+            String dep = prefijo(cod, DIGITOS_DEPARTAMENTO);
+            String prov = prefijo(cod, DIGITOS_PROVINCIA);
+            deps.putIfAbsent(dep, new Nodo(dep, u.getDepartamento()));
+            provs.computeIfAbsent(dep, k -> new LinkedHashMap<>()).putIfAbsent(prov, new Nodo(prov, u.getProvincia()));
+            dists.computeIfAbsent(prov, k -> new ArrayList<>()).add(new Nodo(cod, u.getDistrito()));
+            codigos.put(cod, u);
+        }
+        this.departamentos = ordenada(deps.values());
+        Map<String, List<Nodo>> ps = new HashMap<>();
+        for (Map.Entry<String, Map<String, Nodo>> e : provs.entrySet()) ps.put(e.getKey(), ordenada(e.getValue().values()));
+        Map<String, List<Nodo>> ds = new HashMap<>();
+        for (Map.Entry<String, List<Nodo>> e : dists.entrySet()) ds.put(e.getKey(), ordenada(e.getValue()));
+        this.provinciasPorDepartamento = Collections.unmodifiableMap(ps);
+        this.distritosPorProvincia = Collections.unmodifiableMap(ds);
+        this.porCodigo = Collections.unmodifiableMap(codigos);
+    }
+
+    /** Primeros `digitos` caracteres del código (el código entero si es más corto). */
+    public static String prefijo(String codigo, int digitos) {
+        if (codigo == null) return "";
+        String c = codigo.trim();
+        return c.length() <= digitos ? c : c.substring(0, digitos);
+    }
+
+    public List<Nodo> departamentos() {
+        return departamentos;
+    }
+
+    /** Provincias del departamento (código de 2 dígitos o un código más largo de ese departamento). */
+    public List<Nodo> provincias(String codigoDepartamento) {
+        return provinciasPorDepartamento.getOrDefault(prefijo(codigoDepartamento, DIGITOS_DEPARTAMENTO), Collections.emptyList());
+    }
+
+    /** Distritos de la provincia (código de 4 dígitos o un código más largo de esa provincia). */
+    public List<Nodo> distritos(String codigoProvincia) {
+        return distritosPorProvincia.getOrDefault(prefijo(codigoProvincia, DIGITOS_PROVINCIA), Collections.emptyList());
+    }
+
+    public Ubigeo ubigeo(String codigo) {
+        return codigo == null ? null : porCodigo.get(codigo.trim());
+    }
+
+    public int tamano() {
+        return porCodigo.size();
+    }
+
+    /**
+     * Siguiente código de distrito libre de la provincia (p.ej. "150103" si existen
+     * 150101 y 150102); "" si la provincia no tiene 4 dígitos o ya no quedan códigos.
+     */
+    public String siguienteCodigo(String codigoProvincia) {
+        String prov = prefijo(codigoProvincia, DIGITOS_PROVINCIA);
+        if (prov.length() != DIGITOS_PROVINCIA) return "";
+        for (int i = 1; i <= 99; i++) {
+            String cod = prov + String.format("%02d", i);
+            if (!porCodigo.containsKey(cod)) return cod;
+        }
+        return "";
+    }
+
+    private static List<Nodo> ordenada(Collection<Nodo> nodos) {
+        List<Nodo> l = new ArrayList<>(nodos);
+        l.sort(POR_NOMBRE);
+        return Collections.unmodifiableList(l);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MantenimientoParticiones.java
+ * Crea por adelantado las particiones mensuales de cabecera_guia, traslado y
+ * traslado_log_estado (sección 1 de schema.sql) llamando a
+ * sp_mantener_particiones(meses).
+ * - Corre al iniciar y luego cada 24 horas en un hilo de fondo; crea el mes
+ *   actual y los -Dparticiones.meses.adelante siguientes (3 por defecto).
+ * - Si no se ejecuta, nada se rompe: las filas de un mes sin partición van a la
+ *   partición por defecto. Pero esas filas impiden crear después la partición
+ *   de su mes, por eso se crean con meses de anticipación.
+ * - La función es idempotente y tolera que otra instancia cree la misma
+ *   partición a la vez, así que no hace falta bloqueo entre instancias.
+ * Si la base no tiene la función (esquema sin particionar) no hace nada.
+ */
+package dao;
+
+import db.CatalogoBD;
+import db.Conexion;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public final class MantenimientoParticiones {
+
+    private static final int MESES_ADELANTE = Math.max(1, Integer.getInteger("particiones.meses.adelante", 3));
+    private static final long INTERVALO_HORAS = 24;
+
+    private static ScheduledExecutorService fondo;
+
+    private MantenimientoParticiones() {}
+
+    /** Arranca el mantenimiento periódico (una sola vez por proceso). Llamar con el catálogo ya leído. */
+    public static synchronized void iniciar() {
+        if (fondo != null) return;
+        if (!CatalogoBD.hayFuncion("sp_mantener_particiones", 1)) {
+            System.out.println("MantenimientoParticiones: la base no tiene tablas particionadas; no se programa");
+            return;
+        }
+        fondo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mantenimiento-particiones");
+            t.setDaemon(true);
+            return t;
+        });
+        fondo.scheduleWithFixedDelay(MantenimientoParticiones::revisar, 0, INTERVALO_HORAS, TimeUnit.HOURS);
+    }
+
+    /** Crea ahora las particiones que falten. -1 si falló. */
+    public static int crearAhora() {
+        try (Connection cn = Conexion.getConnection();
+             PreparedStatement ps = cn.prepareStatement("SELECT sp_mantener_particiones(?)")) {
+            ps.setInt(1, MESES_ADELANTE);
+            try (ResultSet rs = ps.executeQuery()) {
+                int creadas = rs.next() ? rs.getInt(1) : 0;
+                if (creadas > 0) {
+                    System.out.println("MantenimientoParticiones: " + creadas + " particiones nuevas");
+                }
+                return creadas;
+            }
+        } catch (SQLException e) {
+            System.err.println("MantenimientoParticiones: no se pudieron crear las particiones: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static void revisar() {
+        // Una excepción cancelaría las ejecuciones siguientes del programador
+        try {
+            crearAhora();
+        } catch (RuntimeException e) {
+            System.err.println("MantenimientoParticiones: error inesperado: " + e.getMessage());
+        }
+    }
+}
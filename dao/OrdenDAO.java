@@ -6,6 +6,7 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.OrdenDePago;
 
@@ -96,14 +97,18 @@ public class OrdenDAO {
     public boolean eliminar(String codigoOrden) {
         String call = "{ call sp_eliminar_orden_de_pago(?) }";
         String fnSelect = "SELECT sp_eliminar_orden_de_pago(?)";
-        // 1) intentar CALL
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, codigoOrden);
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("sp_eliminar_orden_de_pago CALL failed: " + e.getMessage());
-            // 2) intentar como función (SELECT)
+        // 1) intentar CALL (sólo si el procedimiento existe)
+        if (CatalogoBD.hayProcedimiento("sp_eliminar_orden_de_pago")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, codigoOrden);
+                cs.execute();
+                return true;
+            } catch (SQLException e) {
+                System.err.println("sp_eliminar_orden_de_pago CALL failed: " + e.getMessage());
+            }
+        }
+        // 2) intentar como función (SELECT)
+        if (CatalogoBD.hayFuncion("sp_eliminar_orden_de_pago")) {
             try (Connection cn2 = Conexion.getConnection(); PreparedStatement psFn = cn2.prepareStatement(fnSelect)) {
                 psFn.setString(1, codigoOrden);
                 psFn.execute();
@@ -111,25 +116,25 @@ public class OrdenDAO {
             } catch (SQLException exFn) {
                 System.err.println("sp_eliminar_orden_de_pago SELECT failed: " + exFn.getMessage());
             }
+        }
 
-            // 3) fallback manual: eliminar detalles y luego la orden
-            try {
-                DetalleOrdenDAO detDao = new DetalleOrdenDAO();
-                boolean okDet = detDao.eliminarPorOrden(codigoOrden);
-                if (!okDet) System.err.println("Warning: eliminarPorOrden returned false for " + codigoOrden);
-            } catch (Exception exDet) {
-                System.err.println("Error eliminando detalles de orden en fallback: " + exDet.getMessage());
-            }
+        // 3) fallback manual: eliminar detalles y luego la orden
+        try {
+            DetalleOrdenDAO detDao = new DetalleOrdenDAO();
+            boolean okDet = detDao.eliminarPorOrden(codigoOrden);
+            if (!okDet) System.err.println("Warning: eliminarPorOrden returned false for " + codigoOrden);
+        } catch (Exception exDet) {
+            System.err.println("Error eliminando detalles de orden en fallback: " + exDet.getMessage());
+        }
 
-            String delSql = "DELETE FROM orden_de_pago WHERE codigo_orden = ?";
-            try (Connection cn3 = Conexion.getConnection(); PreparedStatement ps = cn3.prepareStatement(delSql)) {
-                ps.setString(1, codigoOrden);
-                int rows = ps.executeUpdate();
-                return rows > 0;
-            } catch (SQLException ex3) {
-                System.err.println("Fallback DELETE orden_de_pago failed: " + ex3.getMessage());
-                return false;
-            }
+        String delSql = "DELETE FROM orden_de_pago WHERE codigo_orden = ?";
+        try (Connection cn3 = Conexion.getConnection(); PreparedStatement ps = cn3.prepareStatement(delSql)) {
+            ps.setString(1, codigoOrden);
+            int rows = ps.executeUpdate();
+            return rows > 0;
+        } catch (SQLException ex3) {
+            System.err.println("Fallback DELETE orden_de_pago failed: " + ex3.getMessage());
+            return false;
         }
     }
 
@@ -138,10 +143,8 @@ public class OrdenDAO {
         String fnSql = "SELECT * FROM sp_listar_ordenes()";
         String sqlFallback = "SELECT codigo_orden, fecha, ruc_cliente, estado FROM orden_de_pago ORDER BY fecha DESC";
         try (Connection cn = Conexion.getConnection()) {
-            try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
-                boolean hasCodigo = true;
-                try { rs.findColumn("codigo_orden"); } catch (SQLException ex) { hasCodigo = false; }
-                if (hasCodigo) {
+            if (CatalogoBD.funcionDevuelve("sp_listar_ordenes", "codigo_orden")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
                         String rawEstado = rs.getString("estado");
                         String displayEstado = dbEstadoToDisplay(rawEstado);
@@ -154,9 +157,10 @@ public class OrdenDAO {
                         lista.add(o);
                     }
                     return lista;
+                } catch (SQLException exFn) {
+                    // fallback
+                    lista.clear();
                 }
-            } catch (SQLException exFn) {
-                // fallback
             }
 
             try (PreparedStatement ps2 = cn.prepareStatement(sqlFallback); ResultSet rs2 = ps2.executeQuery()) {
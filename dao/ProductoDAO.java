@@ -6,6 +6,7 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.Producto;
 
@@ -13,7 +14,12 @@ import javax.swing.table.DefaultTableModel;
 import java.sql.*;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ProductoDAO {
 
@@ -25,6 +31,7 @@ public class ProductoDAO {
             cs.setBigDecimal(3, BigDecimal.valueOf(p.getPrecioBase()));
             cs.setString(4, p.getUnidadMedida());
             cs.execute();
+            CacheReferencias.invalidar(CacheReferencias.Tipo.PRODUCTO);
             return true;
         } catch (SQLException e) {
             System.err.println("Error crear producto: " + e.getMessage());
@@ -40,6 +47,7 @@ public class ProductoDAO {
             cs.setBigDecimal(3, BigDecimal.valueOf(p.getPrecioBase()));
             cs.setString(4, p.getUnidadMedida());
             cs.execute();
+            CacheReferencias.invalidar(CacheReferencias.Tipo.PRODUCTO);
             return true;
         } catch (SQLException e) {
             System.err.println("Error actualizar producto: " + e.getMessage());
@@ -52,6 +60,7 @@ public class ProductoDAO {
         try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
             cs.setString(1, codigo);
             cs.execute();
+            CacheReferencias.invalidar(CacheReferencias.Tipo.PRODUCTO);
             return true;
         } catch (SQLException e) {
             System.err.println("Error eliminar producto: " + e.getMessage());
@@ -60,19 +69,23 @@ public class ProductoDAO {
     }
 
     public List<Producto> listarTodos() {
+        try {
+            return leerTodos();
+        } catch (SQLException e) {
+            System.err.println("Error listar productos: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // Como listarTodos pero propaga el error: CacheReferencias distingue "sin filas" de "no se pudo leer"
+    List<Producto> leerTodos() throws SQLException {
         List<Producto> lista = new ArrayList<>();
         String fnSql = "SELECT * FROM sp_listar_productos()";
         String sqlFallback = "SELECT codigo_producto, nombre_producto, precio_base, unidad_medida FROM producto ORDER BY nombre_producto";
         try (Connection cn = Conexion.getConnection()) {
-            try (PreparedStatement ps = cn.prepareStatement(fnSql);
-                 ResultSet rs = ps.executeQuery()) {
-                // validar columnas
-                boolean hasCodigo = true;
-                boolean hasPrecio = true;
-                try { rs.findColumn("codigo_producto"); } catch (SQLException ex) { hasCodigo = false; }
-                try { rs.findColumn("precio_base"); } catch (SQLException ex) { hasPrecio = false; }
-
-                if (hasCodigo && hasPrecio) {
+            if (CatalogoBD.funcionDevuelve("sp_listar_productos", "codigo_producto", "precio_base")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql);
+                     ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
                         Producto p = new Producto(
                                 rs.getString("codigo_producto"),
@@ -83,10 +96,10 @@ public class ProductoDAO {
                         lista.add(p);
                     }
                     return lista;
+                } catch (SQLException exFn) {
+                    // ignorar y usar fallback
+                    lista.clear();
                 }
-                // si no contiene las columnas esperadas, caerá al fallback
-            } catch (SQLException exFn) {
-                // ignorar y usar fallback
             }
 
             try (PreparedStatement ps2 = cn.prepareStatement(sqlFallback);
@@ -100,11 +113,7 @@ public class ProductoDAO {
                     );
                     lista.add(p);
                 }
-            } catch (SQLException e) {
-                System.err.println("Error listar productos (fallback): " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error obtener conexión listar productos: " + e.getMessage());
         }
         return lista;
     }
@@ -121,15 +130,94 @@ public class ProductoDAO {
         return model;
     }
 
+    // Búsqueda por clave primaria (una fila, usa el índice de la PK en lugar de listar todos)
     public Producto buscarPorCodigo(String codigo) {
         if (codigo == null) return null;
-        try {
-            for (Producto p : listarTodos()) {
-                if (codigo.equals(p.getCodigoProducto())) return p;
+        String sql = "SELECT codigo_producto, nombre_producto, precio_base, unidad_medida FROM producto WHERE codigo_producto = ?";
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setString(1, codigo);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new Producto(
+                            rs.getString("codigo_producto"),
+                            rs.getString("nombre_producto"),
+                            rs.getObject("precio_base") == null ? 0.0 : rs.getDouble("precio_base"),
+                            rs.getString("unidad_medida")
+                    );
+                }
             }
-        } catch (Exception e) {
+        } catch (SQLException e) {
             System.err.println("Error buscar producto: " + e.getMessage());
         }
         return null;
     }
+
+    /**
+     * Búsqueda para sugerencias: productos cuyo código empieza por `texto` o cuyo nombre se le
+     * parece sin tener en cuenta acentos ni mayúsculas, los `limite` más parecidos primero
+     * (sp_buscar_productos). Sin esa función busca con ILIKE.
+     */
+    public List<Producto> buscar(String texto, int limite) {
+        List<Producto> lista = new ArrayList<>();
+        if (!BusquedaTexto.buscable(texto)) return lista;
+        String limpio = BusquedaTexto.limpiar(texto);
+        boolean esFuncion = CatalogoBD.funcionDevuelve("sp_buscar_productos", "codigo_producto", "precio_base", "similitud");
+        String sql = esFuncion
+                ? "SELECT * FROM sp_buscar_productos(?, ?)"
+                : "SELECT codigo_producto, nombre_producto, precio_base, unidad_medida FROM producto "
+                  + "WHERE codigo_producto ILIKE ? OR nombre_producto ILIKE ? ORDER BY nombre_producto LIMIT ?";
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            if (esFuncion) {
+                ps.setString(i++, limpio);
+            } else {
+                ps.setString(i++, BusquedaTexto.prefijo(limpio));
+                ps.setString(i++, BusquedaTexto.contiene(limpio));
+            }
+            ps.setInt(i, BusquedaTexto.acotar(limite));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    lista.add(new Producto(
+                            rs.getString("codigo_producto"),
+                            rs.getString("nombre_producto"),
+                            rs.getObject("precio_base") == null ? 0.0 : rs.getDouble("precio_base"),
+                            rs.getString("unidad_medida")
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error buscar productos: " + e.getMessage());
+        }
+        return lista;
+    }
+
+    /**
+     * Búsqueda de varios productos en una sola consulta (`= ANY(?)` con un array).
+     * Devuelve un mapa código -> producto; los códigos inexistentes no aparecen.
+     */
+    public Map<String, Producto> buscarPorCodigos(Collection<String> codigos) {
+        Map<String, Producto> out = new LinkedHashMap<>();
+        Set<String> claves = new LinkedHashSet<>();
+        if (codigos != null) for (String c : codigos) if (c != null && !c.trim().isEmpty()) claves.add(c.trim());
+        if (claves.isEmpty()) return out;
+
+        String sql = "SELECT codigo_producto, nombre_producto, precio_base, unidad_medida FROM producto WHERE codigo_producto = ANY(?)";
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setArray(1, cn.createArrayOf("varchar", claves.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Producto p = new Producto(
+                            rs.getString("codigo_producto"),
+                            rs.getString("nombre_producto"),
+                            rs.getObject("precio_base") == null ? 0.0 : rs.getDouble("precio_base"),
+                            rs.getString("unidad_medida")
+                    );
+                    out.put(p.getCodigoProducto(), p);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error buscar productos por códigos: " + e.getMessage());
+        }
+        return out;
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * RefrescoKpi.java
+ * Programador del refresco de los agregados diarios materializados de los
+ * reportes (mv_guias_por_fecha_estado y mv_kpi_guias_diario, sección 7 de
+ * schema.sql). Los reportes ya calculan en vivo los días posteriores al corte
+ * (el último refresco menos 7 días), así que el refresco no corre con cada
+ * consulta: sólo evita que ese tramo en vivo crezca.
+ * - Un hilo de fondo revisa cada REVISION_MIN minutos la edad del último
+ *   refresco (tabla kpi_refresco) y, si supera -Dkpi.refresco.horas (6 por
+ *   defecto), llama a sp_refrescar_kpi_diario(), que usa
+ *   REFRESH MATERIALIZED VIEW CONCURRENTLY: los reportes siguen leyendo
+ *   mientras tanto.
+ * - Con varias instancias abiertas sólo refresca una: el refresco se hace con
+ *   un bloqueo consultivo (pg_try_advisory_lock) y el que no lo obtiene lo omite.
+ * - Usa una conexión dedicada (fuera del pool) porque puede tardar.
+ * Si la base no tiene el procedimiento (esquema anterior) no hace nada.
+ */
+package dao;
+
+import db.CatalogoBD;
+import db.Conexion;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public final class RefrescoKpi {
+
+    private static final long REVISION_MIN = 15;
+    private static final long INTERVALO_SEGUNDOS = TimeUnit.HOURS.toSeconds(Math.max(1, Long.getLong("kpi.refresco.horas", 6)));
+    private static final String BLOQUEO = "sp_refrescar_kpi_diario";
+
+    // Segundos desde el refresco más antiguo de las dos vistas; null = nunca refrescadas
+    private static final String SQL_EDAD =
+            "SELECT EXTRACT(EPOCH FROM (LOCALTIMESTAMP - MIN(refrescado_en)))::BIGINT FROM kpi_refresco";
+
+    private static ScheduledExecutorService fondo;
+
+    private RefrescoKpi() {}
+
+    /** Arranca la revisión periódica (una sola vez por proceso). Llamar con el catálogo ya leído. */
+    public static synchronized void iniciar() {
+        if (fondo != null) return;
+        if (!CatalogoBD.hayProcedimiento("sp_refrescar_kpi_diario") || !CatalogoBD.hayTabla("kpi_refresco")) {
+            System.out.println("RefrescoKpi: la base no tiene los agregados materializados; no se programa el refresco");
+            return;
+        }
+        fondo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "refresco-kpi");
+            t.setDaemon(true);
+            return t;
+        });
+        fondo.scheduleWithFixedDelay(RefrescoKpi::revisar, 1, REVISION_MIN, TimeUnit.MINUTES);
+    }
+
+    /** Refresca ahora aunque no toque. false si falló o si otra instancia está refrescando. */
+    public static boolean refrescarAhora() {
+        return refrescar(true);
+    }
+
+    private static void revisar() {
+        // Una excepción cancelaría las ejecuciones siguientes del programador
+        try {
+            refrescar(false);
+        } catch (RuntimeException e) {
+            System.err.println("RefrescoKpi: error inesperado: " + e.getMessage());
+        }
+    }
+
+    private static boolean refrescar(boolean forzar) {
+        // El bloqueo consultivo es de sesión: se libera también al cerrar la conexión
+        try (Connection cn = Conexion.abrirDedicada()) {
+            if (!bloquear(cn)) return false;
+            try {
+                if (!forzar) {
+                    Long edad = edadSegundos(cn);
+                    if (edad != null && edad < INTERVALO_SEGUNDOS) return true;
+                }
+                long t0 = System.nanoTime();
+                // Autocommit: el procedimiento confirma cada vista por separado
+                cn.setAutoCommit(true);
+                try (CallableStatement cs = cn.prepareCall("CALL sp_refrescar_kpi_diario()")) {
+                    cs.execute();
+                }
+                System.out.println(String.format("RefrescoKpi: agregados diarios refrescados en %.1f s",
+                        (System.nanoTime() - t0) / 1_000_000_000.0));
+                return true;
+            } finally {
+                try (PreparedStatement ps = cn.prepareStatement("SELECT pg_advisory_unlock(hashtext(?))")) {
+                    ps.setString(1, BLOQUEO);
+                    ps.execute();
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("RefrescoKpi: no se pudo refrescar: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean bloquear(Connection cn) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement("SELECT pg_try_advisory_lock(hashtext(?))")) {
+            ps.setString(1, BLOQUEO);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static Long edadSegundos(Connection cn) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(SQL_EDAD); ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) return null;
+            long edad = rs.getLong(1);
+            return rs.wasNull() ? null : edad;
+        }
+    }
+}
@@ -8,6 +8,7 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 
 import java.sql.*;
@@ -36,23 +37,28 @@ public class RemitenteCredDAO {
     public boolean checkCredential(String ruc, String password) {
         // Primero intentar función en BD que valide credenciales (si fue creada):
         String fnSql = "SELECT sp_check_remitente_login(?, ?)";
-        try (Connection cn = Conexion.getConnection(); PreparedStatement psFn = cn.prepareStatement(fnSql)) {
-            psFn.setString(1, ruc);
-            psFn.setString(2, password);
-            try (ResultSet rsFn = psFn.executeQuery()) {
-                if (rsFn.next()) {
-                    Object val = rsFn.getObject(1);
-                    if (val instanceof Boolean aBoolean) return aBoolean;
-                    if (val instanceof Number number) return number.intValue() > 0;
-                    if (val != null) return "t".equalsIgnoreCase(val.toString()) || "true".equalsIgnoreCase(val.toString());
-                    return false;
+        if (CatalogoBD.hayFuncion("sp_check_remitente_login")) {
+            try (Connection cn = Conexion.getConnection(); PreparedStatement psFn = cn.prepareStatement(fnSql)) {
+                psFn.setString(1, ruc);
+                psFn.setString(2, password);
+                try (ResultSet rsFn = psFn.executeQuery()) {
+                    if (rsFn.next()) {
+                        Object val = rsFn.getObject(1);
+                        if (val instanceof Boolean aBoolean) return aBoolean;
+                        if (val instanceof Number number) return number.intValue() > 0;
+                        if (val != null) return "t".equalsIgnoreCase(val.toString()) || "true".equalsIgnoreCase(val.toString());
+                        return false;
+                    }
                 }
+            } catch (SQLException eFn) {
+                // función no existe o falló: continuamos con el chequeo local existente
+                System.err.println("Info: sp_check_remitente_login not available or failed: " + eFn.getMessage());
             }
-        } catch (SQLException eFn) {
-            // función no existe o falló: continuamos con el chequeo local existente
-            System.err.println("Info: sp_check_remitente_login not available or failed: " + eFn.getMessage());
         }
 
+        // Sin tabla remitente_login: ir directo al chequeo por existencia (evita un error por cada login)
+        if (!CatalogoBD.hayTabla("remitente_login")) return existeRemitente(ruc);
+
         // Comportamiento original: buscar hash en tabla remitente_login
         String sql = "SELECT password_hash FROM remitente_login WHERE ruc = ?";
         try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
@@ -70,23 +76,30 @@ public class RemitenteCredDAO {
             // If table doesn't exist or error, attempt a safe fallback:
             // comprobar si el RUC existe en la tabla `remitente` y permitir acceso por presencia (conteo).
             System.err.println("Warning: checkCredential failed: " + e.getMessage());
-            try (Connection cn2 = Conexion.getConnection();
-                 PreparedStatement ps2 = cn2.prepareStatement("SELECT COUNT(1) FROM remitente WHERE ruc = ?")) {
-                ps2.setString(1, ruc);
-                try (ResultSet rs2 = ps2.executeQuery()) {
-                    if (rs2.next()) {
-                        int cnt = rs2.getInt(1);
-                        if (cnt > 0) {
-                            System.err.println("Info: remitente encontrado en tabla 'remitente' — acceso permitido por existencia (sin password).");
-                            return true;
-                        }
+            return existeRemitente(ruc);
+        }
+    }
+
+    // Fallback no seguro: acceso por existencia del RUC en la tabla `remitente`
+    private boolean existeRemitente(String ruc) {
+        // El filtro de RUCs descarta sin ir a la BD los que seguro no existen
+        if (!RemitenteDAO.RUCS.puedeExistir(ruc)) return false;
+        try (Connection cn2 = Conexion.getConnection();
+             PreparedStatement ps2 = cn2.prepareStatement("SELECT COUNT(1) FROM remitente WHERE ruc = ?")) {
+            ps2.setString(1, ruc);
+            try (ResultSet rs2 = ps2.executeQuery()) {
+                if (rs2.next()) {
+                    int cnt = rs2.getInt(1);
+                    if (cnt > 0) {
+                        System.err.println("Info: remitente encontrado en tabla 'remitente' — acceso permitido por existencia (sin password).");
+                        return true;
                     }
                 }
-            } catch (SQLException ex2) {
-                System.err.println("Warning: fallback check in remitente failed: " + ex2.getMessage());
             }
-            return false;
+        } catch (SQLException ex2) {
+            System.err.println("Warning: fallback check in remitente failed: " + ex2.getMessage());
         }
+        return false;
     }
 
     public boolean setCredential(String ruc, String password) {
@@ -6,6 +6,7 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.Remitente;
 
@@ -13,6 +14,12 @@ import java.sql.*;
 
 public class RemitenteDAO {
 
+    // Conjunto de trabajo de búsquedas por RUC; las escrituras de este DAO invalidan la entrada
+    // y los cambios de otros equipos llegan por EscuchaCambios (de ahí el TTL largo)
+    static final CacheEntidades<Remitente> CACHE = new CacheEntidades<>("remitentes", 500, 3600);
+    // Índice de existencia: un RUC que el filtro descarta no se busca en la BD
+    static final FiltroRucs RUCS = new FiltroRucs("remitente");
+
     public boolean insertar(Remitente r) {
         String call = "CALL sp_insertar_remitente(?, ?, ?, ?, ?, ?, ?)";
         try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
@@ -24,6 +31,8 @@ public class RemitenteDAO {
             cs.setString(6, r.getCalleDireccion());
             cs.setString(7, r.getCodigoUbigeo());
             cs.execute();
+            CACHE.invalidar(r.getRuc());
+            RUCS.agregar(r.getRuc());
             return true;
         } catch (SQLException e) {
             System.err.println("Error insertar remitente: " + e.getMessage());
@@ -42,6 +51,7 @@ public class RemitenteDAO {
             cs.setString(6, r.getCalleDireccion());
             cs.setString(7, r.getCodigoUbigeo());
             cs.execute();
+            CACHE.invalidar(r.getRuc());
             return true;
         } catch (SQLException e) {
             System.err.println("Error actualizar remitente: " + e.getMessage());
@@ -54,6 +64,7 @@ public class RemitenteDAO {
         try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
             cs.setString(1, ruc);
             cs.execute();
+            CACHE.invalidar(ruc);
             return true;
         } catch (SQLException e) {
             System.err.println("Error eliminar remitente: " + e.getMessage());
@@ -62,6 +73,8 @@ public class RemitenteDAO {
     }
 
     public boolean existe(String ruc) {
+        if (CACHE.presente(ruc) != null) return true;
+        if (!RUCS.puedeExistir(ruc)) return false;
         String sql = "SELECT 1 FROM remitente WHERE ruc = ?";
         try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
             ps.setString(1, ruc);
@@ -74,27 +87,44 @@ public class RemitenteDAO {
         }
     }
 
+    // Pasa por la caché; la entidad devuelta es compartida y no debe modificarse
     public Remitente buscarPorRuc(String ruc) {
+        if (!RUCS.puedeExistir(ruc)) return null;
+        return CACHE.obtener(ruc, this::leerPorRuc);
+    }
+
+    /**
+     * Como buscarPorRuc pero sin descartar por el filtro de RUCs: para validaciones que
+     * rechazan una operación, donde un alta reciente de otro equipo no puede darse por inexistente.
+     */
+    public Remitente buscarPorRucConfirmado(String ruc) {
+        if (ruc == null || ruc.trim().isEmpty()) return null;
+        return CACHE.obtener(ruc, this::leerPorRuc);
+    }
+
+    private Remitente leerPorRuc(String ruc) {
         String fnSql = "SELECT * FROM sp_buscar_remitente(?)";
         String sqlFallback = "SELECT ruc, nombre_empresa, razon_social, telefono, email, calle_direccion, codigo_ubigeo FROM remitente WHERE ruc = ?";
         try (Connection cn = Conexion.getConnection()) {
-            try (PreparedStatement ps = cn.prepareStatement(fnSql)) {
-                ps.setString(1, ruc);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        Remitente r = new Remitente();
-                        r.setRuc(rs.getString("ruc"));
-                        r.setNombreEmpresa(rs.getString("nombre_empresa"));
-                        r.setRazonSocial(rs.getString("razon_social"));
-                        r.setTelefono(rs.getString("telefono"));
-                        r.setEmail(rs.getString("email"));
-                        r.setCalleDireccion(rs.getString("calle_direccion"));
-                        r.setCodigoUbigeo(rs.getString("codigo_ubigeo"));
-                        return r;
+            if (CatalogoBD.funcionDevuelve("sp_buscar_remitente", "ruc", "nombre_empresa")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql)) {
+                    ps.setString(1, ruc);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            Remitente r = new Remitente();
+                            r.setRuc(rs.getString("ruc"));
+                            r.setNombreEmpresa(rs.getString("nombre_empresa"));
+                            r.setRazonSocial(rs.getString("razon_social"));
+                            r.setTelefono(rs.getString("telefono"));
+                            r.setEmail(rs.getString("email"));
+                            r.setCalleDireccion(rs.getString("calle_direccion"));
+                            r.setCodigoUbigeo(rs.getString("codigo_ubigeo"));
+                            return r;
+                        }
                     }
+                } catch (SQLException exFn) {
+                    // fallback al SELECT directo
                 }
-            } catch (SQLException exFn) {
-                // fallback al SELECT directo
             }
 
             try (PreparedStatement ps2 = cn.prepareStatement(sqlFallback)) {
@@ -119,18 +149,65 @@ public class RemitenteDAO {
         return null;
     }
 
+    /**
+     * Búsqueda para sugerencias: remitentes cuyo RUC empieza por `texto` o cuyo nombre de empresa
+     * o razón social se le parece sin tener en cuenta acentos ni mayúsculas, los `limite` más
+     * parecidos primero (sp_buscar_remitentes). Sin esa función busca con ILIKE.
+     * Los encontrados quedan en la caché por RUC.
+     */
+    public java.util.List<Remitente> buscar(String texto, int limite) {
+        java.util.List<Remitente> out = new java.util.ArrayList<>();
+        if (!BusquedaTexto.buscable(texto)) return out;
+        String limpio = BusquedaTexto.limpiar(texto);
+        boolean esFuncion = CatalogoBD.funcionDevuelve("sp_buscar_remitentes", "ruc", "nombre_empresa", "similitud");
+        String sql = esFuncion
+                ? "SELECT * FROM sp_buscar_remitentes(?, ?)"
+                : "SELECT ruc, nombre_empresa, razon_social, telefono, email, calle_direccion, codigo_ubigeo FROM remitente "
+                  + "WHERE ruc LIKE ? OR nombre_empresa ILIKE ? OR razon_social ILIKE ? ORDER BY nombre_empresa LIMIT ?";
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            if (esFuncion) {
+                ps.setString(i++, limpio);
+            } else {
+                ps.setString(i++, BusquedaTexto.prefijo(limpio));
+                ps.setString(i++, BusquedaTexto.contiene(limpio));
+                ps.setString(i++, BusquedaTexto.contiene(limpio));
+            }
+            ps.setInt(i, BusquedaTexto.acotar(limite));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Remitente r = new Remitente();
+                    r.setRuc(rs.getString("ruc"));
+                    r.setNombreEmpresa(rs.getString("nombre_empresa"));
+                    r.setRazonSocial(rs.getString("razon_social"));
+                    r.setTelefono(rs.getString("telefono"));
+                    r.setEmail(rs.getString("email"));
+                    r.setCalleDireccion(rs.getString("calle_direccion"));
+                    r.setCodigoUbigeo(rs.getString("codigo_ubigeo"));
+                    out.add(r);
+                    CACHE.poner(r.getRuc(), r);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error buscar remitentes: " + e.getMessage());
+        }
+        return out;
+    }
+
     public java.util.List<String> listarRucs() {
         java.util.List<String> out = new java.util.ArrayList<>();
         String fnSql = "SELECT * FROM sp_listar_remitentes()";
         String sqlFallback = "SELECT ruc, nombre_empresa FROM remitente ORDER BY nombre_empresa";
         try (Connection cn = Conexion.getConnection()) {
-            try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    out.add(rs.getString("ruc"));
+            if (CatalogoBD.funcionDevuelve("sp_listar_remitentes", "ruc")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        out.add(rs.getString("ruc"));
+                    }
+                    return out;
+                } catch (SQLException exFn) {
+                    // fallback
                 }
-                return out;
-            } catch (SQLException exFn) {
-                // fallback
             }
 
             try (PreparedStatement ps2 = cn.prepareStatement(sqlFallback); ResultSet rs2 = ps2.executeQuery()) {
@@ -3,131 +3,259 @@
  * DAO utilitario para ejecutar consultas dinámicas y procedimientos que
  * devuelven filas. Retorna resultados en `DefaultTableModel` listos para
  * mostrar en tablas Swing. Maneja fallbacks y captura errores SQL.
+ * Para reportes grandes está la variante en streaming (transmitir*): corre
+ * sin autocommit para que pgjdbc use un cursor y traiga las filas por bloques
+ * de `fetchSize` en lugar de cargar todo el resultado en memoria, entrega cada
+ * fila a un ReceptorFilas (modelo de tabla, CSV, acumulador...), aplica un
+ * tiempo máximo por sentencia y se puede cortar desde otro hilo con Control.
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 
 import javax.swing.table.DefaultTableModel;
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
 
 public class ReporteDAO {
 
-    public DefaultTableModel ejecutarConsulta(String sql) {
-        DefaultTableModel model = new DefaultTableModel();
+    // SQLState de PostgreSQL para una sentencia cancelada (por cancel() o por tiempo máximo)
+    private static final String QUERY_CANCELED = "57014";
 
-        try (Connection cn = Conexion.getConnection();
-             PreparedStatement ps = cn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
+    // SQL directo equivalente a las sobrecargas (desde, hasta) de los reportes, para bases
+    // sin esas funciones. Mismos predicados: rango semiabierto sobre la columna indexada.
+    private static final Map<String, String> SQL_RANGO = new HashMap<>();
 
-            ResultSetMetaData meta = rs.getMetaData();
-            int columnas = meta.getColumnCount();
+    static {
+        SQL_RANGO.put("sp_reporte_guias_por_fecha_estado",
+                "SELECT fecha_emision, estado_guia, COUNT(*)::BIGINT AS guias FROM cabecera_guia " +
+                "WHERE fecha_emision >= ? AND fecha_emision < ?::date + 1 " +
+                "GROUP BY fecha_emision, estado_guia ORDER BY fecha_emision DESC, estado_guia");
+        SQL_RANGO.put("sp_reporte_productos_mas_vendidos",
+                "SELECT p.codigo_producto, p.nombre_producto, SUM(d.cantidad) AS cantidad_vendida " +
+                "FROM orden_de_pago o JOIN detalle_orden d ON d.codigo_orden = o.codigo_orden " +
+                "JOIN producto p ON p.codigo_producto = d.codigo_producto " +
+                "WHERE o.fecha >= ? AND o.fecha < ?::date + 1 " +
+                "GROUP BY p.codigo_producto, p.nombre_producto ORDER BY cantidad_vendida DESC");
+        SQL_RANGO.put("sp_reporte_utilizacion_vehiculos",
+                "SELECT v.placa, v.marca, v.modelo, COUNT(t.codigo_traslado)::BIGINT AS viajes " +
+                "FROM vehiculo v LEFT JOIN traslado t ON t.placa = v.placa " +
+                "AND t.fecha_inicio >= ?::date::timestamp AND t.fecha_inicio < (?::date + 1)::timestamp " +
+                "GROUP BY v.placa, v.marca, v.modelo ORDER BY viajes DESC");
+        SQL_RANGO.put("sp_reporte_kpi_guias_diario",
+                "SELECT cab.fecha_emision, " +
+                "SUM(CASE WHEN cab.estado_guia = 'emitida' THEN 1 ELSE 0 END)::BIGINT AS emitidas, " +
+                "SUM(CASE WHEN t.estado_traslado = 'en tránsito' THEN 1 ELSE 0 END)::BIGINT AS en_transito, " +
+                "SUM(CASE WHEN t.estado_traslado = 'entregado' THEN 1 ELSE 0 END)::BIGINT AS entregadas " +
+                "FROM cabecera_guia cab LEFT JOIN traslado t ON t.codigo_guia = cab.codigo_guia " +
+                "WHERE cab.fecha_emision >= ? AND cab.fecha_emision < ?::date + 1 " +
+                "GROUP BY cab.fecha_emision ORDER BY cab.fecha_emision DESC");
+        SQL_RANGO.put("sp_reporte_ingresos_por_fecha",
+                "SELECT o.fecha, SUM(d.subtotal)::NUMERIC(12,2) AS total_dia " +
+                "FROM orden_de_pago o JOIN detalle_orden d ON d.codigo_orden = o.codigo_orden " +
+                "WHERE o.fecha >= ? AND o.fecha < ?::date + 1 " +
+                "GROUP BY o.fecha ORDER BY o.fecha DESC");
+    }
 
-            for (int i = 1; i <= columnas; i++) {
-                model.addColumn(meta.getColumnLabel(i));
-            }
+    /** Recibe las filas de un reporte en streaming. Se invoca en el hilo que ejecuta la consulta. */
+    public interface ReceptorFilas {
+        /** Se llama una vez, antes de la primera fila, con las etiquetas y los tipos (java.sql.Types) de las columnas. */
+        void columnas(String[] nombres, int[] tipos);
 
-            while (rs.next()) {
-                Object[] fila = new Object[columnas];
-                for (int i = 0; i < columnas; i++) {
-                    fila[i] = rs.getObject(i + 1);
-                }
-                model.addRow(fila);
+        /** Una fila; devolver false corta la lectura (no se piden más bloques al servidor). */
+        boolean fila(Object[] valores);
+    }
+
+    /**
+     * Permite cancelar una consulta en curso desde otro hilo (p.ej. el botón Cancelar).
+     * Un mismo Control sirve para una sola ejecución.
+     */
+    public static final class Control {
+        private volatile Statement sentencia;
+        private volatile boolean cancelada = false;
+
+        /** Marca la ejecución como cancelada y pide al servidor que aborte la sentencia (Statement.cancel()). */
+        public void cancelar() {
+            cancelada = true;
+            Statement s = sentencia;
+            if (s == null) return;
+            try {
+                s.cancel();
+            } catch (SQLException e) {
+                System.err.println("No se pudo cancelar el reporte: " + e.getMessage());
             }
+        }
 
+        public boolean cancelada() { return cancelada; }
+    }
+
+    private final int fetchSize;
+    private final int timeoutSegundos;
+
+    /** Tamaño de bloque y tiempo máximo por defecto (-Dreporte.fetch.size, -Dreporte.timeout.segundos). */
+    public ReporteDAO() {
+        this(Integer.getInteger("reporte.fetch.size", 1000), Integer.getInteger("reporte.timeout.segundos", 300));
+    }
+
+    /** `timeoutSegundos` = 0 deja la sentencia sin tiempo máximo. */
+    public ReporteDAO(int fetchSize, int timeoutSegundos) {
+        this.fetchSize = Math.max(1, fetchSize);
+        this.timeoutSegundos = Math.max(0, timeoutSegundos);
+    }
+
+    public DefaultTableModel ejecutarConsulta(String sql) {
+        DefaultTableModel model = new DefaultTableModel();
+        try {
+            transmitir(sql, new Object[0], enModelo(model), null);
         } catch (SQLException e) {
             System.out.println("Error al ejecutar reporte: " + e.getMessage());
         }
-
         return model;
     }
 
     public DefaultTableModel ejecutarConsultaConParametro(String sql, String param) {
         DefaultTableModel model = new DefaultTableModel();
-
-        try (Connection cn = Conexion.getConnection();
-             PreparedStatement ps = cn.prepareStatement(sql)) {
-
-            ps.setString(1, param);
-
-            try (ResultSet rs = ps.executeQuery()) {
-                ResultSetMetaData meta = rs.getMetaData();
-                int columnas = meta.getColumnCount();
-
-                for (int i = 1; i <= columnas; i++) {
-                    model.addColumn(meta.getColumnLabel(i));
-                }
-
-                while (rs.next()) {
-                    Object[] fila = new Object[columnas];
-                    for (int i = 0; i < columnas; i++) {
-                        fila[i] = rs.getObject(i + 1);
-                    }
-                    model.addRow(fila);
-                }
-            }
-
+        try {
+            transmitir(sql, new Object[]{param}, enModelo(model), null);
         } catch (SQLException e) {
             System.out.println("Error al ejecutar reporte con parametro: " + e.getMessage());
         }
-
         return model;
     }
 
     // Ejecuta una "función/procedimiento" que devuelve filas: usamos SELECT * FROM func()
     public DefaultTableModel ejecutarSP(String spName) {
         DefaultTableModel model = new DefaultTableModel();
-        // spName puede venir con o sin paréntesis; normalizamos:
-        String sql;
-        if (spName.endsWith("()")) sql = "SELECT * FROM " + spName.substring(0, spName.length()-2) + "()";
-        else sql = "SELECT * FROM " + spName + "()";
-
-        try (Connection cn = Conexion.getConnection();
-             PreparedStatement ps = cn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
-            ResultSetMetaData meta = rs.getMetaData();
-            int columnas = meta.getColumnCount();
-            for (int i = 1; i <= columnas; i++) model.addColumn(meta.getColumnLabel(i));
-
-            while (rs.next()) {
-                Object[] fila = new Object[columnas];
-                for (int i = 0; i < columnas; i++) fila[i] = rs.getObject(i + 1);
-                model.addRow(fila);
-            }
-
+        try {
+            transmitirSP(spName, enModelo(model), null);
         } catch (SQLException e) {
             System.out.println("Error al ejecutar SP " + spName + ": " + e.getMessage());
         }
-
         return model;
     }
 
     // Ejecuta función/procedimiento con 1 parámetro que devuelve filas
     public DefaultTableModel ejecutarSPConParametro(String spName, String param) {
         DefaultTableModel model = new DefaultTableModel();
-        String sql = "SELECT * FROM " + spName + "(?)";
+        try {
+            transmitirSPConParametro(spName, param, enModelo(model), null);
+        } catch (SQLException e) {
+            System.out.println("Error al ejecutar SP con param " + spName + ": " + e.getMessage());
+        }
+        return model;
+    }
 
-        try (Connection cn = Conexion.getConnection();
-             PreparedStatement ps = cn.prepareStatement(sql)) {
+    // Ejecuta la sobrecarga (desde, hasta) de un reporte; fechas inclusivas
+    public DefaultTableModel ejecutarSPConRango(String spName, Date desde, Date hasta) {
+        DefaultTableModel model = new DefaultTableModel();
+        try {
+            transmitirSPConRango(spName, desde, hasta, enModelo(model), null);
+        } catch (SQLException e) {
+            System.out.println("Error al ejecutar SP con rango " + spName + ": " + e.getMessage());
+        }
+        return model;
+    }
+
+    /** Versión en streaming de ejecutarSP(). */
+    public int transmitirSP(String spName, ReceptorFilas receptor, Control control) throws SQLException {
+        // spName puede venir con o sin paréntesis; normalizamos:
+        String nombre = spName.endsWith("()") ? spName.substring(0, spName.length() - 2) : spName;
+        return transmitir("SELECT * FROM " + nombre + "()", new Object[0], receptor, control);
+    }
 
-            ps.setString(1, param);
-            try (ResultSet rs = ps.executeQuery()) {
-                ResultSetMetaData meta = rs.getMetaData();
-                int columnas = meta.getColumnCount();
-                for (int i = 1; i <= columnas; i++) model.addColumn(meta.getColumnLabel(i));
+    /** Versión en streaming de ejecutarSPConParametro(). */
+    public int transmitirSPConParametro(String spName, String param, ReceptorFilas receptor, Control control) throws SQLException {
+        return transmitir("SELECT * FROM " + spName + "(?)", new Object[]{param}, receptor, control);
+    }
 
-                while (rs.next()) {
-                    Object[] fila = new Object[columnas];
-                    for (int i = 0; i < columnas; i++) fila[i] = rs.getObject(i + 1);
-                    model.addRow(fila);
+    /**
+     * Versión en streaming de ejecutarSPConRango(). Usa la función (desde, hasta) si existe
+     * en la base; si no, el SQL equivalente de SQL_RANGO.
+     */
+    public int transmitirSPConRango(String spName, Date desde, Date hasta,
+                                    ReceptorFilas receptor, Control control) throws SQLException {
+        if (desde == null || hasta == null) throw new SQLException("Indique las fechas desde y hasta");
+        if (hasta.before(desde)) throw new SQLException("La fecha hasta es anterior a la fecha desde");
+        String sql = CatalogoBD.hayFuncion(spName, 2) ? "SELECT * FROM " + spName + "(?, ?)" : SQL_RANGO.get(spName);
+        if (sql == null) throw new SQLException("No existe la función " + spName + "(date, date)");
+        return transmitir(sql, new Object[]{desde, hasta}, receptor, control);
+    }
+
+    /**
+     * Ejecuta `sql` con sus parámetros y entrega las filas a `receptor` a medida que
+     * llegan. Devuelve el número de filas entregadas. Si se cancela con `control`
+     * (puede ser null) no lanza excepción: devuelve las filas entregadas hasta ese
+     * momento y control.cancelada() queda en true. Superar el tiempo máximo sí es un error.
+     */
+    public int transmitir(String sql, Object[] params, ReceptorFilas receptor, Control control) throws SQLException {
+        int filas = 0;
+        try (Connection cn = Conexion.getConnection()) {
+            boolean auto = cn.getAutoCommit();
+            // Sin autocommit pgjdbc abre un cursor y trae las filas de a `fetchSize`
+            cn.setAutoCommit(false);
+            boolean confirmado = false;
+            try (PreparedStatement ps = cn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(fetchSize);
+                if (timeoutSegundos > 0) ps.setQueryTimeout(timeoutSegundos);
+                for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+                if (control != null) {
+                    control.sentencia = ps;
+                    // cancelar() pudo llegar antes de que la sentencia estuviera registrada
+                    if (control.cancelada()) return 0;
                 }
-            }
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int columnas = meta.getColumnCount();
+                    String[] nombres = new String[columnas];
+                    int[] tipos = new int[columnas];
+                    for (int i = 0; i < columnas; i++) {
+                        nombres[i] = meta.getColumnLabel(i + 1);
+                        tipos[i] = meta.getColumnType(i + 1);
+                    }
+                    receptor.columnas(nombres, tipos);
 
-        } catch (SQLException e) {
-            System.out.println("Error al ejecutar SP con param " + spName + ": " + e.getMessage());
+                    while (rs.next()) {
+                        Object[] fila = new Object[columnas];
+                        for (int i = 0; i < columnas; i++) fila[i] = rs.getObject(i + 1);
+                        filas++;
+                        if (!receptor.fila(fila) || (control != null && control.cancelada())) break;
+                    }
+                }
+                cn.commit();
+                confirmado = true;
+            } catch (SQLException e) {
+                if (QUERY_CANCELED.equals(e.getSQLState())) {
+                    if (control != null && control.cancelada()) return filas;
+                    throw new SQLException("El reporte superó el tiempo máximo de " + timeoutSegundos + " s", e.getSQLState(), e);
+                }
+                throw e;
+            } finally {
+                if (control != null) control.sentencia = null;
+                // Una sentencia cancelada deja la transacción abortada: se deshace antes de devolver la conexión al pool
+                if (!confirmado) {
+                    try { cn.rollback(); } catch (SQLException ignored) { }
+                }
+                cn.setAutoCommit(auto);
+            }
         }
+        return filas;
+    }
 
-        return model;
+    // Receptor que llena un DefaultTableModel todavía no visible (sin eventos que atender)
+    private static ReceptorFilas enModelo(DefaultTableModel model) {
+        return new ReceptorFilas() {
+            @Override
+            public void columnas(String[] nombres, int[] tipos) {
+                for (String n : nombres) model.addColumn(n);
+            }
+
+            @Override
+            public boolean fila(Object[] valores) {
+                model.addRow(valores);
+                return true;
+            }
+        };
     }
 }
@@ -6,6 +6,7 @@
  */
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.Traslado;
 
@@ -35,6 +36,9 @@ public class TrasladoDAO {
             cs.setString(8, t.getObservaciones());
 
             cs.execute();
+            // El trigger de traslado también actualiza el estado de la guía
+            EscuchaCambios.publicarLocal("traslado", 'U', t.getCodigoTraslado());
+            EscuchaCambios.publicarLocal("cabecera_guia", 'U', t.getCodigoGuia());
             return true;
 
         } catch (SQLException e) {
@@ -62,6 +66,8 @@ public class TrasladoDAO {
             cs.setString(8, t.getObservaciones());
 
             cs.execute();
+            EscuchaCambios.publicarLocal("traslado", 'I', t.getCodigoTraslado());
+            EscuchaCambios.publicarLocal("cabecera_guia", 'U', t.getCodigoGuia());
             return true;
 
         } catch (SQLException e) {
@@ -70,10 +76,13 @@ public class TrasladoDAO {
         }
     }
 
-    // listar usando función en Postgres que devuelve SETOF
+    // listar usando función en Postgres que devuelve SETOF (o la tabla si la función no existe)
     public List<Traslado> listarTodos() {
         List<Traslado> lista = new ArrayList<>();
-        String sql = "SELECT * FROM sp_listar_traslados()";
+        String sql = CatalogoBD.funcionDevuelve("sp_listar_traslados", "codigo_traslado", "estado_traslado")
+                ? "SELECT * FROM sp_listar_traslados()"
+                : "SELECT codigo_traslado, codigo_guia, placa, licencia, fecha_inicio, fecha_fin, estado_traslado, observaciones " +
+                  "FROM traslado ORDER BY fecha_inicio DESC";
 
         try (Connection cn = Conexion.getConnection();
              PreparedStatement ps = cn.prepareStatement(sql);
@@ -103,21 +112,43 @@ public class TrasladoDAO {
     public boolean eliminarTraslado(String codigoTraslado) {
         // Preferir llamar al procedimiento almacenado si existe; si falla, fallback a DELETE directo
         String call = "CALL sp_eliminar_traslado(?)";
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, codigoTraslado);
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            // fallback a DELETE directo
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement("DELETE FROM traslado WHERE codigo_traslado = ?")) {
-                ps.setString(1, codigoTraslado);
-                int rows = ps.executeUpdate();
-                return rows > 0;
-            } catch (SQLException ex2) {
-                System.out.println("Error al eliminar traslado (fallback): " + ex2.getMessage());
-                return false;
+        if (CatalogoBD.hayProcedimiento("sp_eliminar_traslado")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, codigoTraslado);
+                cs.execute();
+                EscuchaCambios.publicarLocal("traslado", 'D', codigoTraslado);
+                return true;
+            } catch (SQLException e) {
+                System.out.println("sp_eliminar_traslado falló, usando DELETE directo: " + e.getMessage());
+            }
+        }
+        // fallback a DELETE directo
+        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement("DELETE FROM traslado WHERE codigo_traslado = ?")) {
+            ps.setString(1, codigoTraslado);
+            int rows = ps.executeUpdate();
+            if (rows > 0) EscuchaCambios.publicarLocal("traslado", 'D', codigoTraslado);
+            return rows > 0;
+        } catch (SQLException ex2) {
+            System.out.println("Error al eliminar traslado (fallback): " + ex2.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Obtiene un traslado por su código (clave primaria).
+     */
+    public Traslado obtenerPorCodigo(String codigoTraslado) {
+        String sql = "SELECT codigo_traslado, codigo_guia, placa, licencia, fecha_inicio, fecha_fin, estado_traslado, observaciones " +
+                     "FROM traslado WHERE codigo_traslado = ?";
+        try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setString(1, codigoTraslado);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return mapearTraslado(rs);
             }
+        } catch (SQLException e) {
+            System.out.println("Error obtener traslado por código: " + e.getMessage());
         }
+        return null;
     }
 
     /**
@@ -130,22 +161,24 @@ public class TrasladoDAO {
         try (Connection cn = Conexion.getConnection(); PreparedStatement ps = cn.prepareStatement(sql)) {
             ps.setString(1, codigoGuia);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    Traslado t = new Traslado();
-                    t.setCodigoTraslado(rs.getString("codigo_traslado"));
-                    t.setCodigoGuia(rs.getString("codigo_guia"));
-                    t.setPlaca(rs.getString("placa"));
-                    t.setLicencia(rs.getString("licencia"));
-                    t.setFechaInicio(rs.getTimestamp("fecha_inicio"));
-                    t.setFechaFin(rs.getTimestamp("fecha_fin"));
-                    t.setEstadoTraslado(rs.getString("estado_traslado"));
-                    t.setObservaciones(rs.getString("observaciones"));
-                    return t;
-                }
+                if (rs.next()) return mapearTraslado(rs);
             }
         } catch (SQLException e) {
             System.out.println("Error obtener traslado por guia: " + e.getMessage());
         }
         return null;
     }
+
+    private Traslado mapearTraslado(ResultSet rs) throws SQLException {
+        Traslado t = new Traslado();
+        t.setCodigoTraslado(rs.getString("codigo_traslado"));
+        t.setCodigoGuia(rs.getString("codigo_guia"));
+        t.setPlaca(rs.getString("placa"));
+        t.setLicencia(rs.getString("licencia"));
+        t.setFechaInicio(rs.getTimestamp("fecha_inicio"));
+        t.setFechaFin(rs.getTimestamp("fecha_fin"));
+        t.setEstadoTraslado(rs.getString("estado_traslado"));
+        t.setObservaciones(rs.getString("observaciones"));
+        return t;
+    }
 }
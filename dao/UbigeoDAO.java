@@ -1,5 +1,6 @@
 package dao;
 
+import db.CatalogoBD;
 import db.Conexion;
 import model.Ubigeo;
 
@@ -16,85 +17,107 @@ public class UbigeoDAO {
     public boolean insertar(Ubigeo u) {
         String call = "CALL sp_insertar_ubigeo(?, ?, ?, ?)";
         String ins = "INSERT INTO ubigeo (codigo_ubigeo, departamento, provincia, distrito) VALUES (?, ?, ?, ?)";
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, u.getCodigo());
-            cs.setString(2, u.getDepartamento());
-            cs.setString(3, u.getProvincia());
-            cs.setString(4, u.getDistrito());
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("sp_insertar_ubigeo failed: " + e.getMessage());
-            // fallback to direct INSERT
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(ins)) {
-                ps.setString(1, u.getCodigo());
-                ps.setString(2, u.getDepartamento());
-                ps.setString(3, u.getProvincia());
-                ps.setString(4, u.getDistrito());
-                ps.executeUpdate();
+        if (CatalogoBD.hayProcedimiento("sp_insertar_ubigeo")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, u.getCodigo());
+                cs.setString(2, u.getDepartamento());
+                cs.setString(3, u.getProvincia());
+                cs.setString(4, u.getDistrito());
+                cs.execute();
+                CacheReferencias.invalidar(CacheReferencias.Tipo.UBIGEO);
                 return true;
-            } catch (SQLException ex2) {
-                System.err.println("Fallback INSERT ubigeo failed: " + ex2.getMessage());
-                return false;
+            } catch (SQLException e) {
+                System.err.println("sp_insertar_ubigeo failed: " + e.getMessage());
             }
         }
+        // fallback to direct INSERT
+        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(ins)) {
+            ps.setString(1, u.getCodigo());
+            ps.setString(2, u.getDepartamento());
+            ps.setString(3, u.getProvincia());
+            ps.setString(4, u.getDistrito());
+            ps.executeUpdate();
+            CacheReferencias.invalidar(CacheReferencias.Tipo.UBIGEO);
+            return true;
+        } catch (SQLException ex2) {
+            System.err.println("Fallback INSERT ubigeo failed: " + ex2.getMessage());
+            return false;
+        }
     }
 
     public boolean actualizar(Ubigeo u) {
         String call = "CALL sp_actualizar_ubigeo(?, ?, ?, ?)";
         String upd = "UPDATE ubigeo SET departamento = ?, provincia = ?, distrito = ? WHERE codigo_ubigeo = ?";
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, u.getCodigo());
-            cs.setString(2, u.getDepartamento());
-            cs.setString(3, u.getProvincia());
-            cs.setString(4, u.getDistrito());
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("sp_actualizar_ubigeo failed: " + e.getMessage());
-            // fallback to direct UPDATE
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(upd)) {
-                ps.setString(1, u.getDepartamento());
-                ps.setString(2, u.getProvincia());
-                ps.setString(3, u.getDistrito());
-                ps.setString(4, u.getCodigo());
-                return ps.executeUpdate() > 0;
-            } catch (SQLException ex2) {
-                System.err.println("Fallback UPDATE ubigeo failed: " + ex2.getMessage());
-                return false;
+        if (CatalogoBD.hayProcedimiento("sp_actualizar_ubigeo")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, u.getCodigo());
+                cs.setString(2, u.getDepartamento());
+                cs.setString(3, u.getProvincia());
+                cs.setString(4, u.getDistrito());
+                cs.execute();
+                CacheReferencias.invalidar(CacheReferencias.Tipo.UBIGEO);
+                return true;
+            } catch (SQLException e) {
+                System.err.println("sp_actualizar_ubigeo failed: " + e.getMessage());
             }
         }
+        // fallback to direct UPDATE
+        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(upd)) {
+            ps.setString(1, u.getDepartamento());
+            ps.setString(2, u.getProvincia());
+            ps.setString(3, u.getDistrito());
+            ps.setString(4, u.getCodigo());
+            boolean cambiado = ps.executeUpdate() > 0;
+            if (cambiado) CacheReferencias.invalidar(CacheReferencias.Tipo.UBIGEO);
+            return cambiado;
+        } catch (SQLException ex2) {
+            System.err.println("Fallback UPDATE ubigeo failed: " + ex2.getMessage());
+            return false;
+        }
     }
 
     public boolean eliminar(String codigo) {
         String call = "CALL sp_eliminar_ubigeo(?)";
         String del = "DELETE FROM ubigeo WHERE codigo_ubigeo = ?";
-        try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
-            cs.setString(1, codigo);
-            cs.execute();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("sp_eliminar_ubigeo failed: " + e.getMessage());
-            // fallback to direct DELETE
-            try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(del)) {
-                ps.setString(1, codigo);
-                return ps.executeUpdate() > 0;
-            } catch (SQLException ex2) {
-                System.err.println("Fallback DELETE ubigeo failed: " + ex2.getMessage());
-                return false;
+        if (CatalogoBD.hayProcedimiento("sp_eliminar_ubigeo")) {
+            try (Connection cn = Conexion.getConnection(); CallableStatement cs = cn.prepareCall(call)) {
+                cs.setString(1, codigo);
+                cs.execute();
+                CacheReferencias.invalidar(CacheReferencias.Tipo.UBIGEO);
+                return true;
+            } catch (SQLException e) {
+                System.err.println("sp_eliminar_ubigeo failed: " + e.getMessage());
             }
         }
+        // fallback to direct DELETE
+        try (Connection cn2 = Conexion.getConnection(); PreparedStatement ps = cn2.prepareStatement(del)) {
+            ps.setString(1, codigo);
+            boolean cambiado = ps.executeUpdate() > 0;
+            if (cambiado) CacheReferencias.invalidar(CacheReferencias.Tipo.UBIGEO);
+            return cambiado;
+        } catch (SQLException ex2) {
+            System.err.println("Fallback DELETE ubigeo failed: " + ex2.getMessage());
+            return false;
+        }
     }
 
     public List<Ubigeo> listarTodos() {
+        try {
+            return leerTodos();
+        } catch (SQLException e) {
+            System.out.println("Error listar ubigeos: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // Como listarTodos pero propaga el error: CacheReferencias distingue "sin filas" de "no se pudo leer"
+    List<Ubigeo> leerTodos() throws SQLException {
         List<Ubigeo> lista = new ArrayList<>();
         String fnSql = "SELECT * FROM sp_listar_ubigeos()";
         String sqlFallback = "SELECT codigo_ubigeo, departamento, provincia, distrito FROM ubigeo ORDER BY departamento, provincia, distrito";
         try (Connection cn = Conexion.getConnection()) {
-            try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
-                boolean hasCodigo = true;
-                try { rs.findColumn("codigo_ubigeo"); } catch (SQLException ex) { hasCodigo = false; }
-                if (hasCodigo) {
+            if (CatalogoBD.funcionDevuelve("sp_listar_ubigeos", "codigo_ubigeo")) {
+                try (PreparedStatement ps = cn.prepareStatement(fnSql); ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
                         lista.add(new Ubigeo(
                                 rs.getString("codigo_ubigeo"),
@@ -104,9 +127,10 @@ public class UbigeoDAO {
                         ));
                     }
                     return lista;
+                } catch (SQLException exFn) {
+                    // fallback
+                    lista.clear();
                 }
-            } catch (SQLException exFn) {
-                // fallback
             }
 
             try (PreparedStatement ps2 = cn.prepareStatement(sqlFallback); ResultSet rs2 = ps2.executeQuery()) {
@@ -118,11 +142,7 @@ public class UbigeoDAO {
                             rs2.getString("distrito")
                     ));
                 }
-            } catch (SQLException e) {
-                System.out.println("Error listar ubigeos (fallback): " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.out.println("Error obtener conexión listar ubigeos: " + e.getMessage());
         }
         return lista;
     }
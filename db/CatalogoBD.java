@@ -0,0 +1,188 @@
+package db;
+
+/*
+ * CatalogoBD.java
+ * Registro de capacidades del esquema: qué procedimientos, funciones y columnas
+ * existen en la base conectada. Se carga una sola vez (consultando `pg_proc` e
+ * `information_schema.columns`) y los DAOs lo consultan para elegir directamente
+ * el camino que funciona (SP o SQL directo) en lugar de provocar un error y
+ * reintentar con otra conexión.
+ *
+ * Si el catálogo no se pudo leer, todas las consultas responden "sí" para que
+ * los DAOs conserven su comportamiento anterior (intentar el SP y caer al SQL).
+ * Tras crear o reparar el esquema (SqlBootstrapper) debe llamarse a refrescar().
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public class CatalogoBD {
+
+    private static final String SQL_RUTINAS =
+            "SELECT p.proname, p.prokind::text AS kind, p.pronargs, " +
+            "       (SELECT string_agg(a.nombre, ',') " +
+            "          FROM unnest(p.proargnames, p.proargmodes::text[]) AS a(nombre, modo) " +
+            "         WHERE a.modo IN ('o', 't', 'b')) AS salida, " +
+            "       (SELECT c.relname FROM pg_type t JOIN pg_class c ON c.oid = t.typrelid " +
+            "         WHERE t.oid = p.prorettype) AS tabla_retorno " +
+            "FROM pg_proc p JOIN pg_namespace n ON n.oid = p.pronamespace " +
+            "WHERE n.nspname = ANY (current_schemas(false))";
+
+    private static final String SQL_COLUMNAS =
+            "SELECT table_name, column_name FROM information_schema.columns " +
+            "WHERE table_schema = ANY (current_schemas(false))";
+
+    /** Instantánea inmutable del catálogo; se reemplaza completa en cada refresco. */
+    private static final class Snapshot {
+        final Set<String> procedimientos;
+        final Set<String> funciones;
+        // "nombre/número de argumentos de entrada" de cada función (distingue sobrecargas)
+        final Set<String> firmasFunciones;
+        final Map<String, Set<String>> salidaFunciones;
+        final Map<String, Set<String>> columnasPorTabla;
+
+        Snapshot(Set<String> procedimientos, Set<String> funciones, Set<String> firmasFunciones,
+                 Map<String, Set<String>> salidaFunciones, Map<String, Set<String>> columnasPorTabla) {
+            this.procedimientos = procedimientos;
+            this.funciones = funciones;
+            this.firmasFunciones = firmasFunciones;
+            this.salidaFunciones = salidaFunciones;
+            this.columnasPorTabla = columnasPorTabla;
+        }
+    }
+
+    // null = no cargado todavía o la carga falló (modo "desconocido")
+    private static volatile Snapshot snapshot;
+    private static volatile boolean intentado = false;
+
+    private CatalogoBD() {}
+
+    /**
+     * Vuelve a leer el catálogo de la base. Usar tras ejecutar el bootstrap del esquema
+     * o cuando se sepa que se crearon/eliminaron procedimientos o columnas.
+     * Devuelve false si no se pudo leer (los DAOs siguen en modo "intentar y caer").
+     */
+    public static synchronized boolean refrescar() {
+        intentado = true;
+        Set<String> procs = new HashSet<>();
+        Set<String> funcs = new HashSet<>();
+        Set<String> firmas = new HashSet<>();
+        Map<String, Set<String>> salida = new HashMap<>();
+        Map<String, Set<String>> columnas = new HashMap<>();
+        Map<String, String> retornos = new HashMap<>();
+        try (Connection cn = Conexion.getConnection()) {
+            try (PreparedStatement ps = cn.prepareStatement(SQL_RUTINAS); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String nombre = norm(rs.getString("proname"));
+                    if ("p".equals(rs.getString("kind"))) procs.add(nombre);
+                    else {
+                        funcs.add(nombre);
+                        firmas.add(nombre + "/" + rs.getInt("pronargs"));
+                    }
+                    String cols = rs.getString("salida");
+                    if (cols != null) {
+                        Set<String> set = salida.computeIfAbsent(nombre, k -> new HashSet<>());
+                        for (String c : cols.split(",")) set.add(norm(c));
+                    }
+                    String tablaRet = rs.getString("tabla_retorno");
+                    if (tablaRet != null) retornos.put(nombre, norm(tablaRet));
+                }
+            }
+            try (PreparedStatement ps = cn.prepareStatement(SQL_COLUMNAS); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    columnas.computeIfAbsent(norm(rs.getString("table_name")), k -> new HashSet<>())
+                            .add(norm(rs.getString("column_name")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("CatalogoBD: no se pudo leer el catálogo, se usarán fallbacks por excepción: " + e.getMessage());
+            snapshot = null;
+            return false;
+        }
+        // Funciones que devuelven SETOF <tabla>: sus columnas son las de la tabla
+        for (Map.Entry<String, String> e : retornos.entrySet()) {
+            Set<String> cols = columnas.get(e.getValue());
+            if (cols != null) salida.computeIfAbsent(e.getKey(), k -> new HashSet<>()).addAll(cols);
+        }
+        snapshot = new Snapshot(Collections.unmodifiableSet(procs), Collections.unmodifiableSet(funcs),
+                Collections.unmodifiableSet(firmas),
+                Collections.unmodifiableMap(salida), Collections.unmodifiableMap(columnas));
+        System.out.println(String.format("CatalogoBD: %d procedimientos, %d funciones, %d tablas/vistas",
+                procs.size(), funcs.size(), columnas.size()));
+        return true;
+    }
+
+    /** Indica si el catálogo está cargado (si no, todas las consultas devuelven true). */
+    public static boolean estaCargado() {
+        return actual() != null;
+    }
+
+    /** ¿Existe un procedimiento (CREATE PROCEDURE) con ese nombre? Se invoca con CALL. */
+    public static boolean hayProcedimiento(String nombre) {
+        Snapshot s = actual();
+        return s == null || s.procedimientos.contains(norm(nombre));
+    }
+
+    /** ¿Existe una función con ese nombre? Se invoca con SELECT. */
+    public static boolean hayFuncion(String nombre) {
+        Snapshot s = actual();
+        return s == null || s.funciones.contains(norm(nombre));
+    }
+
+    /** ¿Existe una función con ese nombre y ese número de argumentos de entrada? Distingue sobrecargas. */
+    public static boolean hayFuncion(String nombre, int numArgs) {
+        Snapshot s = actual();
+        return s == null || s.firmasFunciones.contains(norm(nombre) + "/" + numArgs);
+    }
+
+    /**
+     * ¿Existe la función y su resultado (RETURNS TABLE / OUT) incluye todas las columnas indicadas?
+     * Sustituye las comprobaciones con rs.findColumn tras ejecutar la función.
+     */
+    public static boolean funcionDevuelve(String nombre, String... columnas) {
+        Snapshot s = actual();
+        if (s == null) return true;
+        String fn = norm(nombre);
+        if (!s.funciones.contains(fn)) return false;
+        Set<String> salida = s.salidaFunciones.get(fn);
+        if (salida == null) return columnas.length == 0;
+        for (String c : columnas) if (!salida.contains(norm(c))) return false;
+        return true;
+    }
+
+    /** ¿Existe la tabla (o vista)? */
+    public static boolean hayTabla(String tabla) {
+        Snapshot s = actual();
+        return s == null || s.columnasPorTabla.containsKey(norm(tabla));
+    }
+
+    /** ¿Existe la columna en la tabla (o vista)? */
+    public static boolean hayColumna(String tabla, String columna) {
+        Snapshot s = actual();
+        if (s == null) return true;
+        Set<String> cols = s.columnasPorTabla.get(norm(tabla));
+        return cols != null && cols.contains(norm(columna));
+    }
+
+    // Carga perezosa: el primer acceso lee el catálogo; si falla no se reintenta hasta refrescar()
+    private static Snapshot actual() {
+        Snapshot s = snapshot;
+        if (s == null && !intentado) {
+            refrescar();
+            s = snapshot;
+        }
+        return s;
+    }
+
+    private static String norm(String s) {
+        return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+}
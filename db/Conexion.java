@@ -18,6 +18,18 @@ public class Conexion {
     private static String USER = DEFAULT_USER;
     private static String PASS = DEFAULT_PASS;
 
+    // Pool de conexiones: tamaño mínimo (precalentado), máximo y espera máxima al pedir una conexión.
+    // Se configuran igual que la URL: -Ddb.pool.min / DB_POOL_MIN / db.pool.min en db.properties, etc.
+    private static final int DEFAULT_POOL_MIN = 2;
+    private static final int DEFAULT_POOL_MAX = 10;
+    private static final long DEFAULT_POOL_TIMEOUT_MS = 10_000;
+
+    private static int POOL_MIN = DEFAULT_POOL_MIN;
+    private static int POOL_MAX = DEFAULT_POOL_MAX;
+    private static long POOL_TIMEOUT_MS = DEFAULT_POOL_TIMEOUT_MS;
+
+    private static final PoolConexiones POOL;
+
     static {
         try {
             Class.forName("org.postgresql.Driver"); // Driver JDBC de PostgreSQL
@@ -25,6 +37,15 @@ public class Conexion {
             System.err.println("No se pudo cargar el driver de PostgreSQL: " + e.getMessage());
         }
 
+        Properties fileProps = new Properties();
+        boolean fileFound = false;
+        try (FileInputStream fis = new FileInputStream("db.properties")) {
+            fileProps.load(fis);
+            fileFound = true;
+        } catch (IOException ignored) {
+            // sin db.properties: se usan system properties, variables de entorno o valores por defecto
+        }
+
         // 1) System properties (e.g. -Ddb.url=..)
         String pUrl = System.getProperty("db.url");
         String pUser = System.getProperty("db.user");
@@ -44,36 +65,103 @@ public class Conexion {
                 System.out.println("Conexion: usando configuración desde variables de entorno");
             } else {
                 // properties file
-                Properties props = new Properties();
-                try (FileInputStream fis = new FileInputStream("db.properties")) {
-                    props.load(fis);
-                    String fUrl = props.getProperty("db.url");
-                    String fUser = props.getProperty("db.user");
-                    String fPass = props.getProperty("db.pass");
+                if (fileFound) {
+                    String fUrl = fileProps.getProperty("db.url");
+                    String fUser = fileProps.getProperty("db.user");
+                    String fPass = fileProps.getProperty("db.pass");
                     if (isValid(fUrl) && isValid(fUser)) {
                         URL = fUrl; USER = fUser; PASS = fPass == null ? "" : fPass;
                         System.out.println("Conexion: usando configuración desde db.properties");
                     } else {
                         System.out.println("Conexion: usando valores por defecto (comprueba URL/usuario/clave si no funciona)");
                     }
-                } catch (IOException ignored) {
+                } else {
                     System.out.println("Conexion: usando valores por defecto (db.properties no encontrada)");
                 }
             }
         }
+
+        // pgjdbc reescribe los executeBatch() de INSERT en INSERT multi-fila (emisión masiva de guías)
+        URL = conParametroUrl(URL, "reWriteBatchedInserts", "true");
+
+        // 2) Parámetros del pool (cada clave por separado: system property > env var > db.properties > defecto)
+        POOL_MIN = (int) readLong("db.pool.min", "DB_POOL_MIN", fileProps, DEFAULT_POOL_MIN);
+        POOL_MAX = (int) readLong("db.pool.max", "DB_POOL_MAX", fileProps, DEFAULT_POOL_MAX);
+        POOL_TIMEOUT_MS = readLong("db.pool.timeout", "DB_POOL_TIMEOUT", fileProps, DEFAULT_POOL_TIMEOUT_MS);
+        if (POOL_MAX < 1) POOL_MAX = 1;
+        if (POOL_MIN > POOL_MAX) POOL_MIN = POOL_MAX;
+        POOL = new PoolConexiones(URL, USER, PASS, POOL_MIN, POOL_MAX, POOL_TIMEOUT_MS);
+        System.out.println(String.format("Conexion: pool min=%d max=%d timeout=%dms", POOL_MIN, POOL_MAX, POOL_TIMEOUT_MS));
+        Runtime.getRuntime().addShutdownHook(new Thread(POOL::cerrar, "cierre-pool-db"));
+    }
+
+    private static long readLong(String sysKey, String envKey, Properties fileProps, long def) {
+        String v = System.getProperty(sysKey);
+        if (!isValid(v)) v = System.getenv(envKey);
+        if (!isValid(v)) v = fileProps.getProperty(sysKey);
+        if (!isValid(v)) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException ex) {
+            System.err.println("Conexion: valor inválido para " + sysKey + " (" + v + "), se usa " + def);
+            return def;
+        }
+    }
+
+    // Añade ?clave=valor a la URL JDBC salvo que ya venga configurado explícitamente
+    private static String conParametroUrl(String url, String clave, String valor) {
+        if (url == null || url.toLowerCase().contains(clave.toLowerCase() + "=")) return url;
+        return url + (url.contains("?") ? "&" : "?") + clave + "=" + valor;
     }
 
     private static boolean isValid(String s) {
         return s != null && !s.trim().isEmpty();
     }
 
+    /**
+     * Devuelve una conexión del pool. Al cerrarla (try-with-resources) vuelve al pool
+     * en lugar de cerrarse físicamente.
+     */
     public static Connection getConnection() throws SQLException {
         try {
-            return DriverManager.getConnection(URL, USER, PASS);
+            return POOL.obtener();
         } catch (SQLException ex) {
             // Mejor mensaje para ayudar al usuario a depurar
             String msg = String.format("Error conectando a DB. URL=%s user=%s : %s", URL, USER, ex.getMessage());
             throw new SQLException(msg, ex);
         }
     }
+
+    /**
+     * Abre una conexión física fuera del pool, para usos que la retienen indefinidamente
+     * (p.ej. LISTEN de notificaciones). Quien la abre es responsable de cerrarla.
+     */
+    public static Connection abrirDedicada() throws SQLException {
+        return DriverManager.getConnection(URL, USER, PASS);
+    }
+
+    /**
+     * Abre las conexiones mínimas del pool para que las primeras consultas no paguen
+     * el coste de conexión/autenticación. Devuelve false si la base no está disponible.
+     */
+    public static boolean precalentar() {
+        try {
+            int n = POOL.precalentar();
+            System.out.println("Conexion: pool precalentado con " + n + " conexiones");
+            return true;
+        } catch (SQLException ex) {
+            System.err.println("Conexion: no se pudo precalentar el pool: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /** Devuelve una instantánea de las estadísticas del pool de conexiones. */
+    public static PoolConexiones.Estadisticas getEstadisticasPool() {
+        return POOL.getEstadisticas();
+    }
+
+    /** Cierra las conexiones ociosas del pool (se invoca también al terminar la JVM). */
+    public static void cerrarPool() {
+        POOL.cerrar();
+    }
 }
@@ -0,0 +1,266 @@
+package db;
+
+/*
+ * PoolConexiones.java
+ * Pool acotado de conexiones JDBC usado por `Conexion`.
+ * - Mantiene un mínimo de conexiones abiertas (precalentadas al iniciar).
+ * - Limita el número total de conexiones con un semáforo (máximo configurable).
+ * - Valida las conexiones ociosas antes de entregarlas y descarta las rotas.
+ * - Entrega proxies cuyo close() devuelve la conexión al pool en vez de cerrarla,
+ *   de modo que los `try (Connection cn = Conexion.getConnection())` existentes
+ *   siguen funcionando sin cambios.
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PoolConexiones {
+
+    // Conexiones ociosas más antiguas que esto se validan con isValid() antes de reutilizarse
+    private static final long VALIDAR_SI_OCIOSA_MS = 5_000;
+    private static final int VALIDACION_TIMEOUT_S = 2;
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final int min;
+    private final int max;
+    private final long timeoutMs;
+
+    private final LinkedBlockingDeque<Ociosa> ociosas = new LinkedBlockingDeque<>();
+    private final Semaphore permisos;
+    private final AtomicInteger abiertas = new AtomicInteger();
+    private volatile boolean cerrado = false;
+
+    // Estadísticas acumuladas
+    private final AtomicLong prestamos = new AtomicLong();
+    private final AtomicLong creadas = new AtomicLong();
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong esperaTotalNanos = new AtomicLong();
+
+    /** Conexión física ociosa junto con el instante en que volvió al pool. */
+    private static final class Ociosa {
+        final Connection fisica;
+        final long desde;
+        Ociosa(Connection fisica, long desde) { this.fisica = fisica; this.desde = desde; }
+    }
+
+    public PoolConexiones(String url, String user, String pass, int min, int max, long timeoutMs) {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.max = Math.max(1, max);
+        this.min = Math.max(0, Math.min(min, this.max));
+        this.timeoutMs = Math.max(0, timeoutMs);
+        this.permisos = new Semaphore(this.max, true);
+    }
+
+    /**
+     * Abre conexiones hasta alcanzar el mínimo configurado.
+     * Devuelve cuántas conexiones quedaron ociosas tras el precalentamiento.
+     */
+    public int precalentar() throws SQLException {
+        while (!cerrado && abiertas.get() < min) {
+            Connection c = abrirFisica();
+            ociosas.offerFirst(new Ociosa(c, System.currentTimeMillis()));
+        }
+        return ociosas.size();
+    }
+
+    /**
+     * Obtiene una conexión del pool (esperando hasta el timeout si todas están en uso).
+     * La conexión devuelta es un proxy: llamar a close() la regresa al pool.
+     */
+    public Connection obtener() throws SQLException {
+        if (cerrado) throw new SQLException("El pool de conexiones está cerrado");
+        long t0 = System.nanoTime();
+        boolean ok;
+        try {
+            ok = permisos.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión del pool", ie);
+        }
+        if (!ok) {
+            timeouts.incrementAndGet();
+            throw new SQLException(String.format("Timeout (%d ms) esperando una conexión del pool (max=%d)", timeoutMs, max));
+        }
+        try {
+            Connection fisica = tomarOciosaValida();
+            if (fisica == null) fisica = abrirFisica();
+            esperaTotalNanos.addAndGet(System.nanoTime() - t0);
+            prestamos.incrementAndGet();
+            return envolver(fisica);
+        } catch (SQLException | RuntimeException ex) {
+            permisos.release();
+            throw ex;
+        }
+    }
+
+    /** Cierra todas las conexiones ociosas y rechaza préstamos futuros. */
+    public void cerrar() {
+        cerrado = true;
+        Ociosa o;
+        while ((o = ociosas.pollFirst()) != null) descartar(o.fisica);
+    }
+
+    /** Devuelve un resumen de las estadísticas del pool (para logs o diagnóstico). */
+    public Estadisticas getEstadisticas() {
+        long n = prestamos.get();
+        double esperaMediaMs = n == 0 ? 0.0 : esperaTotalNanos.get() / 1_000_000.0 / n;
+        return new Estadisticas(min, max, abiertas.get(), ociosas.size(), max - permisos.availablePermits(),
+                permisos.getQueueLength(), n, creadas.get(), descartadas.get(), timeouts.get(), esperaMediaMs);
+    }
+
+    /** Instantánea inmutable de las métricas del pool. */
+    public static final class Estadisticas {
+        public final int minimo;
+        public final int maximo;
+        public final int abiertas;
+        public final int ociosas;
+        public final int enUso;
+        public final int enEspera;
+        public final long prestamos;
+        public final long creadas;
+        public final long descartadas;
+        public final long timeouts;
+        public final double esperaMediaMs;
+
+        Estadisticas(int minimo, int maximo, int abiertas, int ociosas, int enUso, int enEspera,
+                     long prestamos, long creadas, long descartadas, long timeouts, double esperaMediaMs) {
+            this.minimo = minimo;
+            this.maximo = maximo;
+            this.abiertas = abiertas;
+            this.ociosas = ociosas;
+            this.enUso = enUso;
+            this.enEspera = enEspera;
+            this.prestamos = prestamos;
+            this.creadas = creadas;
+            this.descartadas = descartadas;
+            this.timeouts = timeouts;
+            this.esperaMediaMs = esperaMediaMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Pool[min=%d max=%d abiertas=%d ociosas=%d enUso=%d enEspera=%d prestamos=%d creadas=%d descartadas=%d timeouts=%d esperaMedia=%.2fms]",
+                    minimo, maximo, abiertas, ociosas, enUso, enEspera, prestamos, creadas, descartadas, timeouts, esperaMediaMs);
+        }
+    }
+
+    // ---- internos ----
+
+    private Connection abrirFisica() throws SQLException {
+        Connection c = DriverManager.getConnection(url, user, pass);
+        abiertas.incrementAndGet();
+        creadas.incrementAndGet();
+        return c;
+    }
+
+    // Toma la conexión ociosa más reciente (LIFO) y la valida si lleva tiempo sin usarse
+    private Connection tomarOciosaValida() {
+        Ociosa o;
+        while ((o = ociosas.pollFirst()) != null) {
+            boolean valida;
+            try {
+                valida = !o.fisica.isClosed()
+                        && (System.currentTimeMillis() - o.desde < VALIDAR_SI_OCIOSA_MS || o.fisica.isValid(VALIDACION_TIMEOUT_S));
+            } catch (SQLException ex) {
+                valida = false;
+            }
+            if (valida) return o.fisica;
+            descartar(o.fisica);
+        }
+        return null;
+    }
+
+    private void descartar(Connection fisica) {
+        abiertas.decrementAndGet();
+        descartadas.incrementAndGet();
+        try { fisica.close(); } catch (SQLException ignored) {}
+    }
+
+    // Devuelve la conexión física al pool restaurando el estado por defecto
+    private void devolver(Connection fisica) {
+        try {
+            boolean reutilizable = !cerrado && !fisica.isClosed();
+            if (reutilizable) {
+                try {
+                    if (!fisica.getAutoCommit()) {
+                        fisica.rollback();
+                        fisica.setAutoCommit(true);
+                    }
+                    if (fisica.isReadOnly()) fisica.setReadOnly(false);
+                    fisica.clearWarnings();
+                } catch (SQLException ex) {
+                    reutilizable = false;
+                }
+            }
+            if (reutilizable) ociosas.offerFirst(new Ociosa(fisica, System.currentTimeMillis()));
+            else descartar(fisica);
+        } catch (SQLException ex) {
+            descartar(fisica);
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private Connection envolver(Connection fisica) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Prestamo(fisica));
+    }
+
+    /** Manejador del proxy: intercepta close()/isClosed() y delega el resto a la conexión física. */
+    private final class Prestamo implements InvocationHandler {
+        private Connection fisica;
+
+        Prestamo(Connection fisica) { this.fisica = fisica; }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            String nombre = m.getName();
+            switch (nombre) {
+                case "close" -> {
+                    Connection c;
+                    synchronized (this) { c = fisica; fisica = null; }
+                    if (c != null) devolver(c);
+                    return null;
+                }
+                case "isClosed" -> {
+                    Connection c = fisica;
+                    return c == null || c.isClosed();
+                }
+                case "equals" -> { return proxy == args[0]; }
+                case "hashCode" -> { return System.identityHashCode(proxy); }
+                case "toString" -> { return "Conexion del pool -> " + fisica; }
+                default -> {
+                    Connection c = activa();
+                    try {
+                        return m.invoke(c, args);
+                    } catch (InvocationTargetException ite) {
+                        throw ite.getCause();
+                    }
+                }
+            }
+        }
+
+        private Connection activa() throws SQLException {
+            Connection c = fisica;
+            if (c == null) throw new SQLException("La conexión ya fue devuelta al pool");
+            return c;
+        }
+    }
+}
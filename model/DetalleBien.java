@@ -0,0 +1,44 @@
+/*
+ * DetalleBien.java
+ * Modelo que representa una línea de la tabla `detalle_bienes`: un bien
+ * transportable incluido en una guía, con su cantidad y peso total.
+ * Si el peso es null, la BD lo calcula a partir del peso unitario promedio.
+ */
+package model;
+
+import java.math.BigDecimal;
+
+public class DetalleBien {
+
+    private String codigoBien;
+    private BigDecimal cantidad;
+    private BigDecimal pesoTotal;
+
+    /** Constructor vacío. */
+    public DetalleBien() {}
+
+    /** Constructor completo de la línea de bienes. */
+    public DetalleBien(String codigoBien, BigDecimal cantidad, BigDecimal pesoTotal) {
+        this.codigoBien = codigoBien;
+        this.cantidad = cantidad;
+        this.pesoTotal = pesoTotal;
+    }
+
+    /** Código del bien transportable (FK a bien_transportable). */
+    public String getCodigoBien() { return codigoBien; }
+
+    /** Asigna el código del bien transportable. */
+    public void setCodigoBien(String codigoBien) { this.codigoBien = codigoBien; }
+
+    /** Cantidad transportada del bien. */
+    public BigDecimal getCantidad() { return cantidad; }
+
+    /** Asigna la cantidad transportada. */
+    public void setCantidad(BigDecimal cantidad) { this.cantidad = cantidad; }
+
+    /** Peso total de la línea (null = calcularlo en la BD). */
+    public BigDecimal getPesoTotal() { return pesoTotal; }
+
+    /** Asigna el peso total de la línea. */
+    public void setPesoTotal(BigDecimal pesoTotal) { this.pesoTotal = pesoTotal; }
+}
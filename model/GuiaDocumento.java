@@ -0,0 +1,96 @@
+/*
+ * GuiaDocumento.java
+ * Modelo de lectura con todo lo necesario para imprimir una guía de remisión:
+ * la cabecera, los nombres de remitente/destinatario, los datos del traslado
+ * (vehículo y conductor) y las líneas del detalle. Lo carga `GuiaDocumentoDAO`
+ * con una sola consulta y lo consume la exportación a PDF.
+ */
+package model;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GuiaDocumento {
+
+    private CabeceraGuia cabecera;
+    private String remitenteNombre;
+    private String destinatarioNombre;
+    private String motivoTraslado;
+    private String modalidadTransporte;
+    private String placa;
+    private String autorizacionVehiculo;
+    private String licencia;
+    private String conductorNombre;
+    private Timestamp fechaInicioTraslado;
+    private List<DetalleGuia> items = new ArrayList<>();
+
+    /** Constructor vacío. */
+    public GuiaDocumento() {}
+
+    /** Cabecera de la guía (incluye los datos desnormalizados de cuerpo_guia). */
+    public CabeceraGuia getCabecera() { return cabecera; }
+
+    /** Asigna la cabecera de la guía. */
+    public void setCabecera(CabeceraGuia cabecera) { this.cabecera = cabecera; }
+
+    /** Nombre de la empresa remitente (null si el remitente no existe). */
+    public String getRemitenteNombre() { return remitenteNombre; }
+
+    /** Asigna el nombre de la empresa remitente. */
+    public void setRemitenteNombre(String remitenteNombre) { this.remitenteNombre = remitenteNombre; }
+
+    /** Nombre del destinatario (null si no está registrado). */
+    public String getDestinatarioNombre() { return destinatarioNombre; }
+
+    /** Asigna el nombre del destinatario. */
+    public void setDestinatarioNombre(String destinatarioNombre) { this.destinatarioNombre = destinatarioNombre; }
+
+    /** Motivo del traslado declarado en cuerpo_guia. */
+    public String getMotivoTraslado() { return motivoTraslado; }
+
+    /** Asigna el motivo del traslado. */
+    public void setMotivoTraslado(String motivoTraslado) { this.motivoTraslado = motivoTraslado; }
+
+    /** Modalidad de transporte declarada en cuerpo_guia. */
+    public String getModalidadTransporte() { return modalidadTransporte; }
+
+    /** Asigna la modalidad de transporte. */
+    public void setModalidadTransporte(String modalidadTransporte) { this.modalidadTransporte = modalidadTransporte; }
+
+    /** Placa del vehículo del traslado (null si la guía no tiene traslado). */
+    public String getPlaca() { return placa; }
+
+    /** Asigna la placa del vehículo. */
+    public void setPlaca(String placa) { this.placa = placa; }
+
+    /** Número de autorización MTC del vehículo. */
+    public String getAutorizacionVehiculo() { return autorizacionVehiculo; }
+
+    /** Asigna el número de autorización MTC del vehículo. */
+    public void setAutorizacionVehiculo(String autorizacionVehiculo) { this.autorizacionVehiculo = autorizacionVehiculo; }
+
+    /** Licencia del conductor del traslado. */
+    public String getLicencia() { return licencia; }
+
+    /** Asigna la licencia del conductor. */
+    public void setLicencia(String licencia) { this.licencia = licencia; }
+
+    /** Nombre del conductor del traslado. */
+    public String getConductorNombre() { return conductorNombre; }
+
+    /** Asigna el nombre del conductor. */
+    public void setConductorNombre(String conductorNombre) { this.conductorNombre = conductorNombre; }
+
+    /** Fecha y hora de inicio del traslado. */
+    public Timestamp getFechaInicioTraslado() { return fechaInicioTraslado; }
+
+    /** Asigna la fecha y hora de inicio del traslado. */
+    public void setFechaInicioTraslado(Timestamp fechaInicioTraslado) { this.fechaInicioTraslado = fechaInicioTraslado; }
+
+    /** Líneas del detalle en orden de ítem (nunca null). */
+    public List<DetalleGuia> getItems() { return items; }
+
+    /** Asigna las líneas del detalle. */
+    public void setItems(List<DetalleGuia> items) { this.items = items == null ? new ArrayList<>() : items; }
+}
@@ -8,9 +8,27 @@ DROP TRIGGER IF EXISTS trg_before_delete_producto ON producto;
 DROP TRIGGER IF EXISTS trg_before_update_estado_traslado ON traslado;
 DROP TRIGGER IF EXISTS trg_detalle_orden_bi ON detalle_orden;
 DROP TRIGGER IF EXISTS trg_detalle_orden_bu ON detalle_orden;
+DROP TRIGGER IF EXISTS trg_detalle_orden_resumen ON detalle_orden;
+DROP TRIGGER IF EXISTS trg_orden_resumen_bd ON orden_de_pago;
+DROP TRIGGER IF EXISTS trg_orden_resumen_au ON orden_de_pago;
+DROP TRIGGER IF EXISTS trg_traslado_resumen ON traslado;
+DROP TRIGGER IF EXISTS trg_cabecera_guia_clave_ai ON cabecera_guia;
+DROP TRIGGER IF EXISTS trg_cabecera_guia_clave_au ON cabecera_guia;
+DROP TRIGGER IF EXISTS trg_cabecera_guia_clave_ad ON cabecera_guia;
+DROP TRIGGER IF EXISTS trg_traslado_clave_ai ON traslado;
+DROP TRIGGER IF EXISTS trg_traslado_clave_au ON traslado;
+DROP TRIGGER IF EXISTS trg_traslado_clave_ad ON traslado;
 DROP TRIGGER IF EXISTS trg_detalle_bienes_bi ON detalle_bienes;
 DROP TRIGGER IF EXISTS trg_traslado_ai ON traslado;
 DROP TRIGGER IF EXISTS trg_traslado_au ON traslado;
+DROP TRIGGER IF EXISTS trg_notificar_destinatario ON destinatario;
+DROP TRIGGER IF EXISTS trg_notificar_remitente ON remitente;
+DROP TRIGGER IF EXISTS trg_notificar_producto ON producto;
+DROP TRIGGER IF EXISTS trg_notificar_ubigeo ON ubigeo;
+DROP TRIGGER IF EXISTS trg_notificar_vehiculo ON vehiculo;
+DROP TRIGGER IF EXISTS trg_notificar_conductor ON conductor;
+DROP TRIGGER IF EXISTS trg_notificar_cabecera_guia ON cabecera_guia;
+DROP TRIGGER IF EXISTS trg_notificar_traslado ON traslado;
 
 -- Drop trigger functions
 DROP FUNCTION IF EXISTS f_trg_before_delete_destinatario();
@@ -19,8 +37,14 @@ DROP FUNCTION IF EXISTS f_trg_before_delete_producto();
 DROP FUNCTION IF EXISTS f_trg_before_update_estado_traslado();
 DROP FUNCTION IF EXISTS f_trg_detalle_orden_bi();
 DROP FUNCTION IF EXISTS f_trg_detalle_orden_bu();
+DROP FUNCTION IF EXISTS f_trg_detalle_orden_resumen();
+DROP FUNCTION IF EXISTS f_trg_orden_resumen();
+DROP FUNCTION IF EXISTS f_trg_traslado_resumen();
+DROP FUNCTION IF EXISTS f_trg_cabecera_guia_clave();
+DROP FUNCTION IF EXISTS f_trg_traslado_clave();
 DROP FUNCTION IF EXISTS f_trg_detalle_bienes_bi();
 DROP FUNCTION IF EXISTS f_trg_traslado_sync_estado();
+DROP FUNCTION IF EXISTS f_trg_notificar_cambio();
 
 -- Drop procedures and functions (list is not exhaustive but covers the schema)
 -- Procedures
@@ -55,6 +79,7 @@ DROP PROCEDURE IF EXISTS sp_eliminar_traslado;
 DROP PROCEDURE IF EXISTS sp_actualizar_estado_traslado;
 DROP PROCEDURE IF EXISTS sp_confirmar_entrega;
 DROP PROCEDURE IF EXISTS sp_eliminar_detalle_por_orden(VARCHAR);
+DROP PROCEDURE IF EXISTS sp_refrescar_kpi_diario();
 
 -- Functions (reports and lists)
 DROP FUNCTION IF EXISTS sp_listar_destinatarios();
@@ -66,18 +91,50 @@ DROP FUNCTION IF EXISTS sp_listar_vehiculos();
 DROP FUNCTION IF EXISTS sp_listar_conductores();
 DROP FUNCTION IF EXISTS sp_listar_ordenes();
 DROP FUNCTION IF EXISTS sp_listar_guias();
+DROP FUNCTION IF EXISTS sp_listar_guias_pagina(DATE, VARCHAR, INTEGER);
+DROP FUNCTION IF EXISTS sp_emitir_guia_tx(VARCHAR, VARCHAR, VARCHAR, VARCHAR, CHAR, CHAR, VARCHAR, VARCHAR, VARCHAR, VARCHAR, VARCHAR, VARCHAR, NUMERIC, INTEGER, VARCHAR[], NUMERIC[], NUMERIC[], VARCHAR, VARCHAR, VARCHAR, TIMESTAMP, TIMESTAMP, VARCHAR, TEXT);
 DROP FUNCTION IF EXISTS sp_listar_traslados();
 DROP FUNCTION IF EXISTS sp_reporte_detalle_orden(VARCHAR);
 DROP FUNCTION IF EXISTS sp_reporte_guias_por_fecha_estado();
+DROP FUNCTION IF EXISTS sp_reporte_guias_por_fecha_estado(DATE, DATE);
 DROP FUNCTION IF EXISTS sp_reporte_productos_mas_vendidos();
+DROP FUNCTION IF EXISTS sp_reporte_productos_mas_vendidos(DATE, DATE);
 DROP FUNCTION IF EXISTS sp_reporte_utilizacion_vehiculos();
+DROP FUNCTION IF EXISTS sp_reporte_utilizacion_vehiculos(DATE, DATE);
 DROP FUNCTION IF EXISTS sp_reporte_licencias_por_vencer(INT);
 DROP FUNCTION IF EXISTS sp_reporte_guias_sin_traslado();
 DROP FUNCTION IF EXISTS sp_reporte_ordenes_por_cliente();
 DROP FUNCTION IF EXISTS sp_reporte_bultos_por_cliente_90d();
 DROP FUNCTION IF EXISTS sp_reporte_kpi_guias_diario();
+DROP FUNCTION IF EXISTS sp_reporte_kpi_guias_diario(DATE, DATE);
 DROP FUNCTION IF EXISTS sp_reporte_ingresos_por_fecha();
+DROP FUNCTION IF EXISTS sp_reporte_ingresos_por_fecha(DATE, DATE);
 DROP FUNCTION IF EXISTS sp_reporte_historial_estados_traslado();
+DROP FUNCTION IF EXISTS f_kpi_corte(VARCHAR);
+DROP FUNCTION IF EXISTS sp_recalcular_resumenes();
+DROP FUNCTION IF EXISTS f_resumen_ventas_total(VARCHAR, NUMERIC, BIGINT);
+DROP FUNCTION IF EXISTS f_resumen_ventas_dia(DATE, VARCHAR, NUMERIC, BIGINT);
+DROP FUNCTION IF EXISTS f_resumen_viajes(VARCHAR, DATE, BIGINT);
+DROP FUNCTION IF EXISTS sp_retirar_particion(VARCHAR, DATE, BOOLEAN);
+DROP FUNCTION IF EXISTS sp_mantener_particiones(INTEGER);
+DROP FUNCTION IF EXISTS f_crear_particiones(VARCHAR, DATE, DATE);
+DROP FUNCTION IF EXISTS sp_buscar_destinatarios(VARCHAR, INTEGER);
+DROP FUNCTION IF EXISTS sp_buscar_remitentes(VARCHAR, INTEGER);
+DROP FUNCTION IF EXISTS sp_buscar_productos(VARCHAR, INTEGER);
+DROP FUNCTION IF EXISTS f_prefijo_like(TEXT);
+-- CASCADE: the trigram indexes depend on this function
+DROP FUNCTION IF EXISTS f_normalizar_busqueda(TEXT) CASCADE;
+
+-- Drop materialized aggregates of the reports
+DROP MATERIALIZED VIEW IF EXISTS mv_guias_por_fecha_estado;
+DROP MATERIALIZED VIEW IF EXISTS mv_kpi_guias_diario;
+DROP TABLE IF EXISTS kpi_refresco;
+
+-- Drop trigger-maintained report counters
+DROP TABLE IF EXISTS resumen_ventas_producto;
+DROP TABLE IF EXISTS resumen_ventas_producto_dia;
+DROP TABLE IF EXISTS resumen_viajes_vehiculo;
+DROP TABLE IF EXISTS resumen_viajes_vehiculo_dia;
 
 -- Drop audit tables (if any dependencies remain, CASCADE will remove them)
 DROP TABLE IF EXISTS traslado_log_estado CASCADE;
@@ -86,11 +143,14 @@ DROP TABLE IF EXISTS remitente_eliminado CASCADE;
 DROP TABLE IF EXISTS destinatario_eliminado CASCADE;
 
 -- Drop data/tables (drop in order to avoid FK issues)
+-- Partitioned tables drop their monthly partitions with them
 DROP TABLE IF EXISTS detalle_bienes CASCADE;
 DROP TABLE IF EXISTS bien_transportable CASCADE;
 DROP TABLE IF EXISTS cuerpo_guia CASCADE;
 DROP TABLE IF EXISTS cabecera_guia CASCADE;
+DROP TABLE IF EXISTS cabecera_guia_clave CASCADE;
 DROP TABLE IF EXISTS traslado CASCADE;
+DROP TABLE IF EXISTS traslado_clave CASCADE;
 DROP TABLE IF EXISTS detalle_orden CASCADE;
 DROP TABLE IF EXISTS orden_de_pago CASCADE;
 DROP TABLE IF EXISTS producto CASCADE;
@@ -14,6 +14,174 @@
 -- 1. TABLAS BASE
 -- =========================================================
 
+-- PARTICIONADO MENSUAL
+-- cabecera_guia (fecha_emision), traslado (fecha_inicio) y traslado_log_estado
+-- (fecha_cambio) están particionadas por rango mensual: los reportes y las
+-- purgas por fecha sólo leen los meses que tocan, cada mes tiene sus propios
+-- índices y VACUUM, y un mes viejo se retira sin reescribir nada con
+-- sp_retirar_particion(tabla, mes), que separa la partición y borra sus
+-- filas de las tablas de claves en la misma transacción. No usar
+-- ALTER TABLE ... DETACH PARTITION a mano: los triggers de sentencia que
+-- mantienen las tablas de claves no se disparan con DETACH, TRUNCATE ni con
+-- un DELETE sobre una partición, y las claves quedarían huérfanas. La forma
+-- CONCURRENTLY tampoco sirve: PostgreSQL la rechaza en tablas con partición
+-- por defecto, y las tres la tienen.
+-- Requiere PostgreSQL 13 o superior (triggers BEFORE en tablas particionadas).
+-- - Particiones <tabla>_pAAAAMM. La partición <tabla>_pdefault recibe las filas
+--   de meses sin partición, así que ningún INSERT falla por la fecha.
+-- - sp_mantener_particiones() crea el mes actual y los siguientes; la
+--   aplicación la llama a diario (dao.MantenimientoParticiones).
+-- - La clave primaria de una tabla particionada debe incluir la columna de
+--   partición: la unicidad de codigo_guia, cod_orden, codigo_traslado y
+--   traslado.codigo_guia, y el destino de las FKs hacia la guía, pasan a las
+--   tablas de claves cabecera_guia_clave / traslado_clave, mantenidas por
+--   triggers de sentencia. Escribir siempre en la tabla padre, no en una
+--   partición.
+-- - Migración: si las tablas existen sin particionar (bases creadas con una
+--   versión anterior de este script) se renombran aquí a <tabla>_sinpart, se
+--   crean las particionadas y los datos se copian después de crearlas (antes
+--   de los datos de ejemplo, que fallan por duplicados como en cualquier
+--   re-ejecución).
+
+-- Crea las particiones mensuales de p_tabla que cubren [p_desde, p_hasta];
+-- devuelve cuántas creó. Si la partición por defecto ya tiene filas de un mes,
+-- ese mes no se puede crear sin moverlas: se avisa y se sigue con el resto.
+-- SECURITY DEFINER: el usuario de la aplicación no es dueño de las tablas.
+CREATE OR REPLACE FUNCTION f_crear_particiones(
+  p_tabla VARCHAR,
+  p_desde DATE,
+  p_hasta DATE
+)
+RETURNS INTEGER
+LANGUAGE plpgsql
+SECURITY DEFINER SET search_path = public
+AS $$
+DECLARE
+  v_mes     DATE := date_trunc('month', p_desde)::date;
+  v_nombre  TEXT;
+  v_creadas INTEGER := 0;
+BEGIN
+  WHILE v_mes <= p_hasta LOOP
+    v_nombre := p_tabla || '_p' || to_char(v_mes, 'YYYYMM');
+    IF to_regclass(v_nombre) IS NULL THEN
+      BEGIN
+        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                       v_nombre, p_tabla, v_mes, (v_mes + INTERVAL '1 month')::date);
+        v_creadas := v_creadas + 1;
+      EXCEPTION
+        WHEN check_violation THEN
+          RAISE WARNING 'f_crear_particiones: la partición por defecto de % tiene filas de %; no se crea %',
+                        p_tabla, to_char(v_mes, 'YYYY-MM'), v_nombre;
+        WHEN duplicate_table THEN
+          NULL;  -- la creó otra sesión al mismo tiempo
+      END;
+    END IF;
+    v_mes := (v_mes + INTERVAL '1 month')::date;
+  END LOOP;
+  RETURN v_creadas;
+END;
+$$;
+
+-- Mes actual y los p_meses siguientes de las tres tablas. Idempotente.
+CREATE OR REPLACE FUNCTION sp_mantener_particiones(p_meses INTEGER DEFAULT 3)
+RETURNS INTEGER
+LANGUAGE plpgsql
+SECURITY DEFINER SET search_path = public
+AS $$
+DECLARE
+  v_tabla   TEXT;
+  v_hasta   DATE := (date_trunc('month', CURRENT_DATE)
+                     + make_interval(months => GREATEST(p_meses, 0)))::date;
+  v_creadas INTEGER := 0;
+BEGIN
+  FOREACH v_tabla IN ARRAY ARRAY['cabecera_guia', 'traslado', 'traslado_log_estado'] LOOP
+    IF to_regclass(v_tabla) IS NOT NULL THEN
+      v_creadas := v_creadas + f_crear_particiones(v_tabla, CURRENT_DATE, v_hasta);
+    END IF;
+  END LOOP;
+  RETURN v_creadas;
+END;
+$$;
+
+-- Retira (DETACH, sin CONCURRENTLY) la partición mensual de p_tabla que
+-- contiene p_mes y borra sus filas de cabecera_guia_clave / traslado_clave en
+-- la misma transacción; la partición queda como tabla suelta para archivarla
+-- o borrarla. Devuelve cuántas claves borró.
+-- - Las guías con traslados vigentes no se retiran: primero el mes de
+--   traslado (falla por la FK y no se toca nada).
+-- - cuerpo_guia y detalle_bienes de las guías retiradas se borran sólo con
+--   p_borrar_dependientes; si no, falla por la FK y no se toca nada.
+-- - La partición por defecto no se retira con esta función.
+CREATE OR REPLACE FUNCTION sp_retirar_particion(
+  p_tabla                VARCHAR,
+  p_mes                  DATE,
+  p_borrar_dependientes  BOOLEAN DEFAULT false
+)
+RETURNS INTEGER
+LANGUAGE plpgsql
+SECURITY DEFINER SET search_path = public
+AS $$
+DECLARE
+  v_particion TEXT := p_tabla || '_p' || to_char(p_mes, 'YYYYMM');
+  v_borradas  INTEGER := 0;
+BEGIN
+  IF p_tabla NOT IN ('cabecera_guia', 'traslado', 'traslado_log_estado') THEN
+    RAISE EXCEPTION 'sp_retirar_particion: % no es una tabla particionada por mes', p_tabla;
+  END IF;
+  IF to_regclass(v_particion) IS NULL
+     OR NOT EXISTS (SELECT 1 FROM pg_inherits i
+                     WHERE i.inhrelid = to_regclass(v_particion)
+                       AND i.inhparent = to_regclass(p_tabla)) THEN
+    RAISE EXCEPTION 'sp_retirar_particion: % no es una partición de %', v_particion, p_tabla;
+  END IF;
+
+  EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', p_tabla, v_particion);
+
+  IF p_tabla = 'cabecera_guia' THEN
+    IF p_borrar_dependientes THEN
+      EXECUTE format('DELETE FROM detalle_bienes d USING %I p WHERE d.codigo_guia = p.codigo_guia', v_particion);
+      EXECUTE format('DELETE FROM cuerpo_guia c USING %I p WHERE c.codigo_guia = p.codigo_guia', v_particion);
+    END IF;
+    EXECUTE format('DELETE FROM cabecera_guia_clave k USING %I p WHERE k.codigo_guia = p.codigo_guia', v_particion);
+    GET DIAGNOSTICS v_borradas = ROW_COUNT;
+  ELSIF p_tabla = 'traslado' THEN
+    EXECUTE format('DELETE FROM traslado_clave k USING %I p WHERE k.codigo_traslado = p.codigo_traslado', v_particion);
+    GET DIAGNOSTICS v_borradas = ROW_COUNT;
+  END IF;
+  RAISE NOTICE 'sp_retirar_particion: % separada de % (% claves borradas)', v_particion, p_tabla, v_borradas;
+  RETURN v_borradas;
+END;
+$$;
+
+-- Migración (1/2): aparta las tablas sin particionar. Los nombres de índices y
+-- secuencias son únicos en el esquema, así que también se renombran.
+DO $$
+DECLARE
+  v_tabla TEXT;
+  r       RECORD;
+BEGIN
+  FOREACH v_tabla IN ARRAY ARRAY['cabecera_guia', 'traslado', 'traslado_log_estado'] LOOP
+    CONTINUE WHEN to_regclass(v_tabla) IS NULL
+              OR (SELECT c.relkind FROM pg_class c WHERE c.oid = to_regclass(v_tabla)) <> 'r';
+    FOR r IN
+      SELECT 'INDEX' AS tipo, c.relname
+        FROM pg_index i
+        JOIN pg_class c ON c.oid = i.indexrelid
+       WHERE i.indrelid = to_regclass(v_tabla)
+      UNION ALL
+      SELECT 'SEQUENCE', s.relname
+        FROM pg_depend d
+        JOIN pg_class s ON s.oid = d.objid AND s.relkind = 'S'
+       WHERE d.refobjid = to_regclass(v_tabla)
+         AND d.deptype IN ('a', 'i')
+    LOOP
+      EXECUTE format('ALTER %s %I RENAME TO %I', r.tipo, r.relname, r.relname || '_sinpart');
+    END LOOP;
+    EXECUTE format('ALTER TABLE %I RENAME TO %I', v_tabla, v_tabla || '_sinpart');
+    RAISE NOTICE 'Migración: % renombrada a %_sinpart', v_tabla, v_tabla;
+  END LOOP;
+END $$;
+
 -- UBIGEO
 CREATE TABLE IF NOT EXISTS ubigeo (
   codigo_ubigeo VARCHAR(6) PRIMARY KEY,
@@ -40,7 +208,8 @@ CREATE TABLE IF NOT EXISTS destinatario (
   numero_telefono VARCHAR(20),
   calle_direccion VARCHAR(120) NOT NULL,
   codigo_ubigeo   VARCHAR(6) NOT NULL REFERENCES ubigeo(codigo_ubigeo),
-  gmail           VARCHAR(120)
+  gmail           VARCHAR(120),
+  eliminado       boolean NOT NULL DEFAULT false
 );
 
 -- ORDEN_DE_PAGO
@@ -51,7 +220,10 @@ CREATE TABLE IF NOT EXISTS orden_de_pago (
   estado VARCHAR(20) NOT NULL
 );
 
-CREATE INDEX IF NOT EXISTS idx_orden_fecha   ON orden_de_pago(fecha);
+-- Rango de fechas del reporte 10 sin leer la tabla (codigo_orden para el JOIN)
+DROP INDEX IF EXISTS idx_orden_fecha;
+CREATE INDEX IF NOT EXISTS idx_orden_fecha_codigo
+  ON orden_de_pago(fecha) INCLUDE (codigo_orden);
 CREATE INDEX IF NOT EXISTS idx_orden_cliente ON orden_de_pago(ruc_cliente);
 
 -- PRODUCTO
@@ -72,30 +244,117 @@ CREATE TABLE IF NOT EXISTS detalle_orden (
   subtotal         NUMERIC(10,2) CHECK (subtotal >= 0)
 );
 
-CREATE INDEX IF NOT EXISTS idx_det_orden
-  ON detalle_orden(codigo_orden, codigo_producto);
+-- Con subtotal en INCLUDE: el reporte 10 suma las líneas de cada orden sin leer la tabla
+DROP INDEX IF EXISTS idx_det_orden;
+CREATE INDEX IF NOT EXISTS idx_det_orden_subtotal
+  ON detalle_orden(codigo_orden, codigo_producto) INCLUDE (subtotal);
 
--- CABECERA_GUIA
+-- CABECERA_GUIA (particionada por mes de fecha_emision)
+-- Las columnas desde `eliminado` las agregaban antes los ALTER TABLE de la
+-- sección 7; se declaran aquí para que la migración pueda copiarlas.
 CREATE TABLE IF NOT EXISTS cabecera_guia (
-  codigo_guia   VARCHAR(15) PRIMARY KEY,
+  codigo_guia   VARCHAR(15) NOT NULL,
   serie         VARCHAR(10) NOT NULL,
   numero        VARCHAR(10) NOT NULL,
-  cod_orden     VARCHAR(15) UNIQUE REFERENCES orden_de_pago(codigo_orden),
+  cod_orden     VARCHAR(15) REFERENCES orden_de_pago(codigo_orden),
   ruc_remitente CHAR(11) NOT NULL REFERENCES remitente(ruc),
   fecha_emision DATE NOT NULL,
   hora_emision  TIME,
-  estado_guia   VARCHAR(20) NOT NULL
+  estado_guia   VARCHAR(20) NOT NULL,
+  eliminado        boolean NOT NULL DEFAULT false,
+  ruc_destinatario varchar,
+  dir_partida      text,
+  dir_llegada      text,
+  ubigeo_origen    varchar,
+  ubigeo_destino   varchar,
+  peso_total       double precision DEFAULT 0,
+  numero_bultos    integer DEFAULT 0,
+  PRIMARY KEY (codigo_guia, fecha_emision)
+) PARTITION BY RANGE (fecha_emision);
+
+CREATE TABLE IF NOT EXISTS cabecera_guia_pdefault PARTITION OF cabecera_guia DEFAULT;
+-- Un año hacia atrás (guías con fecha atrasada) y tres meses hacia adelante
+SELECT f_crear_particiones('cabecera_guia',
+                           (CURRENT_DATE - INTERVAL '12 months')::date,
+                           (CURRENT_DATE + INTERVAL '3 months')::date);
+
+-- Claves únicas de la guía (codigo_guia, cod_orden) y destino de las FKs de
+-- cuerpo_guia, detalle_bienes y traslado
+CREATE TABLE IF NOT EXISTS cabecera_guia_clave (
+  codigo_guia VARCHAR(15) PRIMARY KEY,
+  cod_orden   VARCHAR(15) UNIQUE
 );
 
-CREATE INDEX IF NOT EXISTS idx_cabecera_fecha
-  ON cabecera_guia(fecha_emision);
+-- Sincroniza cabecera_guia_clave con las filas de la sentencia (tablas de
+-- transición). Un código repetido falla con unique_violation como antes; borrar
+-- o renombrar una guía con hijos falla por sus FKs.
+CREATE OR REPLACE FUNCTION f_trg_cabecera_guia_clave()
+RETURNS trigger AS $$
+BEGIN
+  IF TG_OP = 'INSERT' THEN
+    INSERT INTO cabecera_guia_clave (codigo_guia, cod_orden)
+    SELECT n.codigo_guia, n.cod_orden FROM nuevas n;
+  ELSIF TG_OP = 'DELETE' THEN
+    DELETE FROM cabecera_guia_clave k
+     USING viejas o
+     WHERE k.codigo_guia = o.codigo_guia;
+  ELSE
+    -- Códigos que desaparecen, cod_orden que cambian y códigos nuevos, en ese orden
+    DELETE FROM cabecera_guia_clave k
+     USING viejas o
+     WHERE k.codigo_guia = o.codigo_guia
+       AND NOT EXISTS (SELECT 1 FROM nuevas n WHERE n.codigo_guia = o.codigo_guia);
+    UPDATE cabecera_guia_clave k
+       SET cod_orden = n.cod_orden
+      FROM nuevas n
+     WHERE k.codigo_guia = n.codigo_guia
+       AND k.cod_orden IS DISTINCT FROM n.cod_orden;
+    INSERT INTO cabecera_guia_clave (codigo_guia, cod_orden)
+    SELECT n.codigo_guia, n.cod_orden
+      FROM nuevas n
+     WHERE NOT EXISTS (SELECT 1 FROM viejas o WHERE o.codigo_guia = n.codigo_guia);
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_cabecera_guia_clave_ai ON cabecera_guia;
+CREATE TRIGGER trg_cabecera_guia_clave_ai
+AFTER INSERT ON cabecera_guia
+REFERENCING NEW TABLE AS nuevas
+FOR EACH STATEMENT
+EXECUTE FUNCTION f_trg_cabecera_guia_clave();
+
+DROP TRIGGER IF EXISTS trg_cabecera_guia_clave_au ON cabecera_guia;
+CREATE TRIGGER trg_cabecera_guia_clave_au
+AFTER UPDATE ON cabecera_guia
+REFERENCING OLD TABLE AS viejas NEW TABLE AS nuevas
+FOR EACH STATEMENT
+EXECUTE FUNCTION f_trg_cabecera_guia_clave();
+
+DROP TRIGGER IF EXISTS trg_cabecera_guia_clave_ad ON cabecera_guia;
+CREATE TRIGGER trg_cabecera_guia_clave_ad
+AFTER DELETE ON cabecera_guia
+REFERENCING OLD TABLE AS viejas
+FOR EACH STATEMENT
+EXECUTE FUNCTION f_trg_cabecera_guia_clave();
+
+-- Reportes por fecha (2, 6, 8, 9 y las vistas de la sección 7): agrupan por
+-- fecha y estado y unen por codigo_guia, todo desde el índice
+DROP INDEX IF EXISTS idx_cabecera_fecha;
+CREATE INDEX IF NOT EXISTS idx_cabecera_fecha_estado
+  ON cabecera_guia(fecha_emision, estado_guia) INCLUDE (codigo_guia);
 CREATE INDEX IF NOT EXISTS idx_cabecera_estado
   ON cabecera_guia(estado_guia);
+-- Último número de una serie (GuiaDAO.emitirGuiasLote): ORDER BY numero DESC
+-- LIMIT 1 lee el final del índice de cada partición en lugar de recorrerlas
+CREATE INDEX IF NOT EXISTS idx_cabecera_serie_numero
+  ON cabecera_guia(serie, numero);
 
 -- CUERPO_GUIA
 CREATE TABLE IF NOT EXISTS cuerpo_guia (
   codigo_guia        VARCHAR(15) PRIMARY KEY
-                     REFERENCES cabecera_guia(codigo_guia),
+                     REFERENCES cabecera_guia_clave(codigo_guia),
   ruc_destinatario   CHAR(11) NOT NULL REFERENCES destinatario(ruc),
   direccion_partida  VARCHAR(120) NOT NULL,
   direccion_llegada  VARCHAR(120) NOT NULL,
@@ -123,7 +382,7 @@ CREATE TABLE IF NOT EXISTS bien_transportable (
 -- DETALLE_BIENES
 CREATE TABLE IF NOT EXISTS detalle_bienes (
   numero_item  INTEGER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
-  codigo_guia  VARCHAR(15) NOT NULL REFERENCES cabecera_guia(codigo_guia),
+  codigo_guia  VARCHAR(15) NOT NULL REFERENCES cabecera_guia_clave(codigo_guia),
   codigo_bien  VARCHAR(20) NOT NULL REFERENCES bien_transportable(codigo_bien),
   cantidad     NUMERIC(10,2) CHECK (cantidad >= 0),
   peso_total   NUMERIC(10,2) CHECK (peso_total >= 0)
@@ -154,19 +413,83 @@ CREATE TABLE IF NOT EXISTS conductor (
 CREATE INDEX IF NOT EXISTS idx_conductor_vigencia
   ON conductor(fecha_vencimiento_licencia);
 
--- TRASLADO
+-- TRASLADO (particionada por mes de fecha_inicio)
 CREATE TABLE IF NOT EXISTS traslado (
-  codigo_traslado VARCHAR(15) PRIMARY KEY,
-  codigo_guia     VARCHAR(15) UNIQUE REFERENCES cabecera_guia(codigo_guia),
+  codigo_traslado VARCHAR(15) NOT NULL,
+  codigo_guia     VARCHAR(15) REFERENCES cabecera_guia_clave(codigo_guia),
   placa           VARCHAR(10) NOT NULL REFERENCES vehiculo(placa),
   licencia        VARCHAR(15) NOT NULL REFERENCES conductor(licencia),
   fecha_inicio    TIMESTAMP NOT NULL,
   fecha_fin       TIMESTAMP NOT NULL,
   estado_traslado VARCHAR(20) NOT NULL,
   observaciones   TEXT,
+  eliminado       boolean NOT NULL DEFAULT false,
+  PRIMARY KEY (codigo_traslado, fecha_inicio),
   CHECK (fecha_fin >= fecha_inicio)
+) PARTITION BY RANGE (fecha_inicio);
+
+CREATE TABLE IF NOT EXISTS traslado_pdefault PARTITION OF traslado DEFAULT;
+SELECT f_crear_particiones('traslado',
+                           (CURRENT_DATE - INTERVAL '12 months')::date,
+                           (CURRENT_DATE + INTERVAL '3 months')::date);
+
+-- Claves únicas del traslado (codigo_traslado, una guía por traslado)
+CREATE TABLE IF NOT EXISTS traslado_clave (
+  codigo_traslado VARCHAR(15) PRIMARY KEY,
+  codigo_guia     VARCHAR(15) UNIQUE
 );
 
+-- Igual que f_trg_cabecera_guia_clave
+CREATE OR REPLACE FUNCTION f_trg_traslado_clave()
+RETURNS trigger AS $$
+BEGIN
+  IF TG_OP = 'INSERT' THEN
+    INSERT INTO traslado_clave (codigo_traslado, codigo_guia)
+    SELECT n.codigo_traslado, n.codigo_guia FROM nuevas n;
+  ELSIF TG_OP = 'DELETE' THEN
+    DELETE FROM traslado_clave k
+     USING viejas o
+     WHERE k.codigo_traslado = o.codigo_traslado;
+  ELSE
+    DELETE FROM traslado_clave k
+     USING viejas o
+     WHERE k.codigo_traslado = o.codigo_traslado
+       AND NOT EXISTS (SELECT 1 FROM nuevas n WHERE n.codigo_traslado = o.codigo_traslado);
+    UPDATE traslado_clave k
+       SET codigo_guia = n.codigo_guia
+      FROM nuevas n
+     WHERE k.codigo_traslado = n.codigo_traslado
+       AND k.codigo_guia IS DISTINCT FROM n.codigo_guia;
+    INSERT INTO traslado_clave (codigo_traslado, codigo_guia)
+    SELECT n.codigo_traslado, n.codigo_guia
+      FROM nuevas n
+     WHERE NOT EXISTS (SELECT 1 FROM viejas o WHERE o.codigo_traslado = n.codigo_traslado);
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_traslado_clave_ai ON traslado;
+CREATE TRIGGER trg_traslado_clave_ai
+AFTER INSERT ON traslado
+REFERENCING NEW TABLE AS nuevas
+FOR EACH STATEMENT
+EXECUTE FUNCTION f_trg_traslado_clave();
+
+DROP TRIGGER IF EXISTS trg_traslado_clave_au ON traslado;
+CREATE TRIGGER trg_traslado_clave_au
+AFTER UPDATE ON traslado
+REFERENCING OLD TABLE AS viejas NEW TABLE AS nuevas
+FOR EACH STATEMENT
+EXECUTE FUNCTION f_trg_traslado_clave();
+
+DROP TRIGGER IF EXISTS trg_traslado_clave_ad ON traslado;
+CREATE TRIGGER trg_traslado_clave_ad
+AFTER DELETE ON traslado
+REFERENCING OLD TABLE AS viejas
+FOR EACH STATEMENT
+EXECUTE FUNCTION f_trg_traslado_clave();
+
 CREATE INDEX IF NOT EXISTS idx_traslado_estado
   ON traslado(estado_traslado);
 CREATE INDEX IF NOT EXISTS idx_traslado_inicio
@@ -174,6 +497,68 @@ CREATE INDEX IF NOT EXISTS idx_traslado_inicio
 CREATE INDEX IF NOT EXISTS idx_traslado_placa
   ON traslado(placa);
 
+-- Migración (2/2): copia los datos de las tablas apartadas (los triggers de
+-- claves llenan cabecera_guia_clave y traslado_clave), pasa las FKs de
+-- cuerpo_guia y detalle_bienes a cabecera_guia_clave y elimina las tablas
+-- viejas. Con ellas caen las vistas materializadas, que la sección 7 recrea.
+DO $$
+DECLARE
+  v_tabla TEXT;
+  v_fecha TEXT;
+  v_cols  TEXT;
+  v_min   DATE;
+  v_max   DATE;
+  r       RECORD;
+BEGIN
+  FOR v_tabla, v_fecha IN
+    SELECT * FROM (VALUES ('cabecera_guia', 'fecha_emision'), ('traslado', 'fecha_inicio')) t
+  LOOP
+    CONTINUE WHEN to_regclass(v_tabla || '_sinpart') IS NULL;
+
+    EXECUTE format('SELECT min(%1$I)::date, max(%1$I)::date FROM %2$I', v_fecha, v_tabla || '_sinpart')
+       INTO v_min, v_max;
+    IF v_min IS NOT NULL THEN
+      PERFORM f_crear_particiones(v_tabla, v_min, v_max);
+    END IF;
+
+    -- `eliminado` es NOT NULL en la tabla nueva; nulo significaba no eliminado
+    IF EXISTS (SELECT 1 FROM pg_attribute
+                WHERE attrelid = to_regclass(v_tabla || '_sinpart')
+                  AND attname = 'eliminado' AND NOT attisdropped) THEN
+      EXECUTE format('UPDATE %I SET eliminado = false WHERE eliminado IS NULL', v_tabla || '_sinpart');
+    END IF;
+
+    -- Sólo las columnas que tienen las dos tablas
+    SELECT string_agg(quote_ident(n.attname), ', ' ORDER BY n.attnum)
+      INTO v_cols
+      FROM pg_attribute n
+      JOIN pg_attribute o ON o.attrelid = to_regclass(v_tabla || '_sinpart')
+                         AND o.attname = n.attname
+                         AND o.attnum > 0 AND NOT o.attisdropped
+     WHERE n.attrelid = to_regclass(v_tabla)
+       AND n.attnum > 0 AND NOT n.attisdropped;
+    EXECUTE format('INSERT INTO %I (%s) SELECT %s FROM %I', v_tabla, v_cols, v_cols, v_tabla || '_sinpart');
+
+    IF v_tabla = 'cabecera_guia' THEN
+      FOR r IN
+        SELECT c.conrelid::regclass AS tabla, c.conname
+          FROM pg_constraint c
+         WHERE c.contype = 'f'
+           AND c.confrelid = to_regclass('cabecera_guia_sinpart')
+           AND c.conrelid::regclass::text NOT LIKE '%_sinpart'
+      LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', r.tabla, r.conname);
+        EXECUTE format('ALTER TABLE %s ADD CONSTRAINT %I FOREIGN KEY (codigo_guia) '
+                       'REFERENCES cabecera_guia_clave(codigo_guia)', r.tabla, r.conname);
+      END LOOP;
+    END IF;
+    RAISE NOTICE 'Migración: % copiada a la tabla particionada', v_tabla;
+  END LOOP;
+
+  DROP TABLE IF EXISTS traslado_sinpart CASCADE;
+  DROP TABLE IF EXISTS cabecera_guia_sinpart CASCADE;
+END $$;
+
 
 -- =========================================================
 -- 2. DATOS DE EJEMPLO (INSERTS)
@@ -319,13 +704,45 @@ CREATE TABLE IF NOT EXISTS producto_eliminado (
   fecha_eliminacion TIMESTAMP NOT NULL DEFAULT NOW()
 );
 
+-- Particionada por mes de fecha_cambio (sólo se agregan filas: los meses viejos
+-- se retiran con sp_retirar_particion, sección 1). SERIAL en lugar de IDENTITY, que las
+-- tablas particionadas no admiten antes de PostgreSQL 17.
 CREATE TABLE IF NOT EXISTS traslado_log_estado (
-  id INTEGER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+  id              SERIAL,
   codigo_traslado VARCHAR(15),
   estado_anterior VARCHAR(20),
   estado_nuevo    VARCHAR(20),
-  fecha_cambio    TIMESTAMP NOT NULL DEFAULT NOW()
-);
+  fecha_cambio    TIMESTAMP NOT NULL DEFAULT NOW(),
+  PRIMARY KEY (id, fecha_cambio)
+) PARTITION BY RANGE (fecha_cambio);
+
+CREATE TABLE IF NOT EXISTS traslado_log_estado_pdefault PARTITION OF traslado_log_estado DEFAULT;
+
+-- Migración: copia el historial de la tabla apartada en la sección 1
+DO $$
+DECLARE
+  v_min DATE;
+  v_max DATE;
+BEGIN
+  IF to_regclass('traslado_log_estado_sinpart') IS NULL THEN
+    RETURN;
+  END IF;
+  SELECT min(fecha_cambio)::date, max(fecha_cambio)::date INTO v_min, v_max
+    FROM traslado_log_estado_sinpart;
+  IF v_min IS NOT NULL THEN
+    PERFORM f_crear_particiones('traslado_log_estado', v_min, v_max);
+  END IF;
+  INSERT INTO traslado_log_estado (id, codigo_traslado, estado_anterior, estado_nuevo, fecha_cambio)
+  SELECT id, codigo_traslado, estado_anterior, estado_nuevo, fecha_cambio
+    FROM traslado_log_estado_sinpart;
+  PERFORM setval(pg_get_serial_sequence('traslado_log_estado', 'id'),
+                 COALESCE((SELECT max(id) FROM traslado_log_estado), 0) + 1, false);
+  DROP TABLE traslado_log_estado_sinpart;
+  RAISE NOTICE 'Migración: traslado_log_estado copiada a la tabla particionada';
+END $$;
+
+-- Meses actual y siguientes de las tres tablas
+SELECT sp_mantener_particiones(3);
 
 
 -- =========================================================
@@ -491,6 +908,210 @@ BEFORE UPDATE ON detalle_orden
 FOR EACH ROW
 EXECUTE FUNCTION f_trg_detalle_orden_bu();
 
+-- RESÚMENES DE VENTAS POR PRODUCTO Y VIAJES POR VEHÍCULO
+-- Contadores mantenidos por triggers: los reportes 3 y 4 leen una fila por
+-- producto / vehículo (o por día en las versiones con rango) en lugar de
+-- recorrer todo detalle_orden y traslado. `lineas` cuenta las filas de
+-- detalle_orden, para saber si un producto se vendió alguna vez.
+CREATE TABLE IF NOT EXISTS resumen_ventas_producto (
+  codigo_producto  VARCHAR(20) PRIMARY KEY,
+  cantidad_vendida NUMERIC NOT NULL DEFAULT 0,
+  lineas           BIGINT  NOT NULL DEFAULT 0
+);
+
+-- Por fecha de la orden de pago
+CREATE TABLE IF NOT EXISTS resumen_ventas_producto_dia (
+  fecha            DATE        NOT NULL,
+  codigo_producto  VARCHAR(20) NOT NULL,
+  cantidad_vendida NUMERIC NOT NULL DEFAULT 0,
+  lineas           BIGINT  NOT NULL DEFAULT 0,
+  PRIMARY KEY (fecha, codigo_producto)
+);
+
+CREATE TABLE IF NOT EXISTS resumen_viajes_vehiculo (
+  placa  VARCHAR(10) PRIMARY KEY,
+  viajes BIGINT NOT NULL DEFAULT 0
+);
+
+-- Por día de fecha_inicio del traslado
+CREATE TABLE IF NOT EXISTS resumen_viajes_vehiculo_dia (
+  fecha  DATE        NOT NULL,
+  placa  VARCHAR(10) NOT NULL,
+  viajes BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (fecha, placa)
+);
+
+CREATE OR REPLACE FUNCTION f_resumen_ventas_total(
+  p_producto VARCHAR, p_cantidad NUMERIC, p_lineas BIGINT
+)
+RETURNS void AS $$
+BEGIN
+  INSERT INTO resumen_ventas_producto AS r (codigo_producto, cantidad_vendida, lineas)
+  VALUES (p_producto, p_cantidad, p_lineas)
+  ON CONFLICT (codigo_producto) DO UPDATE
+    SET cantidad_vendida = r.cantidad_vendida + EXCLUDED.cantidad_vendida,
+        lineas           = r.lineas + EXCLUDED.lineas;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Sin fecha (la orden ya no existe) no hay día que ajustar
+CREATE OR REPLACE FUNCTION f_resumen_ventas_dia(
+  p_fecha DATE, p_producto VARCHAR, p_cantidad NUMERIC, p_lineas BIGINT
+)
+RETURNS void AS $$
+BEGIN
+  IF p_fecha IS NULL THEN
+    RETURN;
+  END IF;
+  INSERT INTO resumen_ventas_producto_dia AS r (fecha, codigo_producto, cantidad_vendida, lineas)
+  VALUES (p_fecha, p_producto, p_cantidad, p_lineas)
+  ON CONFLICT (fecha, codigo_producto) DO UPDATE
+    SET cantidad_vendida = r.cantidad_vendida + EXCLUDED.cantidad_vendida,
+        lineas           = r.lineas + EXCLUDED.lineas;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION f_resumen_viajes(
+  p_placa VARCHAR, p_fecha DATE, p_viajes BIGINT
+)
+RETURNS void AS $$
+BEGIN
+  INSERT INTO resumen_viajes_vehiculo AS r (placa, viajes)
+  VALUES (p_placa, p_viajes)
+  ON CONFLICT (placa) DO UPDATE SET viajes = r.viajes + EXCLUDED.viajes;
+  INSERT INTO resumen_viajes_vehiculo_dia AS r (fecha, placa, viajes)
+  VALUES (p_fecha, p_placa, p_viajes)
+  ON CONFLICT (fecha, placa) DO UPDATE SET viajes = r.viajes + EXCLUDED.viajes;
+END;
+$$ LANGUAGE plpgsql;
+
+-- DETALLE_ORDEN: resta la línea anterior y suma la nueva
+CREATE OR REPLACE FUNCTION f_trg_detalle_orden_resumen()
+RETURNS trigger AS $$
+BEGIN
+  IF TG_OP = 'UPDATE'
+     AND OLD.codigo_orden = NEW.codigo_orden
+     AND OLD.codigo_producto = NEW.codigo_producto
+     AND OLD.cantidad IS NOT DISTINCT FROM NEW.cantidad THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP IN ('UPDATE', 'DELETE') THEN
+    PERFORM f_resumen_ventas_total(OLD.codigo_producto, -COALESCE(OLD.cantidad, 0), -1);
+    PERFORM f_resumen_ventas_dia((SELECT o.fecha FROM orden_de_pago o WHERE o.codigo_orden = OLD.codigo_orden),
+                                 OLD.codigo_producto, -COALESCE(OLD.cantidad, 0), -1);
+  END IF;
+  IF TG_OP IN ('INSERT', 'UPDATE') THEN
+    PERFORM f_resumen_ventas_total(NEW.codigo_producto, COALESCE(NEW.cantidad, 0), 1);
+    PERFORM f_resumen_ventas_dia((SELECT o.fecha FROM orden_de_pago o WHERE o.codigo_orden = NEW.codigo_orden),
+                                 NEW.codigo_producto, COALESCE(NEW.cantidad, 0), 1);
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_detalle_orden_resumen ON detalle_orden;
+CREATE TRIGGER trg_detalle_orden_resumen
+AFTER INSERT OR UPDATE OR DELETE ON detalle_orden
+FOR EACH ROW
+EXECUTE FUNCTION f_trg_detalle_orden_resumen();
+
+-- ORDEN_DE_PAGO: cambiar la fecha mueve sus líneas de día. Al borrarla se
+-- descuentan aquí (BEFORE, con las líneas aún visibles): si las líneas se
+-- borraran después en cascada, su trigger ya no encontraría la fecha
+CREATE OR REPLACE FUNCTION f_trg_orden_resumen()
+RETURNS trigger AS $$
+DECLARE
+  r RECORD;
+BEGIN
+  FOR r IN
+    SELECT codigo_producto, SUM(COALESCE(cantidad, 0)) AS cantidad, COUNT(*) AS lineas
+    FROM detalle_orden
+    WHERE codigo_orden = OLD.codigo_orden
+    GROUP BY codigo_producto
+  LOOP
+    PERFORM f_resumen_ventas_dia(OLD.fecha, r.codigo_producto, -r.cantidad, -r.lineas);
+    IF TG_OP = 'UPDATE' THEN
+      PERFORM f_resumen_ventas_dia(NEW.fecha, r.codigo_producto, r.cantidad, r.lineas);
+    END IF;
+  END LOOP;
+  RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_orden_resumen_bd ON orden_de_pago;
+CREATE TRIGGER trg_orden_resumen_bd
+BEFORE DELETE ON orden_de_pago
+FOR EACH ROW
+EXECUTE FUNCTION f_trg_orden_resumen();
+
+DROP TRIGGER IF EXISTS trg_orden_resumen_au ON orden_de_pago;
+CREATE TRIGGER trg_orden_resumen_au
+AFTER UPDATE OF fecha ON orden_de_pago
+FOR EACH ROW
+WHEN (OLD.fecha IS DISTINCT FROM NEW.fecha)
+EXECUTE FUNCTION f_trg_orden_resumen();
+
+-- TRASLADO: un viaje por fila, en el día de fecha_inicio
+CREATE OR REPLACE FUNCTION f_trg_traslado_resumen()
+RETURNS trigger AS $$
+BEGIN
+  IF TG_OP = 'UPDATE'
+     AND OLD.placa = NEW.placa
+     AND OLD.fecha_inicio::date = NEW.fecha_inicio::date THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP IN ('UPDATE', 'DELETE') THEN
+    PERFORM f_resumen_viajes(OLD.placa, OLD.fecha_inicio::date, -1);
+  END IF;
+  IF TG_OP IN ('INSERT', 'UPDATE') THEN
+    PERFORM f_resumen_viajes(NEW.placa, NEW.fecha_inicio::date, 1);
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_traslado_resumen ON traslado;
+CREATE TRIGGER trg_traslado_resumen
+AFTER INSERT OR UPDATE OF placa, fecha_inicio OR DELETE ON traslado
+FOR EACH ROW
+EXECUTE FUNCTION f_trg_traslado_resumen();
+
+-- Recalcula los resúmenes desde cero: carga inicial, o si se desincronizaron
+-- (p.ej. datos cargados con los triggers desactivados). Bloquea la escritura
+-- en las tablas base mientras recalcula.
+CREATE OR REPLACE FUNCTION sp_recalcular_resumenes()
+RETURNS void AS $$
+BEGIN
+  LOCK TABLE detalle_orden, orden_de_pago, traslado IN SHARE MODE;
+  TRUNCATE resumen_ventas_producto, resumen_ventas_producto_dia,
+           resumen_viajes_vehiculo, resumen_viajes_vehiculo_dia;
+
+  INSERT INTO resumen_ventas_producto(codigo_producto, cantidad_vendida, lineas)
+  SELECT codigo_producto, SUM(COALESCE(cantidad, 0)), COUNT(*)
+  FROM detalle_orden
+  GROUP BY codigo_producto;
+
+  INSERT INTO resumen_ventas_producto_dia(fecha, codigo_producto, cantidad_vendida, lineas)
+  SELECT o.fecha, d.codigo_producto, SUM(COALESCE(d.cantidad, 0)), COUNT(*)
+  FROM detalle_orden d
+  JOIN orden_de_pago o ON o.codigo_orden = d.codigo_orden
+  GROUP BY o.fecha, d.codigo_producto;
+
+  INSERT INTO resumen_viajes_vehiculo(placa, viajes)
+  SELECT placa, COUNT(*)
+  FROM traslado
+  GROUP BY placa;
+
+  INSERT INTO resumen_viajes_vehiculo_dia(fecha, placa, viajes)
+  SELECT fecha_inicio::date, placa, COUNT(*)
+  FROM traslado
+  GROUP BY fecha_inicio::date, placa;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Los datos de ejemplo (sección 2) se insertaron antes de crear los triggers
+SELECT sp_recalcular_resumenes();
+
 -- DETALLE_BIENES: peso_total si viene NULL
 CREATE OR REPLACE FUNCTION f_trg_detalle_bienes_bi()
 RETURNS trigger AS $$
@@ -597,7 +1218,7 @@ RETURNS TABLE(
   calle_direccion VARCHAR(120),
   codigo_ubigeo VARCHAR(6),
   gmail VARCHAR(120)
-) LANGUAGE SQL AS $$
+) LANGUAGE SQL STABLE AS $$
   SELECT
     ruc,
     nombre,
@@ -606,7 +1227,8 @@ RETURNS TABLE(
     codigo_ubigeo,
     gmail
   FROM destinatario
-  WHERE coalesce(eliminado, false) = false;
+  WHERE NOT eliminado
+  ORDER BY nombre;
 $$;
 
 -- ---------- REMITENTE (CRUD) ----------
@@ -672,7 +1294,7 @@ RETURNS TABLE(
   email VARCHAR(120),
   calle_direccion VARCHAR(120),
   codigo_ubigeo VARCHAR(6)
-) LANGUAGE SQL AS $$
+) LANGUAGE SQL STABLE AS $$
   SELECT ruc, nombre_empresa, razon_social, telefono, email, calle_direccion, codigo_ubigeo
     FROM remitente
    ORDER BY nombre_empresa;
@@ -721,7 +1343,7 @@ RETURNS TABLE(
   nombre_producto VARCHAR(120),
   precio_base NUMERIC(10,2),
   unidad_medida VARCHAR(20)
-) LANGUAGE SQL AS $$
+) LANGUAGE SQL STABLE AS $$
   SELECT codigo_producto, nombre_producto, precio_base, unidad_medida
     FROM producto
    ORDER BY nombre_producto;
@@ -1317,6 +1939,84 @@ $$;
 -- 7. REPORTES (10 + 1 historial)
 -- =========================================================
 
+-- Agregados diarios materializados de los reportes 2 y 9 (guías por fecha y
+-- estado, KPI diario). Tienen índice único para poder refrescarse con
+-- REFRESH MATERIALIZED VIEW CONCURRENTLY sin bloquear a quien los lee
+-- (sp_refrescar_kpi_diario; la aplicación lo lanza periódicamente).
+-- Los reportes leen de la vista los días anteriores al corte (f_kpi_corte) y
+-- calculan en vivo, sobre idx_cabecera_fecha_estado, sólo los días posteriores: los
+-- días recientes siempre están al día y el historial no se recalcula.
+CREATE MATERIALIZED VIEW IF NOT EXISTS mv_guias_por_fecha_estado AS
+  SELECT
+    fecha_emision,
+    estado_guia,
+    COUNT(*)::BIGINT AS guias
+  FROM cabecera_guia
+  GROUP BY fecha_emision, estado_guia;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_mv_guias_por_fecha_estado
+  ON mv_guias_por_fecha_estado(fecha_emision, estado_guia);
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS mv_kpi_guias_diario AS
+  SELECT
+    cab.fecha_emision,
+    SUM(CASE WHEN cab.estado_guia = 'emitida'       THEN 1 ELSE 0 END)::BIGINT AS emitidas,
+    SUM(CASE WHEN t.estado_traslado = 'en tránsito' THEN 1 ELSE 0 END)::BIGINT AS en_transito,
+    SUM(CASE WHEN t.estado_traslado = 'entregado'   THEN 1 ELSE 0 END)::BIGINT AS entregadas
+  FROM cabecera_guia cab
+  LEFT JOIN traslado t ON t.codigo_guia = cab.codigo_guia
+  GROUP BY cab.fecha_emision;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_mv_kpi_guias_diario
+  ON mv_kpi_guias_diario(fecha_emision);
+
+-- Momento del último refresco de cada vista (se toma antes de refrescar)
+CREATE TABLE IF NOT EXISTS kpi_refresco (
+  vista         VARCHAR(60) PRIMARY KEY,
+  refrescado_en TIMESTAMP NOT NULL
+);
+
+-- Las vistas recién creadas ya tienen datos (WITH DATA por defecto)
+INSERT INTO kpi_refresco(vista, refrescado_en) VALUES
+  ('mv_guias_por_fecha_estado', LOCALTIMESTAMP),
+  ('mv_kpi_guias_diario',       LOCALTIMESTAMP)
+ON CONFLICT (vista) DO NOTHING;
+
+-- Primer día que los reportes calculan en vivo: 7 días antes del último
+-- refresco, para recoger también los cambios tardíos de guías recientes
+-- (p.ej. un traslado entregado días después). Sin refresco registrado, todo en vivo.
+DROP FUNCTION IF EXISTS f_kpi_corte(VARCHAR);
+CREATE OR REPLACE FUNCTION f_kpi_corte(
+  p_vista VARCHAR
+)
+RETURNS DATE LANGUAGE SQL STABLE AS $$
+  SELECT COALESCE(
+    (SELECT refrescado_en::date - 7 FROM kpi_refresco WHERE vista = p_vista),
+    '-infinity'::date);
+$$;
+
+-- Refresca las dos vistas sin bloquear a los lectores; cada una en su propia
+-- transacción (CALL con autocommit) para no retener los bloqueos de ambas
+DROP PROCEDURE IF EXISTS sp_refrescar_kpi_diario();
+CREATE OR REPLACE PROCEDURE sp_refrescar_kpi_diario()
+LANGUAGE plpgsql AS $$
+DECLARE
+  v_inicio TIMESTAMP;
+BEGIN
+  v_inicio := clock_timestamp()::timestamp;
+  REFRESH MATERIALIZED VIEW CONCURRENTLY mv_guias_por_fecha_estado;
+  INSERT INTO kpi_refresco(vista, refrescado_en) VALUES ('mv_guias_por_fecha_estado', v_inicio)
+  ON CONFLICT (vista) DO UPDATE SET refrescado_en = EXCLUDED.refrescado_en;
+  COMMIT;
+
+  v_inicio := clock_timestamp()::timestamp;
+  REFRESH MATERIALIZED VIEW CONCURRENTLY mv_kpi_guias_diario;
+  INSERT INTO kpi_refresco(vista, refrescado_en) VALUES ('mv_kpi_guias_diario', v_inicio)
+  ON CONFLICT (vista) DO UPDATE SET refrescado_en = EXCLUDED.refrescado_en;
+  COMMIT;
+END;
+$$;
+
 -- 1) Detalle de una orden con sus productos
 DROP FUNCTION IF EXISTS sp_reporte_detalle_orden(VARCHAR);
 CREATE OR REPLACE FUNCTION sp_reporte_detalle_orden(
@@ -1345,42 +2045,92 @@ AS $$
   WHERE o.codigo_orden = p_codigo_orden;
 $$;
 
--- 2) Guías emitidas por fecha y estado
+-- 2) Guías emitidas por fecha y estado en un rango de fechas (ambas inclusive).
+--    Antes del corte lee mv_guias_por_fecha_estado; desde el corte agrega en
+--    vivo con predicado directo sobre fecha_emision (idx_cabecera_fecha_estado)
+DROP FUNCTION IF EXISTS sp_reporte_guias_por_fecha_estado(DATE, DATE);
+CREATE OR REPLACE FUNCTION sp_reporte_guias_por_fecha_estado(
+  p_desde DATE,
+  p_hasta DATE
+)
+RETURNS TABLE(
+  fecha_emision  DATE,
+  estado_guia    VARCHAR(20),
+  guias          BIGINT
+) LANGUAGE SQL STABLE AS $$
+  SELECT r.fecha_emision, r.estado_guia, r.guias
+  FROM (
+    SELECT m.fecha_emision, m.estado_guia, m.guias
+    FROM mv_guias_por_fecha_estado m
+    WHERE m.fecha_emision >= p_desde
+      AND m.fecha_emision <  LEAST(p_hasta + 1, f_kpi_corte('mv_guias_por_fecha_estado'))
+    UNION ALL
+    SELECT cg.fecha_emision, cg.estado_guia, COUNT(*)::BIGINT
+    FROM cabecera_guia cg
+    WHERE cg.fecha_emision >= GREATEST(p_desde, f_kpi_corte('mv_guias_por_fecha_estado'))
+      AND cg.fecha_emision <  p_hasta + 1
+    GROUP BY cg.fecha_emision, cg.estado_guia
+  ) r
+  ORDER BY r.fecha_emision DESC, r.estado_guia;
+$$;
+
+-- 2b) Todo el historial
 DROP FUNCTION IF EXISTS sp_reporte_guias_por_fecha_estado();
 CREATE OR REPLACE FUNCTION sp_reporte_guias_por_fecha_estado()
 RETURNS TABLE(
   fecha_emision  DATE,
   estado_guia    VARCHAR(20),
   guias          BIGINT
-) LANGUAGE SQL AS $$
-  SELECT
-    fecha_emision,
-    estado_guia,
-    COUNT(*)::BIGINT AS guias
-  FROM cabecera_guia
-  GROUP BY fecha_emision, estado_guia
-  ORDER BY fecha_emision DESC, estado_guia;
+) LANGUAGE SQL STABLE AS $$
+  SELECT * FROM sp_reporte_guias_por_fecha_estado('-infinity'::date, 'infinity'::date);
 $$;
 
--- 3) Productos más vendidos por cantidad
+-- 3) Productos más vendidos por cantidad (contadores de resumen_ventas_producto,
+--    mantenidos por trg_detalle_orden_resumen: una fila por producto)
 DROP FUNCTION IF EXISTS sp_reporte_productos_mas_vendidos();
 CREATE OR REPLACE FUNCTION sp_reporte_productos_mas_vendidos()
 RETURNS TABLE(
   codigo_producto   VARCHAR(20),
   nombre_producto   VARCHAR(120),
   cantidad_vendida  NUMERIC
-) LANGUAGE SQL AS $$
+) LANGUAGE SQL STABLE AS $$
   SELECT
     p.codigo_producto,
     p.nombre_producto,
-    SUM(d.cantidad) AS cantidad_vendida
-  FROM producto p
-  JOIN detalle_orden d ON d.codigo_producto = p.codigo_producto
+    r.cantidad_vendida
+  FROM resumen_ventas_producto r
+  JOIN producto p ON p.codigo_producto = r.codigo_producto
+  WHERE r.lineas > 0
+  ORDER BY r.cantidad_vendida DESC;
+$$;
+
+-- 3b) Productos más vendidos en las órdenes de un rango de fechas
+--     (resumen_ventas_producto_dia, rango sobre su clave primaria)
+DROP FUNCTION IF EXISTS sp_reporte_productos_mas_vendidos(DATE, DATE);
+CREATE OR REPLACE FUNCTION sp_reporte_productos_mas_vendidos(
+  p_desde DATE,
+  p_hasta DATE
+)
+RETURNS TABLE(
+  codigo_producto   VARCHAR(20),
+  nombre_producto   VARCHAR(120),
+  cantidad_vendida  NUMERIC
+) LANGUAGE SQL STABLE AS $$
+  SELECT
+    p.codigo_producto,
+    p.nombre_producto,
+    SUM(r.cantidad_vendida) AS cantidad_vendida
+  FROM resumen_ventas_producto_dia r
+  JOIN producto p ON p.codigo_producto = r.codigo_producto
+  WHERE r.fecha >= p_desde
+    AND r.fecha <  p_hasta + 1
   GROUP BY p.codigo_producto, p.nombre_producto
+  HAVING SUM(r.lineas) > 0
   ORDER BY cantidad_vendida DESC;
 $$;
 
--- 4) Utilización de vehículos (viajes por placa)
+-- 4) Utilización de vehículos (viajes por placa, de resumen_viajes_vehiculo
+--    mantenido por trg_traslado_resumen)
 DROP FUNCTION IF EXISTS sp_reporte_utilizacion_vehiculos();
 CREATE OR REPLACE FUNCTION sp_reporte_utilizacion_vehiculos()
 RETURNS TABLE(
@@ -1388,14 +2138,40 @@ RETURNS TABLE(
   marca  VARCHAR(50),
   modelo VARCHAR(50),
   viajes BIGINT
-) LANGUAGE SQL AS $$
+) LANGUAGE SQL STABLE AS $$
   SELECT
     v.placa,
     v.marca,
     v.modelo,
-    COUNT(t.codigo_traslado)::BIGINT AS viajes
+    COALESCE(r.viajes, 0)::BIGINT AS viajes
   FROM vehiculo v
-  LEFT JOIN traslado t ON t.placa = v.placa
+  LEFT JOIN resumen_viajes_vehiculo r ON r.placa = v.placa
+  ORDER BY viajes DESC;
+$$;
+
+-- 4b) Utilización de vehículos en los traslados iniciados en un rango de fechas
+--     (resumen_viajes_vehiculo_dia); los vehículos sin viajes en el rango salen con 0
+DROP FUNCTION IF EXISTS sp_reporte_utilizacion_vehiculos(DATE, DATE);
+CREATE OR REPLACE FUNCTION sp_reporte_utilizacion_vehiculos(
+  p_desde DATE,
+  p_hasta DATE
+)
+RETURNS TABLE(
+  placa  VARCHAR(10),
+  marca  VARCHAR(50),
+  modelo VARCHAR(50),
+  viajes BIGINT
+) LANGUAGE SQL STABLE AS $$
+  SELECT
+    v.placa,
+    v.marca,
+    v.modelo,
+    COALESCE(SUM(r.viajes), 0)::BIGINT AS viajes
+  FROM vehiculo v
+  LEFT JOIN resumen_viajes_vehiculo_dia r
+         ON r.placa = v.placa
+        AND r.fecha >= p_desde
+        AND r.fecha <  p_hasta + 1
   GROUP BY v.placa, v.marca, v.modelo
   ORDER BY viajes DESC;
 $$;
@@ -1475,7 +2251,42 @@ RETURNS TABLE(
   ORDER BY bultos_90d DESC;
 $$;
 
--- 9) KPI diario de estado de guías
+-- 9) KPI diario de estado de guías en un rango de fechas de emisión.
+--    Antes del corte lee mv_kpi_guias_diario; desde el corte calcula en vivo
+--    (idx_cabecera_fecha_estado, idx_traslado_guia)
+DROP FUNCTION IF EXISTS sp_reporte_kpi_guias_diario(DATE, DATE);
+CREATE OR REPLACE FUNCTION sp_reporte_kpi_guias_diario(
+  p_desde DATE,
+  p_hasta DATE
+)
+RETURNS TABLE(
+  fecha_emision DATE,
+  emitidas      BIGINT,
+  en_transito   BIGINT,
+  entregadas    BIGINT
+) LANGUAGE SQL STABLE AS $$
+  SELECT r.fecha_emision, r.emitidas, r.en_transito, r.entregadas
+  FROM (
+    SELECT m.fecha_emision, m.emitidas, m.en_transito, m.entregadas
+    FROM mv_kpi_guias_diario m
+    WHERE m.fecha_emision >= p_desde
+      AND m.fecha_emision <  LEAST(p_hasta + 1, f_kpi_corte('mv_kpi_guias_diario'))
+    UNION ALL
+    SELECT
+      cab.fecha_emision,
+      SUM(CASE WHEN cab.estado_guia = 'emitida'       THEN 1 ELSE 0 END)::BIGINT,
+      SUM(CASE WHEN t.estado_traslado = 'en tránsito' THEN 1 ELSE 0 END)::BIGINT,
+      SUM(CASE WHEN t.estado_traslado = 'entregado'   THEN 1 ELSE 0 END)::BIGINT
+    FROM cabecera_guia cab
+    LEFT JOIN traslado t ON t.codigo_guia = cab.codigo_guia
+    WHERE cab.fecha_emision >= GREATEST(p_desde, f_kpi_corte('mv_kpi_guias_diario'))
+      AND cab.fecha_emision <  p_hasta + 1
+    GROUP BY cab.fecha_emision
+  ) r
+  ORDER BY r.fecha_emision DESC;
+$$;
+
+-- 9b) Todo el historial
 DROP FUNCTION IF EXISTS sp_reporte_kpi_guias_diario();
 CREATE OR REPLACE FUNCTION sp_reporte_kpi_guias_diario()
 RETURNS TABLE(
@@ -1483,16 +2294,8 @@ RETURNS TABLE(
   emitidas      BIGINT,
   en_transito   BIGINT,
   entregadas    BIGINT
-) LANGUAGE SQL AS $$
-  SELECT
-    cab.fecha_emision,
-    SUM(CASE WHEN cab.estado_guia = 'emitida'       THEN 1 ELSE 0 END)::BIGINT AS emitidas,
-    SUM(CASE WHEN t.estado_traslado = 'en tránsito' THEN 1 ELSE 0 END)::BIGINT AS en_transito,
-    SUM(CASE WHEN t.estado_traslado = 'entregado'   THEN 1 ELSE 0 END)::BIGINT AS entregadas
-  FROM cabecera_guia cab
-  LEFT JOIN traslado t ON t.codigo_guia = cab.codigo_guia
-  GROUP BY cab.fecha_emision
-  ORDER BY cab.fecha_emision DESC;
+) LANGUAGE SQL STABLE AS $$
+  SELECT * FROM sp_reporte_kpi_guias_diario('-infinity'::date, 'infinity'::date);
 $$;
 
 -- 10) Ingresos (subtotal) por fecha de orden
@@ -1514,6 +2317,28 @@ AS $$
   ORDER BY o.fecha DESC;
 $$;
 
+-- 10b) Ingresos por fecha en un rango de fechas de orden
+--      (idx_orden_fecha_codigo, idx_det_orden_subtotal)
+DROP FUNCTION IF EXISTS sp_reporte_ingresos_por_fecha(DATE, DATE);
+CREATE OR REPLACE FUNCTION sp_reporte_ingresos_por_fecha(
+  p_desde DATE,
+  p_hasta DATE
+)
+RETURNS TABLE(
+  fecha     DATE,
+  total_dia NUMERIC(12,2)
+) LANGUAGE SQL STABLE AS $$
+  SELECT
+    o.fecha,
+    SUM(d.subtotal)::NUMERIC(12,2) AS total_dia
+  FROM orden_de_pago o
+  JOIN detalle_orden d ON d.codigo_orden = o.codigo_orden
+  WHERE o.fecha >= p_desde
+    AND o.fecha <  p_hasta + 1
+  GROUP BY o.fecha
+  ORDER BY o.fecha DESC;
+$$;
+
 
 -- 11) Historial de cambios de estado de traslado
 DROP FUNCTION IF EXISTS sp_reporte_historial_estados_traslado();
@@ -1539,9 +2364,28 @@ $$;
 
 
 SELECT rolname FROM pg_roles;
-ALTER TABLE cabecera_guia ADD COLUMN IF NOT EXISTS eliminado boolean DEFAULT false;
-ALTER TABLE destinatario   ADD COLUMN IF NOT EXISTS eliminado boolean DEFAULT false;
-ALTER TABLE traslado       ADD COLUMN IF NOT EXISTS eliminado boolean DEFAULT false;
+ALTER TABLE cabecera_guia ADD COLUMN IF NOT EXISTS eliminado boolean NOT NULL DEFAULT false;
+ALTER TABLE destinatario   ADD COLUMN IF NOT EXISTS eliminado boolean NOT NULL DEFAULT false;
+ALTER TABLE traslado       ADD COLUMN IF NOT EXISTS eliminado boolean NOT NULL DEFAULT false;
+
+-- En bases anteriores `eliminado` admite nulos (nulo = no eliminado). Se
+-- normaliza para que las consultas filtren con NOT eliminado, el mismo
+-- predicado de los índices parciales: con coalesce(eliminado, false) el
+-- planificador no puede usarlos.
+DO $$
+DECLARE
+  v_tabla TEXT;
+BEGIN
+  FOREACH v_tabla IN ARRAY ARRAY['cabecera_guia', 'destinatario', 'traslado'] LOOP
+    IF EXISTS (SELECT 1 FROM pg_attribute
+                WHERE attrelid = to_regclass(v_tabla) AND attname = 'eliminado'
+                  AND NOT attisdropped AND NOT attnotnull) THEN
+      EXECUTE format('UPDATE %I SET eliminado = false WHERE eliminado IS NULL', v_tabla);
+      EXECUTE format('ALTER TABLE %I ALTER COLUMN eliminado SET DEFAULT false, '
+                     'ALTER COLUMN eliminado SET NOT NULL', v_tabla);
+    END IF;
+  END LOOP;
+END $$;
 
 ALTER TABLE cabecera_guia
   ADD COLUMN IF NOT EXISTS ruc_destinatario varchar,
@@ -1552,3 +2396,544 @@ ALTER TABLE cabecera_guia
   ADD COLUMN IF NOT EXISTS peso_total double precision DEFAULT 0,
   ADD COLUMN IF NOT EXISTS numero_bultos integer DEFAULT 0,
   ADD COLUMN IF NOT EXISTS estado_guia varchar;
+
+
+-- =========================================================
+-- 8. EMISIÓN TRANSACCIONAL DE GUÍA (un solo round trip)
+-- =========================================================
+
+-- Emite (o re-emite) una guía completa en una sola llamada:
+-- cabecera + cuerpo + detalle de bienes + traslado opcional.
+-- Al ser una única sentencia todo ocurre en la misma transacción:
+-- si algo falla no quedan filas huérfanas. Devuelve la cabecera persistida.
+DROP FUNCTION IF EXISTS sp_emitir_guia_tx(
+  VARCHAR, VARCHAR, VARCHAR, VARCHAR, CHAR, CHAR, VARCHAR, VARCHAR, VARCHAR, VARCHAR,
+  VARCHAR, VARCHAR, NUMERIC, INTEGER, VARCHAR[], NUMERIC[], NUMERIC[],
+  VARCHAR, VARCHAR, VARCHAR, TIMESTAMP, TIMESTAMP, VARCHAR, TEXT);
+
+CREATE OR REPLACE FUNCTION sp_emitir_guia_tx(
+  p_codigo_guia      VARCHAR(15),
+  p_serie            VARCHAR(10),
+  p_numero           VARCHAR(10),
+  p_cod_orden        VARCHAR(15),
+  p_ruc_remitente    CHAR(11),
+  p_ruc_destinatario CHAR(11),
+  p_dir_partida      VARCHAR(120),
+  p_dir_llegada      VARCHAR(120),
+  p_ubigeo_origen    VARCHAR(6),
+  p_ubigeo_destino   VARCHAR(6),
+  p_motivo           VARCHAR(100),
+  p_modalidad        VARCHAR(50),
+  p_peso_total       NUMERIC(10,2),
+  p_numero_bultos    INTEGER,
+  -- detalle_bienes (arreglos paralelos; NULL = no tocar el detalle existente)
+  p_bienes           VARCHAR(20)[]  DEFAULT NULL,
+  p_cantidades       NUMERIC[]      DEFAULT NULL,
+  p_pesos            NUMERIC[]      DEFAULT NULL,
+  -- traslado opcional (NULL = sin traslado)
+  p_codigo_traslado  VARCHAR(15)    DEFAULT NULL,
+  p_placa            VARCHAR(10)    DEFAULT NULL,
+  p_licencia         VARCHAR(15)    DEFAULT NULL,
+  p_fecha_inicio     TIMESTAMP      DEFAULT NULL,
+  p_fecha_fin        TIMESTAMP      DEFAULT NULL,
+  p_estado_traslado  VARCHAR(20)    DEFAULT NULL,
+  p_observaciones    TEXT           DEFAULT NULL
+)
+RETURNS TABLE(
+  codigo_guia      VARCHAR(15),
+  serie            VARCHAR(10),
+  numero           VARCHAR(10),
+  cod_orden        VARCHAR(15),
+  ruc_remitente    CHAR(11),
+  ruc_destinatario VARCHAR,
+  dir_partida      TEXT,
+  dir_llegada      TEXT,
+  ubigeo_origen    VARCHAR,
+  ubigeo_destino   VARCHAR,
+  peso_total       DOUBLE PRECISION,
+  numero_bultos    INTEGER,
+  fecha_emision    DATE,
+  hora_emision     TIME,
+  estado_guia      VARCHAR(20)
+)
+LANGUAGE plpgsql
+AS $$
+#variable_conflict use_column
+DECLARE
+  v_remitente CHAR(11);
+  v_dest      CHAR(11) := NULLIF(btrim(p_ruc_destinatario), '');
+  v_ub_ori    VARCHAR(6) := NULLIF(btrim(p_ubigeo_origen), '');
+  v_ub_dest   VARCHAR(6) := NULLIF(btrim(p_ubigeo_destino), '');
+BEGIN
+  -- Remitente: el indicado o, si viene vacío, cualquiera existente (FK obligatoria)
+  v_remitente := COALESCE(NULLIF(btrim(p_ruc_remitente), ''),
+                          (SELECT r.ruc FROM remitente r ORDER BY r.ruc LIMIT 1));
+
+  -- CABECERA (re-emitir conserva fecha/hora/estado originales). La PK de la
+  -- tabla particionada incluye fecha_emision, así que no hay ON CONFLICT
+  -- (codigo_guia): se actualiza y, si no existía, se inserta. Un solo
+  -- reintento: si el segundo INSERT también choca, el error se propaga.
+  FOR v_intento IN 1..2 LOOP
+    UPDATE cabecera_guia g SET
+      serie            = p_serie,
+      numero           = p_numero,
+      cod_orden        = NULLIF(btrim(p_cod_orden), ''),
+      ruc_remitente    = v_remitente,
+      ruc_destinatario = v_dest,
+      dir_partida      = p_dir_partida,
+      dir_llegada      = p_dir_llegada,
+      ubigeo_origen    = v_ub_ori,
+      ubigeo_destino   = v_ub_dest,
+      peso_total       = COALESCE(p_peso_total, 0),
+      numero_bultos    = COALESCE(p_numero_bultos, 0)
+    WHERE g.codigo_guia = p_codigo_guia;
+    EXIT WHEN FOUND;
+    BEGIN
+      INSERT INTO cabecera_guia (
+        codigo_guia, serie, numero, cod_orden, ruc_remitente,
+        ruc_destinatario, dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino,
+        peso_total, numero_bultos, fecha_emision, hora_emision, estado_guia
+      )
+      VALUES (
+        p_codigo_guia, p_serie, p_numero, NULLIF(btrim(p_cod_orden), ''), v_remitente,
+        v_dest, p_dir_partida, p_dir_llegada, v_ub_ori, v_ub_dest,
+        COALESCE(p_peso_total, 0), COALESCE(p_numero_bultos, 0), CURRENT_DATE, LOCALTIME, 'emitida'
+      );
+      EXIT;
+    EXCEPTION WHEN unique_violation THEN
+      -- Otra sesión emitió la misma guía a la vez: se reintenta como actualización.
+      -- Si el duplicado es otro (cod_orden ya usado) o la guía no está en la
+      -- tabla (clave huérfana de una partición separada a mano) se propaga.
+      IF v_intento = 2
+         OR NOT EXISTS (SELECT 1 FROM cabecera_guia g WHERE g.codigo_guia = p_codigo_guia) THEN
+        RAISE;
+      END IF;
+    END;
+  END LOOP;
+
+  -- CUERPO (sólo si hay destinatario y ubigeos: son FKs obligatorias)
+  IF v_dest IS NOT NULL AND v_ub_ori IS NOT NULL AND v_ub_dest IS NOT NULL THEN
+    INSERT INTO cuerpo_guia (
+      codigo_guia, ruc_destinatario, direccion_partida, direccion_llegada,
+      ubigeo_origen, ubigeo_destino, motivo_traslado, modalidad_transporte,
+      peso_total, numero_bultos
+    )
+    VALUES (
+      p_codigo_guia, v_dest, COALESCE(p_dir_partida, ''), COALESCE(p_dir_llegada, ''),
+      v_ub_ori, v_ub_dest, COALESCE(p_motivo, ''), COALESCE(p_modalidad, ''),
+      p_peso_total, p_numero_bultos
+    )
+    ON CONFLICT (codigo_guia) DO UPDATE SET
+      ruc_destinatario     = EXCLUDED.ruc_destinatario,
+      direccion_partida    = EXCLUDED.direccion_partida,
+      direccion_llegada    = EXCLUDED.direccion_llegada,
+      ubigeo_origen        = EXCLUDED.ubigeo_origen,
+      ubigeo_destino       = EXCLUDED.ubigeo_destino,
+      motivo_traslado      = EXCLUDED.motivo_traslado,
+      modalidad_transporte = EXCLUDED.modalidad_transporte,
+      peso_total           = EXCLUDED.peso_total,
+      numero_bultos        = EXCLUDED.numero_bultos;
+  END IF;
+
+  -- DETALLE DE BIENES (reemplazo completo; peso NULL lo calcula trg_detalle_bienes_bi)
+  IF p_bienes IS NOT NULL THEN
+    DELETE FROM detalle_bienes WHERE codigo_guia = p_codigo_guia;
+    INSERT INTO detalle_bienes (codigo_guia, codigo_bien, cantidad, peso_total)
+    SELECT p_codigo_guia, b.codigo_bien, b.cantidad, b.peso_total
+      FROM unnest(p_bienes, p_cantidades, p_pesos) AS b(codigo_bien, cantidad, peso_total)
+     WHERE b.codigo_bien IS NOT NULL;
+  END IF;
+
+  -- TRASLADO opcional (los triggers sincronizan estado_guia); mismo esquema
+  -- actualizar/insertar que la cabecera
+  IF NULLIF(btrim(p_codigo_traslado), '') IS NOT NULL THEN
+    FOR v_intento IN 1..2 LOOP
+      UPDATE traslado t SET
+        placa           = p_placa,
+        licencia        = p_licencia,
+        fecha_inicio    = COALESCE(p_fecha_inicio, LOCALTIMESTAMP),
+        fecha_fin       = COALESCE(p_fecha_fin, p_fecha_inicio, LOCALTIMESTAMP),
+        estado_traslado = COALESCE(NULLIF(btrim(p_estado_traslado), ''), 'en tránsito'),
+        observaciones   = p_observaciones
+      WHERE t.codigo_traslado = p_codigo_traslado;
+      EXIT WHEN FOUND;
+      BEGIN
+        INSERT INTO traslado (
+          codigo_traslado, codigo_guia, placa, licencia,
+          fecha_inicio, fecha_fin, estado_traslado, observaciones
+        )
+        VALUES (
+          p_codigo_traslado, p_codigo_guia, p_placa, p_licencia,
+          COALESCE(p_fecha_inicio, LOCALTIMESTAMP),
+          COALESCE(p_fecha_fin, p_fecha_inicio, LOCALTIMESTAMP),
+          COALESCE(NULLIF(btrim(p_estado_traslado), ''), 'en tránsito'),
+          p_observaciones
+        );
+        EXIT;
+      EXCEPTION WHEN unique_violation THEN
+        IF v_intento = 2
+           OR NOT EXISTS (SELECT 1 FROM traslado t WHERE t.codigo_traslado = p_codigo_traslado) THEN
+          RAISE;
+        END IF;
+      END;
+    END LOOP;
+  END IF;
+
+  RETURN QUERY
+  SELECT g.codigo_guia, g.serie, g.numero, g.cod_orden, g.ruc_remitente,
+         g.ruc_destinatario::VARCHAR, g.dir_partida::TEXT, g.dir_llegada::TEXT,
+         g.ubigeo_origen::VARCHAR, g.ubigeo_destino::VARCHAR,
+         g.peso_total::DOUBLE PRECISION, g.numero_bultos,
+         g.fecha_emision, g.hora_emision, g.estado_guia
+    FROM cabecera_guia g
+   WHERE g.codigo_guia = p_codigo_guia;
+END;
+$$;
+
+
+-- =========================================================
+-- 9. PAGINACIÓN KEYSET DE GUÍAS
+-- =========================================================
+
+-- Índice compuesto para recorrer las guías por (fecha_emision, codigo_guia)
+-- en orden descendente: cada página es un "seek" en el índice + LIMIT,
+-- sin OFFSET ni lectura de todas las guías. Parcial (sólo las no eliminadas,
+-- con el mismo predicado que las consultas) y con las columnas del listado en
+-- INCLUDE: la página sale del índice sin leer la tabla (Index Only Scan).
+DROP INDEX IF EXISTS idx_cabecera_fecha_codigo;
+CREATE INDEX IF NOT EXISTS idx_cabecera_vigentes_fecha_codigo
+  ON cabecera_guia (fecha_emision DESC, codigo_guia DESC)
+  INCLUDE (serie, numero, cod_orden, ruc_remitente, ruc_destinatario,
+           dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino,
+           peso_total, numero_bultos, hora_emision, estado_guia)
+  WHERE NOT eliminado;
+
+-- Página de guías posteriores (en el orden del listado) a la clave indicada.
+-- p_fecha / p_codigo NULL = primera página.
+DROP FUNCTION IF EXISTS sp_listar_guias_pagina(DATE, VARCHAR, INTEGER);
+CREATE OR REPLACE FUNCTION sp_listar_guias_pagina(
+  p_fecha   DATE,
+  p_codigo  VARCHAR(15),
+  p_limite  INTEGER
+)
+RETURNS TABLE(
+  codigo_guia      VARCHAR(15),
+  serie            VARCHAR(10),
+  numero           VARCHAR(10),
+  cod_orden        VARCHAR(15),
+  ruc_remitente    CHAR(11),
+  ruc_destinatario VARCHAR,
+  dir_partida      TEXT,
+  dir_llegada      TEXT,
+  ubigeo_origen    VARCHAR,
+  ubigeo_destino   VARCHAR,
+  peso_total       DOUBLE PRECISION,
+  numero_bultos    INTEGER,
+  fecha_emision    DATE,
+  hora_emision     TIME,
+  estado_guia      VARCHAR(20)
+)
+LANGUAGE plpgsql STABLE
+AS $$
+#variable_conflict use_column
+BEGIN
+  IF p_fecha IS NULL THEN
+    RETURN QUERY
+    SELECT g.codigo_guia, g.serie, g.numero, g.cod_orden, g.ruc_remitente,
+           g.ruc_destinatario::VARCHAR, g.dir_partida::TEXT, g.dir_llegada::TEXT,
+           g.ubigeo_origen::VARCHAR, g.ubigeo_destino::VARCHAR,
+           g.peso_total::DOUBLE PRECISION, g.numero_bultos,
+           g.fecha_emision, g.hora_emision, g.estado_guia
+      FROM cabecera_guia g
+     WHERE NOT g.eliminado
+     ORDER BY g.fecha_emision DESC, g.codigo_guia DESC
+     LIMIT p_limite;
+  ELSE
+    RETURN QUERY
+    SELECT g.codigo_guia, g.serie, g.numero, g.cod_orden, g.ruc_remitente,
+           g.ruc_destinatario::VARCHAR, g.dir_partida::TEXT, g.dir_llegada::TEXT,
+           g.ubigeo_origen::VARCHAR, g.ubigeo_destino::VARCHAR,
+           g.peso_total::DOUBLE PRECISION, g.numero_bultos,
+           g.fecha_emision, g.hora_emision, g.estado_guia
+      FROM cabecera_guia g
+     WHERE (g.fecha_emision, g.codigo_guia) < (p_fecha, p_codigo)
+       AND NOT g.eliminado
+     ORDER BY g.fecha_emision DESC, g.codigo_guia DESC
+     LIMIT p_limite;
+  END IF;
+END;
+$$;
+
+
+-- =========================================================
+-- 10. ÍNDICES PARA BÚSQUEDAS POR CLAVE Y FILTROS DE GUÍAS
+-- =========================================================
+
+-- GuiaDAO.buscar: filtros por remitente / destinatario / estado + rango de fechas,
+-- devolviendo las más recientes primero (mismo orden que la paginación keyset,
+-- con el desempate por codigo_guia: no hace falta ordenar). Parciales como
+-- idx_cabecera_vigentes_fecha_codigo; sin INCLUDE porque con LIMIT sólo se
+-- leen de la tabla las filas de la página.
+DROP INDEX IF EXISTS idx_cabecera_remitente_fecha;
+DROP INDEX IF EXISTS idx_cabecera_destinatario_fecha;
+DROP INDEX IF EXISTS idx_cabecera_estado_fecha;
+CREATE INDEX IF NOT EXISTS idx_cabecera_vigentes_remitente
+  ON cabecera_guia (ruc_remitente, fecha_emision DESC, codigo_guia DESC)
+  WHERE NOT eliminado;
+CREATE INDEX IF NOT EXISTS idx_cabecera_vigentes_destinatario
+  ON cabecera_guia (ruc_destinatario, fecha_emision DESC, codigo_guia DESC)
+  WHERE NOT eliminado;
+CREATE INDEX IF NOT EXISTS idx_cabecera_vigentes_estado
+  ON cabecera_guia (estado_guia, fecha_emision DESC, codigo_guia DESC)
+  WHERE NOT eliminado;
+
+
+-- =========================================================
+-- 11. NOTIFICACIONES DE CAMBIOS (LISTEN/NOTIFY)
+-- =========================================================
+
+-- Publica en el canal 'cambios_datos' un evento compacto por fila modificada:
+--   <tabla>|<I|U|D>|<clave>
+-- TG_ARGV[0] es el nombre de la columna clave y TG_ARGV[1], opcional, el de la
+-- tabla: en las particionadas el trigger corre en la partición y TG_TABLE_NAME
+-- sería p.ej. cabecera_guia_p202510. Si un UPDATE cambia la clave se
+-- publica también la anterior como borrada. pg_notify es transaccional (sólo se
+-- entrega al confirmar) y descarta los mensajes idénticos de la misma transacción.
+-- Cada instancia de la aplicación escucha el canal para invalidar sus cachés.
+CREATE OR REPLACE FUNCTION f_trg_notificar_cambio()
+RETURNS trigger AS $$
+DECLARE
+  v_tabla TEXT := COALESCE(TG_ARGV[1], TG_TABLE_NAME);
+  v_nueva TEXT;
+  v_vieja TEXT;
+BEGIN
+  IF TG_OP <> 'INSERT' THEN
+    v_vieja := to_jsonb(OLD) ->> TG_ARGV[0];
+  END IF;
+  IF TG_OP <> 'DELETE' THEN
+    v_nueva := to_jsonb(NEW) ->> TG_ARGV[0];
+  END IF;
+
+  IF TG_OP = 'UPDATE' AND v_vieja IS DISTINCT FROM v_nueva THEN
+    PERFORM pg_notify('cambios_datos', v_tabla || '|D|' || COALESCE(v_vieja, ''));
+  END IF;
+  PERFORM pg_notify('cambios_datos',
+                    v_tabla || '|' || left(TG_OP, 1) || '|' || COALESCE(v_nueva, v_vieja, ''));
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_notificar_destinatario ON destinatario;
+CREATE TRIGGER trg_notificar_destinatario
+AFTER INSERT OR UPDATE OR DELETE ON destinatario
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('ruc');
+
+DROP TRIGGER IF EXISTS trg_notificar_remitente ON remitente;
+CREATE TRIGGER trg_notificar_remitente
+AFTER INSERT OR UPDATE OR DELETE ON remitente
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('ruc');
+
+DROP TRIGGER IF EXISTS trg_notificar_producto ON producto;
+CREATE TRIGGER trg_notificar_producto
+AFTER INSERT OR UPDATE OR DELETE ON producto
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('codigo_producto');
+
+DROP TRIGGER IF EXISTS trg_notificar_ubigeo ON ubigeo;
+CREATE TRIGGER trg_notificar_ubigeo
+AFTER INSERT OR UPDATE OR DELETE ON ubigeo
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('codigo_ubigeo');
+
+DROP TRIGGER IF EXISTS trg_notificar_vehiculo ON vehiculo;
+CREATE TRIGGER trg_notificar_vehiculo
+AFTER INSERT OR UPDATE OR DELETE ON vehiculo
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('placa');
+
+DROP TRIGGER IF EXISTS trg_notificar_conductor ON conductor;
+CREATE TRIGGER trg_notificar_conductor
+AFTER INSERT OR UPDATE OR DELETE ON conductor
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('licencia');
+
+DROP TRIGGER IF EXISTS trg_notificar_cabecera_guia ON cabecera_guia;
+CREATE TRIGGER trg_notificar_cabecera_guia
+AFTER INSERT OR UPDATE OR DELETE ON cabecera_guia
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('codigo_guia', 'cabecera_guia');
+
+-- Los cambios de estado del traslado llegan además a cabecera_guia (trg_traslado_au)
+DROP TRIGGER IF EXISTS trg_notificar_traslado ON traslado;
+CREATE TRIGGER trg_notificar_traslado
+AFTER INSERT OR UPDATE OR DELETE ON traslado
+FOR EACH ROW EXECUTE FUNCTION f_trg_notificar_cambio('codigo_traslado', 'traslado');
+
+
+-- =========================================================
+-- 12. ÍNDICES DE COBERTURA PARA LISTADOS DEL CATÁLOGO Y REPORTES
+-- =========================================================
+
+-- Cada índice sigue una consulta concreta de los DAOs o de la sección 7:
+-- clave = filtro/orden de la consulta, INCLUDE = columnas que devuelve, así el
+-- plan es un Index Only Scan sin ordenar ni leer la tabla (mientras autovacuum
+-- mantenga el mapa de visibilidad). Las funciones de listado son STABLE para
+-- que el planificador las expanda en la consulta que las llama.
+-- sql/verificacion/verificar_indices.sql comprueba los planes con datos sembrados.
+
+-- DestinatarioDAO.listarTodos / sp_listar_destinatarios:
+--   WHERE NOT eliminado ORDER BY nombre
+CREATE INDEX IF NOT EXISTS idx_destinatario_vigentes_nombre
+  ON destinatario (nombre)
+  INCLUDE (ruc, numero_telefono, calle_direccion, codigo_ubigeo, gmail)
+  WHERE NOT eliminado;
+
+-- RemitenteDAO.listarTodos / sp_listar_remitentes: ORDER BY nombre_empresa
+CREATE INDEX IF NOT EXISTS idx_remitente_nombre_empresa
+  ON remitente (nombre_empresa)
+  INCLUDE (ruc, razon_social, telefono, email, calle_direccion, codigo_ubigeo);
+
+-- ProductoDAO.listarTodos / sp_listar_productos: ORDER BY nombre_producto
+CREATE INDEX IF NOT EXISTS idx_producto_nombre
+  ON producto (nombre_producto)
+  INCLUDE (codigo_producto, precio_base, unidad_medida);
+
+-- Reportes 6 y 9 y mv_kpi_guias_diario: traslado de cada guía y su estado.
+-- Sustituye además al índice único de codigo_guia que traslado perdió al
+-- particionarse (la unicidad está en traslado_clave).
+CREATE INDEX IF NOT EXISTS idx_traslado_guia
+  ON traslado (codigo_guia)
+  INCLUDE (estado_traslado);
+
+
+-- =========================================================
+-- 13. BÚSQUEDA POR NOMBRE SIN ACENTOS (pg_trgm + unaccent)
+-- =========================================================
+
+-- Búsqueda para los campos con sugerencias (ui.CampoBusqueda) de
+-- DestinatarioDAO, RemitenteDAO y ProductoDAO.buscar:
+-- - Un texto se compara sin acentos ni mayúsculas ("peru" encuentra "Perú",
+--   "nana" encuentra "Ñaña") con word_similarity de pg_trgm: basta con el
+--   comienzo de una palabra ("constru" -> "Constructora del Sur").
+-- - El RUC (o el código del producto) se busca por prefijo.
+-- - Índices GIN de trigramas sobre la expresión normalizada y B-tree con
+--   *_pattern_ops para el prefijo: el plan es un BitmapOr de los dos y un
+--   top-N con LIMIT, sin leer la tabla entera ni ordenarla completa.
+-- pg_trgm y unaccent son extensiones de confianza desde PostgreSQL 13 (basta
+-- el permiso CREATE en la base). Si no se pueden crear, estas funciones no
+-- existen y los DAOs buscan con ILIKE (sin índice ni acentos).
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS unaccent;
+
+-- unaccent() es STABLE (depende del diccionario por defecto); con el
+-- diccionario explícito se puede declarar IMMUTABLE y usar en índices
+CREATE OR REPLACE FUNCTION f_normalizar_busqueda(p_texto TEXT)
+RETURNS TEXT
+LANGUAGE SQL IMMUTABLE STRICT PARALLEL SAFE
+AS $$
+  SELECT lower(public.unaccent('public.unaccent'::regdictionary, btrim(p_texto)));
+$$;
+
+-- Patrón LIKE de prefijo con los comodines del usuario escapados
+CREATE OR REPLACE FUNCTION f_prefijo_like(p_texto TEXT)
+RETURNS TEXT
+LANGUAGE SQL IMMUTABLE STRICT PARALLEL SAFE
+AS $$
+  SELECT replace(replace(replace(btrim(p_texto), '\', '\\'), '%', '\%'), '_', '\_') || '%';
+$$;
+
+-- DESTINATARIO: nombre y prefijo de RUC (sólo los no eliminados)
+CREATE INDEX IF NOT EXISTS idx_destinatario_nombre_trgm
+  ON destinatario USING GIN (f_normalizar_busqueda(nombre) gin_trgm_ops)
+  WHERE NOT eliminado;
+CREATE INDEX IF NOT EXISTS idx_destinatario_ruc_prefijo
+  ON destinatario (ruc bpchar_pattern_ops)
+  WHERE NOT eliminado;
+
+-- REMITENTE: nombre de empresa, razón social y prefijo de RUC
+CREATE INDEX IF NOT EXISTS idx_remitente_nombre_trgm
+  ON remitente USING GIN (f_normalizar_busqueda(nombre_empresa) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_remitente_razon_trgm
+  ON remitente USING GIN (f_normalizar_busqueda(razon_social) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_remitente_ruc_prefijo
+  ON remitente (ruc bpchar_pattern_ops);
+
+-- PRODUCTO: nombre y prefijo de código
+CREATE INDEX IF NOT EXISTS idx_producto_nombre_trgm
+  ON producto USING GIN (f_normalizar_busqueda(nombre_producto) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_producto_codigo_prefijo
+  ON producto (codigo_producto varchar_pattern_ops);
+
+-- Los p_limite mejores: primero los que coinciden por prefijo de RUC, luego
+-- por similitud. STABLE y en SQL para que se expanda en la consulta.
+DROP FUNCTION IF EXISTS sp_buscar_destinatarios(VARCHAR, INTEGER);
+CREATE OR REPLACE FUNCTION sp_buscar_destinatarios(
+  p_texto  VARCHAR,
+  p_limite INTEGER DEFAULT 20
+)
+RETURNS TABLE(
+  ruc             CHAR(11),
+  nombre          VARCHAR(120),
+  numero_telefono VARCHAR(20),
+  calle_direccion VARCHAR(120),
+  codigo_ubigeo   VARCHAR(6),
+  gmail           VARCHAR(120),
+  similitud       REAL
+) LANGUAGE SQL STABLE AS $$
+  SELECT d.ruc, d.nombre, d.numero_telefono, d.calle_direccion, d.codigo_ubigeo, d.gmail,
+         CASE WHEN d.ruc LIKE f_prefijo_like(p_texto) THEN 1
+              ELSE word_similarity(f_normalizar_busqueda(p_texto), f_normalizar_busqueda(d.nombre))
+         END::REAL AS similitud
+    FROM destinatario d
+   WHERE NOT d.eliminado
+     AND (d.ruc LIKE f_prefijo_like(p_texto)
+          OR f_normalizar_busqueda(p_texto) <% f_normalizar_busqueda(d.nombre))
+   ORDER BY similitud DESC, d.nombre
+   LIMIT p_limite;
+$$;
+
+DROP FUNCTION IF EXISTS sp_buscar_remitentes(VARCHAR, INTEGER);
+CREATE OR REPLACE FUNCTION sp_buscar_remitentes(
+  p_texto  VARCHAR,
+  p_limite INTEGER DEFAULT 20
+)
+RETURNS TABLE(
+  ruc             CHAR(11),
+  nombre_empresa  VARCHAR(120),
+  razon_social    VARCHAR(120),
+  telefono        VARCHAR(20),
+  email           VARCHAR(120),
+  calle_direccion VARCHAR(120),
+  codigo_ubigeo   VARCHAR(6),
+  similitud       REAL
+) LANGUAGE SQL STABLE AS $$
+  SELECT r.ruc, r.nombre_empresa, r.razon_social, r.telefono, r.email, r.calle_direccion, r.codigo_ubigeo,
+         CASE WHEN r.ruc LIKE f_prefijo_like(p_texto) THEN 1
+              ELSE GREATEST(word_similarity(f_normalizar_busqueda(p_texto), f_normalizar_busqueda(r.nombre_empresa)),
+                            word_similarity(f_normalizar_busqueda(p_texto), f_normalizar_busqueda(r.razon_social)))
+         END::REAL AS similitud
+    FROM remitente r
+   WHERE r.ruc LIKE f_prefijo_like(p_texto)
+      OR f_normalizar_busqueda(p_texto) <% f_normalizar_busqueda(r.nombre_empresa)
+      OR f_normalizar_busqueda(p_texto) <% f_normalizar_busqueda(r.razon_social)
+   ORDER BY similitud DESC, r.nombre_empresa
+   LIMIT p_limite;
+$$;
+
+DROP FUNCTION IF EXISTS sp_buscar_productos(VARCHAR, INTEGER);
+CREATE OR REPLACE FUNCTION sp_buscar_productos(
+  p_texto  VARCHAR,
+  p_limite INTEGER DEFAULT 20
+)
+RETURNS TABLE(
+  codigo_producto VARCHAR(20),
+  nombre_producto VARCHAR(120),
+  precio_base     NUMERIC(10,2),
+  unidad_medida   VARCHAR(20),
+  similitud       REAL
+) LANGUAGE SQL STABLE AS $$
+  SELECT p.codigo_producto, p.nombre_producto, p.precio_base, p.unidad_medida,
+         CASE WHEN p.codigo_producto LIKE upper(f_prefijo_like(p_texto)) THEN 1
+              ELSE word_similarity(f_normalizar_busqueda(p_texto), f_normalizar_busqueda(p.nombre_producto))
+         END::REAL AS similitud
+    FROM producto p
+   WHERE p.codigo_producto LIKE upper(f_prefijo_like(p_texto))
+      OR f_normalizar_busqueda(p_texto) <% f_normalizar_busqueda(p.nombre_producto)
+   ORDER BY similitud DESC, p.nombre_producto
+   LIMIT p_limite;
+$$;
@@ -0,0 +1,276 @@
+-- =========================================================
+-- verificar_indices.sql
+-- Comprueba que los listados y reportes usan los índices parciales y de
+-- cobertura de schema.sql (secciones 1, 9, 10, 12 y 13): siembra datos
+-- sintéticos, ejecuta EXPLAIN (ANALYZE, BUFFERS) de las mismas consultas que
+-- hacen los DAOs y avisa OK / FALLA según el plan:
+--   - debe aparecer el recorrido esperado (Index Only Scan, Index Scan o Bitmap Index Scan),
+--   - no debe haber Seq Scan ni Sort (el orden sale del índice).
+--
+-- SÓLO PARA UNA BASE DE DESARROLLO. Uso, con schema.sql ya aplicado:
+--   psql -d guia_remision -f sql/verificacion/verificar_indices.sql
+--
+-- Está en una subcarpeta para que SqlBootstrapper (que ejecuta los *.sql de
+-- sql/) no lo corra al iniciar la aplicación. Los datos sembrados usan RUC que
+-- empiezan por 99 y códigos que empiezan por VRF, y se borran al terminar
+-- (también al empezar, por si una ejecución anterior quedó a medias).
+-- Requiere PostgreSQL 13+ (como el particionado de la sección 1).
+-- =========================================================
+
+\set ON_ERROR_STOP on
+
+-- ---------------------------------------------------------
+-- Utilidades (temporales: desaparecen al cerrar la sesión)
+-- ---------------------------------------------------------
+
+CREATE OR REPLACE FUNCTION pg_temp.limpiar_siembra()
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  DELETE FROM detalle_orden  WHERE codigo_orden LIKE 'VRF%';
+  DELETE FROM orden_de_pago  WHERE codigo_orden LIKE 'VRF%';
+  DELETE FROM cabecera_guia  WHERE codigo_guia  LIKE 'VRF%';
+  DELETE FROM destinatario   WHERE ruc LIKE '99%';
+  DELETE FROM remitente      WHERE ruc LIKE '99%';
+  DELETE FROM producto       WHERE codigo_producto LIKE 'VRF%';
+  -- Lo que dejan los triggers de borrado y de resúmenes
+  DELETE FROM destinatario_eliminado WHERE ruc LIKE '99%';
+  DELETE FROM remitente_eliminado    WHERE ruc LIKE '99%';
+  DELETE FROM producto_eliminado     WHERE codigo_producto LIKE 'VRF%';
+  DELETE FROM resumen_ventas_producto_dia WHERE codigo_producto LIKE 'VRF%';
+  DELETE FROM resumen_ventas_producto     WHERE codigo_producto LIKE 'VRF%';
+END;
+$$;
+
+-- Ejecuta EXPLAIN (ANALYZE, BUFFERS) de p_sql, muestra el plan y avisa si no
+-- tiene p_recorrido o si tiene Seq Scan o Sort. p_sort_final permite el Sort
+-- de las filas ya agregadas (reportes con ORDER BY sobre el GROUP BY).
+CREATE OR REPLACE FUNCTION pg_temp.verificar_plan(p_nombre TEXT, p_recorrido TEXT, p_sql TEXT,
+                                                  p_sort_final BOOLEAN DEFAULT false)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+DECLARE
+  v_linea TEXT;
+  v_plan  TEXT := '';
+  v_fallas TEXT[] := '{}';
+BEGIN
+  FOR v_linea IN EXECUTE 'EXPLAIN (ANALYZE, BUFFERS) ' || p_sql LOOP
+    v_plan := v_plan || E'\n  ' || v_linea;
+  END LOOP;
+
+  IF v_plan !~ (p_recorrido || '( Backward)? (using|on) ') THEN
+    v_fallas := v_fallas || ('sin ' || p_recorrido);
+  END IF;
+  IF v_plan ~ 'Seq Scan' THEN
+    v_fallas := v_fallas || 'Seq Scan'::TEXT;
+  END IF;
+  IF NOT p_sort_final AND v_plan ~ '(^|->|\n)\s*Sort\s+\(' THEN
+    v_fallas := v_fallas || 'Sort'::TEXT;
+  END IF;
+
+  IF cardinality(v_fallas) = 0 THEN
+    RAISE NOTICE 'OK    %', p_nombre || v_plan;
+  ELSE
+    RAISE NOTICE 'FALLA % (%', p_nombre, array_to_string(v_fallas, ', ') || ')' || v_plan;
+  END IF;
+END;
+$$;
+
+SELECT pg_temp.limpiar_siembra();
+
+-- ---------------------------------------------------------
+-- Siembra
+-- ---------------------------------------------------------
+
+INSERT INTO ubigeo (codigo_ubigeo, departamento, provincia, distrito)
+VALUES ('040101', 'Arequipa', 'Arequipa', 'Cercado')
+ON CONFLICT (codigo_ubigeo) DO NOTHING;
+
+-- 20 000 destinatarios, 10 % dados de baja
+INSERT INTO destinatario (ruc, nombre, numero_telefono, calle_direccion, codigo_ubigeo, gmail, eliminado)
+SELECT '99' || lpad(i::TEXT, 9, '0'),
+       'Destinatario ' || md5(i::TEXT),
+       '9' || lpad((i % 100000000)::TEXT, 8, '0'),
+       'Calle ' || i,
+       '040101',
+       'd' || i || '@ejemplo.pe',
+       i % 10 = 0
+FROM generate_series(1, 20000) AS i;
+
+-- 2 000 remitentes y 2 000 productos
+INSERT INTO remitente (ruc, nombre_empresa, razon_social, telefono, email, calle_direccion, codigo_ubigeo)
+SELECT '99' || lpad(i::TEXT, 9, '0'),
+       'Empresa ' || md5(i::TEXT),
+       'Empresa ' || i || ' S.A.C.',
+       '054' || lpad(i::TEXT, 6, '0'),
+       'r' || i || '@ejemplo.pe',
+       'Av. ' || i,
+       '040101'
+FROM generate_series(1, 2000) AS i;
+
+INSERT INTO producto (codigo_producto, nombre_producto, precio_base, unidad_medida)
+SELECT 'VRF' || lpad(i::TEXT, 6, '0'),
+       'Producto ' || md5(i::TEXT),
+       (1 + random() * 500)::NUMERIC(10,2),
+       'UND'
+FROM generate_series(1, 2000) AS i;
+
+-- 50 000 guías repartidas en el último año, 10 % eliminadas
+INSERT INTO cabecera_guia (codigo_guia, serie, numero, cod_orden, ruc_remitente, fecha_emision,
+                           hora_emision, estado_guia, eliminado, ruc_destinatario, dir_partida,
+                           dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos)
+SELECT 'VRF' || lpad(i::TEXT, 8, '0'),
+       'VRF1',
+       lpad(i::TEXT, 8, '0'),
+       NULL,
+       '99' || lpad((1 + i % 2000)::TEXT, 9, '0'),
+       CURRENT_DATE - (random() * 364)::INTEGER,
+       (TIME '08:00' + (random() * INTERVAL '10 hours'))::TIME,
+       (ARRAY['EMITIDA', 'EN TRASLADO', 'ENTREGADA', 'ANULADA'])[1 + i % 4],
+       i % 10 = 0,
+       '99' || lpad((1 + i % 20000)::TEXT, 9, '0'),
+       'Calle ' || i,
+       'Av. ' || i,
+       '040101',
+       '040101',
+       random() * 1000,
+       1 + i % 20
+FROM generate_series(1, 50000) AS i;
+
+-- 10 000 órdenes en el último año con tres líneas cada una
+INSERT INTO orden_de_pago (codigo_orden, fecha, ruc_cliente, estado)
+SELECT 'VRF' || lpad(i::TEXT, 8, '0'),
+       CURRENT_DATE - (random() * 364)::INTEGER,
+       '99' || lpad((1 + i % 20000)::TEXT, 9, '0'),
+       'PAGADA'
+FROM generate_series(1, 10000) AS i;
+
+INSERT INTO detalle_orden (codigo_orden, codigo_producto, cantidad, precio_unitario)
+SELECT 'VRF' || lpad(i::TEXT, 8, '0'),
+       'VRF' || lpad((1 + (i * 3 + j) % 2000)::TEXT, 6, '0'),
+       (1 + random() * 10)::NUMERIC(10,2),
+       (1 + random() * 500)::NUMERIC(10,2)
+FROM generate_series(1, 10000) AS i, generate_series(1, 3) AS j;
+
+-- Estadísticas y mapa de visibilidad: sin VACUUM no hay Index Only Scan real
+VACUUM ANALYZE destinatario;
+VACUUM ANALYZE remitente;
+VACUUM ANALYZE producto;
+VACUUM ANALYZE cabecera_guia;
+VACUUM ANALYZE orden_de_pago;
+VACUUM ANALYZE detalle_orden;
+
+-- Clave de la guía 5 000 del listado, para la página siguiente del keyset
+SELECT fecha_emision AS k_fecha, codigo_guia AS k_codigo
+  FROM cabecera_guia
+ WHERE NOT eliminado
+ ORDER BY fecha_emision DESC, codigo_guia DESC
+OFFSET 5000 LIMIT 1 \gset
+
+-- ---------------------------------------------------------
+-- Listados del catálogo (sección 12)
+-- ---------------------------------------------------------
+
+SELECT pg_temp.verificar_plan('DestinatarioDAO.listarTodos', 'Index Only Scan', $q$
+  SELECT ruc, nombre, numero_telefono, calle_direccion, codigo_ubigeo, gmail
+    FROM destinatario WHERE eliminado = false ORDER BY nombre
+$q$);
+
+SELECT pg_temp.verificar_plan('sp_listar_destinatarios()', 'Index Only Scan', $q$
+  SELECT * FROM sp_listar_destinatarios()
+$q$);
+
+SELECT pg_temp.verificar_plan('sp_listar_remitentes()', 'Index Only Scan', $q$
+  SELECT * FROM sp_listar_remitentes()
+$q$);
+
+SELECT pg_temp.verificar_plan('RemitenteDAO.listarTodos (sin función)', 'Index Only Scan', $q$
+  SELECT ruc, nombre_empresa FROM remitente ORDER BY nombre_empresa
+$q$);
+
+SELECT pg_temp.verificar_plan('sp_listar_productos()', 'Index Only Scan', $q$
+  SELECT * FROM sp_listar_productos()
+$q$);
+
+-- ---------------------------------------------------------
+-- Listado de guías por páginas (sección 9) y búsqueda (sección 10)
+-- ---------------------------------------------------------
+
+SELECT pg_temp.verificar_plan('GuiaDAO.listarPagina (primera)', 'Index Only Scan', $q$
+  SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario,
+         dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos,
+         fecha_emision, hora_emision, estado_guia
+    FROM cabecera_guia
+   WHERE true AND NOT eliminado
+   ORDER BY fecha_emision DESC, codigo_guia DESC LIMIT 50
+$q$);
+
+SELECT pg_temp.verificar_plan('GuiaDAO.listarPagina (siguiente)', 'Index Only Scan', format($q$
+  SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario,
+         dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos,
+         fecha_emision, hora_emision, estado_guia
+    FROM cabecera_guia
+   WHERE (fecha_emision, codigo_guia) < (%L::DATE, %L) AND NOT eliminado
+   ORDER BY fecha_emision DESC, codigo_guia DESC LIMIT 50
+$q$, :'k_fecha', :'k_codigo'));
+
+SELECT pg_temp.verificar_plan('GuiaDAO.buscar (remitente)', 'Index Scan', $q$
+  SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario,
+         dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos,
+         fecha_emision, hora_emision, estado_guia
+    FROM cabecera_guia
+   WHERE true AND ruc_remitente = '99000000010' AND NOT eliminado
+   ORDER BY fecha_emision DESC, codigo_guia DESC LIMIT 200
+$q$);
+
+SELECT pg_temp.verificar_plan('GuiaDAO.buscar (estado + fechas)', 'Index Scan', $q$
+  SELECT codigo_guia, serie, numero, cod_orden, ruc_remitente, ruc_destinatario,
+         dir_partida, dir_llegada, ubigeo_origen, ubigeo_destino, peso_total, numero_bultos,
+         fecha_emision, hora_emision, estado_guia
+    FROM cabecera_guia
+   WHERE true AND estado_guia = 'ENTREGADA'
+     AND fecha_emision >= CURRENT_DATE - 30 AND fecha_emision <= CURRENT_DATE
+     AND NOT eliminado
+   ORDER BY fecha_emision DESC, codigo_guia DESC LIMIT 200
+$q$);
+
+-- ---------------------------------------------------------
+-- Tramo en vivo de los reportes (sección 7): los últimos días
+-- ---------------------------------------------------------
+
+SELECT pg_temp.verificar_plan('Reporte 2, guías por fecha y estado (en vivo)', 'Index Only Scan', $q$
+  SELECT g.fecha_emision, g.estado_guia, COUNT(*) AS guias
+    FROM cabecera_guia g
+   WHERE g.fecha_emision >= CURRENT_DATE - 7
+     AND g.fecha_emision <  CURRENT_DATE + 1
+   GROUP BY g.fecha_emision, g.estado_guia
+$q$);
+
+SELECT pg_temp.verificar_plan('Reporte 10b, ingresos por fecha', 'Index Only Scan', $q$
+  SELECT * FROM sp_reporte_ingresos_por_fecha(CURRENT_DATE - 7, CURRENT_DATE)
+$q$, true);
+
+-- ---------------------------------------------------------
+-- Búsqueda con sugerencias (sección 13): trigramas y prefijo de RUC.
+-- El Sort es el top-N del LIMIT sobre las filas ya filtradas.
+-- ---------------------------------------------------------
+
+SELECT pg_temp.verificar_plan('sp_buscar_destinatarios (nombre)', 'Bitmap Index Scan', $q$
+  SELECT * FROM sp_buscar_destinatarios('c4ca42', 20)
+$q$, true);
+
+SELECT pg_temp.verificar_plan('sp_buscar_destinatarios (prefijo de RUC)', 'Bitmap Index Scan', $q$
+  SELECT * FROM sp_buscar_destinatarios('9900001', 20)
+$q$, true);
+
+SELECT pg_temp.verificar_plan('sp_buscar_productos (nombre)', 'Bitmap Index Scan', $q$
+  SELECT * FROM sp_buscar_productos('c81e72', 20)
+$q$, true);
+
+-- ---------------------------------------------------------
+-- Limpieza
+-- ---------------------------------------------------------
+
+SELECT pg_temp.limpiar_siembra();
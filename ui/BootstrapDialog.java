@@ -169,6 +169,9 @@ public class BootstrapDialog extends JDialog {
                         appendLog("Escribiendo db.properties...\n");
                         boolean wrote = SqlBootstrapper.writeDbProperties(host, port, dbName, appUser, appPass);
                         appendLog(wrote ? "db.properties creado.\n" : "No se pudo crear db.properties\n");
+                        // El esquema pudo cambiar (SPs/columnas nuevas): releer el catálogo que usan los DAOs
+                        boolean cat = db.CatalogoBD.refrescar();
+                        appendLog(cat ? "Catálogo de SPs/columnas actualizado.\n" : "No se pudo leer el catálogo (se usarán fallbacks).\n");
                         succeeded = true;
                     } else {
                         succeeded = false;
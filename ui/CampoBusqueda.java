@@ -0,0 +1,286 @@
+package ui;
+
+/*
+ * CampoBusqueda.java
+ * Campo de texto con sugerencias mientras se escribe, para elegir un
+ * destinatario, remitente, producto o ubigeo sin cargar la tabla entera en
+ * un combo.
+ * - La búsqueda espera una pausa al escribir (RETARDO_REMOTO_MS /
+ *   RETARDO_LOCAL_MS): teclear una palabra lanza una sola búsqueda.
+ * - Remota (constructor): los buscar de los DAOs, fuera del EDT con TareasUI.
+ *   Todas las búsquedas del campo comparten clave: si se escribe mientras hay
+ *   una en curso sólo queda pendiente la última y el resultado obsoleto se
+ *   descarta.
+ * - Local (CampoBusqueda.local): sobre un IndicePrefijos de CacheReferencias,
+ *   en el propio EDT; con el índice la consulta no depende del tamaño de la
+ *   tabla y basta un carácter para empezar.
+ * - La lista usa un modelo que sólo reemplaza su lista y celdas de alto y
+ *   ancho fijos: mostrar las sugerencias no mide cada fila.
+ * - Las sugerencias se muestran en un popup bajo el campo: flechas para
+ *   moverse, Enter o clic para elegir, Escape para cerrar. El popup no toma el
+ *   foco, así que se puede seguir escribiendo.
+ * - getSeleccion() devuelve la entidad elegida (null si el texto se cambió
+ *   después); getClave() devuelve su clave o, si no se eligió nada, el texto
+ *   escrito (p.ej. un RUC completo tecleado).
+ */
+
+import dao.BusquedaTexto;
+import util.IndicePrefijos;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class CampoBusqueda<T> extends JTextField {
+
+    private static final int FILAS_VISIBLES = 8;
+    private static final int RETARDO_REMOTO_MS = 250;
+    private static final int RETARDO_LOCAL_MS = 80;
+    /** Sugerencias de una búsqueda local (la lista tiene barra de desplazamiento). */
+    public static final int LIMITE_LOCAL = 100;
+
+    private final Function<String, List<T>> buscar;
+    private final Function<T, String> etiqueta;
+    private final Function<T, String> clave;
+    private final String claveTarea = "campo-busqueda-" + System.identityHashCode(this);
+    private final boolean local;
+    private final int minimo;
+    private final Timer rebote;
+    private final Sugerencias<T> sugerencias = new Sugerencias<>();
+    private final JList<T> lista = new JList<>(sugerencias);
+    private final JPopupMenu popup = new JPopupMenu();
+    private final List<Consumer<T>> oyentes = new ArrayList<>();
+    private T seleccion;
+    // true mientras el propio campo cambia el texto (elegir / setSeleccion): no se busca
+    private boolean ajustando = false;
+
+    /**
+     * `buscar` se llama fuera del EDT con el texto escrito; `etiqueta` es lo que se muestra
+     * (en la lista y en el campo al elegir) y `clave` lo que devuelve getClave().
+     */
+    public CampoBusqueda(Function<String, List<T>> buscar, Function<T, String> etiqueta, Function<T, String> clave) {
+        this(buscar, etiqueta, clave, false);
+    }
+
+    /**
+     * Campo que sugiere desde un índice en memoria (p.ej. CacheReferencias::indiceUbigeos).
+     * El índice se pide en cada búsqueda, así que una recarga de la caché se ve al instante.
+     */
+    public static <T> CampoBusqueda<T> local(Supplier<IndicePrefijos<T>> indice,
+                                             Function<T, String> etiqueta, Function<T, String> clave) {
+        return new CampoBusqueda<>(texto -> indice.get().buscar(texto, LIMITE_LOCAL), etiqueta, clave, true);
+    }
+
+    private CampoBusqueda(Function<String, List<T>> buscar, Function<T, String> etiqueta,
+                          Function<T, String> clave, boolean local) {
+        this.buscar = buscar;
+        this.etiqueta = etiqueta;
+        this.clave = clave;
+        this.local = local;
+        this.minimo = local ? 1 : BusquedaTexto.MIN_CARACTERES;
+        this.rebote = new Timer(local ? RETARDO_LOCAL_MS : RETARDO_REMOTO_MS, e -> buscarAhora());
+        rebote.setRepeats(false);
+
+        lista.setFocusable(false);
+        lista.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        lista.setFixedCellHeight(lista.getFontMetrics(lista.getFont()).getHeight() + 4);
+        lista.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                @SuppressWarnings("unchecked")
+                String texto = value == null ? "" : etiqueta.apply((T) value);
+                return super.getListCellRendererComponent(l, texto, index, isSelected, cellHasFocus);
+            }
+        });
+        lista.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int i = lista.locationToIndex(e.getPoint());
+                if (i >= 0) elegir(sugerencias.getElementAt(i));
+            }
+        });
+        JScrollPane sp = new JScrollPane(lista);
+        sp.setBorder(null);
+        popup.setFocusable(false);
+        popup.setLayout(new BorderLayout());
+        popup.add(sp, BorderLayout.CENTER);
+
+        getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { textoCambiado(); }
+            @Override public void removeUpdate(DocumentEvent e) { textoCambiado(); }
+            @Override public void changedUpdate(DocumentEvent e) { }
+        });
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) return;
+                int n = sugerencias.getSize();
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        mover(Math.min(n - 1, lista.getSelectedIndex() + 1));
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        mover(Math.max(0, lista.getSelectedIndex() - 1));
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        // Consumido: no debe disparar el botón por defecto del diálogo
+                        if (lista.getSelectedValue() != null) elegir(lista.getSelectedValue());
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        ocultar();
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                rebote.stop();
+                ocultar();
+            }
+        });
+    }
+
+    /** Se llama (en el EDT) cada vez que el usuario elige una sugerencia. */
+    public void alElegir(Consumer<T> oyente) {
+        oyentes.add(oyente);
+    }
+
+    /** Entidad elegida de la lista; null si no se eligió o si el texto cambió después. */
+    public T getSeleccion() {
+        return seleccion;
+    }
+
+    /** Clave de la entidad elegida o, si no hay, el texto escrito (recortado). */
+    public String getClave() {
+        return seleccion != null ? clave.apply(seleccion) : getText().trim();
+    }
+
+    /** Muestra la entidad como elegida sin buscar ni avisar a los oyentes (p.ej. al editar). */
+    public void setSeleccion(T valor) {
+        ponerTexto(valor == null ? "" : etiqueta.apply(valor));
+        seleccion = valor;
+    }
+
+    /** Pone el texto sin buscar (p.ej. un RUC conocido del que no se tiene la entidad). */
+    public void setTextoSinBuscar(String texto) {
+        ponerTexto(texto == null ? "" : texto);
+        seleccion = null;
+    }
+
+    private void ponerTexto(String texto) {
+        ajustando = true;
+        try {
+            setText(texto);
+        } finally {
+            ajustando = false;
+        }
+        ocultar();
+    }
+
+    private void textoCambiado() {
+        if (ajustando) return;
+        seleccion = null;
+        if (!buscable(getText())) {
+            rebote.stop();
+            if (!local) TareasUI.cancelar(null, claveTarea);
+            ocultar();
+            return;
+        }
+        rebote.restart();
+    }
+
+    private boolean buscable(String texto) {
+        return BusquedaTexto.limpiar(texto).length() >= minimo;
+    }
+
+    private void buscarAhora() {
+        String texto = getText();
+        if (!buscable(texto)) return;
+        if (local) {
+            mostrar(texto, buscar.apply(texto));
+            return;
+        }
+        // Sin ventana de origen: una búsqueda corta no debe mostrar la barra de progreso ni el cursor de espera
+        TareasUI.ejecutar(null, claveTarea, null, p -> buscar.apply(texto),
+                encontrados -> mostrar(texto, encontrados), ex -> ocultar());
+    }
+
+    private void mostrar(String texto, List<T> encontrados) {
+        // Resultado de un texto que ya no es el del campo, o el campo ya no está en pantalla
+        if (!texto.equals(getText()) || !isShowing() || !hasFocus()) return;
+        sugerencias.poner(encontrados);
+        if (sugerencias.getSize() == 0) {
+            ocultar();
+            return;
+        }
+        lista.setVisibleRowCount(Math.min(FILAS_VISIBLES, sugerencias.getSize()));
+        lista.setFixedCellWidth(anchoCeldas(encontrados));
+        lista.setSelectedIndex(0);
+        popup.pack();
+        popup.setPopupSize(Math.max(getWidth(), popup.getPreferredSize().width), popup.getPreferredSize().height);
+        popup.show(this, 0, getHeight());
+    }
+
+    // Ancho del campo o el de las primeras etiquetas, si son más largas; no se mide toda la lista
+    private int anchoCeldas(List<T> encontrados) {
+        FontMetrics fm = lista.getFontMetrics(lista.getFont());
+        int ancho = getWidth();
+        for (int i = 0; i < Math.min(FILAS_VISIBLES, encontrados.size()); i++) {
+            ancho = Math.max(ancho, fm.stringWidth(etiqueta.apply(encontrados.get(i))) + 12);
+        }
+        return ancho;
+    }
+
+    private void mover(int i) {
+        if (i < 0) return;
+        lista.setSelectedIndex(i);
+        lista.ensureIndexIsVisible(i);
+    }
+
+    private void elegir(T valor) {
+        setSeleccion(valor);
+        for (Consumer<T> o : oyentes) o.accept(valor);
+    }
+
+    private void ocultar() {
+        if (popup.isVisible()) popup.setVisible(false);
+    }
+
+    /** Modelo de la lista: reemplaza la lista entera y avisa una sola vez, sin copiar fila a fila. */
+    private static final class Sugerencias<T> extends AbstractListModel<T> {
+        private List<T> filas = Collections.emptyList();
+
+        void poner(List<T> nuevas) {
+            int antes = filas.size();
+            filas = Collections.emptyList();
+            if (antes > 0) fireIntervalRemoved(this, 0, antes - 1);
+            filas = nuevas;
+            if (!nuevas.isEmpty()) fireIntervalAdded(this, 0, nuevas.size() - 1);
+        }
+
+        @Override public int getSize() { return filas.size(); }
+
+        @Override public T getElementAt(int i) { return filas.get(i); }
+    }
+}
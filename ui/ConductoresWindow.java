@@ -108,13 +108,14 @@ public class ConductoresWindow extends JDialog {
     }
 
     private void cargar(DefaultTableModel model) {
-        // cargar(): rellena el modelo de la tabla con datos de DAO
-        model.setRowCount(0);
-        List<Conductor> lista = dao.listarTodos();
-        java.time.format.DateTimeFormatter fmt = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        for (Conductor c : lista) {
-            String fecha = c.getFechaVencimiento() == null ? "" : c.getFechaVencimiento().toLocalDate().format(fmt);
-            model.addRow(new Object[]{c.getLicencia(), c.getDni(), c.getNombre(), c.getTelefono(), fecha});
-        }
+        // cargar(): consulta el DAO fuera del EDT y rellena el modelo de la tabla al terminar
+        TareasUI.ejecutar(this, "conductores", "Cargando conductores...", p -> dao.listarTodos(), lista -> {
+            model.setRowCount(0);
+            java.time.format.DateTimeFormatter fmt = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy");
+            for (Conductor c : lista) {
+                String fecha = c.getFechaVencimiento() == null ? "" : c.getFechaVencimiento().toLocalDate().format(fmt);
+                model.addRow(new Object[]{c.getLicencia(), c.getDni(), c.getNombre(), c.getTelefono(), fecha});
+            }
+        });
     }
 }
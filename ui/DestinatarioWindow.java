@@ -6,6 +6,7 @@ package ui;
  * Comentarios en cada método describen comportamiento y llamadas a DAOs/UI.
  */
 
+import dao.BusquedaTexto;
 import dao.DestinatarioDAO;
 import model.Destinatario;
 
@@ -18,6 +19,8 @@ public class DestinatarioWindow extends JDialog {
 
     private final DestinatarioDAO dao = new DestinatarioDAO();
     private DefaultTableModel model;
+    // Filtro por RUC o nombre (sin acentos): con texto se muestran los más parecidos en lugar de todos
+    private final JTextField txtBuscar = new JTextField(22);
 
     public DestinatarioWindow(Frame owner) {
         // Constructor
@@ -118,6 +121,8 @@ public class DestinatarioWindow extends JDialog {
 
         // Only add action buttons to the top toolbar (no Menú button)
         top.add(btnNuevo); top.add(btnEditar); top.add(btnEliminar); top.add(btnRefrescar);
+        top.add(Box.createHorizontalStrut(16));
+        top.add(new JLabel("Buscar (RUC o nombre):")); top.add(txtBuscar);
         northContainer.add(top);
         root.add(northContainer, BorderLayout.NORTH);
         root.add(leftCard, BorderLayout.CENTER);
@@ -127,6 +132,12 @@ public class DestinatarioWindow extends JDialog {
         // Actions
         // - Refrescar: recarga datos desde DAO
         btnRefrescar.addActionListener(e -> load());
+        // - Buscar: cada cambio del texto vuelve a consultar (la última petición gana, ver TareasUI)
+        txtBuscar.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override public void insertUpdate(javax.swing.event.DocumentEvent e) { load(); }
+            @Override public void removeUpdate(javax.swing.event.DocumentEvent e) { load(); }
+            @Override public void changedUpdate(javax.swing.event.DocumentEvent e) { }
+        });
         // - Nuevo: abre modal para crear un destinatario
         btnNuevo.addActionListener(e -> new FrmDestinatario(this, null).setVisible(true));
         // - Editar: obtiene RUC de la fila seleccionada y abre el formulario con el objeto
@@ -134,7 +145,7 @@ public class DestinatarioWindow extends JDialog {
             int r = table.getSelectedRow();
             if (r < 0) { JOptionPane.showMessageDialog(this, "Seleccione una fila"); return; }
             String ruc = model.getValueAt(r,0).toString();
-            Destinatario d = dao.listarTodos().stream().filter(x->x.getRuc().equals(ruc)).findFirst().orElse(null);
+            Destinatario d = dao.buscarPorRuc(ruc);
             if (d != null) new FrmDestinatario(this, d).setVisible(true);
         });
         // - Eliminar: confirma y llama a DAO.eliminar(ruc); refresca tabla si es exitoso
@@ -144,7 +155,8 @@ public class DestinatarioWindow extends JDialog {
             String ruc = model.getValueAt(r,0).toString();
             int resp = JOptionPane.showConfirmDialog(this, "Eliminar RUC " + ruc + "?","Confirmar",JOptionPane.YES_NO_OPTION);
             if (resp == JOptionPane.YES_OPTION) {
-                if (dao.eliminar(ruc)) { JOptionPane.showMessageDialog(this, "Eliminado"); load(); }
+                // La fila se quita sola: el DAO publica el cambio y FilasEnVivo lo aplica
+                if (dao.eliminar(ruc)) JOptionPane.showMessageDialog(this, "Eliminado");
                 else JOptionPane.showMessageDialog(this, "Error al eliminar");
             }
         });
@@ -153,15 +165,25 @@ public class DestinatarioWindow extends JDialog {
 
         // no inline detail panel: actions open modal forms (FrmDestinatario)
 
-        // initial load
+        // initial load; después los cambios (propios y de otros equipos) se aplican fila a fila
         load();
+        FilasEnVivo.instalar(this, "destinatario", dao::buscarPorRuc,
+                FilasEnVivo.enModelo(model, 0, DestinatarioWindow::fila, this::load));
     }
 
     public void load() {
-        model.setRowCount(0);
-        List<Destinatario> lista = dao.listarTodos();
-        for (Destinatario d : lista) {
-            model.addRow(new Object[]{d.getRuc(), d.getNombre(), d.getNumeroTelefono(), d.getCalleDireccion(), d.getCodigoUbigeo(), d.getGmail()});
-        }
+        // La consulta corre fuera del EDT (TareasUI); la tabla se rellena al volver.
+        // Con filtro sólo se traen los más parecidos (sp_buscar_destinatarios), no la tabla entera
+        String filtro = txtBuscar.getText();
+        boolean filtrando = BusquedaTexto.buscable(filtro);
+        TareasUI.ejecutar(this, "destinatarios", filtrando ? "Buscando destinatarios..." : "Cargando destinatarios...",
+                p -> filtrando ? dao.buscar(filtro, BusquedaTexto.LIMITE_MAXIMO) : dao.listarTodos(), lista -> {
+            model.setRowCount(0);
+            for (Destinatario d : lista) model.addRow(fila(d));
+        });
+    }
+
+    private static Object[] fila(Destinatario d) {
+        return new Object[]{d.getRuc(), d.getNombre(), d.getNumeroTelefono(), d.getCalleDireccion(), d.getCodigoUbigeo(), d.getGmail()};
     }
 }
@@ -0,0 +1,183 @@
+package ui;
+
+/*
+ * FilasEnVivo.java
+ * Mantiene al día un listado ya cargado aplicando cambios fila a fila en lugar
+ * de vaciar el modelo y volver a llamar a listarTodos().
+ * - Los eventos llegan de dao.EscuchaCambios: escrituras de esta instancia
+ *   (publicarLocal en los DAOs) y notificaciones de la BD de otros equipos.
+ * - Se agrupan durante RETARDO_MS; las claves borradas se quitan al momento y
+ *   las insertadas/modificadas se releen por clave fuera del EDT (TareasUI).
+ * - El modelo recibe inserciones/actualizaciones/borrados de filas sueltas
+ *   (fireTableRowsInserted/Updated/Deleted), así que la selección y el scroll
+ *   de la tabla se conservan.
+ * - Una ráfaga con más de MAX_FILAS claves, o una resincronización tras perder
+ *   la conexión de notificaciones, provoca una recarga completa.
+ * Se desinstala solo al cerrar (dispose) la ventana de `origen`.
+ */
+
+import dao.EscuchaCambios;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public final class FilasEnVivo<T> {
+
+    /** Dónde se aplican los cambios. Todos los métodos se llaman en el EDT. */
+    public interface Destino<T> {
+        /** Reemplaza la fila con esa clave o la agrega si no está. */
+        void poner(String clave, T valor);
+        /** Quita la fila con esa clave si está. */
+        void quitar(String clave);
+        /** Recarga completa del listado. */
+        void recargar();
+    }
+
+    private static final int RETARDO_MS = 150;
+    private static final int MAX_FILAS = 50;
+
+    private final String tabla;
+    private final Function<String, T> buscar;
+    private final Destino<T> destino;
+    private final Timer temporizador;
+    // Sólo se tocan en el EDT: operación pendiente por clave y número de cambios recibidos por clave
+    private final Map<String, Character> pendientes = new LinkedHashMap<>();
+    private final Map<String, Integer> versiones = new HashMap<>();
+    private boolean recargaPendiente = false;
+    private final Consumer<EscuchaCambios.Cambio> oyente = c -> SwingUtilities.invokeLater(() -> encolar(c));
+
+    private FilasEnVivo(String tabla, Function<String, T> buscar, Destino<T> destino) {
+        this.tabla = tabla;
+        this.buscar = buscar;
+        this.destino = destino;
+        this.temporizador = new Timer(RETARDO_MS, e -> aplicar());
+        this.temporizador.setRepeats(false);
+    }
+
+    /**
+     * Suscribe el listado a los cambios de `tabla`. `buscar` relee una fila por clave
+     * (fuera del EDT) y devuelve null si ya no debe mostrarse (borrada o dada de baja).
+     */
+    public static <T> FilasEnVivo<T> instalar(Component origen, String tabla,
+                                              Function<String, T> buscar, Destino<T> destino) {
+        FilasEnVivo<T> f = new FilasEnVivo<>(tabla, buscar, destino);
+        EscuchaCambios.suscribir(tabla, f.oyente);
+        Window w = origen instanceof Window ? (Window) origen : SwingUtilities.getWindowAncestor(origen);
+        if (w != null) {
+            w.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) { f.desinstalar(); }
+            });
+        }
+        return f;
+    }
+
+    /**
+     * Destino para un DefaultTableModel cuya columna `columnaClave` contiene la clave.
+     * Las filas nuevas se agregan al final.
+     */
+    public static <T> Destino<T> enModelo(DefaultTableModel modelo, int columnaClave,
+                                          Function<T, Object[]> aFila, Runnable recargar) {
+        return new Destino<T>() {
+            @Override
+            public void poner(String clave, T valor) {
+                Object[] fila = aFila.apply(valor);
+                int r = buscarFila(modelo, columnaClave, clave);
+                if (r < 0) {
+                    modelo.addRow(fila);
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                Vector<Object> actual = (Vector<Object>) modelo.getDataVector().get(r);
+                for (int c = 0; c < fila.length && c < actual.size(); c++) actual.set(c, fila[c]);
+                modelo.fireTableRowsUpdated(r, r);
+            }
+
+            @Override
+            public void quitar(String clave) {
+                int r = buscarFila(modelo, columnaClave, clave);
+                if (r >= 0) modelo.removeRow(r);
+            }
+
+            @Override
+            public void recargar() { recargar.run(); }
+        };
+    }
+
+    private static int buscarFila(DefaultTableModel modelo, int columna, String clave) {
+        for (int r = 0; r < modelo.getRowCount(); r++) {
+            Object v = modelo.getValueAt(r, columna);
+            if (v != null && v.toString().trim().equals(clave)) return r;
+        }
+        return -1;
+    }
+
+    /** Deja de recibir cambios (se llama solo al cerrar la ventana). */
+    public void desinstalar() {
+        EscuchaCambios.desuscribir(tabla, oyente);
+        temporizador.stop();
+        pendientes.clear();
+        versiones.clear();
+    }
+
+    private void encolar(EscuchaCambios.Cambio c) {
+        if (c.operacion == 'R') {
+            recargaPendiente = true;
+        } else if (c.clave != null && !c.clave.isEmpty()) {
+            pendientes.put(c.clave, c.operacion);
+            versiones.merge(c.clave, 1, Integer::sum);
+        } else {
+            return;
+        }
+        // Sin restart(): un flujo continuo de eventos no debe aplazar la actualización indefinidamente
+        if (!temporizador.isRunning()) temporizador.start();
+    }
+
+    private void aplicar() {
+        if (recargaPendiente || pendientes.size() > MAX_FILAS) {
+            recargaPendiente = false;
+            pendientes.clear();
+            versiones.clear();
+            destino.recargar();
+            return;
+        }
+        List<String> releer = new ArrayList<>();
+        Map<String, Integer> vistas = new HashMap<>();
+        for (Map.Entry<String, Character> e : pendientes.entrySet()) {
+            if (e.getValue() == 'D') {
+                versiones.remove(e.getKey());
+                destino.quitar(e.getKey());
+            } else {
+                releer.add(e.getKey());
+                vistas.put(e.getKey(), versiones.get(e.getKey()));
+            }
+        }
+        pendientes.clear();
+        if (releer.isEmpty()) return;
+        // Sin clave de deduplicación ni indicador: son lecturas cortas que no deben tapar la ventana
+        TareasUI.ejecutar(null, null, null, p -> {
+            Map<String, T> leidas = new LinkedHashMap<>();
+            for (String k : releer) {
+                if (p.cancelada()) break;
+                leidas.put(k, buscar.apply(k));
+            }
+            return leidas;
+        }, leidas -> leidas.forEach((k, v) -> {
+            // Si llegó otro cambio de la clave mientras se leía, se aplicará con esa lectura
+            if (!vistas.get(k).equals(versiones.get(k))) return;
+            versiones.remove(k);
+            if (v == null) destino.quitar(k); else destino.poner(k, v);
+        }), ex -> { });
+    }
+}
@@ -1,5 +1,6 @@
 package ui;
 
+import dao.CacheReferencias;
 import dao.DestinatarioDAO;
 import model.Destinatario;
 
@@ -72,7 +73,8 @@ public class FrmDestinatario extends JDialog {
         JTextField txtNombre = new JTextField();
         JTextField txtTel = new JTextField();
         JTextField txtDir = new JTextField();
-        JComboBox<String> cbUbigeo = new JComboBox<>();
+        // ubigeo: departamento -> provincia -> distrito (sólo los hijos del nivel elegido)
+        SelectorUbigeo selUbigeo = new SelectorUbigeo();
         JTextField txtGmail = new JTextField();
 
         int y=0;
@@ -86,7 +88,7 @@ public class FrmDestinatario extends JDialog {
         gbc.gridx=0; gbc.gridy=y; JLabel labDir = new JLabel("Dirección*:"); labDir.setFont(UIStyles.UI_FONT_BOLD); form.add(labDir, gbc);
         gbc.gridx=1; gbc.gridy=y++; form.add(txtDir, gbc);
         gbc.gridx=0; gbc.gridy=y; JLabel labUb = new JLabel("Ubigeo*: "); labUb.setFont(UIStyles.UI_FONT_BOLD); form.add(labUb, gbc);
-        gbc.gridx=1; gbc.gridy=y++; form.add(cbUbigeo, gbc);
+        gbc.gridx=1; gbc.gridy=y++; form.add(selUbigeo.panelEnLinea(), gbc);
         gbc.gridx=0; gbc.gridy=y; JLabel labGm = new JLabel("Gmail:"); form.add(labGm, gbc);
         gbc.gridx=1; gbc.gridy=y++; form.add(txtGmail, gbc);
 
@@ -97,15 +99,14 @@ public class FrmDestinatario extends JDialog {
         actions.add(btnOk); actions.add(btnCancel);
         gbc.gridx=0; gbc.gridy=y; gbc.gridwidth=2; form.add(actions, gbc);
 
-        // populate ubigeo combo from DB
-        cbUbigeo.addItem("");
-        for (model.Ubigeo u : new dao.UbigeoDAO().listarTodos()) cbUbigeo.addItem(u.getCodigo());
+        // jerarquía de ubigeos (desde la caché de referencias)
+        selUbigeo.setJerarquia(CacheReferencias.jerarquiaUbigeos());
 
         // Precargar datos si es edición
         if (editing != null) {
             txtRuc.setText(editing.getRuc()); txtRuc.setEnabled(false);
             txtNombre.setText(editing.getNombre()); txtTel.setText(editing.getNumeroTelefono());
-            txtDir.setText(editing.getCalleDireccion()); cbUbigeo.setSelectedItem(editing.getCodigoUbigeo());
+            txtDir.setText(editing.getCalleDireccion()); selUbigeo.setCodigo(editing.getCodigoUbigeo());
             txtGmail.setText(editing.getGmail());
         }
 
@@ -115,7 +116,7 @@ public class FrmDestinatario extends JDialog {
             String ruc = txtRuc.getText().trim();
             String nombre = txtNombre.getText().trim();
             String dir = txtDir.getText().trim();
-            String ub = cbUbigeo.getSelectedItem() == null ? "" : ((String)cbUbigeo.getSelectedItem()).trim();
+            String ub = selUbigeo.getCodigo();
             String tel = txtTel.getText().trim();
             String gm = txtGmail.getText().trim();
 
@@ -135,12 +136,13 @@ public class FrmDestinatario extends JDialog {
 
             if (editing == null) {
                 Destinatario d = new Destinatario(ruc, nombre, tel, dir, ub, gm);
-                if (dao.insertar(d)) { JOptionPane.showMessageDialog(this, "Creado"); dispose(); ((DestinatarioWindow)getOwner()).load(); }
+                // La lista de DestinatarioWindow se actualiza sola con el cambio publicado por el DAO
+                if (dao.insertar(d)) { JOptionPane.showMessageDialog(this, "Creado"); dispose(); }
                 else JOptionPane.showMessageDialog(this, "Error al crear");
             } else {
-                editing.setNombre(nombre); editing.setCalleDireccion(dir); editing.setCodigoUbigeo(ub);
-                editing.setNumeroTelefono(tel); editing.setGmail(gm);
-                if (dao.actualizar(editing)) { JOptionPane.showMessageDialog(this, "Actualizado"); dispose(); ((DestinatarioWindow)getOwner()).load(); }
+                // Copia nueva: `editing` puede ser la instancia compartida de la caché del DAO
+                Destinatario d = new Destinatario(editing.getRuc(), nombre, tel, dir, ub, gm);
+                if (dao.actualizar(d)) { JOptionPane.showMessageDialog(this, "Actualizado"); dispose(); }
                 else JOptionPane.showMessageDialog(this, "Error al actualizar");
             }
         });
@@ -1,30 +1,39 @@
 package ui;
 
+import dao.BusquedaTexto;
 import dao.GuiaDAO;
 import dao.DestinatarioDAO;
 import dao.OrdenDAO;
-import dao.UbigeoDAO;
+import dao.CacheReferencias;
+import dao.RemitenteDAO;
 import model.CabeceraGuia;
 import model.Destinatario;
 import model.OrdenDePago;
+import model.Remitente;
 import model.Ubigeo;
 import util.Session;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
+import java.util.function.Function;
 
 public class FrmGuia extends JDialog {
     private final GuiaDAO guiaDAO = new GuiaDAO();
     private final DestinatarioDAO ddao = new DestinatarioDAO();
+    private final RemitenteDAO rdao = new RemitenteDAO();
     private CabeceraGuia editing;
+    // Cabecera tal como quedó persistida tras emitir (null si se canceló o falló)
+    private CabeceraGuia guiaEmitida;
 
     /*
      * FrmGuia:
-     * - Constructor: recibe un `CabeceraGuia` opcional para edición; configura tamaño y llama a `initUI()`.
-     * - initUI(): construye el formulario completo (campos de cabecera, combos de órdenes/destinatarios/ubigeo),
+     * - Constructor: recibe un `CabeceraGuia` opcional para edición, ya completa (GuiaWindow la lee
+     *   con obtenerPorCodigo fuera del EDT); configura tamaño y llama a `initUI()`.
+     * - initUI(): construye el formulario completo (campos de cabecera, combos de órdenes/ubigeo y
+     *   campos con sugerencias para remitente y destinatario),
      *   precarga valores si `editing != null` y adjunta validaciones y el listener de guardado que llama a `guiaDAO.emitirGuia(...)`.
-     * - El listener de btnOk realiza validaciones (campos obligatorios, parseo numérico) y muestra mensajes al usuario.
+     * - El listener de btnOk realiza validaciones (campos obligatorios, parseo numérico) y muestra mensajes al usuario;
+     *   la emisión corre en TareasUI con los botones deshabilitados hasta que responde la BD.
      */
 
     public FrmGuia(Window owner, CabeceraGuia g) {
@@ -71,12 +80,18 @@ public class FrmGuia extends JDialog {
         JTextField txtSerie  = new JTextField();
         JTextField txtNumero = new JTextField();
         JComboBox<String> cbOrdenes = new JComboBox<>();
-        JTextField txtRucRemitente = new JTextField();
-        JComboBox<String> cbDestinatario = new JComboBox<>();
+        // remitente y destinatario: sugerencias por RUC o nombre mientras se escribe
+        CampoBusqueda<Remitente> txtRucRemitente = new CampoBusqueda<>(
+                t -> rdao.buscar(t, BusquedaTexto.LIMITE), r -> r.getRuc() + " - " + r.getNombreEmpresa(), Remitente::getRuc);
+        CampoBusqueda<Destinatario> txtDestinatario = new CampoBusqueda<>(
+                t -> ddao.buscar(t, BusquedaTexto.LIMITE), d -> d.getRuc() + " - " + d.getNombre(), Destinatario::getRuc);
         JTextField txtDirPartida = new JTextField();
         JTextField txtDirLlegada = new JTextField();
-        JComboBox<String> cbUbigeoOrigen = new JComboBox<>();
-        JComboBox<String> cbUbigeoDestino = new JComboBox<>();
+        // ubigeos: sugerencias por código o departamento/provincia/distrito desde la caché de referencias
+        Function<Ubigeo, String> etiquetaUbigeo =
+                u -> u.getCodigo() + " - " + u.getDepartamento() + "/" + u.getProvincia() + "/" + u.getDistrito();
+        CampoBusqueda<Ubigeo> cbUbigeoOrigen = CampoBusqueda.local(CacheReferencias::indiceUbigeos, etiquetaUbigeo, Ubigeo::getCodigo);
+        CampoBusqueda<Ubigeo> cbUbigeoDestino = CampoBusqueda.local(CacheReferencias::indiceUbigeos, etiquetaUbigeo, Ubigeo::getCodigo);
         JTextField txtPesoTotal = new JTextField("0.0");
         JTextField txtNumBultos = new JTextField("0");
 
@@ -90,7 +105,7 @@ public class FrmGuia extends JDialog {
         gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("Número:"), gbc); gbc.gridx=1; formPanel.add(txtNumero, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("Código orden:"), gbc); gbc.gridx=1; formPanel.add(cbOrdenes, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("RUC remitente:"), gbc); gbc.gridx=1; formPanel.add(txtRucRemitente, gbc); y++;
-        gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("Destinatario:"), gbc); gbc.gridx=1; formPanel.add(cbDestinatario, gbc); y++;
+        gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("Destinatario:"), gbc); gbc.gridx=1; formPanel.add(txtDestinatario, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("Dir. partida:"), gbc); gbc.gridx=1; formPanel.add(txtDirPartida, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("Dir. llegada:"), gbc); gbc.gridx=1; formPanel.add(txtDirLlegada, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; formPanel.add(new JLabel("Ubigeo origen:"), gbc); gbc.gridx=1; formPanel.add(cbUbigeoOrigen, gbc); y++;
@@ -101,10 +116,6 @@ public class FrmGuia extends JDialog {
         JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT)); actions.setOpaque(false); actions.add(btnOk); actions.add(btnCancel);
         gbc.gridx=0; gbc.gridy=y; gbc.gridwidth=2; formPanel.add(actions, gbc);
 
-        // cargar destinatarios en el combo (RUC - NOMBRE)
-        List<Destinatario> dests = ddao.listarTodos();
-        for (Destinatario d : dests) cbDestinatario.addItem(d.getRuc() + " - " + d.getNombre());
-
         // cargar órdenes en el combo (código - fecha - ruc)
         OrdenDAO odao = new OrdenDAO();
         cbOrdenes.addItem("");
@@ -115,24 +126,7 @@ public class FrmGuia extends JDialog {
             cbOrdenes.addItem(o.getCodigoOrden() + (dateStr.isEmpty() ? "" : " - " + dateStr) + (o.getRucCliente()!=null && !o.getRucCliente().isEmpty() ? " - " + o.getRucCliente() : ""));
         }
 
-        // cargar ubigeos en los combos
-        UbigeoDAO udao = new UbigeoDAO();
-        cbUbigeoOrigen.addItem(""); cbUbigeoDestino.addItem("");
-        for (Ubigeo u : udao.listarTodos()) {
-            String label = u.getCodigo() + " - " + u.getDepartamento() + "/" + u.getProvincia() + "/" + u.getDistrito();
-            cbUbigeoOrigen.addItem(label);
-            cbUbigeoDestino.addItem(label);
-        }
-
-        // Si venimos con 'editing' (objeto pasado desde la lista) recargamos la versión completa desde la BD
-        if (editing != null) {
-            CabeceraGuia full = guiaDAO.obtenerPorCodigo(editing.getCodigoGuia());
-            if (full != null) {
-                this.editing = full; // sustituir por la versión completa
-            }
-        }
-
-        // si estamos editando, poblar los campos desde la CabeceraGuia actualizada
+        // si estamos editando, poblar los campos desde la CabeceraGuia recibida (ya leída completa de la BD)
         if (editing != null) {
             txtCodigo.setText(editing.getCodigoGuia());
             txtCodigo.setEnabled(false); // no permitir cambiar PK
@@ -145,32 +139,17 @@ public class FrmGuia extends JDialog {
                     if (it != null && it.startsWith(editing.getCodOrden())) { cbOrdenes.setSelectedIndex(i); break; }
                 }
             }
-            txtRucRemitente.setText(editing.getRucRemitente() == null ? "" : editing.getRucRemitente());
+            txtRucRemitente.setTextoSinBuscar(editing.getRucRemitente());
             txtDirPartida.setText(editing.getDirPartida() == null ? "" : editing.getDirPartida());
             txtDirLlegada.setText(editing.getDirLlegada() == null ? "" : editing.getDirLlegada());
-            if (editing.getUbigeoOrigen() != null && !editing.getUbigeoOrigen().isEmpty()) {
-                for (int i = 0; i < cbUbigeoOrigen.getItemCount(); i++) {
-                    String it = cbUbigeoOrigen.getItemAt(i);
-                    if (it != null && it.startsWith(editing.getUbigeoOrigen())) { cbUbigeoOrigen.setSelectedIndex(i); break; }
-                }
-            }
-            if (editing.getUbigeoDestino() != null && !editing.getUbigeoDestino().isEmpty()) {
-                for (int i = 0; i < cbUbigeoDestino.getItemCount(); i++) {
-                    String it = cbUbigeoDestino.getItemAt(i);
-                    if (it != null && it.startsWith(editing.getUbigeoDestino())) { cbUbigeoDestino.setSelectedIndex(i); break; }
-                }
-            }
+            mostrarUbigeo(cbUbigeoOrigen, editing.getUbigeoOrigen());
+            mostrarUbigeo(cbUbigeoDestino, editing.getUbigeoDestino());
             txtPesoTotal.setText(editing.getPesoTotal() == null ? "0.0" : String.valueOf(editing.getPesoTotal()));
             txtNumBultos.setText(editing.getNumeroBultos() == null ? "0" : String.valueOf(editing.getNumeroBultos()));
-            // seleccionar destinatario en el combo por RUC si existe
+            // mostrar el destinatario por RUC (caché de DestinatarioDAO); si ya no existe, sólo el RUC
             if (editing.getRucDestinatario() != null) {
-                for (int i = 0; i < cbDestinatario.getItemCount(); i++) {
-                    String item = cbDestinatario.getItemAt(i);
-                    if (item != null && item.startsWith(editing.getRucDestinatario())) {
-                        cbDestinatario.setSelectedIndex(i);
-                        break;
-                    }
-                }
+                Destinatario d = ddao.buscarPorRuc(editing.getRucDestinatario());
+                if (d != null) txtDestinatario.setSeleccion(d); else txtDestinatario.setTextoSinBuscar(editing.getRucDestinatario());
             }
         }
 
@@ -178,7 +157,7 @@ public class FrmGuia extends JDialog {
         if (editing == null) {
             String logged = Session.getCurrentRuc();
             if (logged != null && !logged.isEmpty()) {
-                txtRucRemitente.setText(logged);
+                txtRucRemitente.setTextoSinBuscar(logged);
             }
         }
 
@@ -196,46 +175,40 @@ public class FrmGuia extends JDialog {
                     String s = selOrd.toString();
                     if (s.contains(" - ")) codOrden = s.split(" - ")[0].trim(); else codOrden = s.trim();
                 }
-                String rucRemitente = txtRucRemitente.getText().trim(); // ahora tomado del form
-
-                // destinatario: esperamos "RUC - NOMBRE" en el combo; si no, usar el texto completo
-                String rucDest = "";
-                Object sel = cbDestinatario.getSelectedItem();
-                if (sel != null) {
-                    String s = sel.toString();
-                    if (s.contains(" - ")) rucDest = s.split(" - ")[0].trim();
-                    else rucDest = s.trim();
-                }
+                String rucRemitente = txtRucRemitente.getClave(); // ahora tomado del form
+
+                // destinatario: el RUC de la sugerencia elegida o, si no se eligió, el texto escrito
+                String rucDest = txtDestinatario.getClave();
                 String dirPartida = txtDirPartida.getText().trim();
                 String dirLlegada = txtDirLlegada.getText().trim();
-                String ubigeoOrigen = "";
-                Object s1 = cbUbigeoOrigen.getSelectedItem();
-                if (s1 != null) { String ss = s1.toString(); ubigeoOrigen = ss.contains(" - ") ? ss.split(" - ")[0].trim() : ss.trim(); }
-                String ubigeoDestino = "";
-                Object s2 = cbUbigeoDestino.getSelectedItem();
-                if (s2 != null) { String ss = s2.toString(); ubigeoDestino = ss.contains(" - ") ? ss.split(" - ")[0].trim() : ss.trim(); }
+                // código del ubigeo elegido o, si no se eligió, el escrito
+                String ubigeoOrigen = codigoUbigeo(cbUbigeoOrigen);
+                String ubigeoDestino = codigoUbigeo(cbUbigeoDestino);
                 double pesoTotal = 0.0;
                 int numeroBultos = 0;
                 try { pesoTotal = Double.parseDouble(txtPesoTotal.getText().trim()); } catch (NumberFormatException ex) { /* deja 0.0 */ }
                 try { numeroBultos = Integer.parseInt(txtNumBultos.getText().trim()); } catch (NumberFormatException ex) { /* deja 0 */ }
 
-                // llamada a emitirGuia: pasamos codOrden y rucRemitente desde el formulario
-                boolean success = guiaDAO.emitirGuia(
+                // emisión en un solo round trip: pasamos codOrden y rucRemitente desde el formulario
+                CabeceraGuia g = new CabeceraGuia(
                         codigo, serie, numero, codOrden.isEmpty() ? null : codOrden,
                         rucRemitente.isEmpty() ? null : rucRemitente,
                         rucDest.isEmpty() ? null : rucDest,
                         dirPartida, dirLlegada,
                         ubigeoOrigen, ubigeoDestino,
-                        /*motivo*/ "", /*modalidad*/ "",
-                        pesoTotal, numeroBultos
+                        pesoTotal, numeroBultos,
+                        null, null, null
                 );
-
-                if (success) {
-                    JOptionPane.showMessageDialog(this, "Guía emitida correctamente");
-                    dispose(); // cerrar ventana al terminar
-                } else {
-                    JOptionPane.showMessageDialog(this, "Error al emitir la guía. Revisa logs.");
-                }
+                TareasUI.ejecutar(this, "emitir-guia", "Emitiendo guía...",
+                        p -> guiaDAO.emitirGuiaCompleta(g, /*motivo*/ "", /*modalidad*/ "", null, null), emitida -> {
+                    guiaEmitida = emitida;
+                    if (guiaEmitida != null) {
+                        JOptionPane.showMessageDialog(this, "Guía emitida correctamente");
+                        dispose(); // cerrar ventana al terminar
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Error al emitir la guía. Revisa logs.");
+                    }
+                }).bloqueando(btnOk, btnCancel);
             } catch (HeadlessException ex) {
                 JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
             }
@@ -252,4 +225,22 @@ public class FrmGuia extends JDialog {
         root.add(scrollPane, BorderLayout.CENTER);
         setContentPane(root);
     }
+
+    /** Cabecera persistida por la última emisión (evita volver a consultar la lista). */
+    public CabeceraGuia getGuiaEmitida() {
+        return guiaEmitida;
+    }
+
+    // Al editar: el ubigeo guardado como elegido; si ya no está en la caché, sólo su código
+    private static void mostrarUbigeo(CampoBusqueda<Ubigeo> campo, String codigo) {
+        if (codigo == null || codigo.trim().isEmpty()) return;
+        Ubigeo u = CacheReferencias.ubigeo(codigo);
+        if (u != null) campo.setSeleccion(u); else campo.setTextoSinBuscar(codigo.trim());
+    }
+
+    // Sin sugerencia elegida se acepta el código escrito, también con la etiqueta completa pegada
+    private static String codigoUbigeo(CampoBusqueda<Ubigeo> campo) {
+        String s = campo.getClave();
+        return s.contains(" - ") ? s.split(" - ")[0].trim() : s;
+    }
 }
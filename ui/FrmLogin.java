@@ -71,6 +71,8 @@ public class FrmLogin extends JDialog {
 
             // success: set session remitente, open menu and close login
             Session.setCurrentRuc(ruc);
+            // Datos de referencia (ubigeos, productos, vehículos, conductores) en segundo plano
+            dao.CacheReferencias.precargarEnSegundoPlano();
             dispose();
             FrmMenu menu = new FrmMenu();
             menu.setVisible(true);
@@ -1,18 +1,19 @@
 package ui;
 
+import dao.BusquedaTexto;
+import dao.CacheReferencias;
 import dao.DetalleOrdenDAO;
 import dao.OrdenDAO;
 import dao.DestinatarioDAO;
-import dao.ProductoDAO;
 import model.DetalleOrden;
 import model.Destinatario;
 import model.OrdenDePago;
+import model.Producto;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.math.BigDecimal;
-import java.util.List;
 // date handled via ui.DatePicker
 // no LocalDate/DateTimeFormatter needed; using spinner for dates
 
@@ -57,22 +58,16 @@ public class FrmOrden extends JDialog {
         int y=0;
         JTextField txtCodigo = new JTextField();
         ui.DatePicker datePicker = new ui.DatePicker();
-        JComboBox<String> cbRuc = new JComboBox<>();
         JComboBox<String> cbEstado = new JComboBox<>(new String[]{"Pendiente", "Emitida"});
 
-        // load RUCs from destinatarios
-        try {
-            DestinatarioDAO ddao = new DestinatarioDAO();
-            List<Destinatario> list = ddao.listarTodos();
-            cbRuc.addItem("");
-            for (Destinatario d : list) cbRuc.addItem(d.getRuc());
-        } catch (Exception ex) {
-            System.out.println("Error cargando destinatarios: " + ex.getMessage());
-        }
+        // cliente: sugerencias por RUC o nombre mientras se escribe (no se cargan todos los destinatarios)
+        DestinatarioDAO ddao = new DestinatarioDAO();
+        CampoBusqueda<Destinatario> txtCliente = new CampoBusqueda<>(
+                t -> ddao.buscar(t, BusquedaTexto.LIMITE), d -> d.getRuc() + " - " + d.getNombre(), Destinatario::getRuc);
 
         gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Código orden*:"), gbc); gbc.gridx=1; form.add(txtCodigo, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Fecha (DD/MM/YYYY):"), gbc); gbc.gridx=1; form.add(datePicker, gbc); y++;
-        gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("RUC cliente:"), gbc); gbc.gridx=1; form.add(cbRuc, gbc); y++;
+        gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Cliente (RUC o nombre):"), gbc); gbc.gridx=1; form.add(txtCliente, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Estado:"), gbc); gbc.gridx=1; form.add(cbEstado, gbc); y++;
 
         if (editar != null) {
@@ -80,27 +75,29 @@ public class FrmOrden extends JDialog {
             if (editar.getFecha() != null) {
                 datePicker.setDate(editar.getFecha());
             }
-            if (editar.getRucCliente() != null) cbRuc.setSelectedItem(editar.getRucCliente());
+            if (editar.getRucCliente() != null) {
+                Destinatario cliente = ddao.buscarPorRuc(editar.getRucCliente());
+                if (cliente != null) txtCliente.setSeleccion(cliente); else txtCliente.setTextoSinBuscar(editar.getRucCliente());
+            }
             if (editar.getEstado() != null) cbEstado.setSelectedItem(editar.getEstado());
         }
 
         // Details UI: products selector, cantidad, precio and table of detail lines
-        ProductoDAO productoDAO = new ProductoDAO();
         DetalleOrdenDAO detalleDAO = new DetalleOrdenDAO();
 
         JPanel detailsPanel = new JPanel(new BorderLayout(8,8)); detailsPanel.setOpaque(false);
 
         // top add form for a detail line
         JPanel addLine = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 6)); addLine.setOpaque(false);
-        JComboBox<String> cbProducto = new JComboBox<>(); cbProducto.addItem("");
-        try {
-            for (model.Producto p : productoDAO.listarTodos()) cbProducto.addItem(p.getCodigoProducto() + " - " + p.getNombreProducto());
-        } catch (Exception ex) { System.err.println("Error cargando productos: " + ex.getMessage()); }
+        // productos: sugerencias desde el índice en memoria de la caché de referencias (sin ir a la BD por tecla)
+        CampoBusqueda<Producto> txtProducto = CampoBusqueda.local(CacheReferencias::indiceProductos,
+                p -> p.getCodigoProducto() + " - " + p.getNombreProducto(), Producto::getCodigoProducto);
+        txtProducto.setColumns(24);
         JTextField txtCantidad = new JTextField("1", 6);
         JTextField txtPrecio = new JTextField(8);
         JButton btnAgregar = new JButton("Agregar"); UIStyles.styleButton(btnAgregar);
         JButton btnEliminarLinea = new JButton("Eliminar línea"); UIStyles.styleButton(btnEliminarLinea);
-        addLine.add(new JLabel("Producto:")); addLine.add(cbProducto);
+        addLine.add(new JLabel("Producto:")); addLine.add(txtProducto);
         addLine.add(new JLabel("Cantidad:")); addLine.add(txtCantidad);
         addLine.add(new JLabel("Precio unit.:")); addLine.add(txtPrecio);
         addLine.add(btnAgregar); addLine.add(btnEliminarLinea);
@@ -116,17 +113,14 @@ public class FrmOrden extends JDialog {
         detailsPanel.add(addLine, BorderLayout.NORTH); detailsPanel.add(spDetails, BorderLayout.CENTER);
 
         // wire product selection to prefill price
-        cbProducto.addActionListener(e -> {
-            String sel = (String) cbProducto.getSelectedItem();
-            if (sel == null || sel.trim().isEmpty()) { txtPrecio.setText(""); return; }
-            String code = sel.split(" - ")[0];
-            model.Producto prod = productoDAO.listarTodos().stream().filter(p->p.getCodigoProducto().equals(code)).findFirst().orElse(null);
-            if (prod != null) txtPrecio.setText(String.format("%.2f", prod.getPrecioBase()));
-        });
+        txtProducto.alElegir(prod -> txtPrecio.setText(String.format("%.2f", prod.getPrecioBase())));
 
         btnAgregar.addActionListener(e -> {
-            String sel = (String) cbProducto.getSelectedItem(); if (sel == null || sel.trim().isEmpty()) { JOptionPane.showMessageDialog(this, "Seleccione un producto"); return; }
-            String code = sel.split(" - ")[0]; String name = sel.contains(" - ") ? sel.substring(sel.indexOf(" - ")+3) : "";
+            // sin sugerencia elegida se acepta un código escrito completo
+            Producto prod = txtProducto.getSeleccion();
+            if (prod == null && !txtProducto.getClave().isEmpty()) prod = CacheReferencias.producto(txtProducto.getClave());
+            if (prod == null) { JOptionPane.showMessageDialog(this, "Seleccione un producto"); return; }
+            String code = prod.getCodigoProducto(); String name = prod.getNombreProducto() == null ? "" : prod.getNombreProducto();
             String qstr = txtCantidad.getText().trim(); String pstr = txtPrecio.getText().trim();
             BigDecimal q; BigDecimal pu;
             try { q = new BigDecimal(qstr.replace(',', '.')); if (q.compareTo(BigDecimal.ZERO) < 0) { JOptionPane.showMessageDialog(this, "Cantidad inválida"); return; } }
@@ -156,7 +150,7 @@ public class FrmOrden extends JDialog {
             String codigo = txtCodigo.getText().trim();
             if (codigo.isEmpty()) { JOptionPane.showMessageDialog(this, "Código de orden es obligatorio"); return; }
             java.sql.Date fecha = datePicker.getDate();
-            String ruc = ""; Object sel = cbRuc.getSelectedItem(); if (sel != null) ruc = sel.toString().trim();
+            String ruc = txtCliente.getClave();
             String estado = "Pendiente"; Object s2 = cbEstado.getSelectedItem(); if (s2 != null) estado = s2.toString().trim();
             OrdenDePago o = new OrdenDePago(codigo, fecha, ruc, estado);
             OrdenDAO dao = new OrdenDAO();
@@ -164,16 +158,15 @@ public class FrmOrden extends JDialog {
             if (editing == null) ok = dao.crear(o); else ok = dao.actualizar(o);
             if (!ok) { JOptionPane.showMessageDialog(this, "Error: no se pudo guardar la orden", "Error", JOptionPane.ERROR_MESSAGE); return; }
 
-            // persist detalles: delete existing and re-insert
-            detalleDAO.eliminarPorOrden(codigo);
-            boolean allOk = true;
+            // persist detalles: una sola transacción con sólo las diferencias respecto a la BD
+            java.util.List<DetalleOrden> lineas = new java.util.ArrayList<>();
             for (int i = 0; i < detailsModel.getRowCount(); i++) {
                 String codProd = detailsModel.getValueAt(i, 0).toString();
                 BigDecimal cantidad = new BigDecimal(detailsModel.getValueAt(i, 2).toString());
                 BigDecimal precioUnit = new BigDecimal(detailsModel.getValueAt(i, 3).toString());
-                DetalleOrden d = new DetalleOrden(codigo, codProd, cantidad, precioUnit);
-                if (!detalleDAO.agregarDetalle(d)) { allOk = false; }
+                lineas.add(new DetalleOrden(codigo, codProd, cantidad, precioUnit));
             }
+            boolean allOk = detalleDAO.guardarDetalles(codigo, lineas);
 
             onOrdenGuardada(o);
             JOptionPane.showMessageDialog(this, "Orden guardada" + (allOk ? "" : " (con errores en detalles)"));
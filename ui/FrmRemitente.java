@@ -2,9 +2,7 @@ package ui;
 
 import dao.RemitenteDAO;
 import dao.RemitenteCredDAO;
-import dao.UbigeoDAO;
 import model.Remitente;
-import model.Ubigeo;
 
 import javax.swing.*;
 import java.awt.*;
@@ -13,7 +11,7 @@ public class FrmRemitente extends JDialog {
 
     public FrmRemitente(Window owner, String prefillRuc) {
         super(owner, "Registrar remitente", ModalityType.APPLICATION_MODAL);
-        setSize(560, 420);
+        setSize(560, 500);
         setLocationRelativeTo(owner);
 
         JPanel root = new JPanel(new BorderLayout(8,8)); root.setBackground(UIStyles.PANEL); root.setBorder(BorderFactory.createEmptyBorder(12,12,12,12));
@@ -26,7 +24,8 @@ public class FrmRemitente extends JDialog {
         JTextField txtTel = new JTextField();
         JTextField txtEmail = new JTextField();
         JTextField txtCalle = new JTextField();
-        JComboBox<String> cbUbigeo = new JComboBox<>();
+        // ubigeo: departamento -> provincia -> distrito (sólo los hijos del nivel elegido)
+        SelectorUbigeo selUbigeo = new SelectorUbigeo();
         JPasswordField txtPwd = new JPasswordField();
 
         int y=0;
@@ -36,7 +35,9 @@ public class FrmRemitente extends JDialog {
         gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Teléfono:"), gbc); gbc.gridx=1; form.add(txtTel, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Email:"), gbc); gbc.gridx=1; form.add(txtEmail, gbc); y++;
         gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Dirección (calle):"), gbc); gbc.gridx=1; form.add(txtCalle, gbc); y++;
-        gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Código Ubigeo:"), gbc); gbc.gridx=1; form.add(cbUbigeo, gbc); y++;
+        gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Departamento:"), gbc); gbc.gridx=1; form.add(selUbigeo.comboDepartamento(), gbc); y++;
+        gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Provincia:"), gbc); gbc.gridx=1; form.add(selUbigeo.comboProvincia(), gbc); y++;
+        gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Distrito (ubigeo):"), gbc); gbc.gridx=1; form.add(selUbigeo.comboDistrito(), gbc); y++;
         gbc.gridx=0; gbc.gridy=y; form.add(new JLabel("Crear contraseña (opcional):"), gbc); gbc.gridx=1; form.add(txtPwd, gbc); y++;
 
         JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT)); actions.setOpaque(false);
@@ -46,12 +47,8 @@ public class FrmRemitente extends JDialog {
 
         btnCancel.addActionListener(e -> dispose());
 
-        // poblar ubigeos desde BD
-        UbigeoDAO udao = new UbigeoDAO();
-        cbUbigeo.addItem("");
-        for (Ubigeo u : udao.listarTodos()) {
-            cbUbigeo.addItem(u.getCodigo() + " - " + u.getDepartamento() + "/" + u.getProvincia() + "/" + u.getDistrito());
-        }
+        // jerarquía de ubigeos desde la caché de referencias
+        selUbigeo.setJerarquia(dao.CacheReferencias.jerarquiaUbigeos());
 
         btnSave.addActionListener(e -> {
             String ruc = txtRuc.getText().trim();
@@ -60,12 +57,7 @@ public class FrmRemitente extends JDialog {
             String tel = txtTel.getText().trim();
             String email = txtEmail.getText().trim();
             String calle = txtCalle.getText().trim();
-            String ubigeo = "";
-            Object sel = cbUbigeo.getSelectedItem();
-            if (sel != null) {
-                String s = sel.toString();
-                ubigeo = s.contains(" - ") ? s.split(" - ")[0].trim() : s.trim();
-            }
+            String ubigeo = selUbigeo.getCodigo();
             String pwd = new String(txtPwd.getPassword());
 
             if (ruc.isEmpty() || nombre.isEmpty() || razon.isEmpty() || calle.isEmpty() || ubigeo.isEmpty()) {
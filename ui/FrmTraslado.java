@@ -1,5 +1,6 @@
 package ui;
 
+import dao.CacheReferencias;
 import dao.TrasladoDAO;
 import model.Traslado;
 
@@ -11,6 +12,8 @@ import java.time.format.DateTimeParseException;
 public class FrmTraslado extends JDialog {
     private final TrasladoDAO dao = new TrasladoDAO();
     private final Traslado editing;
+    // Guías recientes ofrecidas en el combo (los traslados se registran sobre guías recientes)
+    private static final int GUIAS_EN_COMBO = 500;
 
     /*
      * FrmTraslado:
@@ -83,34 +86,35 @@ public class FrmTraslado extends JDialog {
 
         // DatePicker handles formatting dd/MM/yyyy
 
-        // populate placas combo
-        dao.VehiculoDAO vehDAO = new dao.VehiculoDAO();
+        // populate placas combo (desde la caché de referencias)
         cbPlaca.addItem("");
-        for (model.Vehiculo v : vehDAO.listarTodos()) cbPlaca.addItem(v.getPlaca());
+        for (String placa : CacheReferencias.placas()) cbPlaca.addItem(placa);
 
-        // populate guias combo
+        // populate guias combo: sólo las guías más recientes (primera página keyset), no todo el histórico
         dao.GuiaDAO guiaDAO = new dao.GuiaDAO();
         cbGuia.addItem("");
-        for (model.CabeceraGuia g : guiaDAO.listarTodas()) {
+        for (model.CabeceraGuia g : guiaDAO.listarPagina(null, null, GUIAS_EN_COMBO)) {
             String label = g.getCodigoGuia();
             if (g.getSerie() != null && !g.getSerie().isEmpty()) label += " - " + g.getSerie();
             if (g.getNumero() != null && !g.getNumero().isEmpty()) label += " - " + g.getNumero();
             cbGuia.addItem(label);
         }
 
-        // populate licencias combo
-        dao.ConductorDAO conductorDAO = new dao.ConductorDAO();
+        // populate licencias combo (desde la caché de referencias)
         cbLic.addItem("");
-        for (String l : conductorDAO.listarLicencias()) cbLic.addItem(l);
+        for (String l : CacheReferencias.licencias()) cbLic.addItem(l);
 
         if (editing != null) {
             txtCod.setText(editing.getCodigoTraslado()); cbPlaca.setSelectedItem(editing.getPlaca()); cbLic.setSelectedItem(editing.getLicencia());
             // seleccionar guia en combo
             if (editing.getCodigoGuia() != null && !editing.getCodigoGuia().isEmpty()) {
+                boolean encontrada = false;
                 for (int i = 0; i < cbGuia.getItemCount(); i++) {
                     String it = cbGuia.getItemAt(i);
-                    if (it != null && it.startsWith(editing.getCodigoGuia())) { cbGuia.setSelectedIndex(i); break; }
+                    if (it != null && it.startsWith(editing.getCodigoGuia())) { cbGuia.setSelectedIndex(i); encontrada = true; break; }
                 }
+                // guía antigua fuera de la primera página: añadirla para poder conservarla
+                if (!encontrada) { cbGuia.addItem(editing.getCodigoGuia()); cbGuia.setSelectedItem(editing.getCodigoGuia()); }
             }
             // mostrar solo fecha en dd/MM/yyyy (si no es null) usando DatePicker
             if (editing.getFechaInicio() != null) {
@@ -152,11 +156,12 @@ public class FrmTraslado extends JDialog {
                 }
 
                 Traslado tt = new Traslado(cod, guia, placa, lic, tIni, tFin, estado, obs);
+                // La lista de TrasladoWindow se actualiza sola con el cambio publicado por el DAO
                 if (editing==null) {
-                    if (dao.registrarTraslado(tt)) { JOptionPane.showMessageDialog(this,"Registrado"); dispose(); ((TrasladoWindow)getOwner()).load(); }
+                    if (dao.registrarTraslado(tt)) { JOptionPane.showMessageDialog(this,"Registrado"); dispose(); }
                     else JOptionPane.showMessageDialog(this,"Error al registrar traslado");
                 } else {
-                    if (dao.actualizarTraslado(tt)) { JOptionPane.showMessageDialog(this,"Actualizado"); dispose(); ((TrasladoWindow)getOwner()).load(); }
+                    if (dao.actualizarTraslado(tt)) { JOptionPane.showMessageDialog(this,"Actualizado"); dispose(); }
                     else JOptionPane.showMessageDialog(this,"Error al actualizar traslado");
                 }
             } catch (DateTimeParseException ex) {
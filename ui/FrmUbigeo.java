@@ -13,11 +13,13 @@ public class FrmUbigeo extends JDialog {
         // FrmUbigeo:
         // - Constructor: muestra formulario para crear o editar un Ubigeo.
         // - Campos: código, departamento, provincia, distrito.
+        // - Selector "Ubicar en" (departamento -> provincia): al elegir un nivel existente copia sus
+        //   nombres y propone el siguiente código libre de la provincia; para uno nuevo se escribe a mano.
         // - btnCrear listener: valida campos obligatorios y usa `UbigeoDAO.insertar/actualizar`.
         super(owner, Dialog.ModalityType.APPLICATION_MODAL);
         this.editing = editar;
         setTitle(editar == null ? "Nuevo Ubigeo" : "Editar Ubigeo");
-        setSize(520, 420);
+        setSize(560, 460);
         setLocationRelativeTo(owner);
         setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
         getContentPane().setBackground(UIStyles.BG);
@@ -63,9 +65,29 @@ public class FrmUbigeo extends JDialog {
             txtDistrito.setText(editing.getDistrito());
             txtCodigo.setEnabled(false);
         }
+        SelectorUbigeo selUbicacion = new SelectorUbigeo("(nuevo)", false);
+        selUbicacion.setJerarquia(dao.CacheReferencias.jerarquiaUbigeos());
+        if (editing != null) {
+            selUbicacion.setCodigo(editing.getCodigo());
+            selUbicacion.setEnabled(false);
+        }
+        selUbicacion.alCambiar(() -> {
+            dao.JerarquiaUbigeos.Nodo dep = selUbicacion.getDepartamento();
+            dao.JerarquiaUbigeos.Nodo prov = selUbicacion.getProvincia();
+            if (dep != null) txtDepartamento.setText(dep.nombre);
+            if (prov != null) {
+                txtProvincia.setText(prov.nombre);
+                txtCodigo.setText(selUbicacion.getJerarquia().siguienteCodigo(prov.codigo));
+            } else if (dep != null) {
+                txtCodigo.setText(dep.codigo);
+            }
+        });
 
         int y=0;
         gbc.gridx=0; gbc.gridy=y; gbc.gridwidth=1;
+        JLabel labUbi = new JLabel("Ubicar en:"); labUbi.setFont(UIStyles.UI_FONT_BOLD); labUbi.setForeground(UIStyles.GREEN_DARK); form.add(labUbi, gbc);
+        gbc.gridx=1; gbc.gridy=y++; form.add(selUbicacion.panelEnLinea(), gbc);
+        gbc.gridx=0; gbc.gridy=y;
         JLabel labCod = new JLabel("Código*:"); labCod.setFont(UIStyles.UI_FONT_BOLD); labCod.setForeground(UIStyles.GREEN_DARK); form.add(labCod, gbc);
         gbc.gridx=1; gbc.gridy=y++; form.add(txtCodigo, gbc);
         gbc.gridx=0; gbc.gridy=y; JLabel labDep = new JLabel("Departamento*:"); labDep.setFont(UIStyles.UI_FONT_BOLD); labDep.setForeground(UIStyles.GREEN_DARK); form.add(labDep, gbc);
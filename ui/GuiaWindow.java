@@ -8,8 +8,10 @@ package ui;
  */
 
 import dao.GuiaDAO;
+import dao.GuiaDocumentoDAO;
 import model.CabeceraGuia;
 import model.DetalleGuia;
+import model.GuiaDocumento;
 import util.GuiaRemisionGenerator;
 
 import javax.swing.*;
@@ -25,7 +27,8 @@ import java.time.format.DateTimeParseException;
 
 public class GuiaWindow extends JDialog {
     private final GuiaDAO dao = new GuiaDAO();
-    private DefaultTableModel model;
+    private final GuiaDocumentoDAO docDao = new GuiaDocumentoDAO();
+    private GuiasPaginadasTableModel model;
 
     public GuiaWindow(Frame owner) {
         // Constructor: inicializa ventana modal, aplica estilos y construye UI
@@ -41,7 +44,7 @@ public class GuiaWindow extends JDialog {
 
     private void initUI() {
         // initUI(): construye encabezado, tabla y botones de acción (Nuevo, Editar, Eliminar, Detalle, Generar PDF)
-        // Los listeners delegan en `GuiaDAO`, `DetalleOrdenDAO` y `GuiaRemisionGenerator`.
+        // Los listeners delegan en `GuiaDAO`, `GuiaDocumentoDAO` (PDF) y `GuiaRemisionGenerator`.
         UIStyles.RoundedPanel root = new UIStyles.RoundedPanel(UIStyles.PANEL, UIStyles.CARD_RADIUS);
         root.setLayout(new BorderLayout(8,8));
         root.setBorder(BorderFactory.createEmptyBorder(8,8,8,8));
@@ -70,8 +73,8 @@ public class GuiaWindow extends JDialog {
         northContainer.setOpaque(false);
         northContainer.add(header);
 
-        String[] cols = {"Código","Serie","Número","Orden","Remitente","Fecha","Hora","Estado"};
-        model = new DefaultTableModel(cols,0);
+        // Modelo paginado: trae las guías por páginas a medida que se hace scroll
+        model = new GuiasPaginadasTableModel(dao);
         JTable table = new JTable(model); table.setRowHeight(26);
 
         JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT)); top.setOpaque(false);
@@ -83,30 +86,80 @@ public class GuiaWindow extends JDialog {
         JButton btnGenerarPdf = new JButton("Generar PDF"); UIStyles.styleButton(btnGenerarPdf);
         top.add(btnNuevo); top.add(btnEditar); top.add(btnEliminar); top.add(btnRefrescar); top.add(btnDetalle); top.add(btnGenerarPdf);
         northContainer.add(top);
+
+        // Filtro: estado, rango de fechas de emisión y RUCs (GuiaDAO.buscar, paginado igual que el listado)
+        JPanel filtros = new JPanel(new FlowLayout(FlowLayout.LEFT)); filtros.setOpaque(false);
+        JComboBox<String> cbEstado = new JComboBox<>(new String[]{"(Todos)", "emitida", "en tránsito", "entregada"});
+        JTextField txtDesde = new JTextField(8); txtDesde.setToolTipText("dd/MM/yyyy");
+        JTextField txtHasta = new JTextField(8); txtHasta.setToolTipText("dd/MM/yyyy");
+        JTextField txtRucDest = new JTextField(10);
+        JTextField txtRucRem = new JTextField(10);
+        JButton btnFiltrar = new JButton("Filtrar"); UIStyles.styleButton(btnFiltrar);
+        JButton btnLimpiar = new JButton("Limpiar"); UIStyles.styleButton(btnLimpiar);
+        filtros.add(new JLabel("Estado:")); filtros.add(cbEstado);
+        filtros.add(new JLabel("Desde:")); filtros.add(txtDesde);
+        filtros.add(new JLabel("Hasta:")); filtros.add(txtHasta);
+        filtros.add(new JLabel("RUC dest.:")); filtros.add(txtRucDest);
+        filtros.add(new JLabel("RUC rem.:")); filtros.add(txtRucRem);
+        filtros.add(btnFiltrar); filtros.add(btnLimpiar);
+        northContainer.add(filtros);
         root.add(northContainer, BorderLayout.NORTH);
-        root.add(new JScrollPane(table), BorderLayout.CENTER);
+        JScrollPane scrollTabla = new JScrollPane(table);
+        model.instalarEn(scrollTabla, table);
+        root.add(scrollTabla, BorderLayout.CENTER);
         add(root);
 
-        // Refrescar: recarga la lista de guías
+        // Refrescar: recarga la lista de guías (con el filtro vigente)
         btnRefrescar.addActionListener(e -> load());
+        // Filtrar: valida las fechas y recarga desde la primera página con los criterios
+        btnFiltrar.addActionListener(e -> {
+            java.sql.Date desde, hasta;
+            try {
+                desde = fechaFiltro(txtDesde.getText());
+                hasta = fechaFiltro(txtHasta.getText());
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(this, "Fecha inválida (use dd/MM/yyyy): " + ex.getParsedString());
+                return;
+            }
+            if (desde != null && hasta != null && desde.after(hasta)) { JOptionPane.showMessageDialog(this, "La fecha 'Desde' es posterior a 'Hasta'"); return; }
+            String estado = cbEstado.getSelectedIndex() <= 0 ? null : (String) cbEstado.getSelectedItem();
+            model.setFiltro(estado, desde, hasta, txtRucDest.getText(), txtRucRem.getText());
+            load();
+        });
+        btnLimpiar.addActionListener(e -> {
+            cbEstado.setSelectedIndex(0);
+            txtDesde.setText(""); txtHasta.setText(""); txtRucDest.setText(""); txtRucRem.setText("");
+            model.setFiltro(null, null, null, null, null);
+            load();
+        });
         // Nuevo: abre FrmGuia en modo creación
-        btnNuevo.addActionListener(e -> new FrmGuia(this, null).setVisible(true));
-        // Editar: abre FrmGuia con la cabecera cargada desde DAO
+        btnNuevo.addActionListener(e -> {
+            FrmGuia frm = new FrmGuia(this, null);
+            frm.setVisible(true);
+            mostrarGuia(frm.getGuiaEmitida());
+        });
+        // Editar: carga la cabecera completa desde el DAO (fuera del EDT) y abre FrmGuia con ella
         btnEditar.addActionListener(e -> {
             int r = table.getSelectedRow(); if (r < 0) { JOptionPane.showMessageDialog(this, "Seleccione una fila"); return; }
             String codigo = model.getValueAt(r,0).toString();
-            CabeceraGuia g = dao.listarTodas().stream().filter(x->x.getCodigoGuia().equals(codigo)).findFirst().orElse(null);
-            if (g!=null) new FrmGuia(this, g).setVisible(true);
+            TareasUI.ejecutar(this, "editar-guia", "Cargando guía...", p -> dao.obtenerPorCodigo(codigo), g -> {
+                if (g == null) { JOptionPane.showMessageDialog(this, "La guía " + codigo + " ya no existe"); return; }
+                FrmGuia frm = new FrmGuia(this, g);
+                frm.setVisible(true);
+                mostrarGuia(frm.getGuiaEmitida());
+            }).bloqueando(btnEditar, btnEliminar);
         });
-        // Eliminar: confirma y llama a dao.eliminar(codigo)
+        // Eliminar: confirma y llama a dao.eliminar(codigo) fuera del EDT
         btnEliminar.addActionListener(e -> {
             int r = table.getSelectedRow(); if (r < 0) { JOptionPane.showMessageDialog(this, "Seleccione una fila"); return; }
             String codigo = model.getValueAt(r,0).toString();
             int opt = JOptionPane.showConfirmDialog(this, "Confirma eliminar la guía " + codigo + " ?", "Confirmar", JOptionPane.YES_NO_OPTION);
             if (opt != JOptionPane.YES_OPTION) return;
-            boolean ok = dao.eliminar(codigo);
-            if (ok) { JOptionPane.showMessageDialog(this, "Eliminado"); load(); }
-            else { JOptionPane.showMessageDialog(this, "Error al eliminar. Verifique dependencias y logs."); }
+            TareasUI.ejecutar(this, "eliminar-guia", "Eliminando guía...", p -> dao.eliminar(codigo), ok -> {
+                // La fila se quita sola: el DAO publica el cambio y FilasEnVivo lo aplica
+                if (ok) { JOptionPane.showMessageDialog(this, "Eliminado"); }
+                else { JOptionPane.showMessageDialog(this, "Error al eliminar. Verifique dependencias y logs."); }
+            }).bloqueando(btnEditar, btnEliminar);
         });
 
         // Mostrar detalle de la orden asociada a la guía seleccionada
@@ -114,16 +167,8 @@ public class GuiaWindow extends JDialog {
             int r = table.getSelectedRow(); if (r < 0) { JOptionPane.showMessageDialog(this, "Seleccione una guía"); return; }
             Object ordenVal = model.getValueAt(r, 3); if (ordenVal == null) { JOptionPane.showMessageDialog(this, "La guía seleccionada no tiene orden asociada"); return; }
             String codigoOrden = ordenVal.toString();
-            dao.DetalleOrdenDAO ddao = new dao.DetalleOrdenDAO();
-            DefaultTableModel dm = ddao.listarModeloTablaPorOrden(codigoOrden);
-            JTable t = new JTable(dm);
-            t.setFillsViewportHeight(true); t.setRowHeight(24); t.getTableHeader().setFont(UIStyles.UI_FONT_BOLD);
-            JScrollPane sp = new JScrollPane(t); sp.setBorder(BorderFactory.createLineBorder(UIStyles.CARD_BORDER));
-            JDialog dlg = new JDialog(this, "Detalle de orden " + codigoOrden, true);
-            ui.UIStyles.RoundedPanel rp = new ui.UIStyles.RoundedPanel(Color.WHITE, UIStyles.CARD_RADIUS);
-            rp.setLayout(new BorderLayout(8,8)); rp.setBorder(BorderFactory.createEmptyBorder(12,12,12,12));
-            rp.add(sp, BorderLayout.CENTER);
-            dlg.add(rp); dlg.setSize(720, 420); dlg.setLocationRelativeTo(this); UIStyles.applyComponentTheme(dlg.getContentPane()); dlg.setVisible(true);
+            TareasUI.ejecutar(this, "detalle-orden", "Cargando detalle...",
+                    p -> new dao.DetalleOrdenDAO().listarModeloTablaPorOrden(codigoOrden), dm -> mostrarDetalleOrden(codigoOrden, dm));
         });
 
         // Acción: generar PDF usando datos de la guía seleccionada
@@ -131,155 +176,172 @@ public class GuiaWindow extends JDialog {
             int r = table.getSelectedRow();
             if (r < 0) { JOptionPane.showMessageDialog(this, "Seleccione una guía para generar el PDF"); return; }
             String codigo = model.getValueAt(r,0).toString();
-            CabeceraGuia g = dao.listarTodas().stream().filter(x->x.getCodigoGuia().equals(codigo)).findFirst().orElse(null);
-            if (g == null) { JOptionPane.showMessageDialog(this, "No se pudo cargar la guía seleccionada"); return; }
-
-            // Determinar fecha/hora de emisión: preferir valores almacenados en la cabecera
-            String fechaEmisionStr;
-            if (g.getFechaEmision() != null) {
-                java.sql.Date d = g.getFechaEmision();
-                String fechaPart = d.toLocalDate().format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-                if (g.getHoraEmision() != null) {
-                    java.sql.Time ttime = g.getHoraEmision();
-                    java.time.LocalTime lt = ttime.toLocalTime();
-                    String horaPart = lt.format(DateTimeFormatter.ofPattern("hh:mm:ss a"));
-                    fechaEmisionStr = fechaPart + " " + horaPart;
-                } else {
-                    LocalTime ahora = LocalTime.now();
-                    String horaActual = ahora.format(DateTimeFormatter.ofPattern("hh:mm:ss a"));
-                    fechaEmisionStr = fechaPart + " " + horaActual;
-                }
+            // Documento completo (cabecera, partes, traslado y líneas) en una sola consulta, fuera del EDT
+            TareasUI.ejecutar(this, "pdf-documento", "Cargando guía...", p -> docDao.obtener(codigo), this::generarPdf);
+        });
+
+        load();
+        // Cambios de guías (propios y de otros equipos) aplicados fila a fila sobre las páginas cargadas
+        FilasEnVivo.instalar(this, "cabecera_guia", dao::obtenerVigente, new FilasEnVivo.Destino<CabeceraGuia>() {
+            @Override
+            public void poner(String clave, CabeceraGuia g) { model.aplicarCambio(g); }
+
+            @Override
+            public void quitar(String clave) { model.quitar(clave); }
+
+            @Override
+            public void recargar() { load(); }
+        });
+
+        // Menu button: return to main menu (reuse existing)
+        btnMenu.addActionListener(e -> UIStyles.showMainMenu(GuiaWindow.this));
+    }
+
+    // mostrarDetalleOrden(): diálogo modal con las líneas de la orden ya cargadas
+    private void mostrarDetalleOrden(String codigoOrden, DefaultTableModel dm) {
+        JTable t = new JTable(dm);
+        t.setFillsViewportHeight(true); t.setRowHeight(24); t.getTableHeader().setFont(UIStyles.UI_FONT_BOLD);
+        JScrollPane sp = new JScrollPane(t); sp.setBorder(BorderFactory.createLineBorder(UIStyles.CARD_BORDER));
+        JDialog dlg = new JDialog(this, "Detalle de orden " + codigoOrden, true);
+        ui.UIStyles.RoundedPanel rp = new ui.UIStyles.RoundedPanel(Color.WHITE, UIStyles.CARD_RADIUS);
+        rp.setLayout(new BorderLayout(8,8)); rp.setBorder(BorderFactory.createEmptyBorder(12,12,12,12));
+        rp.add(sp, BorderLayout.CENTER);
+        dlg.add(rp); dlg.setSize(720, 420); dlg.setLocationRelativeTo(this); UIStyles.applyComponentTheme(dlg.getContentPane()); dlg.setVisible(true);
+    }
+
+    // generarPdf(): pide fecha (si falta) y ruta en el EDT; el PDF se genera en segundo plano
+    private void generarPdf(GuiaDocumento doc) {
+        if (doc == null) { JOptionPane.showMessageDialog(this, "No se pudo cargar la guía seleccionada"); return; }
+        CabeceraGuia g = doc.getCabecera();
+
+        // Determinar fecha/hora de emisión: preferir valores almacenados en la cabecera
+        String fechaEmisionStr;
+        if (g.getFechaEmision() != null) {
+            java.sql.Date d = g.getFechaEmision();
+            String fechaPart = d.toLocalDate().format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+            if (g.getHoraEmision() != null) {
+                java.sql.Time ttime = g.getHoraEmision();
+                java.time.LocalTime lt = ttime.toLocalTime();
+                String horaPart = lt.format(DateTimeFormatter.ofPattern("hh:mm:ss a"));
+                fechaEmisionStr = fechaPart + " " + horaPart;
             } else {
-                // pedir fecha solamente si no existe en DB
-                String fechaInput = (String) JOptionPane.showInputDialog(
-                        this,
-                        "Ingrese Fecha de emisión (dd/MM/yyyy):",
-                        "Fecha de emisión",
-                        JOptionPane.PLAIN_MESSAGE,
-                        null,
-                        null,
-                        ""
-                );
-                if (fechaInput == null) return; // cancelado
-                // Validar formato dd/MM/yyyy
-                LocalDate fechaEmitida;
-                try {
-                    DateTimeFormatter f = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-                    fechaEmitida = LocalDate.parse(fechaInput.trim(), f);
-                } catch (DateTimeParseException ex) {
-                    JOptionPane.showMessageDialog(this, "Formato de fecha inválido. Use dd/MM/yyyy");
-                    return;
-                }
                 LocalTime ahora = LocalTime.now();
                 String horaActual = ahora.format(DateTimeFormatter.ofPattern("hh:mm:ss a"));
-                fechaEmisionStr = fechaEmitida.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) + " " + horaActual;
+                fechaEmisionStr = fechaPart + " " + horaActual;
             }
+        } else {
+            // pedir fecha solamente si no existe en DB
+            String fechaInput = (String) JOptionPane.showInputDialog(
+                    this,
+                    "Ingrese Fecha de emisión (dd/MM/yyyy):",
+                    "Fecha de emisión",
+                    JOptionPane.PLAIN_MESSAGE,
+                    null,
+                    null,
+                    ""
+            );
+            if (fechaInput == null) return; // cancelado
+            // Validar formato dd/MM/yyyy
+            LocalDate fechaEmitida;
+            try {
+                DateTimeFormatter f = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+                fechaEmitida = LocalDate.parse(fechaInput.trim(), f);
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(this, "Formato de fecha inválido. Use dd/MM/yyyy");
+                return;
+            }
+            LocalTime ahora = LocalTime.now();
+            String horaActual = ahora.format(DateTimeFormatter.ofPattern("hh:mm:ss a"));
+            fechaEmisionStr = fechaEmitida.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) + " " + horaActual;
+        }
 
-            // Obtener detalles (líneas)
-            List<DetalleGuia> detalles = dao.listarDetallePorGuia(codigo);
-
-            // Mapear a util.GuiaRemisionGenerator.DetalleGuia
-            List<GuiaRemisionGenerator.DetalleGuia> itemsPdf = new ArrayList<>();
-            int contador = 1;
-            for (DetalleGuia d : detalles) {
-                GuiaRemisionGenerator.DetalleGuia it = new GuiaRemisionGenerator.DetalleGuia(
-                        contador++,
-                        d.getBienNormalizado(),
-                        d.getCodigoBien(),
-                        d.getCodigoProductoSunat(),
-                        d.getPartidaArancelaria(),
-                        d.getCodigoGtin(),
-                        d.getDescripcion(),
-                        d.getUnidadMedida(),
-                        d.getCantidad()
-                );
-                itemsPdf.add(it);
+        // Detalles (líneas) ya incluidos en el documento
+        List<DetalleGuia> detalles = doc.getItems();
+
+        // Mapear a util.GuiaRemisionGenerator.DetalleGuia
+        List<GuiaRemisionGenerator.DetalleGuia> itemsPdf = new ArrayList<>();
+        int contador = 1;
+        for (DetalleGuia d : detalles) {
+            GuiaRemisionGenerator.DetalleGuia it = new GuiaRemisionGenerator.DetalleGuia(
+                    contador++,
+                    d.getBienNormalizado(),
+                    d.getCodigoBien(),
+                    d.getCodigoProductoSunat(),
+                    d.getPartidaArancelaria(),
+                    d.getCodigoGtin(),
+                    d.getDescripcion(),
+                    d.getUnidadMedida(),
+                    d.getCantidad()
+            );
+            itemsPdf.add(it);
+        }
+
+        // Datos básicos (ajusta según tu esquema; aquí uso placeholders si no existen columnas)
+        String empresaNombre = "RED LIPA ECOLOGICA SOCIEDAD ANONIMA CERRADA";
+        String rucEmisor = "20604635943";
+        String serie = g.getSerie() == null ? "" : g.getSerie();
+        String numero = g.getNumero() == null ? "" : g.getNumero();
+
+        // Pedir ruta de guardado
+        JFileChooser fc = new JFileChooser();
+        fc.setSelectedFile(new java.io.File("GUIA_" + serie + "_" + numero + ".pdf"));
+        int sel = fc.showSaveDialog(this);
+        if (sel != JFileChooser.APPROVE_OPTION) return;
+        String path = fc.getSelectedFile().getAbsolutePath();
+
+        try {
+            // Datos de remitente, destinatario, traslado, vehículo y conductor: vienen en el documento
+            String nombreConductor = doc.getConductorNombre() == null ? "" : doc.getConductorNombre();
+            String licencia = doc.getLicencia() == null ? "" : doc.getLicencia();
+            String placa = doc.getPlaca() == null ? "" : doc.getPlaca();
+            String autorizacionVehiculo = doc.getAutorizacionVehiculo() == null ? "" : doc.getAutorizacionVehiculo();
+
+            String empresaNombreReal = empresaNombre; // default
+            String rucEmisorReal = rucEmisor;
+            if (g.getRucRemitente() != null && !g.getRucRemitente().trim().isEmpty()) {
+                rucEmisorReal = g.getRucRemitente();
+                if (doc.getRemitenteNombre() != null) empresaNombreReal = doc.getRemitenteNombre();
             }
 
-            // Datos básicos (ajusta según tu esquema; aquí uso placeholders si no existen columnas)
-            String empresaNombre = "RED LIPA ECOLOGICA SOCIEDAD ANONIMA CERRADA";
-            String rucEmisor = "20604635943";
-            String serie = g.getSerie() == null ? "" : g.getSerie();
-            String numero = g.getNumero() == null ? "" : g.getNumero();
+            String destinatarioNombre = doc.getDestinatarioNombre() == null ? "" : doc.getDestinatarioNombre();
+            String destinatarioRuc = g.getRucDestinatario() == null ? "" : g.getRucDestinatario();
 
-            // Pedir ruta de guardado
-            JFileChooser fc = new JFileChooser();
-            fc.setSelectedFile(new java.io.File("GUIA_" + serie + "_" + numero + ".pdf"));
-            int sel = fc.showSaveDialog(this);
-            if (sel != JFileChooser.APPROVE_OPTION) return;
-            String path = fc.getSelectedFile().getAbsolutePath();
+            String fechaInicioTraslado = "";
+            if (doc.getFechaInicioTraslado() != null) {
+                java.time.format.DateTimeFormatter fdt = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+                fechaInicioTraslado = doc.getFechaInicioTraslado().toLocalDateTime().format(fdt);
+            }
 
-            try {
-                // Recuperar datos adicionales desde la BD cuando estén disponibles
-                dao.DestinatarioDAO destDao = new dao.DestinatarioDAO();
-                model.Destinatario dest = null;
-                if (g.getRucDestinatario() != null && !g.getRucDestinatario().trim().isEmpty()) {
-                    dest = destDao.listarTodos().stream().filter(x -> g.getRucDestinatario().equals(x.getRuc())).findFirst().orElse(null);
-                }
-
-                dao.TrasladoDAO trasDao = new dao.TrasladoDAO();
-                model.Traslado traslado = trasDao.obtenerPorGuia(codigo);
-
-                dao.ConductorDAO condDao = new dao.ConductorDAO();
-                String nombreConductor = "";
-                String licencia = "";
-                String placa = "";
-                String autorizacionVehiculo = "";
-                if (traslado != null) {
-                    placa = traslado.getPlaca() == null ? "" : traslado.getPlaca();
-                    licencia = traslado.getLicencia() == null ? "" : traslado.getLicencia();
-                    if (licencia != null && !licencia.isEmpty()) {
-                        model.Conductor condFound = condDao.buscarPorLicencia(licencia);
-                        if (condFound != null) nombreConductor = condFound.getNombre();
-                    }
-                }
-
-                dao.RemitenteDAO remitDao = new dao.RemitenteDAO();
-                String empresaNombreReal = empresaNombre; // default
-                String rucEmisorReal = rucEmisor;
-                if (g.getRucRemitente() != null && !g.getRucRemitente().trim().isEmpty()) {
-                    model.Remitente remitente = remitDao.buscarPorRuc(g.getRucRemitente());
-                    if (remitente != null) {
-                        empresaNombreReal = remitente.getNombreEmpresa() == null ? empresaNombreReal : remitente.getNombreEmpresa();
-                        rucEmisorReal = remitente.getRuc();
-                    } else {
-                        rucEmisorReal = g.getRucRemitente();
-                    }
-                }
-
-                String destinatarioNombre = dest == null ? "" : dest.getNombre();
-                String destinatarioRuc = dest == null ? (g.getRucDestinatario() == null ? "" : g.getRucDestinatario()) : dest.getRuc();
-
-                String fechaInicioTraslado = "";
-                if (traslado != null && traslado.getFechaInicio() != null) {
-                    java.time.format.DateTimeFormatter fdt = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-                    fechaInicioTraslado = traslado.getFechaInicio().toLocalDateTime().format(fdt);
-                }
-
-                String puntoPartida = g.getDirPartida() == null ? "" : g.getDirPartida();
-                String puntoLlegada = g.getDirLlegada() == null ? "" : g.getDirLlegada();
-                String motivo = ""; // no field in CabeceraGuia currently
-
-                String pesoTotalStr = "";
-                if (g.getPesoTotal() != null) {
-                    pesoTotalStr = String.format("%.2f", g.getPesoTotal());
-                }
-
-                String unidadPeso = "KGM";
-                String modalidad = "";
-                String indicadorTransbordo = "";
-                String indicadorRetornoEnvases = "";
+            String puntoPartida = g.getDirPartida() == null ? "" : g.getDirPartida();
+            String puntoLlegada = g.getDirLlegada() == null ? "" : g.getDirLlegada();
+            String motivo = doc.getMotivoTraslado() == null ? "" : doc.getMotivoTraslado();
+
+            String pesoTotalStr = "";
+            if (g.getPesoTotal() != null) {
+                pesoTotalStr = String.format("%.2f", g.getPesoTotal());
+            }
 
+            String unidadPeso = "KGM";
+            String modalidad = doc.getModalidadTransporte() == null ? "" : doc.getModalidadTransporte();
+            String indicadorTransbordo = "";
+            String indicadorRetornoEnvases = "";
+
+            // El PDF se escribe fuera del EDT; los valores que cambian se copian a finales para la tarea
+            final String empresaPdf = empresaNombreReal;
+            final String rucEmisorPdf = rucEmisorReal;
+            final String fechaInicioPdf = fechaInicioTraslado;
+            final String pesoPdf = pesoTotalStr;
+            TareasUI.ejecutar(this, "pdf", "Generando PDF...", p -> {
                 // Llamada al generador: pasamos fechaEmisionStr (fecha manual + hora actual)
                 util.GuiaRemisionGenerator.createPdf(
                         path,
-                        empresaNombreReal,
-                        rucEmisorReal,
+                        empresaPdf,
+                        rucEmisorPdf,
                         g.getRucRemitente(),
                         serie,
                         numero,
                         fechaEmisionStr,
-                        fechaInicioTraslado,
+                        fechaInicioPdf,
                         puntoPartida,
                         puntoLlegada,
                         motivo,
@@ -287,7 +349,7 @@ public class GuiaWindow extends JDialog {
                         destinatarioRuc,
                         itemsPdf,
                         unidadPeso,
-                        pesoTotalStr,
+                        pesoPdf,
                         modalidad,
                         indicadorTransbordo,
                         indicadorRetornoEnvases,
@@ -297,23 +359,29 @@ public class GuiaWindow extends JDialog {
                         licencia,
                         null
                 );
-                JOptionPane.showMessageDialog(this, "PDF generado en:\n" + path);
-            } catch (Exception ex) {
-                // Manejo de errores al generar el PDF
-                JOptionPane.showMessageDialog(this, "Error generando PDF: " + ex.getMessage());
-            }
-        });
+                return path;
+            }, ruta -> JOptionPane.showMessageDialog(this, "PDF generado en:\n" + ruta),
+               ex -> JOptionPane.showMessageDialog(this, "Error generando PDF: " + ex.getMessage()));
+        } catch (Exception ex) {
+            // Manejo de errores al generar el PDF
+            JOptionPane.showMessageDialog(this, "Error generando PDF: " + ex.getMessage());
+        }
+    }
 
-        load();
+    public void load() {
+        // load(): vacía la tabla y carga la primera página de guías; el resto llega al hacer scroll
+        model.recargar();
+    }
 
-        // Menu button: return to main menu (reuse existing)
-        btnMenu.addActionListener(e -> UIStyles.showMainMenu(GuiaWindow.this));
+    // fechaFiltro(): "" = sin límite; si no, dd/MM/yyyy
+    private static java.sql.Date fechaFiltro(String texto) {
+        String t = texto == null ? "" : texto.trim();
+        if (t.isEmpty()) return null;
+        return java.sql.Date.valueOf(LocalDate.parse(t, DateTimeFormatter.ofPattern("dd/MM/yyyy")));
     }
 
-    public void load() {
-        // load(): consulta todas las guías vía DAO y rellena la tabla con columnas clave
-        model.setRowCount(0);
-        List<CabeceraGuia> lista = dao.listarTodas();
-        for (CabeceraGuia g: lista) model.addRow(new Object[]{g.getCodigoGuia(), g.getSerie(), g.getNumero(), g.getCodOrden(), g.getRucRemitente(), g.getFechaEmision(), g.getHoraEmision(), g.getEstadoGuia()});
+    // mostrarGuia(): inserta o reemplaza en la tabla la guía devuelta por la emisión, sin recargar la lista
+    private void mostrarGuia(CabeceraGuia g) {
+        model.actualizarOInsertar(g);
     }
 }
@@ -0,0 +1,264 @@
+package ui;
+
+import dao.GuiaDAO;
+import model.CabeceraGuia;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * TableModel de guías que se carga página a página (paginación keyset de
+ * `GuiaDAO.listarPagina`, o de `GuiaDAO.buscar` si hay un filtro puesto con
+ * setFiltro). La siguiente página se pide cuando el usuario se acerca al final
+ * del scroll, en lugar de traer todas las guías al abrir la ventana.
+ */
+public class GuiasPaginadasTableModel extends AbstractTableModel {
+
+    public static final int TAMANO_PAGINA_DEFECTO = 200;
+    // Filas antes del final a partir de las cuales se pide la siguiente página
+    private static final int FILAS_ANTICIPO = 20;
+
+    private static final String[] COLUMNAS = {"Código", "Serie", "Número", "Orden", "Remitente", "Fecha", "Hora", "Estado"};
+
+    private final GuiaDAO dao;
+    private final int tamanoPagina;
+    private final List<CabeceraGuia> filas = new ArrayList<>();
+    private final Set<String> codigos = new HashSet<>();
+
+    // Clave de la última fila traída por paginación (las insertadas a mano no mueven el cursor)
+    private java.sql.Date cursorFecha;
+    private String cursorCodigo;
+    private boolean hayMas = true;
+    // Página pedida y aún no recibida (la consulta corre fuera del EDT con TareasUI)
+    private TareasUI.Tarea<List<CabeceraGuia>> paginaEnCurso;
+    private java.awt.Component origen;
+    private Consumer<List<CabeceraGuia>> alCargarPagina;
+    // Filtro de GuiaDAO.buscar; todo null/vacío = listado completo
+    private String filtroEstado;
+    private java.sql.Date filtroDesde;
+    private java.sql.Date filtroHasta;
+    private String filtroDestinatario;
+    private String filtroRemitente;
+
+    public GuiasPaginadasTableModel(GuiaDAO dao) {
+        this(dao, TAMANO_PAGINA_DEFECTO);
+    }
+
+    public GuiasPaginadasTableModel(GuiaDAO dao, int tamanoPagina) {
+        this.dao = dao;
+        this.tamanoPagina = Math.max(1, tamanoPagina);
+    }
+
+    /** Callback opcional con las guías de cada página cargada (p.ej. para llenar un combo). */
+    public void setAlCargarPagina(Consumer<List<CabeceraGuia>> alCargarPagina) {
+        this.alCargarPagina = alCargarPagina;
+    }
+
+    /**
+     * Criterios de GuiaDAO.buscar para las páginas siguientes (null o vacío = sin ese criterio);
+     * se aplican con recargar(). Los cambios en vivo que no los cumplen no se muestran.
+     */
+    public void setFiltro(String estado, java.sql.Date desde, java.sql.Date hasta,
+                          String rucDestinatario, String rucRemitente) {
+        this.filtroEstado = limpio(estado);
+        this.filtroDesde = desde;
+        this.filtroHasta = hasta;
+        this.filtroDestinatario = limpio(rucDestinatario);
+        this.filtroRemitente = limpio(rucRemitente);
+    }
+
+    /** ¿Hay algún criterio de filtro puesto? */
+    public boolean filtrado() {
+        return filtroEstado != null || filtroDesde != null || filtroHasta != null
+                || filtroDestinatario != null || filtroRemitente != null;
+    }
+
+    /** Vacía el modelo y carga la primera página (la página en curso, si la hay, se descarta). */
+    public void recargar() {
+        if (paginaEnCurso != null) paginaEnCurso.cancelar();
+        paginaEnCurso = null;
+        filas.clear();
+        codigos.clear();
+        cursorFecha = null;
+        cursorCodigo = null;
+        hayMas = true;
+        fireTableDataChanged();
+        cargarSiguientePagina();
+    }
+
+    /**
+     * Pide la siguiente página si quedan guías y no hay otra en camino. La consulta
+     * corre fuera del EDT; las filas se añaden al llegar.
+     */
+    public void cargarSiguientePagina() {
+        if (!hayMas || cargando()) return;
+        java.sql.Date fecha = cursorFecha;
+        String codigo = cursorCodigo;
+        if (filtrado()) {
+            String estado = filtroEstado, dest = filtroDestinatario, rem = filtroRemitente;
+            java.sql.Date desde = filtroDesde, hasta = filtroHasta;
+            paginaEnCurso = TareasUI.ejecutar(origen, null, "Buscando guías...",
+                    p -> dao.buscar(estado, desde, hasta, dest, rem, fecha, codigo, tamanoPagina), this::agregarPagina);
+        } else {
+            paginaEnCurso = TareasUI.ejecutar(origen, null, "Cargando guías...",
+                    p -> dao.listarPagina(fecha, codigo, tamanoPagina), this::agregarPagina);
+        }
+    }
+
+    private boolean cargando() {
+        return paginaEnCurso != null && !paginaEnCurso.terminada();
+    }
+
+    private void agregarPagina(List<CabeceraGuia> pagina) {
+        hayMas = pagina.size() == tamanoPagina;
+        if (!pagina.isEmpty()) {
+            CabeceraGuia ultima = pagina.get(pagina.size() - 1);
+            cursorFecha = ultima.getFechaEmision();
+            cursorCodigo = ultima.getCodigoGuia();
+        }
+        int desde = filas.size();
+        for (CabeceraGuia g : pagina) {
+            if (codigos.add(g.getCodigoGuia())) filas.add(g);
+        }
+        if (filas.size() > desde) fireTableRowsInserted(desde, filas.size() - 1);
+        if (alCargarPagina != null) alCargarPagina.accept(pagina);
+    }
+
+    /** ¿Quedan páginas por cargar? */
+    public boolean hayMasPaginas() {
+        return hayMas;
+    }
+
+    /**
+     * Engancha el modelo al scroll de la tabla: al acercarse al final se pide
+     * la siguiente página.
+     */
+    public void instalarEn(JScrollPane scroll, JTable tabla) {
+        origen = tabla;
+        JScrollBar barra = scroll.getVerticalScrollBar();
+        barra.addAdjustmentListener(e -> {
+            if (e.getValueIsAdjusting() || !hayMas || cargando()) return;
+            BoundedRangeModel m = barra.getModel();
+            int anticipo = FILAS_ANTICIPO * Math.max(1, tabla.getRowHeight());
+            if (m.getValue() + m.getExtent() >= m.getMaximum() - anticipo) {
+                SwingUtilities.invokeLater(this::cargarSiguientePagina);
+            }
+        });
+    }
+
+    /** Guía mostrada en la fila indicada (índice del modelo). */
+    public CabeceraGuia getGuiaAt(int fila) {
+        return filas.get(fila);
+    }
+
+    /** Reemplaza la guía si ya está cargada o la inserta al principio (guía recién emitida). */
+    public void actualizarOInsertar(CabeceraGuia g) {
+        if (g == null) return;
+        if (!cumpleFiltro(g)) { quitar(g.getCodigoGuia()); return; }
+        for (int r = 0; r < filas.size(); r++) {
+            if (filas.get(r).getCodigoGuia().equals(g.getCodigoGuia())) {
+                filas.set(r, g);
+                fireTableRowsUpdated(r, r);
+                return;
+            }
+        }
+        filas.add(0, g);
+        codigos.add(g.getCodigoGuia());
+        fireTableRowsInserted(0, 0);
+    }
+
+    /**
+     * Aplica una guía nueva o modificada (p.ej. por una notificación de cambios): reemplaza la
+     * fila si está cargada; si no, la inserta en su posición sólo cuando cae dentro del tramo
+     * ya paginado (las más antiguas llegarán con su página).
+     */
+    public void aplicarCambio(CabeceraGuia g) {
+        if (g == null) return;
+        // Una guía que deja de cumplir el filtro (p.ej. cambió de estado) sale de la lista
+        if (!cumpleFiltro(g)) { quitar(g.getCodigoGuia()); return; }
+        if (codigos.contains(g.getCodigoGuia())) {
+            actualizarOInsertar(g);
+            return;
+        }
+        if (hayMas && cursorCodigo != null && compararOrden(g, cursorFecha, cursorCodigo) > 0) return;
+        int pos = 0;
+        while (pos < filas.size() && compararOrden(filas.get(pos), g.getFechaEmision(), g.getCodigoGuia()) < 0) pos++;
+        filas.add(pos, g);
+        codigos.add(g.getCodigoGuia());
+        fireTableRowsInserted(pos, pos);
+    }
+
+    /** Quita la guía si está cargada (eliminada o dada de baja). */
+    public void quitar(String codigoGuia) {
+        if (codigoGuia == null || !codigos.remove(codigoGuia)) return;
+        for (int r = 0; r < filas.size(); r++) {
+            if (filas.get(r).getCodigoGuia().equals(codigoGuia)) {
+                filas.remove(r);
+                fireTableRowsDeleted(r, r);
+                return;
+            }
+        }
+    }
+
+    // Mismos criterios que GuiaDAO.buscar, para las guías que llegan fuera de una página
+    private boolean cumpleFiltro(CabeceraGuia g) {
+        java.sql.Date f = g.getFechaEmision();
+        if (filtroEstado != null && !filtroEstado.equals(limpio(g.getEstadoGuia()))) return false;
+        if (filtroDesde != null && (f == null || f.before(filtroDesde))) return false;
+        if (filtroHasta != null && (f == null || f.after(filtroHasta))) return false;
+        if (filtroDestinatario != null && !filtroDestinatario.equals(limpio(g.getRucDestinatario()))) return false;
+        return filtroRemitente == null || filtroRemitente.equals(limpio(g.getRucRemitente()));
+    }
+
+    private static String limpio(String s) {
+        return s == null || s.trim().isEmpty() ? null : s.trim();
+    }
+
+    // Orden del listado (fecha_emision DESC, codigo_guia DESC): negativo si `g` va antes que la clave
+    private static int compararOrden(CabeceraGuia g, java.sql.Date fecha, String codigo) {
+        java.sql.Date fg = g.getFechaEmision();
+        if (!java.util.Objects.equals(fg, fecha)) {
+            if (fg == null) return 1;
+            if (fecha == null) return -1;
+            return fecha.compareTo(fg);
+        }
+        String cg = g.getCodigoGuia() == null ? "" : g.getCodigoGuia();
+        return (codigo == null ? "" : codigo).compareTo(cg);
+    }
+
+    @Override
+    public int getRowCount() {
+        return filas.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNAS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNAS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        CabeceraGuia g = filas.get(rowIndex);
+        switch (columnIndex) {
+            case 0: return g.getCodigoGuia();
+            case 1: return g.getSerie();
+            case 2: return g.getNumero();
+            case 3: return g.getCodOrden();
+            case 4: return g.getRucRemitente();
+            case 5: return g.getFechaEmision();
+            case 6: return g.getHoraEmision();
+            case 7: return g.getEstadoGuia();
+            default: return null;
+        }
+    }
+}
@@ -4,18 +4,26 @@ package ui;
  * OrdenesWindow.java
  * Ventana modal para listar y gestionar órdenes de pago. Contiene comentarios
  * por método: initUI, listeners y helpers para recargar modelos.
+ * "Emitir guías" emite de una vez (GuiaDAO.emitirGuiasLote) las guías de las
+ * órdenes que todavía no tienen una, con avance en la barra de TareasUI.
  */
 
+import dao.GuiaDAO;
 import dao.OrdenDAO;
 import model.OrdenDePago;
+import util.Session;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-// import java.util.List; (unused)
+import java.util.List;
 
 public class OrdenesWindow extends JDialog {
     private final OrdenDAO ordenDAO = new OrdenDAO();
+    private final GuiaDAO guiaDAO = new GuiaDAO();
+    // Datos del cuerpo de las guías emitidas desde órdenes (cuerpo_guia los exige no nulos)
+    private static final String MOTIVO_LOTE = "Venta";
+    private static final String MODALIDAD_LOTE = "Transporte privado";
 
     public OrdenesWindow(Frame owner) {
         // Constructor: inicializa la ventana modal y construye la UI
@@ -53,14 +61,15 @@ public class OrdenesWindow extends JDialog {
         JButton btnEliminar = new JButton("Eliminar"); UIStyles.styleButton(btnEliminar);
         JButton btnDetalle = new JButton("Detalle"); UIStyles.styleButton(btnDetalle);
         JButton btnActualizar = new JButton("Actualizar"); UIStyles.styleButton(btnActualizar);
-        toolbarLeft.add(btnNuevo); toolbarLeft.add(btnEditar); toolbarLeft.add(btnEliminar); toolbarLeft.add(btnDetalle); toolbarLeft.add(btnActualizar);
+        JButton btnEmitirGuias = new JButton("Emitir guías"); UIStyles.styleButton(btnEmitirGuias);
+        toolbarLeft.add(btnNuevo); toolbarLeft.add(btnEditar); toolbarLeft.add(btnEliminar); toolbarLeft.add(btnDetalle); toolbarLeft.add(btnActualizar); toolbarLeft.add(btnEmitirGuias);
 
         JPanel toolbar = new JPanel(new BorderLayout()); toolbar.setOpaque(false);
         toolbar.add(toolbarLeft, BorderLayout.WEST);
         topPanel.add(toolbar, BorderLayout.CENTER);
 
-        DefaultTableModel model = ordenDAO.listarModeloTabla();
-        JTable tabla = new JTable(model);
+        // La tabla arranca vacía; las órdenes llegan en segundo plano (cargarOrdenes al final de initUI)
+        JTable tabla = new JTable(new DefaultTableModel());
         // aplicar estilo consistente con otras tablas
         tabla.setFillsViewportHeight(true);
         tabla.setRowHeight(28);
@@ -116,26 +125,69 @@ public class OrdenesWindow extends JDialog {
         btnDetalle.addActionListener(e -> {
             int r = tabla.getSelectedRow(); if (r < 0) { JOptionPane.showMessageDialog(this, "Seleccione una orden"); return; }
             String codigo = (String) tabla.getValueAt(r, 0);
-            dao.DetalleOrdenDAO ddao = new dao.DetalleOrdenDAO();
-            DefaultTableModel dm = ddao.listarModeloTablaPorOrden(codigo);
-            JTable t = new JTable(dm);
-            t.setFillsViewportHeight(true); t.setRowHeight(24); t.getTableHeader().setFont(UIStyles.UI_FONT_BOLD);
-            JScrollPane sp = new JScrollPane(t); sp.setBorder(BorderFactory.createLineBorder(UIStyles.CARD_BORDER));
-            JDialog dlg = new JDialog(this, "Detalle de orden " + codigo, true);
-            ui.UIStyles.RoundedPanel rp = new ui.UIStyles.RoundedPanel(Color.WHITE, UIStyles.CARD_RADIUS);
-            rp.setLayout(new BorderLayout(8,8)); rp.setBorder(BorderFactory.createEmptyBorder(12,12,12,12));
-            rp.add(sp, BorderLayout.CENTER);
-            dlg.add(rp); dlg.setSize(560, 360); dlg.setLocationRelativeTo(this); UIStyles.applyComponentTheme(dlg.getContentPane()); dlg.setVisible(true);
+            TareasUI.ejecutar(this, "detalle-orden", "Cargando detalle...",
+                    p -> new dao.DetalleOrdenDAO().listarModeloTablaPorOrden(codigo), dm -> mostrarDetalle(codigo, dm));
         });
 
         btnActualizar.addActionListener(e -> cargarOrdenes(tabla));
 
+        // Emitir guías: arma las solicitudes de las órdenes sin guía, confirma y las emite en lote
+        btnEmitirGuias.addActionListener(e -> {
+            String serie = JOptionPane.showInputDialog(this, "Serie de las guías (hasta 6 caracteres):", "T001");
+            if (serie == null) return;
+            String ser = serie.trim().toUpperCase();
+            if (ser.isEmpty() || ser.length() > 6) { JOptionPane.showMessageDialog(this, "Serie inválida"); return; }
+            String remitente = Session.getCurrentRuc();
+            TareasUI.ejecutar(this, "guias-lote", "Buscando órdenes sin guía...",
+                    p -> guiaDAO.solicitudesDeOrdenesPendientes(ser, remitente, MOTIVO_LOTE, MODALIDAD_LOTE),
+                    solicitudes -> emitirGuias(tabla, solicitudes, btnEmitirGuias)).bloqueando(btnEmitirGuias);
+        });
+
         add(root);
+        cargarOrdenes(tabla);
+    }
+
+    // emitirGuias(): confirma y emite en lote; el avance se informa por bloque (GuiaDAO.TAMANO_LOTE_DEFECTO guías)
+    private void emitirGuias(JTable tabla, List<GuiaDAO.SolicitudGuia> solicitudes, JButton boton) {
+        if (solicitudes.isEmpty()) { JOptionPane.showMessageDialog(this, "No hay órdenes sin guía"); return; }
+        // Los números se asignan al emitir, a continuación del último de la serie
+        String serie = solicitudes.get(0).cabecera.getSerie();
+        int op = JOptionPane.showConfirmDialog(this, "Se emitirán " + solicitudes.size() + " guías en la serie "
+                + serie + ". ¿Continuar?", "Emitir guías", JOptionPane.YES_NO_OPTION);
+        if (op != JOptionPane.YES_OPTION) return;
+        int total = solicitudes.size();
+        TareasUI.ejecutar(this, "guias-lote", "Emitiendo guías...",
+                p -> guiaDAO.emitirGuiasLote(solicitudes, GuiaDAO.TAMANO_LOTE_DEFECTO,
+                        hechas -> p.avance(hechas * 100 / total, "Emitiendo guías... " + hechas + "/" + total)),
+                r -> {
+                    cargarOrdenes(tabla);
+                    StringBuilder msg = new StringBuilder(String.format("Emitidas: %d   Fallidas: %d   (%.1f guías/s)",
+                            r.exitosas, r.fallidas, r.getGuiasPorSegundo()));
+                    int mostrados = 0;
+                    for (GuiaDAO.ResultadoGuia rg : r.resultados) {
+                        if (rg.ok) continue;
+                        if (mostrados++ == 10) { msg.append("\n..."); break; }
+                        msg.append("\n").append(rg.codigoGuia).append(": ").append(rg.error);
+                    }
+                    JOptionPane.showMessageDialog(this, msg.toString(), "Emitir guías",
+                            r.fallidas == 0 ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                }).bloqueando(boton);
     }
 
     private void cargarOrdenes(JTable tabla) {
-        // cargarOrdenes(): solicita al DAO el modelo de tabla y lo asigna al JTable
-        DefaultTableModel m = ordenDAO.listarModeloTabla();
-        tabla.setModel(m);
+        // cargarOrdenes(): solicita al DAO el modelo de tabla fuera del EDT y lo asigna al JTable al terminar
+        TareasUI.ejecutar(this, "ordenes", "Cargando órdenes...", p -> ordenDAO.listarModeloTabla(), tabla::setModel);
+    }
+
+    // mostrarDetalle(): diálogo modal con las líneas de la orden ya cargadas
+    private void mostrarDetalle(String codigo, DefaultTableModel dm) {
+        JTable t = new JTable(dm);
+        t.setFillsViewportHeight(true); t.setRowHeight(24); t.getTableHeader().setFont(UIStyles.UI_FONT_BOLD);
+        JScrollPane sp = new JScrollPane(t); sp.setBorder(BorderFactory.createLineBorder(UIStyles.CARD_BORDER));
+        JDialog dlg = new JDialog(this, "Detalle de orden " + codigo, true);
+        ui.UIStyles.RoundedPanel rp = new ui.UIStyles.RoundedPanel(Color.WHITE, UIStyles.CARD_RADIUS);
+        rp.setLayout(new BorderLayout(8,8)); rp.setBorder(BorderFactory.createEmptyBorder(12,12,12,12));
+        rp.add(sp, BorderLayout.CENTER);
+        dlg.add(rp); dlg.setSize(560, 360); dlg.setLocationRelativeTo(this); UIStyles.applyComponentTheme(dlg.getContentPane()); dlg.setVisible(true);
     }
 }
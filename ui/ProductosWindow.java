@@ -97,8 +97,7 @@ public class ProductosWindow extends JFrame {
         btnEdit.addActionListener(e -> {
             int r = table.getSelectedRow(); if (r < 0) { JOptionPane.showMessageDialog(this, "Seleccione un producto"); return; }
             String codigo = tableModel.getValueAt(r, 0).toString();
-            model.Producto p = null;
-            for (model.Producto pp : dao.listarTodos()) if (pp.getCodigoProducto().equals(codigo)) { p = pp; break; }
+            model.Producto p = dao.buscarPorCodigo(codigo);
             if (p == null) { JOptionPane.showMessageDialog(this, "Producto no encontrado"); return; }
             FrmProducto f = new FrmProducto(this, p); f.setVisible(true); load(tableModel);
         });
@@ -129,11 +128,12 @@ public class ProductosWindow extends JFrame {
     }
 
     private void load(DefaultTableModel tableModel) {
-        // load(): consulta DAO y rellena el modelo con los productos
-        tableModel.setRowCount(0);
-        java.util.List<model.Producto> lista = dao.listarTodos();
-        for (model.Producto p : lista) {
-            tableModel.addRow(new Object[]{p.getCodigoProducto(), p.getNombreProducto(), String.format("%.2f", p.getPrecioBase()), p.getUnidadMedida()});
-        }
+        // load(): consulta DAO fuera del EDT y rellena el modelo con los productos al terminar
+        TareasUI.ejecutar(this, "productos", "Cargando productos...", pr -> dao.listarTodos(), lista -> {
+            tableModel.setRowCount(0);
+            for (model.Producto p : lista) {
+                tableModel.addRow(new Object[]{p.getCodigoProducto(), p.getNombreProducto(), String.format("%.2f", p.getPrecioBase()), p.getUnidadMedida()});
+            }
+        });
     }
 }
@@ -0,0 +1,124 @@
+package ui;
+
+/*
+ * ReporteColumnarMedicion.java
+ * Medición ejecutable de la memoria de ReporteColumnarTableModel frente a
+ * DefaultTableModel con un resultado típico de reporte: 100.000 filas y 7
+ * columnas (entero, NUMERIC(10,2), DATE, estado con pocos valores, RUC con
+ * pocos valores distintos, booleano y real). No necesita BD ni pantalla:
+ *   java -Djava.awt.headless=true -cp <clases> ui.ReporteColumnarMedicion [filas]
+ * Imprime los bytes estimados por el modelo y la memoria retenida medida con
+ * el heap (tras System.gc(), orientativa) de cada modelo. Termina con código 1
+ * si el modelo por columnas pasa de MAX_BYTES_POR_FILA o si DefaultTableModel
+ * no ocupa al menos FACTOR_MINIMO veces más (un orden de magnitud).
+ */
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ReporteColumnarMedicion {
+
+    private static final int FILAS_DEFECTO = 100_000;
+    // 21 bytes de datos tras compactar(): int, int (NUMERIC sin escala), short (día), byte (3 estados),
+    // short (200 RUC), bit y double
+    private static final long MAX_BYTES_POR_FILA = 24;
+    private static final long FACTOR_MINIMO = 10;
+
+    private static final String[] NOMBRES = {"numero", "monto", "fecha", "estado", "ruc", "activo", "peso"};
+    private static final int[] TIPOS = {Types.INTEGER, Types.NUMERIC, Types.DATE, Types.VARCHAR,
+            Types.VARCHAR, Types.BOOLEAN, Types.DOUBLE};
+    private static final String[] ESTADOS = {"emitida", "en tránsito", "entregada"};
+    // Filas por lote, como ReportesWindow.LotesEnModelo
+    private static final int LOTE = 500;
+    private static final long BASE_DIAS = LocalDate.of(2026, 1, 1).toEpochDay();
+
+    private ReporteColumnarMedicion() {}
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : FILAS_DEFECTO;
+        // Primero se arrancan el EDT y las clases de ambos modelos, para no medirlos como parte del modelo
+        SwingUtilities.invokeAndWait(() -> {
+            new ReporteColumnarTableModel().definirColumnas(NOMBRES, TIPOS);
+            new DefaultTableModel(NOMBRES, 0).addRow(fila(0));
+        });
+
+        // Las filas se generan por lotes y se descartan, como las que llegan del ResultSet:
+        // así sólo queda retenido lo que guarda el modelo
+        long antes = usada();
+        ReporteColumnarTableModel[] columnar = new ReporteColumnarTableModel[1];
+        // El modelo se llena en el EDT, como en ReportesWindow
+        SwingUtilities.invokeAndWait(() -> {
+            columnar[0] = new ReporteColumnarTableModel();
+            columnar[0].definirColumnas(NOMBRES, TIPOS);
+            for (int desde = 0; desde < n; desde += LOTE) {
+                List<Object[]> lote = new ArrayList<>(LOTE);
+                for (int i = desde; i < Math.min(n, desde + LOTE); i++) lote.add(fila(i));
+                columnar[0].agregar(lote);
+            }
+            // Como LotesEnModelo.terminar
+            columnar[0].compactar();
+        });
+        long retenidoColumnar = usada() - antes;
+
+        antes = usada();
+        DefaultTableModel[] clasico = new DefaultTableModel[1];
+        SwingUtilities.invokeAndWait(() -> {
+            clasico[0] = new DefaultTableModel(NOMBRES, 0);
+            for (int i = 0; i < n; i++) clasico[0].addRow(fila(i));
+        });
+        long retenidoClasico = usada() - antes;
+
+        long estimados = columnar[0].bytesEstimados();
+        System.out.println(String.format("Filas: %d, columnas: %d", columnar[0].getRowCount(), columnar[0].getColumnCount()));
+        System.out.println(String.format("ReporteColumnarTableModel: %d KB estimados (%.1f bytes/fila), ~%d KB retenidos en el heap",
+                estimados / 1024, (double) estimados / n, retenidoColumnar / 1024));
+        System.out.println(String.format("DefaultTableModel:         ~%d KB retenidos en el heap (%.1f bytes/fila)",
+                retenidoClasico / 1024, (double) retenidoClasico / n));
+        System.out.println(String.format("Relación: %.1fx", (double) retenidoClasico / retenidoColumnar));
+
+        boolean ok = true;
+        if (estimados / n > MAX_BYTES_POR_FILA) {
+            System.err.println("FALLA: más de " + MAX_BYTES_POR_FILA + " bytes por fila en el modelo por columnas");
+            ok = false;
+        }
+        if (retenidoColumnar * FACTOR_MINIMO > retenidoClasico) {
+            System.err.println("FALLA: DefaultTableModel no ocupa " + FACTOR_MINIMO + " veces más que el modelo por columnas");
+            ok = false;
+        }
+        System.out.println(ok ? "OK" : "Revisar");
+        // Los modelos siguen vivos hasta aquí, después de medir
+        if (columnar[0] == null || clasico[0] == null || !ok) System.exit(1);
+    }
+
+    // Fila i con objetos nuevos, como los entrega pgjdbc; los RUC repiten 200 clientes
+    private static Object[] fila(int i) {
+        return new Object[]{
+                i + 1,
+                BigDecimal.valueOf(100_000L + i * 37L % 900_000L, 2),
+                Date.valueOf(LocalDate.ofEpochDay(BASE_DIAS + i % 365)),
+                new String(ESTADOS[i % ESTADOS.length]),
+                String.format("20%09d", i % 200),
+                i % 7 != 0,
+                (i % 1000) / 10.0
+        };
+    }
+
+    private static long usada() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,452 @@
+package ui;
+
+import javax.swing.table.AbstractTableModel;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TableModel de sólo lectura para resultados grandes de ReporteDAO, guardado
+ * por columnas en lugar de un Vector de Vectors con un objeto por celda:
+ * - enteros, decimales (los NUMERIC como valor sin escala + escala de la
+ *   columna) y fechas (día epoch) en arreglos del ancho mínimo que admiten
+ *   los valores vistos: byte[], short[], int[] o long[] (Enteros); reales en
+ *   double[], timestamps como microsegundos en long[] y booleanos en un mapa
+ *   de bits;
+ * - textos codificados con diccionario (códigos en Enteros: un byte por celda
+ *   con hasta 128 valores distintos), pensado para columnas de pocos valores
+ *   distintos como estado_guia o el RUC del cliente;
+ * - los nulos se marcan en un mapa de bits por columna;
+ * - al terminar la carga compactar() recorta los arreglos al número de filas.
+ * Si un valor no encaja en la representación compacta (otro tipo, un NUMERIC
+ * de más de 18 dígitos, demasiados textos distintos) la columna pasa a un
+ * Object[] normal. getValueAt() reconstruye el mismo tipo que devolvía el
+ * driver, así que la tabla muestra lo mismo que con DefaultTableModel.
+ * Las filas se agregan siempre en el EDT (agregar).
+ */
+public class ReporteColumnarTableModel extends AbstractTableModel {
+
+    // Con más textos distintos que esto el diccionario deja de ahorrar memoria
+    private static final int MAX_DICCIONARIO = 4096;
+
+    private String[] nombres = new String[0];
+    private Columna[] columnas = new Columna[0];
+    private int filas = 0;
+    private int capacidad = 0;
+
+    /** Define las columnas (etiquetas y tipos java.sql.Types) y vacía el modelo. */
+    public void definirColumnas(String[] nombres, int[] tipos) {
+        this.nombres = nombres.clone();
+        this.columnas = new Columna[nombres.length];
+        for (int c = 0; c < nombres.length; c++) {
+            columnas[c] = crearColumna(tipos == null || c >= tipos.length ? Types.JAVA_OBJECT : tipos[c]);
+        }
+        filas = 0;
+        capacidad = 0;
+        fireTableStructureChanged();
+    }
+
+    /** Agrega un lote de filas al final y notifica una sola inserción. */
+    public void agregar(List<Object[]> lote) {
+        if (lote.isEmpty()) return;
+        int desde = filas;
+        asegurarCapacidad(filas + lote.size());
+        for (Object[] fila : lote) {
+            for (int c = 0; c < columnas.length; c++) {
+                Object v = c < fila.length ? fila[c] : null;
+                if (v == null) {
+                    columnas[c].nulos = marcar(columnas[c].nulos, filas);
+                } else if (!columnas[c].poner(filas, v)) {
+                    // No encaja en la representación compacta: la columna pasa a objetos
+                    columnas[c] = aObjetos(columnas[c]);
+                    columnas[c].poner(filas, v);
+                }
+            }
+            filas++;
+        }
+        fireTableRowsInserted(desde, filas - 1);
+    }
+
+    /** Recorta los arreglos al número de filas (llamar al terminar de agregar; luego se puede seguir agregando). */
+    public void compactar() {
+        if (capacidad == filas) return;
+        capacidad = filas;
+        for (Columna c : columnas) {
+            c.crecer(capacidad);
+            if (c.nulos != null) c.nulos = Arrays.copyOf(c.nulos, (capacidad + 63) >>> 6);
+        }
+    }
+
+    /** Memoria aproximada de los datos (sin contar los textos del diccionario ni los objetos de respaldo). */
+    public long bytesEstimados() {
+        long b = 0;
+        for (Columna c : columnas) b += c.bytes() + (c.nulos == null ? 0 : c.nulos.length * 8L);
+        return b;
+    }
+
+    @Override
+    public int getRowCount() { return filas; }
+
+    @Override
+    public int getColumnCount() { return columnas.length; }
+
+    @Override
+    public String getColumnName(int column) { return nombres[column]; }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Columna c = columnas[columnIndex];
+        if (marcado(c.nulos, rowIndex)) return null;
+        return c.valor(rowIndex);
+    }
+
+    private void asegurarCapacidad(int minimo) {
+        if (minimo <= capacidad) return;
+        capacidad = Math.max(minimo, capacidad + (capacidad >> 1) + 16);
+        for (Columna c : columnas) c.crecer(capacidad);
+    }
+
+    private Columna crearColumna(int tipo) {
+        switch (tipo) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return new ColBooleana();
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new ColEntera(false);
+            case Types.BIGINT:
+                return new ColEntera(true);
+            case Types.REAL:
+                return new ColReal(true);
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new ColReal(false);
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return new ColDecimal();
+            case Types.DATE:
+                return new ColFecha();
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return new ColTimestamp();
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return new ColTexto();
+            default:
+                return new ColObjeto();
+        }
+    }
+
+    private Columna aObjetos(Columna anterior) {
+        ColObjeto nueva = new ColObjeto();
+        nueva.crecer(capacidad);
+        for (int r = 0; r < filas; r++) {
+            if (!marcado(anterior.nulos, r)) nueva.valores[r] = anterior.valor(r);
+        }
+        nueva.nulos = anterior.nulos;
+        return nueva;
+    }
+
+    private static long[] marcar(long[] bits, int i) {
+        if (bits == null) bits = new long[(i >>> 6) + 1];
+        else if ((i >>> 6) >= bits.length) bits = Arrays.copyOf(bits, Math.max(bits.length + (bits.length >> 1), (i >>> 6) + 1));
+        bits[i >>> 6] |= 1L << i;
+        return bits;
+    }
+
+    private static boolean marcado(long[] bits, int i) {
+        return bits != null && (i >>> 6) < bits.length && (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Enteros guardados con el ancho mínimo que admiten los valores vistos (1, 2, 4 u 8 bytes);
+     * al llegar uno que no cabe se copia todo al ancho siguiente. Las posiciones sin escribir valen 0.
+     */
+    private static final class Enteros {
+        private int ancho = 1;
+        private byte[] b = new byte[0];
+        private short[] s;
+        private int[] i;
+        private long[] l;
+
+        long get(int fila) {
+            switch (ancho) {
+                case 1: return b[fila];
+                case 2: return s[fila];
+                case 4: return i[fila];
+                default: return l[fila];
+            }
+        }
+
+        void set(int fila, long v) {
+            int necesario = v == (byte) v ? 1 : v == (short) v ? 2 : v == (int) v ? 4 : 8;
+            if (necesario > ancho) ensanchar(necesario);
+            switch (ancho) {
+                case 1: b[fila] = (byte) v; break;
+                case 2: s[fila] = (short) v; break;
+                case 4: i[fila] = (int) v; break;
+                default: l[fila] = v;
+            }
+        }
+
+        private void ensanchar(int nuevo) {
+            int n = capacidad();
+            long[] copia = new long[n];
+            for (int r = 0; r < n; r++) copia[r] = get(r);
+            b = null; s = null; i = null; l = null;
+            ancho = nuevo;
+            switch (nuevo) {
+                case 2: s = new short[n]; for (int r = 0; r < n; r++) s[r] = (short) copia[r]; break;
+                case 4: i = new int[n]; for (int r = 0; r < n; r++) i[r] = (int) copia[r]; break;
+                default: l = copia;
+            }
+        }
+
+        int capacidad() {
+            switch (ancho) {
+                case 1: return b.length;
+                case 2: return s.length;
+                case 4: return i.length;
+                default: return l.length;
+            }
+        }
+
+        void crecer(int capacidad) {
+            switch (ancho) {
+                case 1: b = Arrays.copyOf(b, capacidad); break;
+                case 2: s = Arrays.copyOf(s, capacidad); break;
+                case 4: i = Arrays.copyOf(i, capacidad); break;
+                default: l = Arrays.copyOf(l, capacidad);
+            }
+        }
+
+        long bytes() { return (long) capacidad() * ancho; }
+    }
+
+    // --- columnas ---
+
+    private abstract static class Columna {
+        long[] nulos;
+
+        /** Guarda el valor (no nulo); false si no encaja en esta representación. */
+        abstract boolean poner(int fila, Object v);
+
+        abstract Object valor(int fila);
+
+        abstract void crecer(int capacidad);
+
+        abstract long bytes();
+    }
+
+    private static final class ColEntera extends Columna {
+        private final boolean larga;
+        private final Enteros valores = new Enteros();
+
+        ColEntera(boolean larga) { this.larga = larga; }
+
+        @Override
+        boolean poner(int fila, Object v) {
+            boolean entero = v instanceof Integer || v instanceof Short || v instanceof Byte;
+            if (!(entero || (larga && v instanceof Long))) return false;
+            valores.set(fila, ((Number) v).longValue());
+            return true;
+        }
+
+        @Override
+        Object valor(int fila) { return larga ? (Object) valores.get(fila) : (Object) (int) valores.get(fila); }
+
+        @Override
+        void crecer(int capacidad) { valores.crecer(capacidad); }
+
+        @Override
+        long bytes() { return valores.bytes(); }
+    }
+
+    private static final class ColReal extends Columna {
+        private final boolean simple;
+        private double[] valores = new double[0];
+
+        ColReal(boolean simple) { this.simple = simple; }
+
+        @Override
+        boolean poner(int fila, Object v) {
+            if (!(v instanceof Double || v instanceof Float)) return false;
+            valores[fila] = ((Number) v).doubleValue();
+            return true;
+        }
+
+        @Override
+        Object valor(int fila) { return simple ? (Object) (float) valores[fila] : (Object) valores[fila]; }
+
+        @Override
+        void crecer(int capacidad) { valores = Arrays.copyOf(valores, capacidad); }
+
+        @Override
+        long bytes() { return valores.length * 8L; }
+    }
+
+    // NUMERIC: valor sin escala en long; la escala de la columna es la mayor vista (se reescala si crece)
+    private static final class ColDecimal extends Columna {
+        private final Enteros valores = new Enteros();
+        private int escala = 0;
+
+        @Override
+        boolean poner(int fila, Object v) {
+            if (!(v instanceof BigDecimal)) return false;
+            BigDecimal d = (BigDecimal) v;
+            try {
+                if (d.scale() > escala) reescalar(d.scale(), fila);
+                valores.set(fila, d.setScale(escala).unscaledValue().longValueExact());
+                return true;
+            } catch (ArithmeticException ex) {
+                return false;
+            }
+        }
+
+        // Se calcula todo antes de escribir: si algo desborda, la columna queda intacta para pasar a objetos
+        private void reescalar(int nueva, int hasta) {
+            if (nueva - escala > 18) throw new ArithmeticException("escala");
+            long factor = BigDecimal.TEN.pow(nueva - escala).longValueExact();
+            long[] copia = new long[hasta];
+            for (int r = 0; r < hasta; r++) copia[r] = Math.multiplyExact(valores.get(r), factor);
+            for (int r = 0; r < hasta; r++) valores.set(r, copia[r]);
+            escala = nueva;
+        }
+
+        @Override
+        Object valor(int fila) { return BigDecimal.valueOf(valores.get(fila), escala); }
+
+        @Override
+        void crecer(int capacidad) { valores.crecer(capacidad); }
+
+        @Override
+        long bytes() { return valores.bytes(); }
+    }
+
+    private static final class ColFecha extends Columna {
+        // Día epoch: hasta 2059 cabe en un short
+        private final Enteros dias = new Enteros();
+
+        @Override
+        boolean poner(int fila, Object v) {
+            if (!(v instanceof java.sql.Date)) return false;
+            dias.set(fila, ((java.sql.Date) v).toLocalDate().toEpochDay());
+            return true;
+        }
+
+        @Override
+        Object valor(int fila) { return java.sql.Date.valueOf(java.time.LocalDate.ofEpochDay(dias.get(fila))); }
+
+        @Override
+        void crecer(int capacidad) { dias.crecer(capacidad); }
+
+        @Override
+        long bytes() { return dias.bytes(); }
+    }
+
+    // Hora local (sin zona) en microsegundos, la precisión de timestamp en PostgreSQL
+    private static final class ColTimestamp extends Columna {
+        private long[] micros = new long[0];
+
+        @Override
+        boolean poner(int fila, Object v) {
+            if (!(v instanceof Timestamp)) return false;
+            LocalDateTime t = ((Timestamp) v).toLocalDateTime();
+            micros[fila] = t.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + t.getNano() / 1000;
+            return true;
+        }
+
+        @Override
+        Object valor(int fila) {
+            long m = micros[fila];
+            return Timestamp.valueOf(LocalDateTime.ofEpochSecond(Math.floorDiv(m, 1_000_000L),
+                    (int) Math.floorMod(m, 1_000_000L) * 1000, ZoneOffset.UTC));
+        }
+
+        @Override
+        void crecer(int capacidad) { micros = Arrays.copyOf(micros, capacidad); }
+
+        @Override
+        long bytes() { return micros.length * 8L; }
+    }
+
+    private static final class ColBooleana extends Columna {
+        private long[] bits = new long[0];
+
+        @Override
+        boolean poner(int fila, Object v) {
+            if (!(v instanceof Boolean)) return false;
+            if ((Boolean) v) bits[fila >>> 6] |= 1L << fila;
+            return true;
+        }
+
+        @Override
+        Object valor(int fila) { return (bits[fila >>> 6] & (1L << fila)) != 0; }
+
+        @Override
+        void crecer(int capacidad) { bits = Arrays.copyOf(bits, (capacidad + 63) >>> 6); }
+
+        @Override
+        long bytes() { return bits.length * 8L; }
+    }
+
+    // Texto con diccionario: cada celda es el índice del valor en `diccionario`
+    private static final class ColTexto extends Columna {
+        private final Enteros codigos = new Enteros();
+        private final List<String> diccionario = new ArrayList<>();
+        private final Map<String, Integer> indice = new HashMap<>();
+
+        @Override
+        boolean poner(int fila, Object v) {
+            if (!(v instanceof String)) return false;
+            Integer cod = indice.get(v);
+            if (cod == null) {
+                if (diccionario.size() >= MAX_DICCIONARIO) return false;
+                cod = diccionario.size();
+                diccionario.add((String) v);
+                indice.put((String) v, cod);
+            }
+            codigos.set(fila, cod);
+            return true;
+        }
+
+        @Override
+        Object valor(int fila) { return diccionario.get((int) codigos.get(fila)); }
+
+        @Override
+        void crecer(int capacidad) { codigos.crecer(capacidad); }
+
+        @Override
+        long bytes() { return codigos.bytes(); }
+    }
+
+    private static final class ColObjeto extends Columna {
+        private Object[] valores = new Object[0];
+
+        @Override
+        boolean poner(int fila, Object v) {
+            valores[fila] = v;
+            return true;
+        }
+
+        @Override
+        Object valor(int fila) { return valores[fila]; }
+
+        @Override
+        void crecer(int capacidad) { valores = Arrays.copyOf(valores, capacidad); }
+
+        @Override
+        long bytes() { return valores.length * 4L; }
+    }
+}
@@ -12,16 +12,21 @@ import dao.DetalleOrdenDAO;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ReportesWindow extends JDialog {
 
     private final ReporteDAO reporteDAO = new ReporteDAO();
+    // Filas que se muestran como máximo; el resto del reporte no se llega a leer
+    private static final int MAX_FILAS_PANTALLA = Integer.getInteger("reporte.max.filas.pantalla", 1_000_000);
 
     public ReportesWindow(Frame owner) {
         // Constructor: crea la ventana modal y configura UI
         super(owner, true);
         setTitle("Reportes");
-        setSize(900, 500);
+        setSize(1150, 500);
         setLocationRelativeTo(owner);
         initUI();
         UIStyles.applyComponentTheme(getContentPane());
@@ -70,7 +75,8 @@ public class ReportesWindow extends JDialog {
             "7) Bultos por cliente 90d (JOIN)",
             "8) KPI diario de guías (JOIN)",
             "9) Clientes sin compras 60d (JOIN)",
-            "10) Traslados con vehículo y guía (JOIN)"
+            "10) Traslados con vehículo y guía (JOIN)",
+            "11) Ingresos por fecha (JOIN)"
         };
         JComboBox<String> cbReporte = new JComboBox<>(opciones);
         JButton btnEjecutar = new JButton("Ejecutar reporte");
@@ -78,6 +84,11 @@ public class ReportesWindow extends JDialog {
         // Combo para órdenes (para el reporte 1)
         JComboBox<String> cbOrdenes = new JComboBox<>();
         JLabel lblParam = new JLabel("Parámetro (según reporte):");
+        // Rango de fechas (inclusive) para los reportes por fecha; por defecto los últimos 30 días
+        DatePicker dpDesde = new DatePicker(java.time.LocalDate.now().minusDays(30));
+        DatePicker dpHasta = new DatePicker();
+        JLabel lblDesde = new JLabel("Desde:");
+        JLabel lblHasta = new JLabel("Hasta:");
 
         top.add(new JLabel("Reporte:"));
         top.add(cbReporte);
@@ -85,20 +96,28 @@ public class ReportesWindow extends JDialog {
         top.add(txtParametro);
         top.add(cbOrdenes);
         cbOrdenes.setVisible(false); // solo visible para reporte 1
+        top.add(lblDesde);
+        top.add(dpDesde);
+        top.add(lblHasta);
+        top.add(dpHasta);
         top.add(btnEjecutar);
 
-        // Cargar órdenes desde la base de datos para el combo (se ejecuta en EDT tras iniciar UI)
-        SwingUtilities.invokeLater(() -> {
+        // Cargar órdenes desde la base de datos para el combo (consulta fuera del EDT, combo en el EDT)
+        TareasUI.ejecutar(this, "ordenes-combo", "Cargando órdenes...", p -> {
+            java.util.List<String> codigos = new java.util.ArrayList<>();
             try (java.sql.Connection cn = db.Conexion.getConnection();
                  java.sql.PreparedStatement ps = cn.prepareStatement("SELECT codigo_orden FROM orden_de_pago ORDER BY fecha DESC");
                  java.sql.ResultSet rs = ps.executeQuery()) {
-                cbOrdenes.addItem(""); // opción vacía
                 while (rs.next()) {
-                    cbOrdenes.addItem(rs.getString("codigo_orden"));
+                    codigos.add(rs.getString("codigo_orden"));
                 }
             } catch (java.sql.SQLException ex) {
                 System.err.println("No se pudieron cargar órdenes: " + ex.getMessage());
             }
+            return codigos;
+        }, codigos -> {
+            cbOrdenes.addItem(""); // opción vacía
+            for (String c : codigos) cbOrdenes.addItem(c);
         });
 
         // Cambiar visibilidad del campo de parámetro según reporte seleccionado
@@ -113,6 +132,9 @@ public class ReportesWindow extends JDialog {
                 cbOrdenes.setVisible(false);
                 lblParam.setText("Parámetro (según reporte):");
             }
+            boolean rango = usaRango(sel);
+            lblDesde.setVisible(rango); dpDesde.setVisible(rango);
+            lblHasta.setVisible(rango); dpHasta.setVisible(rango);
             top.revalidate(); top.repaint();
         });
 
@@ -122,6 +144,9 @@ public class ReportesWindow extends JDialog {
             cbOrdenes.setVisible(true);
             lblParam.setText("Orden:");
         }
+        boolean rangoInicial = usaRango(cbReporte.getSelectedIndex());
+        lblDesde.setVisible(rangoInicial); dpDesde.setVisible(rangoInicial);
+        lblHasta.setVisible(rangoInicial); dpHasta.setVisible(rangoInicial);
 
         // Tabla de resultados (modelo vacío inicialmente)
         DefaultTableModel model = new DefaultTableModel();
@@ -134,43 +159,32 @@ public class ReportesWindow extends JDialog {
         root.add(northContainer, BorderLayout.NORTH);
         root.add(scroll, BorderLayout.CENTER);
 
-        // Ejecutar reporte según selección: llama a SPs o consultas y asigna el modelo a la tabla
+        // Estado del último reporte: filas recibidas, truncado o cancelado
+        JLabel lblEstado = new JLabel(" ");
+        root.add(lblEstado, BorderLayout.SOUTH);
+
+        // Ejecutar reporte según selección: los parámetros se leen en el EDT, la consulta corre
+        // en segundo plano (TareasUI) y las filas llegan por lotes a un modelo nuevo ya asignado
+        // a la tabla. Cancelar (barra de progreso) corta la sentencia en el servidor.
         btnEjecutar.addActionListener(e -> {
             int idx = cbReporte.getSelectedIndex();
-            DefaultTableModel tm;
-            switch (idx) {
-                case 0 -> {
-                    // Reporte 1: detalle de orden -> usar DetalleOrdenDAO para obtener modelo
-                    String codOrden = (String) cbOrdenes.getSelectedItem();
-                    if (codOrden == null || codOrden.trim().isEmpty()) { JOptionPane.showMessageDialog(this, "Seleccione una orden"); return; }
-                    DetalleOrdenDAO detDao = new DetalleOrdenDAO();
-                    tm = detDao.listarModeloTablaPorOrden(codOrden.trim());
-                }
-                case 1 -> tm = reporteDAO.ejecutarSP("sp_reporte_guias_por_fecha_estado()");
-                case 2 -> tm = reporteDAO.ejecutarSP("sp_reporte_productos_mas_vendidos()");
-                case 3 -> tm = reporteDAO.ejecutarSP("sp_reporte_utilizacion_vehiculos()");
-                case 4 -> {
-                    // Reporte de licencias por vencer: acepta parámetro días (default 90)
-                    String dias = txtParametro.getText().trim(); if (dias.isEmpty()) dias = "90";
-                    tm = reporteDAO.ejecutarSPConParametro("sp_reporte_licencias_por_vencer", dias);
-                }
-                case 5 -> tm = reporteDAO.ejecutarSP("sp_reporte_guias_sin_traslado()");
-                case 6 -> tm = reporteDAO.ejecutarSP("sp_reporte_bultos_por_cliente_90d()");
-                case 7 -> tm = reporteDAO.ejecutarSP("sp_reporte_kpi_guias_diario()");
-                case 8 -> tm = reporteDAO.ejecutarConsulta(
-                        "SELECT d.ruc, d.nombre " +
-                            "FROM destinatario d " +
-                            "WHERE d.ruc NOT IN ( " +
-                            "  SELECT o.ruc_cliente " +
-                            "  FROM orden_de_pago o " +
-                            "  WHERE o.fecha >= (current_date - INTERVAL '60 days') " +
-                            ") " +
-                            "ORDER BY d.nombre"
-                    );
-                case 9 -> tm = reporteDAO.ejecutarSP("sp_listar_traslados()");
-                default -> tm = new DefaultTableModel();
+            String codOrden = (String) cbOrdenes.getSelectedItem();
+            if (idx == 0 && (codOrden == null || codOrden.trim().isEmpty())) { JOptionPane.showMessageDialog(this, "Seleccione una orden"); return; }
+            String parametro = txtParametro.getText().trim();
+            java.sql.Date desde = dpDesde.getDate();
+            java.sql.Date hasta = dpHasta.getDate();
+            if (usaRango(idx) && (desde == null || hasta == null || hasta.before(desde))) {
+                JOptionPane.showMessageDialog(this, "Seleccione un rango de fechas válido");
+                return;
             }
-            tabla.setModel(tm);
+            // Un modelo por ejecución: los lotes de una ejecución anterior no se mezclan con los nuevos.
+            // Modelo por columnas: un reporte de cientos de miles de filas ocupa decenas de bytes por fila
+            ReporteColumnarTableModel destino = new ReporteColumnarTableModel();
+            tabla.setModel(destino);
+            lblEstado.setText(" ");
+            TareasUI.ejecutar(this, "reporte", "Ejecutando reporte...",
+                    p -> ejecutarReporte(idx, codOrden, parametro, desde, hasta, new LotesEnModelo(destino, lblEstado, p), p),
+                    lblEstado::setText);
         });
 
         // Menu button
@@ -178,4 +192,125 @@ public class ReportesWindow extends JDialog {
 
         add(root);
     }
+
+    // usaRango(): reportes que se filtran por el rango de fechas desde/hasta
+    private static boolean usaRango(int idx) {
+        return idx == 1 || idx == 2 || idx == 3 || idx == 7 || idx == 10;
+    }
+
+    // ejecutarReporte(): llama al SP o consulta del reporte elegido en streaming (se ejecuta fuera
+    // del EDT) y devuelve el texto de estado. Si se cancela, el estado lo deja el receptor.
+    private String ejecutarReporte(int idx, String codOrden, String parametro, java.sql.Date desde, java.sql.Date hasta,
+                                   LotesEnModelo receptor, TareasUI.Progreso p) throws SQLException {
+        ReporteDAO.Control control = new ReporteDAO.Control();
+        p.alCancelar(control::cancelar);
+        switch (idx) {
+            case 0 -> {
+                // Reporte 1: detalle de orden -> usar DetalleOrdenDAO para obtener modelo (pocas filas)
+                DetalleOrdenDAO detDao = new DetalleOrdenDAO();
+                receptor.copiar(detDao.listarModeloTablaPorOrden(codOrden.trim()));
+            }
+            // Reportes por fecha: sólo el rango elegido (antes agregaban todo el historial)
+            case 1 -> reporteDAO.transmitirSPConRango("sp_reporte_guias_por_fecha_estado", desde, hasta, receptor, control);
+            case 2 -> reporteDAO.transmitirSPConRango("sp_reporte_productos_mas_vendidos", desde, hasta, receptor, control);
+            case 3 -> reporteDAO.transmitirSPConRango("sp_reporte_utilizacion_vehiculos", desde, hasta, receptor, control);
+            case 4 -> {
+                // Reporte de licencias por vencer: acepta parámetro días (default 90)
+                String dias = parametro.isEmpty() ? "90" : parametro;
+                reporteDAO.transmitirSPConParametro("sp_reporte_licencias_por_vencer", dias, receptor, control);
+            }
+            case 5 -> reporteDAO.transmitirSP("sp_reporte_guias_sin_traslado()", receptor, control);
+            case 6 -> reporteDAO.transmitirSP("sp_reporte_bultos_por_cliente_90d()", receptor, control);
+            case 7 -> reporteDAO.transmitirSPConRango("sp_reporte_kpi_guias_diario", desde, hasta, receptor, control);
+            case 8 -> reporteDAO.transmitir(
+                    "SELECT d.ruc, d.nombre " +
+                        "FROM destinatario d " +
+                        "WHERE d.ruc NOT IN ( " +
+                        "  SELECT o.ruc_cliente " +
+                        "  FROM orden_de_pago o " +
+                        "  WHERE o.fecha >= (current_date - INTERVAL '60 days') " +
+                        ") " +
+                        "ORDER BY d.nombre",
+                    new Object[0], receptor, control);
+            case 9 -> reporteDAO.transmitirSP("sp_listar_traslados()", receptor, control);
+            case 10 -> reporteDAO.transmitirSPConRango("sp_reporte_ingresos_por_fecha", desde, hasta, receptor, control);
+            default -> { }
+        }
+        return receptor.terminar(control.cancelada() || p.cancelada());
+    }
+
+    /**
+     * Receptor que pasa las filas al modelo de la tabla en lotes (un invokeLater y un
+     * fireTableRowsInserted por lote, no por fila) e informa el avance en la barra.
+     * Las filas de un lote sólo viven hasta que el modelo las codifica por columnas.
+     * Deja de pedir filas al llegar a MAX_FILAS_PANTALLA o si la tarea se cancela.
+     */
+    private static final class LotesEnModelo implements ReporteDAO.ReceptorFilas {
+        private static final int LOTE = 500;
+        private static final long INTERVALO_MS = 250;
+
+        private final ReporteColumnarTableModel modelo;
+        private final JLabel lblEstado;
+        private final TareasUI.Progreso progreso;
+        private List<Object[]> lote = new ArrayList<>();
+        private long ultimoEnvio = System.currentTimeMillis();
+        private int filas = 0;
+        private boolean truncado = false;
+
+        LotesEnModelo(ReporteColumnarTableModel modelo, JLabel lblEstado, TareasUI.Progreso progreso) {
+            this.modelo = modelo;
+            this.lblEstado = lblEstado;
+            this.progreso = progreso;
+        }
+
+        @Override
+        public void columnas(String[] nombres, int[] tipos) {
+            SwingUtilities.invokeLater(() -> modelo.definirColumnas(nombres, tipos));
+        }
+
+        @Override
+        public boolean fila(Object[] valores) {
+            if (progreso.cancelada()) return false;
+            if (filas >= MAX_FILAS_PANTALLA) {
+                truncado = true;
+                return false;
+            }
+            lote.add(valores);
+            filas++;
+            if (lote.size() >= LOTE || System.currentTimeMillis() - ultimoEnvio >= INTERVALO_MS) enviar();
+            return true;
+        }
+
+        // Para reportes que ya vienen en un modelo (detalle de orden)
+        void copiar(DefaultTableModel tm) {
+            String[] nombres = new String[tm.getColumnCount()];
+            for (int c = 0; c < nombres.length; c++) nombres[c] = tm.getColumnName(c);
+            columnas(nombres, null);
+            for (int r = 0; r < tm.getRowCount(); r++) {
+                Object[] valores = new Object[nombres.length];
+                for (int c = 0; c < nombres.length; c++) valores[c] = tm.getValueAt(r, c);
+                if (!fila(valores)) break;
+            }
+        }
+
+        String terminar(boolean cancelado) {
+            enviar();
+            // Tras el último lote (invokeLater en orden): los arreglos del modelo quedan del tamaño justo
+            SwingUtilities.invokeLater(modelo::compactar);
+            String estado = filas + " filas" + (truncado ? " (se muestran las primeras " + MAX_FILAS_PANTALLA + ")" : "");
+            // Cancelada, TareasUI no entrega el resultado: el estado se deja aquí
+            if (cancelado) SwingUtilities.invokeLater(() -> lblEstado.setText(estado + " - cancelado"));
+            return estado;
+        }
+
+        private void enviar() {
+            ultimoEnvio = System.currentTimeMillis();
+            if (lote.isEmpty()) return;
+            List<Object[]> pendientes = lote;
+            lote = new ArrayList<>(LOTE);
+            int total = filas;
+            progreso.avance(-1, "Ejecutando reporte... " + total + " filas");
+            SwingUtilities.invokeLater(() -> modelo.agregar(pendientes));
+        }
+    }
 }
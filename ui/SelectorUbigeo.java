@@ -0,0 +1,209 @@
+package ui;
+
+/*
+ * SelectorUbigeo.java
+ * Selector en cascada departamento -> provincia -> distrito sobre una
+ * JerarquiaUbigeos, para los formularios donde se ingresa un codigo_ubigeo.
+ * - Cada combo sólo tiene los hijos del nivel elegido arriba: al cambiar el
+ *   departamento se piden sus provincias a la jerarquía (O(1)) y se reemplaza
+ *   el modelo del combo de una vez; nunca se llena un combo con todos los
+ *   ubigeos.
+ * - El primer elemento de cada combo es "sin elegir" (textoVacio: "" en los
+ *   formularios, "(Todos)" en un filtro).
+ * - No es un componente: los formularios ponen los tres combos en sus filas
+ *   (comboDepartamento()/...) o usan panelEnLinea() para tenerlos juntos.
+ * - setCodigo() antes de tener la jerarquía (carga en segundo plano) queda
+ *   pendiente y se aplica en setJerarquia().
+ * Se usa sólo desde el EDT.
+ */
+
+import dao.JerarquiaUbigeos;
+import dao.JerarquiaUbigeos.Nodo;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SelectorUbigeo {
+
+    private final String textoVacio;
+    private final boolean conDistrito;
+    private final JComboBox<Object> cbDepartamento = new JComboBox<>();
+    private final JComboBox<Object> cbProvincia = new JComboBox<>();
+    private final JComboBox<Object> cbDistrito = new JComboBox<>();
+    private final List<Runnable> oyentes = new ArrayList<>();
+    private JerarquiaUbigeos jerarquia;
+    private String pendiente = "";
+    // true mientras el propio selector rellena los combos: no se propaga ni se avisa
+    private boolean ajustando = false;
+    private boolean habilitado = true;
+
+    /** Selector de departamento, provincia y distrito con "" como opción vacía (formularios). */
+    public SelectorUbigeo() {
+        this("", true);
+    }
+
+    /**
+     * `textoVacio` es lo que muestra la opción "sin elegir" de cada combo; con `conDistrito`
+     * en false el selector se queda en la provincia (filtros, alta de un distrito nuevo).
+     */
+    public SelectorUbigeo(String textoVacio, boolean conDistrito) {
+        this.textoVacio = textoVacio;
+        this.conDistrito = conDistrito;
+        for (JComboBox<Object> cb : List.of(cbDepartamento, cbProvincia, cbDistrito)) {
+            // Sin prototipo el combo mide todos sus elementos para calcular su ancho
+            cb.setPrototypeDisplayValue("Nombre de provincia larga");
+            cb.setMaximumRowCount(16);
+        }
+        poner(cbDepartamento, null);
+        poner(cbProvincia, null);
+        poner(cbDistrito, null);
+        cbDepartamento.addActionListener(e -> {
+            if (ajustando) return;
+            Nodo dep = elegido(cbDepartamento);
+            ajustar(() -> {
+                poner(cbProvincia, dep == null ? null : jerarquia.provincias(dep.codigo));
+                poner(cbDistrito, null);
+            });
+            avisar();
+        });
+        cbProvincia.addActionListener(e -> {
+            if (ajustando) return;
+            Nodo prov = elegido(cbProvincia);
+            if (conDistrito) ajustar(() -> poner(cbDistrito, prov == null ? null : jerarquia.distritos(prov.codigo)));
+            avisar();
+        });
+        cbDistrito.addActionListener(e -> {
+            if (!ajustando) avisar();
+        });
+    }
+
+    public JComboBox<Object> comboDepartamento() { return cbDepartamento; }
+
+    public JComboBox<Object> comboProvincia() { return cbProvincia; }
+
+    public JComboBox<Object> comboDistrito() { return cbDistrito; }
+
+    /** Los combos (dos o tres) en una fila, para ocupar una sola celda del formulario. */
+    public JPanel panelEnLinea() {
+        JPanel p = new JPanel(new GridLayout(1, conDistrito ? 3 : 2, 6, 0));
+        p.setOpaque(false);
+        p.add(cbDepartamento);
+        p.add(cbProvincia);
+        if (conDistrito) p.add(cbDistrito);
+        return p;
+    }
+
+    /** Se llama (en el EDT) cuando el usuario cambia cualquiera de los niveles. */
+    public void alCambiar(Runnable oyente) {
+        oyentes.add(oyente);
+    }
+
+    /** Cambia la jerarquía (p.ej. tras crear un ubigeo) conservando lo elegido si sigue existiendo. */
+    public void setJerarquia(JerarquiaUbigeos nueva) {
+        String actual = jerarquia == null ? pendiente : getPrefijo();
+        jerarquia = nueva;
+        ajustar(() -> poner(cbDepartamento, nueva == null ? null : nueva.departamentos()));
+        setCodigo(actual);
+    }
+
+    public JerarquiaUbigeos getJerarquia() {
+        return jerarquia;
+    }
+
+    /** Código de 6 dígitos del distrito elegido; "" si falta elegir algún nivel. */
+    public String getCodigo() {
+        Nodo d = conDistrito ? elegido(cbDistrito) : null;
+        return d == null ? "" : d.codigo;
+    }
+
+    /** Código del nivel más bajo elegido (2, 4 o 6 dígitos); "" si no hay nada elegido. */
+    public String getPrefijo() {
+        for (JComboBox<Object> cb : List.of(cbDistrito, cbProvincia, cbDepartamento)) {
+            Nodo n = elegido(cb);
+            if (n != null) return n.codigo;
+        }
+        return "";
+    }
+
+    public Nodo getDepartamento() { return elegido(cbDepartamento); }
+
+    public Nodo getProvincia() { return elegido(cbProvincia); }
+
+    /**
+     * Elige los niveles que correspondan al código (2, 4 o 6 dígitos); "" o null deja
+     * todo sin elegir. No avisa a los oyentes.
+     */
+    public void setCodigo(String codigo) {
+        String c = codigo == null ? "" : codigo.trim();
+        if (jerarquia == null) {
+            pendiente = c;
+            return;
+        }
+        pendiente = "";
+        ajustar(() -> {
+            // Con un prefijo (2 o 4 dígitos) los niveles de abajo no encuentran su código y quedan sin elegir
+            Nodo dep = elegir(cbDepartamento, JerarquiaUbigeos.prefijo(c, JerarquiaUbigeos.DIGITOS_DEPARTAMENTO));
+            poner(cbProvincia, dep == null ? null : jerarquia.provincias(dep.codigo));
+            Nodo prov = dep == null ? null : elegir(cbProvincia, JerarquiaUbigeos.prefijo(c, JerarquiaUbigeos.DIGITOS_PROVINCIA));
+            poner(cbDistrito, prov == null || !conDistrito ? null : jerarquia.distritos(prov.codigo));
+            if (prov != null && conDistrito) elegir(cbDistrito, c);
+        });
+    }
+
+    /** Deja los tres niveles sin elegir. */
+    public void limpiar() {
+        setCodigo("");
+    }
+
+    public void setEnabled(boolean habilitado) {
+        this.habilitado = habilitado;
+        for (JComboBox<Object> cb : List.of(cbDepartamento, cbProvincia, cbDistrito)) {
+            cb.setEnabled(habilitado && cb.getItemCount() > 1);
+        }
+    }
+
+    // Reemplaza el modelo entero (un solo aviso al combo) con la opción vacía y los hijos
+    private void poner(JComboBox<Object> cb, List<Nodo> hijos) {
+        int n = hijos == null ? 0 : hijos.size();
+        Object[] items = new Object[n + 1];
+        items[0] = textoVacio;
+        for (int i = 0; i < n; i++) items[i + 1] = hijos.get(i);
+        cb.setModel(new DefaultComboBoxModel<>(items));
+        // Un nivel sin hijos (o sin padre elegido) se deshabilita en vez de mostrarse vacío
+        cb.setEnabled(habilitado && n > 0);
+    }
+
+    private static Nodo elegir(JComboBox<Object> cb, String codigo) {
+        ComboBoxModel<Object> m = cb.getModel();
+        for (int i = 1; i < m.getSize(); i++) {
+            Nodo n = (Nodo) m.getElementAt(i);
+            if (!codigo.isEmpty() && n.codigo.equals(codigo)) {
+                cb.setSelectedIndex(i);
+                return n;
+            }
+        }
+        cb.setSelectedIndex(0);
+        return null;
+    }
+
+    private static Nodo elegido(JComboBox<Object> cb) {
+        Object s = cb.getSelectedItem();
+        return s instanceof Nodo ? (Nodo) s : null;
+    }
+
+    private void ajustar(Runnable r) {
+        boolean antes = ajustando;
+        ajustando = true;
+        try {
+            r.run();
+        } finally {
+            ajustando = antes;
+        }
+    }
+
+    private void avisar() {
+        for (Runnable o : oyentes) o.run();
+    }
+}
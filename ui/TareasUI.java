@@ -0,0 +1,349 @@
+package ui;
+
+/*
+ * TareasUI.java
+ * Capa común para ejecutar trabajo de BD/archivos fuera del EDT (basada en
+ * SwingWorker, igual que BootstrapDialog) y devolver el resultado al EDT.
+ * - Deduplicación: las peticiones con la misma clave (en la misma ventana) no se solapan; si llega
+ *   una nueva mientras otra está en curso, queda como pendiente (la última
+ *   gana) y el resultado de la anterior, ya obsoleto, se descarta.
+ * - Cancelación: por tarea, por clave o de todas las de una ventana (se hace
+ *   automáticamente al cerrarla). Un resultado cancelado nunca llega al EDT.
+ * - Progreso: mientras una ventana tiene tareas activas se muestra una barra
+ *   con el mensaje (y porcentaje si el trabajo lo informa), un botón Cancelar
+ *   y el cursor de espera.
+ * - Bloqueo: Tarea.bloqueando(botones...) los deshabilita hasta que la tarea
+ *   termina de cualquier forma (resultado, error, cancelada o descartada).
+ * Todos los métodos públicos deben llamarse desde el EDT.
+ */
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+public final class TareasUI {
+
+    /** Trabajo que se ejecuta en segundo plano; puede informar avance y consultar si fue cancelado. */
+    @FunctionalInterface
+    public interface Trabajo<T> {
+        T ejecutar(Progreso progreso) throws Exception;
+    }
+
+    /** Canal de avance del trabajo hacia el indicador de la ventana (seguro desde cualquier hilo). */
+    public interface Progreso {
+        /** porcentaje 0..100, o negativo para indeterminado; mensaje null = conservar el actual. */
+        void avance(int porcentaje, String mensaje);
+        boolean cancelada();
+        /**
+         * Registra una acción a ejecutar (en un hilo aparte, no en el EDT) si la tarea se
+         * cancela; p.ej. Statement.cancel() de una consulta bloqueada en el servidor,
+         * que no responde a la interrupción del hilo. Si ya estaba cancelada se ejecuta al momento.
+         */
+        void alCancelar(Runnable accion);
+    }
+
+    // Tareas en curso y pendientes por clave (sólo se tocan en el EDT)
+    private static final Map<String, Tarea<?>> EN_CURSO = new HashMap<>();
+    private static final Map<String, Tarea<?>> PENDIENTES = new HashMap<>();
+    private static final Map<Window, Indicador> INDICADORES = new WeakHashMap<>();
+    // Último diálogo de error por clave+mensaje: evita repetirlo en bucle (p.ej. recargas al recuperar foco)
+    private static final Map<String, Long> ULTIMO_ERROR = new HashMap<>();
+    private static final long SILENCIO_ERROR_MS = 30_000;
+
+    private TareasUI() {}
+
+    /** Ejecuta el trabajo fuera del EDT y entrega el resultado en el EDT. Los errores se muestran en un diálogo. */
+    public static <T> Tarea<T> ejecutar(Component origen, String clave, String mensaje,
+                                        Trabajo<T> trabajo, Consumer<T> alTerminar) {
+        return ejecutar(origen, clave, mensaje, trabajo, alTerminar, null);
+    }
+
+    /**
+     * Ejecuta el trabajo fuera del EDT. `clave` (puede ser null) agrupa las peticiones
+     * equivalentes para no lanzarlas en paralelo; `alFallar` null = diálogo de error estándar.
+     */
+    public static <T> Tarea<T> ejecutar(Component origen, String clave, String mensaje,
+                                        Trabajo<T> trabajo, Consumer<T> alTerminar, Consumer<Exception> alFallar) {
+        Window ventana = ventanaDe(origen);
+        Tarea<T> t = new Tarea<>(ventana, claveInterna(ventana, clave), mensaje, trabajo, alTerminar, alFallar);
+        if (t.clave != null && EN_CURSO.containsKey(t.clave)) {
+            Tarea<?> anterior = PENDIENTES.put(t.clave, t);
+            if (anterior != null) anterior.descartar();
+            return t;
+        }
+        iniciar(t);
+        return t;
+    }
+
+    /** Cancela la tarea en curso y la pendiente con esa clave en la ventana de `origen`. */
+    public static void cancelar(Component origen, String clave) {
+        String k = claveInterna(ventanaDe(origen), clave);
+        if (k == null) return;
+        Tarea<?> p = PENDIENTES.remove(k);
+        if (p != null) p.descartar();
+        Tarea<?> t = EN_CURSO.get(k);
+        if (t != null) t.cancelar();
+    }
+
+    /** Cancela todas las tareas asociadas a la ventana. */
+    public static void cancelarDe(Window ventana) {
+        PENDIENTES.values().removeIf(p -> { if (p.ventana == ventana) { p.descartar(); return true; } return false; });
+        for (Tarea<?> t : new ArrayList<>(EN_CURSO.values())) if (t.ventana == ventana) t.cancelar();
+        Indicador ind = INDICADORES.get(ventana);
+        if (ind != null) for (Tarea<?> t : new ArrayList<>(ind.activas)) t.cancelar();
+    }
+
+    /** ¿Hay una tarea en curso con esa clave en la ventana de `origen`? */
+    public static boolean enCurso(Component origen, String clave) {
+        String k = claveInterna(ventanaDe(origen), clave);
+        return k != null && EN_CURSO.containsKey(k);
+    }
+
+    private static Window ventanaDe(Component origen) {
+        if (origen == null) return null;
+        return origen instanceof Window ? (Window) origen : SwingUtilities.getWindowAncestor(origen);
+    }
+
+    // La misma clave en ventanas distintas son peticiones distintas
+    private static String claveInterna(Window ventana, String clave) {
+        return clave == null ? null : clave + "@" + (ventana == null ? 0 : System.identityHashCode(ventana));
+    }
+
+    private static void iniciar(Tarea<?> t) {
+        if (t.clave != null) EN_CURSO.put(t.clave, t);
+        if (t.ventana != null) indicador(t.ventana).agregar(t);
+        t.worker.execute();
+    }
+
+    // Llamado en el EDT cuando termina (o se cancela) una tarea
+    private static void finalizada(Tarea<?> t) {
+        t.cerrar();
+        if (t.ventana != null) {
+            Indicador ind = INDICADORES.get(t.ventana);
+            if (ind != null) ind.quitar(t);
+        }
+        if (t.clave != null && EN_CURSO.get(t.clave) == t) {
+            EN_CURSO.remove(t.clave);
+            Tarea<?> siguiente = PENDIENTES.remove(t.clave);
+            if (siguiente != null && !siguiente.cancelada) iniciar(siguiente);
+            else if (siguiente != null) siguiente.cerrar();
+        }
+    }
+
+    private static Indicador indicador(Window w) {
+        Indicador ind = INDICADORES.get(w);
+        if (ind == null) {
+            ind = new Indicador(w);
+            INDICADORES.put(w, ind);
+            w.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) { cancelarDe(w); }
+            });
+        }
+        return ind;
+    }
+
+    /** Una ejecución en segundo plano. Se puede cancelar desde el EDT. */
+    public static final class Tarea<T> {
+        private final Window ventana;
+        private final String clave;
+        private final String mensaje;
+        private final Trabajo<T> trabajo;
+        private final Consumer<T> alTerminar;
+        private final Consumer<Exception> alFallar;
+        private final SwingWorker<T, Void> worker;
+        private volatile boolean cancelada = false;
+        private final List<Runnable> accionesCancelar = new CopyOnWriteArrayList<>();
+        private volatile int porcentaje = -1;
+        private volatile String texto;
+        // Acciones de bloqueando(): se ejecutan una sola vez en el EDT al terminar la tarea
+        private final List<Runnable> alCerrar = new ArrayList<>();
+        private boolean cerrada = false;
+
+        private Tarea(Window ventana, String clave, String mensaje, Trabajo<T> trabajo,
+                      Consumer<T> alTerminar, Consumer<Exception> alFallar) {
+            this.ventana = ventana;
+            this.clave = clave;
+            this.mensaje = mensaje == null ? "Cargando..." : mensaje;
+            this.texto = this.mensaje;
+            this.trabajo = trabajo;
+            this.alTerminar = alTerminar;
+            this.alFallar = alFallar;
+            Progreso progreso = new Progreso() {
+                @Override
+                public void avance(int pct, String msg) {
+                    porcentaje = Math.min(100, pct);
+                    if (msg != null) texto = msg;
+                    SwingUtilities.invokeLater(() -> {
+                        Indicador ind = ventana == null ? null : INDICADORES.get(ventana);
+                        if (ind != null) ind.refrescar();
+                    });
+                }
+
+                @Override
+                public boolean cancelada() { return cancelada; }
+
+                @Override
+                public void alCancelar(Runnable accion) {
+                    accionesCancelar.add(accion);
+                    if (cancelada && accionesCancelar.remove(accion)) accion.run();
+                }
+            };
+            this.worker = new SwingWorker<>() {
+                @Override
+                protected T doInBackground() throws Exception {
+                    return trabajo.ejecutar(progreso);
+                }
+
+                @Override
+                protected void done() {
+                    T r = null;
+                    Exception error = null;
+                    boolean entregar = false;
+                    try {
+                        // Si ya hay una petición más reciente con la misma clave, este resultado está obsoleto
+                        boolean obsoleta = clave != null && PENDIENTES.containsKey(clave);
+                        if (cancelada || isCancelled() || obsoleta) return;
+                        try {
+                            r = get();
+                            entregar = true;
+                        } catch (ExecutionException ee) {
+                            Throwable c = ee.getCause() == null ? ee : ee.getCause();
+                            error = c instanceof Exception ? (Exception) c : new Exception(c);
+                        } catch (InterruptedException | CancellationException ie) {
+                            return;
+                        }
+                    } finally {
+                        // Se libera antes de entregar: el resultado puede abrir un diálogo modal
+                        // y la barra de progreso y los botones bloqueados no deben quedar esperándolo
+                        finalizada(Tarea.this);
+                    }
+                    if (error != null) fallo(error);
+                    else if (entregar && alTerminar != null) alTerminar.accept(r);
+                }
+            };
+        }
+
+        /** Cancela la tarea: interrumpe el hilo y descarta su resultado. */
+        public void cancelar() {
+            cancelada = true;
+            worker.cancel(true);
+            // remove() decide quién ejecuta cada acción si alCancelar() la registra a la vez
+            List<Runnable> acciones = new ArrayList<>();
+            for (Runnable a : accionesCancelar) if (accionesCancelar.remove(a)) acciones.add(a);
+            if (acciones.isEmpty()) return;
+            Thread h = new Thread(() -> acciones.forEach(Runnable::run), "cancelar-tarea");
+            h.setDaemon(true);
+            h.start();
+        }
+
+        /**
+         * Deshabilita los componentes hasta que la tarea termine (con resultado, error o
+         * cancelada); se vuelven a habilitar antes de entregar el resultado. Sólo desde el EDT.
+         */
+        public Tarea<T> bloqueando(Component... componentes) {
+            if (cerrada) return this;
+            for (Component c : componentes) {
+                c.setEnabled(false);
+                alCerrar.add(() -> c.setEnabled(true));
+            }
+            return this;
+        }
+
+        // Pendiente que nunca llegará a ejecutarse
+        private void descartar() {
+            cancelada = true;
+            cerrar();
+        }
+
+        private void cerrar() {
+            if (cerrada) return;
+            cerrada = true;
+            alCerrar.forEach(Runnable::run);
+            alCerrar.clear();
+        }
+
+        /** ¿Terminó (con resultado, error o cancelada)? */
+        public boolean terminada() {
+            return worker.isDone();
+        }
+
+        private void fallo(Exception ex) {
+            System.err.println("Error en tarea '" + mensaje + "': " + ex.getMessage());
+            if (alFallar != null) { alFallar.accept(ex); return; }
+            String id = clave + "|" + ex.getMessage();
+            long ahora = System.currentTimeMillis();
+            Long previo = ULTIMO_ERROR.put(id, ahora);
+            if (previo != null && ahora - previo < SILENCIO_ERROR_MS) return;
+            JOptionPane.showMessageDialog(ventana, mensaje.replace("...", "") + ": " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Barra de progreso + Cancelar mostrada en el glass pane de la ventana mientras haya tareas activas
+    private static final class Indicador {
+        private final Window ventana;
+        private final List<Tarea<?>> activas = new ArrayList<>();
+        private JPanel panel;
+        private JProgressBar barra;
+
+        Indicador(Window ventana) {
+            this.ventana = ventana;
+        }
+
+        void agregar(Tarea<?> t) {
+            activas.add(t);
+            refrescar();
+        }
+
+        void quitar(Tarea<?> t) {
+            activas.remove(t);
+            refrescar();
+        }
+
+        void refrescar() {
+            JRootPane rp = ventana instanceof RootPaneContainer ? ((RootPaneContainer) ventana).getRootPane() : null;
+            if (rp == null) return;
+            if (activas.isEmpty()) {
+                if (panel != null) rp.getGlassPane().setVisible(false);
+                rp.setCursor(Cursor.getDefaultCursor());
+                return;
+            }
+            if (panel == null) crear(rp);
+            Tarea<?> t = activas.get(activas.size() - 1);
+            barra.setIndeterminate(t.porcentaje < 0);
+            if (t.porcentaje >= 0) barra.setValue(t.porcentaje);
+            barra.setString(activas.size() > 1 ? t.texto + " (+" + (activas.size() - 1) + ")" : t.texto);
+            rp.getGlassPane().setVisible(true);
+            rp.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        }
+
+        private void crear(JRootPane rp) {
+            barra = new JProgressBar(0, 100);
+            barra.setStringPainted(true);
+            barra.setPreferredSize(new Dimension(260, 22));
+            JButton btnCancelar = new JButton("Cancelar");
+            UIStyles.styleButton(btnCancelar);
+            btnCancelar.addActionListener(e -> { for (Tarea<?> t : new ArrayList<>(activas)) t.cancelar(); });
+            JPanel caja = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 6));
+            caja.setOpaque(false);
+            caja.add(barra);
+            caja.add(btnCancelar);
+            // Glass pane transparente: sólo la barra y el botón reciben eventos
+            panel = new JPanel(new BorderLayout());
+            panel.setOpaque(false);
+            panel.add(caja, BorderLayout.SOUTH);
+            rp.setGlassPane(panel);
+        }
+    }
+}
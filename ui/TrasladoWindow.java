@@ -85,13 +85,12 @@ public class TrasladoWindow extends JDialog {
         // Acción: Nuevo traslado -> abre formulario de creación
         btnNuevo.addActionListener(e-> new FrmTraslado(this, null).setVisible(true));
         // Acción: Editar traslado -> obtiene código de la fila seleccionada,
-        // busca en la lista retornada por DAO y abre `FrmTraslado` con el objeto
+        // lo busca por código en el DAO (consulta por clave) y abre `FrmTraslado` con el objeto
         btnEditar.addActionListener(e->{
             int r = table.getSelectedRow();
             if (r<0){ JOptionPane.showMessageDialog(this,"Seleccione fila"); return; }
             String cod = model.getValueAt(r,0).toString();
-            List<Traslado> lista = dao.listarTodos();
-            Traslado t = lista.stream().filter(x->x.getCodigoTraslado().equals(cod)).findFirst().orElse(null);
+            Traslado t = dao.obtenerPorCodigo(cod);
             if (t!=null) new FrmTraslado(this, t).setVisible(true);
         });
 
@@ -107,8 +106,8 @@ public class TrasladoWindow extends JDialog {
             if (opt == JOptionPane.YES_OPTION) {
                 boolean ok = dao.eliminarTraslado(cod);
                 if (ok) {
+                    // La fila se quita sola: el DAO publica el cambio y FilasEnVivo lo aplica
                     JOptionPane.showMessageDialog(this, "Traslado eliminado");
-                    load();
                 } else {
                     JOptionPane.showMessageDialog(this, "No se pudo eliminar. Verifique dependencias o errores.");
                 }
@@ -116,6 +115,9 @@ public class TrasladoWindow extends JDialog {
         });
 
         load();
+        // Cambios de traslados (propios y de otros equipos) aplicados fila a fila
+        FilasEnVivo.instalar(this, "traslado", dao::obtenerPorCodigo,
+                FilasEnVivo.enModelo(model, 0, TrasladoWindow::fila, this::load));
 
         btnMenu.addActionListener(e -> UIStyles.showMainMenu(TrasladoWindow.this));
     }
@@ -125,15 +127,19 @@ public class TrasladoWindow extends JDialog {
      * en la tabla. Convierte valores de fecha/hora a formato `dd/MM/yyyy`.
      */
     public void load() {
-        model.setRowCount(0);
-        List<Traslado> lista = dao.listarTodos();
+        TareasUI.ejecutar(this, "traslados", "Cargando traslados...", p -> dao.listarTodos(), lista -> {
+            model.setRowCount(0);
+            for (Traslado t: lista) model.addRow(fila(t));
+        });
+    }
+
+    // fila(): valores de la tabla para un traslado, con las fechas en formato dd/MM/yyyy
+    private static Object[] fila(Traslado t) {
         DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        for (Traslado t: lista) {
-            String inicio = "";
-            String fin = "";
-            if (t.getFechaInicio() != null) inicio = t.getFechaInicio().toLocalDateTime().toLocalDate().format(fmt);
-            if (t.getFechaFin() != null) fin = t.getFechaFin().toLocalDateTime().toLocalDate().format(fmt);
-            model.addRow(new Object[]{t.getCodigoTraslado(), t.getCodigoGuia(), t.getPlaca(), t.getLicencia(), inicio, fin, t.getEstadoTraslado(), t.getObservaciones()});
-        }
+        String inicio = "";
+        String fin = "";
+        if (t.getFechaInicio() != null) inicio = t.getFechaInicio().toLocalDateTime().toLocalDate().format(fmt);
+        if (t.getFechaFin() != null) fin = t.getFechaFin().toLocalDateTime().toLocalDate().format(fmt);
+        return new Object[]{t.getCodigoTraslado(), t.getCodigoGuia(), t.getPlaca(), t.getLicencia(), inicio, fin, t.getEstadoTraslado(), t.getObservaciones()};
     }
 }
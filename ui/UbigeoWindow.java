@@ -4,14 +4,19 @@ package ui;
 /*
  * UbigeoWindow.java
  * Ventana para gestionar códigos UBIGEO (CRUD).
+ * La tabla muestra sólo los ubigeos del departamento/provincia elegidos en
+ * el filtro en cascada (SelectorUbigeo): al abrir, los del primer
+ * departamento; "(Todos)" muestra la lista completa.
  * Cada método incluye comentarios en español explicando su propósito.
  */
 
+import dao.JerarquiaUbigeos;
 import dao.UbigeoDAO;
 import model.Ubigeo;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
 
 public class UbigeoWindow extends JFrame {
@@ -22,11 +27,13 @@ public class UbigeoWindow extends JFrame {
     private final JTextField txtDepartamento = new JTextField();
     private final JTextField txtProvincia = new JTextField();
     private final JTextField txtDistrito = new JTextField();
+    private final SelectorUbigeo filtro = new SelectorUbigeo("(Todos)", false);
+    private static final String[] COLUMNAS = {"Código", "Departamento", "Provincia", "Distrito"};
 
     public UbigeoWindow() {
         // Constructor: configura ventana, encabezado, toolbar y tabla
         setTitle("Ubigeos");
-        setSize(800, 500);
+        setSize(960, 540);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
         setLayout(new BorderLayout(10,10));
@@ -58,16 +65,22 @@ public class UbigeoWindow extends JFrame {
         JButton btnActualizar = new JButton("Actualizar"); UIStyles.styleButton(btnActualizar);
         toolbarLeft.add(btnNuevo); toolbarLeft.add(btnEditar); toolbarLeft.add(btnEliminar); toolbarLeft.add(btnActualizar);
 
+        JPanel toolbarRight = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 8));
+        toolbarRight.setOpaque(false);
+        toolbarRight.add(new JLabel("Ubicación:"));
+        toolbarRight.add(filtro.panelEnLinea());
+        filtro.alCambiar(this::mostrarFiltrados);
+
         JPanel toolbar = new JPanel(new BorderLayout());
         toolbar.setOpaque(false);
         toolbar.add(toolbarLeft, BorderLayout.WEST);
+        toolbar.add(toolbarRight, BorderLayout.EAST);
         topPanel.add(toolbar, BorderLayout.CENTER);
 
         add(topPanel, BorderLayout.NORTH);
 
         // Tabla
-        String[] columnas = {"Código", "Departamento", "Provincia", "Distrito"};
-        model.setColumnIdentifiers(columnas);
+        model.setColumnIdentifiers(COLUMNAS);
         tabla.setFillsViewportHeight(true);
         tabla.setRowHeight(28);
         tabla.setSelectionBackground(UIStyles.CARD_HOVER);
@@ -169,12 +182,36 @@ public class UbigeoWindow extends JFrame {
     }
 
     private void cargarTabla() {
-        // cargarTabla(): consulta DAO y rellena el modelo de la tabla con todos los ubigeos
-        model.setRowCount(0);
-        List<Ubigeo> lista = dao.listarTodos();
-        for (Ubigeo u : lista) {
-            model.addRow(new Object[]{u.getCodigo(), u.getDepartamento(), u.getProvincia(), u.getDistrito()});
+        // cargarTabla(): consulta DAO fuera del EDT, arma la jerarquía allí mismo y muestra lo del filtro
+        TareasUI.ejecutar(this, "ubigeos", "Cargando ubigeos...", p -> new JerarquiaUbigeos(dao.listarTodos()), j -> {
+            boolean primeraVez = filtro.getJerarquia() == null;
+            filtro.setJerarquia(j);
+            // Al abrir no se pinta la lista completa: se empieza por el primer departamento
+            if (primeraVez && !j.departamentos().isEmpty()) filtro.setCodigo(j.departamentos().get(0).codigo);
+            mostrarFiltrados();
+        });
+    }
+
+    private void mostrarFiltrados() {
+        // mostrarFiltrados(): pide a la jerarquía sólo la rama elegida y reemplaza las filas de una vez
+        JerarquiaUbigeos j = filtro.getJerarquia();
+        if (j == null) return;
+        String prefijo = filtro.getPrefijo();
+        List<JerarquiaUbigeos.Nodo> provincias = new ArrayList<>();
+        if (prefijo.length() > JerarquiaUbigeos.DIGITOS_DEPARTAMENTO) {
+            provincias.add(filtro.getProvincia());
+        } else {
+            List<JerarquiaUbigeos.Nodo> deps = prefijo.isEmpty() ? j.departamentos() : List.of(filtro.getDepartamento());
+            for (JerarquiaUbigeos.Nodo d : deps) provincias.addAll(j.provincias(d.codigo));
+        }
+        List<Object[]> filas = new ArrayList<>();
+        for (JerarquiaUbigeos.Nodo p : provincias) {
+            for (JerarquiaUbigeos.Nodo d : j.distritos(p.codigo)) {
+                Ubigeo u = j.ubigeo(d.codigo);
+                filas.add(new Object[]{u.getCodigo(), u.getDepartamento(), u.getProvincia(), u.getDistrito()});
+            }
         }
+        model.setDataVector(filas.toArray(new Object[0][]), COLUMNAS);
     }
 
     // Muestra un formulario emergente para crear/editar ubigeo
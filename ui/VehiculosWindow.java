@@ -31,11 +31,13 @@ public class VehiculosWindow extends JFrame {
     }
 
     private void cargarVehiculos() {
-        // cargarVehiculos(): consulta DAO y rellena la tabla
-        model.setRowCount(0);
-        for (Vehiculo v : vehiculoDAO.listarTodos()) {
-            agregarVehiculo(v);
-        }
+        // cargarVehiculos(): consulta DAO fuera del EDT y rellena la tabla al terminar
+        TareasUI.ejecutar(this, "vehiculos", "Cargando vehículos...", p -> vehiculoDAO.listarTodos(), lista -> {
+            model.setRowCount(0);
+            for (Vehiculo v : lista) {
+                agregarVehiculo(v);
+            }
+        });
     }
 
     public VehiculosWindow() {
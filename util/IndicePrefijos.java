@@ -0,0 +1,146 @@
+/*
+ * IndicePrefijos.java
+ * Índice en memoria para las sugerencias locales (CampoBusqueda.local) sobre
+ * los datos de referencia de CacheReferencias (ubigeos, productos).
+ * - Cada elemento aporta varias claves: su código y cada palabra de su nombre,
+ *   normalizadas (minúsculas, sin tildes). Las claves se guardan en un arreglo
+ *   ordenado; buscar un prefijo es una búsqueda binaria del primer candidato y
+ *   un recorrido hasta que deja de coincidir, sin mirar el resto.
+ * - Con varias palabras se busca por la más larga (la más selectiva) y las
+ *   demás se comprueban como prefijo de alguna palabra del elemento.
+ * - El recorrido se corta al llegar al límite, así que el costo depende de las
+ *   sugerencias pedidas y no del tamaño de la tabla.
+ * Es inmutable: se construye una vez por instantánea de la caché y se puede
+ * consultar desde cualquier hilo.
+ */
+package util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+public final class IndicePrefijos<T> {
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+
+    private final List<T> elementos;
+    // Claves ordenadas y, en la misma posición, el índice del elemento que las aporta
+    private final String[] claves;
+    private final int[] refs;
+    // Por elemento: " clave1 clave2 ...", para comprobar las palabras adicionales con indexOf
+    private final String[] textos;
+
+    public IndicePrefijos(List<T> elementos, Function<T, String> codigo, Function<T, String> nombre) {
+        this.elementos = Collections.unmodifiableList(new ArrayList<>(elementos));
+        int n = this.elementos.size();
+        this.textos = new String[n];
+        List<Entrada> entradas = new ArrayList<>(n * 4);
+        for (int i = 0; i < n; i++) {
+            T e = this.elementos.get(i);
+            StringBuilder texto = new StringBuilder();
+            for (String tk : tokens(Objects.toString(codigo.apply(e), "") + " " + Objects.toString(nombre.apply(e), ""))) {
+                entradas.add(new Entrada(tk, i));
+                texto.append(' ').append(tk);
+            }
+            textos[i] = texto.toString();
+        }
+        // Orden estable: a igual clave se conserva el orden de la lista original
+        entradas.sort((a, b) -> a.clave.compareTo(b.clave));
+        this.claves = new String[entradas.size()];
+        this.refs = new int[entradas.size()];
+        for (int i = 0; i < claves.length; i++) {
+            claves[i] = entradas.get(i).clave;
+            refs[i] = entradas.get(i).ref;
+        }
+    }
+
+    /** Minúsculas sin tildes ni diéresis ("Áncash" -> "ancash"); "" si es null. */
+    public static String normalizar(String texto) {
+        if (texto == null) return "";
+        // Códigos y nombres en mayúsculas sin tildes son la mayoría: ahí basta con bajar a minúsculas
+        if (esAscii(texto)) return texto.toLowerCase(Locale.ROOT).trim();
+        String s = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        return MARCAS.matcher(s).replaceAll("").toLowerCase(Locale.ROOT).trim();
+    }
+
+    public int tamano() {
+        return elementos.size();
+    }
+
+    /**
+     * Elementos cuyo código o alguna palabra del nombre empieza por cada palabra de la
+     * consulta, hasta `limite`. Vacía si la consulta no tiene letras ni dígitos.
+     */
+    public List<T> buscar(String consulta, int limite) {
+        String[] palabras = tokens(consulta);
+        if (palabras.length == 0 || limite <= 0) return Collections.emptyList();
+        String guia = palabras[0];
+        for (String p : palabras) if (p.length() > guia.length()) guia = p;
+
+        List<T> encontrados = new ArrayList<>(Math.min(limite, 64));
+        BitSet vistos = new BitSet(elementos.size());
+        for (int i = primeraMayorOIgual(guia); i < claves.length && claves[i].startsWith(guia); i++) {
+            int ref = refs[i];
+            if (vistos.get(ref)) continue;
+            vistos.set(ref);
+            if (!contieneTodas(textos[ref], palabras, guia)) continue;
+            encontrados.add(elementos.get(ref));
+            if (encontrados.size() >= limite) break;
+        }
+        return encontrados;
+    }
+
+    private static boolean contieneTodas(String texto, String[] palabras, String guia) {
+        for (String p : palabras) {
+            // La guía ya coincide por construcción (misma instancia del arreglo)
+            if (p != guia && !texto.contains(" " + p)) return false;
+        }
+        return true;
+    }
+
+    private int primeraMayorOIgual(String clave) {
+        int lo = 0, hi = claves.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (claves[mid].compareTo(clave) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static final class Entrada {
+        final String clave;
+        final int ref;
+
+        Entrada(String clave, int ref) {
+            this.clave = clave;
+            this.ref = ref;
+        }
+    }
+
+    private static boolean esAscii(String s) {
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) >= 0x80) return false;
+        return true;
+    }
+
+    // Palabras del texto normalizado: tramos de letras o dígitos ("150101 - LIMA/LIMA" -> 150101, lima, lima)
+    private static String[] tokens(String texto) {
+        String s = normalizar(texto);
+        List<String> ts = new ArrayList<>(4);
+        int inicio = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            boolean parte = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+            if (parte && inicio < 0) inicio = i;
+            else if (!parte && inicio >= 0) {
+                ts.add(s.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+        return ts.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * IndicePrefijosMedicion.java
+ * Medición ejecutable de IndicePrefijos con datos sintéticos (por defecto
+ * 100.000 elementos con código de 6 dígitos y un nombre de tres palabras,
+ * con y sin tildes), sin BD ni pantalla:
+ *   java -cp <clases> util.IndicePrefijosMedicion [elementos]
+ * Imprime el tiempo de construcción y, por consulta típica (una letra, una
+ * palabra, un código, varias palabras, sin resultados), la mediana y el
+ * máximo de REPETICIONES búsquedas tras calentar la JVM. Termina con código 1
+ * si la mediana de alguna consulta pasa de un cuadro (MAX_CONSULTA_MS): las
+ * sugerencias locales se buscan en el EDT.
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public final class IndicePrefijosMedicion {
+
+    private static final int ELEMENTOS_DEFECTO = 100_000;
+    // Sugerencias por consulta, como CampoBusqueda.LIMITE_LOCAL
+    private static final int LIMITE = 100;
+    private static final int CALENTAMIENTO = 200;
+    private static final int REPETICIONES = 101;
+    private static final double MAX_CONSULTA_MS = 16.0;
+
+    private static final String[] PALABRAS = {"lima", "cusco", "áncash", "piura", "callao", "arequipa",
+            "junín", "puno", "tacna", "loreto", "san", "santa", "maría", "josé"};
+    private static final String[] CONSULTAS = {"l", "lima", "ancash san", "0123", "sa ma jo", "zzz", "lima cusco puno"};
+
+    private IndicePrefijosMedicion() {}
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : ELEMENTOS_DEFECTO;
+        Random r = new Random(1);
+        List<String[]> datos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            datos.add(new String[]{String.format("%06d", i),
+                    PALABRAS[r.nextInt(PALABRAS.length)] + " " + PALABRAS[r.nextInt(PALABRAS.length)] + " "
+                            + PALABRAS[r.nextInt(PALABRAS.length)] + r.nextInt(500)});
+        }
+
+        // La primera construcción incluye el calentamiento de la JVM; la última es la de régimen
+        IndicePrefijos<String[]> indice = null;
+        double primera = 0, ultima = 0;
+        for (int i = 0; i < 3; i++) {
+            long t0 = System.nanoTime();
+            indice = new IndicePrefijos<>(datos, d -> d[0], d -> d[1]);
+            ultima = (System.nanoTime() - t0) / 1_000_000.0;
+            if (i == 0) primera = ultima;
+        }
+        System.out.println(String.format("Construcción con %d elementos: %.1f ms (primera %.1f ms)", indice.tamano(), ultima, primera));
+
+        boolean ok = true;
+        for (String q : CONSULTAS) {
+            for (int i = 0; i < CALENTAMIENTO; i++) indice.buscar(q, LIMITE);
+            double[] tiempos = new double[REPETICIONES];
+            int encontrados = 0;
+            for (int i = 0; i < REPETICIONES; i++) {
+                long t0 = System.nanoTime();
+                encontrados = indice.buscar(q, LIMITE).size();
+                tiempos[i] = (System.nanoTime() - t0) / 1_000_000.0;
+            }
+            Arrays.sort(tiempos);
+            double mediana = tiempos[REPETICIONES / 2];
+            System.out.println(String.format("  %-18s %3d resultados  mediana %8.3f ms  máximo %8.3f ms",
+                    "\"" + q + "\"", encontrados, mediana, tiempos[REPETICIONES - 1]));
+            if (mediana > MAX_CONSULTA_MS) ok = false;
+        }
+        System.out.println(ok ? "OK" : "FALLA: alguna consulta pasa de " + MAX_CONSULTA_MS + " ms");
+        if (!ok) System.exit(1);
+    }
+}